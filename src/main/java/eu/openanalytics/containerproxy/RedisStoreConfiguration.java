@@ -45,8 +45,10 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
@@ -75,6 +77,9 @@ public class RedisStoreConfiguration {
 
     @Inject
     private ApplicationEventPublisher applicationEventPublisher;
+
+    @Inject
+    private Environment environment;
     private RedisLockRegistry redisLockRegistry;
 
     // Store beans
@@ -104,7 +109,7 @@ public class RedisStoreConfiguration {
     }
 
     @Bean
-    public RedisPortAllocator portAllocator(RedisTemplate<String, RedisPortAllocator.PortList> portRedisTemplate,
+    public RedisPortAllocator portAllocator(StringRedisTemplate portRedisTemplate,
                                             IdentifierService identifierService) {
         return new RedisPortAllocator(portRedisTemplate, identifierService);
     }
@@ -177,7 +182,8 @@ public class RedisStoreConfiguration {
         return new RedisEventBridge(
             eventRedisTemplate,
             topic(),
-            applicationEventPublisher);
+            applicationEventPublisher,
+            environment.getProperty("proxy.redis-event-bridge.batch-window", Long.class, 5L));
     }
 
     @Bean
@@ -189,8 +195,8 @@ public class RedisStoreConfiguration {
     }
 
     @Bean
-    public RedisTemplate<String, RedisPortAllocator.PortList> portRedisTemplate(RedisConnectionFactory connectionFactory) {
-        return createRedisTemplate(connectionFactory, RedisPortAllocator.PortList.class);
+    public StringRedisTemplate portRedisTemplate(RedisConnectionFactory connectionFactory) {
+        return new StringRedisTemplate(connectionFactory);
     }
 
     @Bean
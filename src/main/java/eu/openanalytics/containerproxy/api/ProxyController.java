@@ -24,19 +24,28 @@ import com.fasterxml.jackson.annotation.JsonView;
  import eu.openanalytics.containerproxy.api.ApiSecurityService;
  import eu.openanalytics.containerproxy.api.dto.ApiResponse;
 import eu.openanalytics.containerproxy.api.dto.SwaggerDto;
+import eu.openanalytics.containerproxy.log.LogChunk;
+import eu.openanalytics.containerproxy.log.LogType;
 import eu.openanalytics.containerproxy.model.Views;
 import eu.openanalytics.containerproxy.model.runtime.Proxy;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.PublicPathKey;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.service.InvalidParametersException;
+import eu.openanalytics.containerproxy.service.LogService;
 import eu.openanalytics.containerproxy.service.ProxyService;
+import eu.openanalytics.containerproxy.service.ProxySpecReloadService;
+import eu.openanalytics.containerproxy.service.UserService;
 import eu.openanalytics.containerproxy.util.ContextPathHelper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.BindException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJacksonValue;
@@ -44,9 +53,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +67,8 @@ import java.util.UUID;
 @RestController
 public class ProxyController extends BaseController {
 
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     @Inject
     private ProxyService proxyService;
 
@@ -65,6 +78,15 @@ public class ProxyController extends BaseController {
     @Inject
     private ContextPathHelper contextPathHelper;
 
+    @Inject
+    private LogService logService;
+
+    @Inject
+    private UserService userService;
+
+    @Inject
+    private ProxySpecReloadService proxySpecReloadService;
+
     @Operation(summary = "Get configured proxy specs. A configuration property controls whether the full spec or a limited subset is returned.", tags = "ContainerProxy")
     @ApiResponses(value = {
         @io.swagger.v3.oas.annotations.responses.ApiResponse(
@@ -139,6 +161,57 @@ public class ProxyController extends BaseController {
         return ApiResponse.success(apiSecurityService.protectSpecs(spec));
     }
 
+    @Operation(summary = "Reload the proxy specs from the configuration file, the other replicas reload the same specs. Running proxies are not affected. Can only be used by admins.", tags = "ContainerProxy")
+    @ApiResponses(value = {
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "200",
+            description = "Proxy specs are reloaded, the ids of the specs are returned.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {
+                        @ExampleObject(value = "{\"status\": \"success\", \"data\": [\"01_hello\", \"06_tabsets\"]}")
+                    }
+                )
+            }),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "400",
+            description = "The new proxy specs are invalid, the current specs remain in use.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {
+                        @ExampleObject(value = "{\"status\": \"fail\", \"data\": \"Configuration error: duplicate spec with id '01_hello'\"}")
+                    }
+                )
+            }),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "403",
+            description = "Forbidden.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {@ExampleObject(value = "{\"status\": \"fail\", \"data\": \"forbidden\"}")}
+                )
+            }),
+    })
+    @RequestMapping(value = "/api/proxyspec/reload", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ApiResponse<List<String>>> reloadProxySpecs() {
+        if (!userService.isAdmin()) {
+            return ApiResponse.failForbidden();
+        }
+        try {
+            List<ProxySpec> specs = proxySpecReloadService.reload();
+            return ApiResponse.success(specs.stream().map(ProxySpec::getId).toList());
+        } catch (IllegalStateException | BindException ex) {
+            logger.warn("Failed to reload proxy specs", ex);
+            return ApiResponse.fail(ex.getMessage());
+        } catch (IOException ex) {
+            logger.error("Failed to reload proxy specs", ex);
+            return ApiResponse.error("Failed to reload proxy specs");
+        }
+    }
+
     @Operation(summary = "Get active proxies of logged in user.", tags = "ContainerProxy")
     @ApiResponses(value = {
         @io.swagger.v3.oas.annotations.responses.ApiResponse(
@@ -269,6 +342,81 @@ public class ProxyController extends BaseController {
         }
     }
 
+    @Operation(summary = "Get the output (stdout or stderr) of an active proxy. Either the last lines or the output starting from an offset is returned. " +
+        "New output can be polled by passing the nextOffset of the previous response as offset.", tags = "ContainerProxy")
+    @ApiResponses(value = {
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "200",
+            description = "The output is returned.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = SwaggerDto.LogChunkResponse.class),
+                    examples = {
+                        @ExampleObject(value = "{\"status\": \"success\", \"data\": {\"offset\": 1024, \"nextOffset\": 1060, \"size\": 1060, \"content\": \"Listening on http://0.0.0.0:3838\\n\"}}")
+                    }
+                )
+            }),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "403",
+            description = "Proxy not found or no permission to access this proxy.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {@ExampleObject(value = "{\"status\": \"fail\", \"data\": \"forbidden\"}")}
+                )
+            }),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "404",
+            description = "The output of the proxy is not available on this server.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {@ExampleObject(value = "{\"status\": \"error\", \"data\": \"not found\"}")}
+                )
+            }),
+    })
+    @RequestMapping(value = "/api/proxy/{proxyId}/logs/{type}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ApiResponse<LogChunk>> getProxyLogs(@PathVariable String proxyId,
+                                                              @Parameter(description = "Either stdout or stderr.")
+                                                              @PathVariable String type,
+                                                              @Parameter(description = "Offset to start reading from, when not provided, the last lines are returned.")
+                                                              @RequestParam(value = "offset", required = false) Long offset,
+                                                              @Parameter(description = "Number of lines to return, when no offset is provided.")
+                                                              @RequestParam(value = "tail", required = false, defaultValue = "100") Integer tail,
+                                                              @Parameter(description = "Maximum number of bytes to return, must be between 1 and 1048576 (inclusive).")
+                                                              @RequestParam(value = "limit", required = false, defaultValue = "65536") Integer limit) throws IOException {
+        Proxy proxy = proxyService.getProxy(proxyId);
+        if (proxy == null || !(userService.isOwner(proxy) || userService.isAdmin())) {
+            return ApiResponse.failForbidden();
+        }
+        LogType logType;
+        if (type.equals("stdout")) {
+            logType = LogType.Stdout;
+        } else if (type.equals("stderr")) {
+            logType = LogType.Stderr;
+        } else {
+            return ApiResponse.fail("Type must be stdout or stderr");
+        }
+        if (limit < 1 || limit > 1024 * 1024) {
+            return ApiResponse.fail("Limit must be between 1 and 1048576");
+        }
+        if ((offset != null && offset < 0) || tail < 0) {
+            return ApiResponse.fail("Offset and tail must be positive");
+        }
+
+        LogChunk chunk;
+        if (offset != null) {
+            chunk = logService.readLog(proxy, logType, offset, limit);
+        } else {
+            chunk = logService.tailLog(proxy, logType, tail, limit);
+        }
+        if (chunk == null) {
+            return ApiResponse.failNotFound();
+        }
+        return ApiResponse.success(chunk);
+    }
+
     private String getPublicPath(String proxyId) {
         return contextPathHelper.withEndingSlash() + "api/route/" + proxyId + "/";
     }
@@ -23,6 +23,7 @@ package eu.openanalytics.containerproxy.api;
 import com.fasterxml.jackson.annotation.JsonView;
 import eu.openanalytics.containerproxy.api.dto.ApiResponse;
 import eu.openanalytics.containerproxy.api.dto.ChangeProxyStatusDto;
+import eu.openanalytics.containerproxy.api.dto.StartQueueStatusDto;
 import eu.openanalytics.containerproxy.api.dto.SwaggerDto;
 import eu.openanalytics.containerproxy.event.ProxyPauseEvent;
 import eu.openanalytics.containerproxy.event.ProxyResumeEvent;
@@ -35,6 +36,7 @@ import eu.openanalytics.containerproxy.model.runtime.ProxyStatus;
 import eu.openanalytics.containerproxy.service.AsyncProxyService;
 import eu.openanalytics.containerproxy.service.InvalidParametersException;
 import eu.openanalytics.containerproxy.service.ProxyService;
+import eu.openanalytics.containerproxy.service.StartAdmissionService;
 import eu.openanalytics.containerproxy.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -69,6 +71,8 @@ public class ProxyStatusController {
     private AsyncProxyService asyncProxyService;
     @Inject
     private UserService userService;
+    @Inject
+    private StartAdmissionService startAdmissionService;
 
     @Operation(
         summary = "Change the status of a proxy.", tags = "ContainerProxy",
@@ -250,6 +254,41 @@ public class ProxyStatusController {
         return output;
     }
 
+    @Operation(summary = "Get the position of a proxy in the start queue.", tags = "ContainerProxy",
+        description = "The start queue is local to a replica, the position is null when the proxy is being started by another replica.")
+    @ApiResponses(value = {
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "200",
+            description = "Position of the proxy returned.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {
+                        @ExampleObject(name = "Queued proxy", value = "{\"status\": \"success\", \"data\": {\"position\": 3, \"queueDepth\": 12}}"),
+                        @ExampleObject(name = "Proxy not queued", value = "{\"status\": \"success\", \"data\": {\"position\": null, \"queueDepth\": 12}}")
+                    }
+                )
+            }),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "403",
+            description = "Proxy not found or no permission.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {@ExampleObject(value = "{\"status\": \"fail\", \"data\": \"forbidden\"}")}
+                )
+            })
+    })
+    @ResponseBody
+    @RequestMapping(value = "/api/proxy/{proxyId}/start-queue", method = RequestMethod.GET)
+    public ResponseEntity<ApiResponse<StartQueueStatusDto>> getStartQueueStatus(@PathVariable String proxyId) {
+        Proxy proxy = proxyService.getUserProxy(proxyId);
+        if (proxy == null) {
+            return ApiResponse.failForbidden();
+        }
+        return ApiResponse.success(new StartQueueStatusDto(startAdmissionService.getQueuePosition(proxyId), startAdmissionService.getQueueDepth()));
+    }
+
     @EventListener
     public void onProxyStartEvent(ProxyStartEvent event) {
         completeWatchers(event.getProxyId());
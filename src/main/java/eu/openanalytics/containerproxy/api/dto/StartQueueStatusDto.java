@@ -0,0 +1,46 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.api.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public class StartQueueStatusDto {
+
+    private final Integer position;
+
+    private final int queueDepth;
+
+    public StartQueueStatusDto(Integer position, int queueDepth) {
+        this.position = position;
+        this.queueDepth = queueDepth;
+    }
+
+    @Schema(description = "The (1-based) position of the proxy in the start queue of the replica that handles the request, null if the proxy is not waiting to start on this replica.", example = "3")
+    public Integer getPosition() {
+        return position;
+    }
+
+    @Schema(description = "The total number of proxies waiting to start on the replica that handles the request.", example = "12")
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+}
@@ -21,6 +21,7 @@
 package eu.openanalytics.containerproxy.api.dto;
 
 import com.fasterxml.jackson.annotation.JsonView;
+import eu.openanalytics.containerproxy.log.LogChunk;
 import eu.openanalytics.containerproxy.model.Views;
 import eu.openanalytics.containerproxy.model.runtime.Proxy;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
@@ -51,4 +52,9 @@ public class SwaggerDto {
         public ProxySpec data;
     }
 
+    public static class LogChunkResponse {
+        public String status = "success";
+        public LogChunk data;
+    }
+
 }
@@ -36,6 +36,8 @@ import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.service.AppRecoveryService;
 import eu.openanalytics.containerproxy.service.IdentifierService;
 import eu.openanalytics.containerproxy.service.StructuredLogger;
+import eu.openanalytics.containerproxy.util.ExecutorServiceFactory;
+import eu.openanalytics.containerproxy.util.Retrying;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
@@ -54,6 +56,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -87,6 +91,7 @@ public abstract class AbstractContainerBackend implements IContainerBackend {
     private boolean useInternalNetwork;
     private boolean privileged;
     private String defaultTargetProtocol;
+    private Retrying.Backoff backoff;
 
     /**
      * Computes the correct targetPath to use, to make the configuration of the targetPath easier.
@@ -119,6 +124,11 @@ public abstract class AbstractContainerBackend implements IContainerBackend {
         useInternalNetwork = getProperty(PROPERTY_INTERNAL_NETWORKING, false);
         privileged = getProperty(PROPERTY_PRIVILEGED, false);
         defaultTargetProtocol = getProperty(PROPERTY_CONTAINER_PROTOCOL, DEFAULT_TARGET_PROTOCOL);
+        backoff = new Retrying.Backoff(
+            environment.getProperty("proxy.retry.initial-delay", Long.class, Retrying.Backoff.DEFAULT.initialDelay()),
+            environment.getProperty("proxy.retry.max-interval", Long.class, Retrying.Backoff.DEFAULT.maxInterval()),
+            environment.getProperty("proxy.retry.multiplier", Double.class, Retrying.Backoff.DEFAULT.multiplier()),
+            environment.getProperty("proxy.retry.jitter", Double.class, Retrying.Backoff.DEFAULT.jitter()));
     }
 
     @Override
@@ -244,6 +254,30 @@ public abstract class AbstractContainerBackend implements IContainerBackend {
         return defaultTargetProtocol;
     }
 
+    /**
+     * Retries the job using {@link Retrying#retryAsync} and the backoff configured by the {@code proxy.retry} properties.
+     */
+    protected CompletableFuture<Boolean> retryAsync(Retrying.Attempt job, int maxDelay, String logMessage, int logAfterAttempts, Proxy proxy) {
+        return Retrying.retryAsync(job, maxDelay, backoff, logMessage, logAfterAttempts, proxy, slog);
+    }
+
+    /**
+     * Waits for the result of {@link #retryAsync}. The backend API is blocking, therefore the thread starting the proxy
+     * has to wait for the result, by default this is a virtual thread (see {@link ExecutorServiceFactory}).
+     */
+    protected boolean await(CompletableFuture<Boolean> retry) {
+        try {
+            return retry.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        } finally {
+            retry.cancel(false);
+        }
+    }
+
     abstract protected URI calculateTarget(Container container, PortMappings.PortMappingEntry portMapping, Integer hostPort) throws Exception;
 
     public Map<String, URI> setupPortMappingExistingProxy(Proxy proxy, Container container, Map<Integer, Integer> portBindings) throws Exception {
@@ -29,6 +29,7 @@ import eu.openanalytics.containerproxy.model.runtime.ProxyStopReason;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.TargetIdKey;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
+import eu.openanalytics.containerproxy.service.StartAdmissionService;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
@@ -38,9 +39,11 @@ import java.util.Collection;
 public class DefaultProxyDispatcher implements IProxyDispatcher {
 
     private final IContainerBackend containerBackend;
+    private final StartAdmissionService startAdmissionService;
 
-    public DefaultProxyDispatcher(IContainerBackend containerBackend) {
+    public DefaultProxyDispatcher(IContainerBackend containerBackend, StartAdmissionService startAdmissionService) {
         this.containerBackend = containerBackend;
+        this.startAdmissionService = startAdmissionService;
     }
 
     @Override
@@ -48,11 +51,20 @@ public class DefaultProxyDispatcher implements IProxyDispatcher {
         Proxy.ProxyBuilder resultProxy = proxy.toBuilder();
         resultProxy.addRuntimeValue(new RuntimeValue(TargetIdKey.inst, proxy.getId()), true);
         resultProxy.targetId(proxy.getId());
-        return containerBackend.startProxy(user, resultProxy.build(), spec, proxyStartupLogBuilder);
+        if (!acquire(proxy)) {
+            // stopped while waiting in the queue, the proxy is cleaned up by the ProxyService
+            return proxy;
+        }
+        try {
+            return containerBackend.startProxy(user, resultProxy.build(), spec, proxyStartupLogBuilder);
+        } finally {
+            startAdmissionService.release(proxy.getId());
+        }
     }
 
     @Override
     public void stopProxy(Proxy proxy, ProxyStopReason proxyStopReason) throws ContainerProxyException {
+        startAdmissionService.cancel(proxy.getId());
         containerBackend.stopProxy(proxy);
     }
 
@@ -68,7 +80,14 @@ public class DefaultProxyDispatcher implements IProxyDispatcher {
 
     @Override
     public Proxy resumeProxy(Authentication user, Proxy proxy, ProxySpec proxySpec) throws ProxyFailedToStartException {
-        return containerBackend.resumeProxy(user, proxy, proxySpec);
+        if (!acquire(proxy)) {
+            return proxy;
+        }
+        try {
+            return containerBackend.resumeProxy(user, proxy, proxySpec);
+        } finally {
+            startAdmissionService.release(proxy.getId());
+        }
     }
 
     @Override
@@ -96,4 +115,13 @@ public class DefaultProxyDispatcher implements IProxyDispatcher {
         return true;
     }
 
+    private boolean acquire(Proxy proxy) {
+        try {
+            return startAdmissionService.acquire(proxy);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProxyFailedToStartException("Interrupted while waiting to start proxy", e, proxy);
+        }
+    }
+
 }
@@ -27,6 +27,8 @@ import eu.openanalytics.containerproxy.backend.dispatcher.proxysharing.store.IPr
 import eu.openanalytics.containerproxy.backend.dispatcher.proxysharing.store.ISeatStore;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.spec.IProxySpecProvider;
+import eu.openanalytics.containerproxy.spec.IProxySpecValidator;
+import eu.openanalytics.containerproxy.util.Sha1;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.stereotype.Service;
 
@@ -36,9 +38,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
-public class ProxyDispatcherService {
+public class ProxyDispatcherService implements IProxySpecValidator {
 
     private final Map<String, IProxyDispatcher> dispatchers = new HashMap<>();
     private final IProxySpecProvider proxySpecProvider;
@@ -46,6 +50,8 @@ public class ProxyDispatcherService {
     private final ConfigurableListableBeanFactory beanFactory;
     private final DefaultProxyDispatcher defaultProxyDispatcher;
     private final List<AutoCloseable> closeables = new ArrayList<>();
+    // the hash of every spec using proxy sharing, as used by its dispatcher and scaler
+    private final Map<String, String> proxySharingSpecHashes = new HashMap<>();
 
     public ProxyDispatcherService(IProxySpecProvider proxySpecProvider,
                                   IProxySharingStoreFactory storeFactory,
@@ -72,6 +78,7 @@ public class ProxyDispatcherService {
                 createBean(proxySharingDispatcher, "proxySharingDispatcher_" + proxySpec.getId());
 
                 dispatchers.put(proxySpec.getId(), proxySharingDispatcher);
+                proxySharingSpecHashes.put(proxySpec.getId(), Sha1.hash(proxySpec));
             } else {
                 dispatchers.put(proxySpec.getId(), defaultProxyDispatcher);
             }
@@ -83,7 +90,30 @@ public class ProxyDispatcherService {
     }
 
     public IProxyDispatcher getDispatcher(String specId) {
-        return dispatchers.get(specId);
+        // specs added by a reload never use proxy sharing, see validateSpecs
+        return dispatchers.getOrDefault(specId, defaultProxyDispatcher);
+    }
+
+    /**
+     * The dispatchers (and scalers) of specs using proxy sharing are only created at startup and keep using the spec
+     * they were created with, therefore a reload may not add, remove or change such specs (nor enable or disable proxy
+     * sharing for a spec).
+     */
+    @Override
+    public void validateSpecs(List<ProxySpec> specs) {
+        Set<String> updated = specs.stream()
+            .filter(ProxySharingDispatcher::supportSpec)
+            .map(ProxySpec::getId)
+            .collect(Collectors.toSet());
+        if (!proxySharingSpecHashes.keySet().equals(updated)) {
+            throw new IllegalStateException("Configuration error: specs using proxy sharing cannot be added or removed without a restart");
+        }
+        for (ProxySpec spec : specs) {
+            String hash = proxySharingSpecHashes.get(spec.getId());
+            if (hash != null && !hash.equals(Sha1.hash(spec))) {
+                throw new IllegalStateException(String.format("Configuration error: spec '%s' uses proxy sharing and cannot be changed without a restart", spec.getId()));
+            }
+        }
     }
 
     private <T> void createBean(T bean, String beanName) {
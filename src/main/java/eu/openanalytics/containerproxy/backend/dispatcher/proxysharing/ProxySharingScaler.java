@@ -92,7 +92,7 @@ import static net.logstash.logback.argument.StructuredArguments.kv;
 public class ProxySharingScaler implements AutoCloseable {
 
     protected static String publicPathPrefix = "/api/route/";
-    protected final ExecutorService executor = ExecutorServiceFactory.create("ProxySharingScaler");
+    protected ExecutorService executor;
     protected final IDelegateProxyStore delegateProxyStore;
     protected final ISeatStore seatStore;
     protected final ProxySharingSpecExtension specExtension;
@@ -144,6 +144,7 @@ public class ProxySharingScaler implements AutoCloseable {
     @PostConstruct
     public void init() {
         stopAppsOnShutdown = environment.getProperty(PROPERTY_STOP_PROXIES_ON_SHUTDOWN, Boolean.class, true);
+        executor = ExecutorServiceFactory.create("ProxySharingScaler", environment);
     }
 
     public static void setPublicPathPrefix(String publicPathPrefix) {
@@ -152,12 +153,12 @@ public class ProxySharingScaler implements AutoCloseable {
 
     @Scheduled(fixedDelay = 20, timeUnit = TimeUnit.SECONDS)
     public void scheduleCleanup() {
-        globalEventLoop.schedule(this::cleanup);
+        globalEventLoop.scheduleCoalesced(proxySpec.getId(), "cleanup", this::cleanup);
     }
 
     @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.SECONDS)
     public void scheduleReconcile() {
-        globalEventLoop.schedule(this::reconcile);
+        globalEventLoop.scheduleCoalesced(proxySpec.getId(), "reconcile", this::reconcile);
     }
 
     @EventListener
@@ -167,7 +168,7 @@ public class ProxySharingScaler implements AutoCloseable {
             return;
         }
         pendingDelegatingProxies.add(pendingProxyEvent.getProxyId());
-        globalEventLoop.schedule(this::reconcile);
+        scheduleReconcile();
     }
 
     @EventListener
@@ -176,7 +177,7 @@ public class ProxySharingScaler implements AutoCloseable {
             // only handle events for this spec
             return;
         }
-        globalEventLoop.schedule(this::reconcile);
+        scheduleReconcile();
         // if the seat was claimed by a pending proxy we need to remove it from the pendingDelegatingProxies
         pendingDelegatingProxies.remove(seatClaimedEvent.getClaimingProxyId());
     }
@@ -187,7 +188,7 @@ public class ProxySharingScaler implements AutoCloseable {
             // only handle events for this spec
             return;
         }
-        globalEventLoop.schedule(() -> processReleasedSeat(seatReleasedEvent));
+        globalEventLoop.schedule(proxySpec.getId(), () -> processReleasedSeat(seatReleasedEvent));
     }
 
     @EventListener
@@ -224,11 +225,11 @@ public class ProxySharingScaler implements AutoCloseable {
         if (event.getId() != null) {
             // remove single proxy
             logger.info("[{} {}] Received external request to remove DelegateProxy", kv("specId", proxySpec.getId()), kv("delegateProxyId", event.getId()));
-            globalEventLoop.schedule(() -> markDelegateProxyForRemoval(event.getId()));
+            globalEventLoop.schedule(proxySpec.getId(), () -> markDelegateProxyForRemoval(event.getId()));
         } else {
             // remove all proxies
             logger.info("[{}] Received external request to remove all DelegateProxies", kv("specId", proxySpec.getId()));
-            globalEventLoop.schedule(this::markAllDelegateProxiesForRemoval);
+            globalEventLoop.schedule(proxySpec.getId(), this::markAllDelegateProxiesForRemoval);
         }
     }
 
@@ -268,13 +269,13 @@ public class ProxySharingScaler implements AutoCloseable {
             log(delegateProxy, "DelegateProxy crashed, marking for removal");
             removeSeat(delegateProxy, seatId);
             markDelegateProxyForRemoval(delegateProxy.getProxy().getId());
-            globalEventLoop.schedule(this::reconcile);
+            scheduleReconcile();
         } else if (!specExtension.allowContainerReUse) {
             // container cannot be re-used -> mark delegateProxy as ToRemove
             log(delegateProxy, "DelegateProxy cannot be re-used, marking for removal");
             removeSeat(delegateProxy, seatId);
             markDelegateProxyForRemoval(delegateProxy.getProxy().getId());
-            globalEventLoop.schedule(this::reconcile);
+            scheduleReconcile();
         } else if (delegateProxy.getDelegateProxyStatus().equals(DelegateProxyStatus.Available)) {
             seatStore.addToUnclaimedSeats(seatId);
         } else if (delegateProxy.getDelegateProxyStatus().equals(DelegateProxyStatus.ToRemove)) {
@@ -433,7 +434,7 @@ public class ProxySharingScaler implements AutoCloseable {
                         logWarn(delegateProxy, "Error while stopping failed DelegateProxy");
                     }
                     delegateProxyStore.removeDelegateProxy(id);
-                    globalEventLoop.schedule(this::reconcile);
+                    scheduleReconcile();
                     return;
                 }
 
@@ -474,7 +475,7 @@ public class ProxySharingScaler implements AutoCloseable {
                 }
             } catch (SpelException ex) {
                 // remove seats and other data
-                globalEventLoop.schedule(() -> markDelegateProxyForRemoval(id));
+                globalEventLoop.schedule(proxySpec.getId(), () -> markDelegateProxyForRemoval(id));
                 logger.error("Failed to start DelegateProxy, problem while resolving SpEL expressions. You can only use the objects 'containerSpec', 'proxySpec' and 'proxy' when using pre-initialized containers. Cause: " + ex.getMessage());
             } catch (ProxyFailedToStartException t) {
                 logError(originalDelegateProxy, t, "Failed to start DelegateProxy");
@@ -487,8 +488,8 @@ public class ProxySharingScaler implements AutoCloseable {
                     logError(originalDelegateProxy, t2, "Error while stopping failed DelegateProxy");
                 }
                 // remove seats and other data + trigger reconcile
-                globalEventLoop.schedule(() -> markDelegateProxyForRemoval(id));
-                globalEventLoop.schedule(this::reconcile);
+                globalEventLoop.schedule(proxySpec.getId(), () -> markDelegateProxyForRemoval(id));
+                scheduleReconcile();
             } catch (Throwable t) {
                 logError(originalDelegateProxy, t, "Failed to start DelegateProxy");
                 if (proxy != null) {
@@ -502,8 +503,8 @@ public class ProxySharingScaler implements AutoCloseable {
                     }
                 }
                 // remove seats and other data + trigger reconcile
-                globalEventLoop.schedule(() -> markDelegateProxyForRemoval(id));
-                globalEventLoop.schedule(this::reconcile);
+                globalEventLoop.schedule(proxySpec.getId(), () -> markDelegateProxyForRemoval(id));
+                scheduleReconcile();
             }
         };
     }
@@ -583,7 +584,7 @@ public class ProxySharingScaler implements AutoCloseable {
     @Async
     @EventListener
     public void onLeaderGranted(OnGrantedEvent event) {
-        globalEventLoop.schedule(this::processOnLeaderGranted);
+        globalEventLoop.schedule(proxySpec.getId(), this::processOnLeaderGranted);
     }
 
     @Async
@@ -615,7 +616,7 @@ public class ProxySharingScaler implements AutoCloseable {
             }
         }
         // note: onLeaderRevoked the streams are detached by the LogService
-        globalEventLoop.schedule(this::reconcile);
+        scheduleReconcile();
     }
 
     public ProxySpec getSpec() {
@@ -39,7 +39,6 @@ import eu.openanalytics.containerproxy.model.spec.ContainerSpec;
 import eu.openanalytics.containerproxy.model.spec.DockerSwarmSecret;
 import eu.openanalytics.containerproxy.model.spec.PortMapping;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
-import eu.openanalytics.containerproxy.util.Retrying;
 import org.mandas.docker.client.DockerClient;
 import org.mandas.docker.client.LogStream;
 import org.mandas.docker.client.exceptions.DockerException;
@@ -65,6 +64,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
@@ -74,6 +74,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -83,6 +84,10 @@ public class DockerSwarmBackend extends AbstractDockerBackend {
 
     private int serviceWaitTime;
 
+    private int servicePollInterval;
+
+    private DockerSwarmMetadataCache metadataCache;
+
     private static final List<String> STARTING_STATES = List.of("new", "pending", "assigned", "accepted", "ready", "preparing", "starting", "running");
 
     @PostConstruct
@@ -95,6 +100,18 @@ public class DockerSwarmBackend extends AbstractDockerBackend {
         }
         if (swarmId == null) throw new ContainerProxyException("Backend is not a Docker Swarm");
         serviceWaitTime = environment.getProperty("proxy.docker.service-wait-time", Integer.class, 60000);
+        servicePollInterval = environment.getProperty("proxy.docker.service-poll-interval", Integer.class, 2000);
+        metadataCache = new DockerSwarmMetadataCache(dockerClient,
+            environment.getProperty("proxy.docker.swarm-metadata-cache-ttl", Long.class, 60_000L),
+            environment.getProperty("proxy.docker.swarm-metadata-cache-miss-ttl", Long.class, 5_000L),
+            environment.getProperty("proxy.docker.swarm-events-enabled", Boolean.class, true));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (metadataCache != null) {
+            metadataCache.close();
+        }
     }
 
     @Override
@@ -138,13 +155,13 @@ public class DockerSwarmBackend extends AbstractDockerBackend {
             List<NetworkAttachmentConfig> networks = new ArrayList<>(spec.getNetworkConnections()
                 .getValueOrDefault(new ArrayList<>())
                 .stream()
-                .map(n -> NetworkAttachmentConfig.builder().target(n).build())
+                .map(n -> NetworkAttachmentConfig.builder().target(resolveNetwork(n)).build())
                 .toList());
 
             if (spec.getNetwork().isPresent()) {
-                networks.add(NetworkAttachmentConfig.builder().target(spec.getNetwork().getValue()).build());
+                networks.add(NetworkAttachmentConfig.builder().target(resolveNetwork(spec.getNetwork().getValue())).build());
             } else if (containerNetwork != null) {
-                networks.add(NetworkAttachmentConfig.builder().target(containerNetwork).build());
+                networks.add(NetworkAttachmentConfig.builder().target(resolveNetwork(containerNetwork)).build());
             }
 
             Reservations.Builder reservationsBuilder = Reservations.builder();
@@ -214,19 +231,11 @@ public class DockerSwarmBackend extends AbstractDockerBackend {
             applicationEventPublisher.publishEvent(new NewProxyEvent(proxy.toBuilder().updateContainer(rContainerBuilder.build()).build(), user));
 
             // Give the service some time to start up and launch a container.
-            boolean containerFound = Retrying.retry((currentAttempt, maxAttempts) -> {
-                Task serviceTask = dockerClient
-                    .listTasks(Task.Criteria.builder().serviceName(serviceName).build())
-                    .stream().findAny().orElseThrow(() -> new IllegalStateException("Swarm service has no tasks"));
-                if (serviceTask.status().containerStatus() != null && serviceTask.status().state().equals("running")) {
-                    rContainerBuilder.id(serviceTask.status().containerStatus().containerId());
-                    return Retrying.SUCCESS;
-                } else if (!STARTING_STATES.contains(serviceTask.status().state())) {
-                    slog.warn(proxy, "Docker Swarm container failed: container not running, state reported by docker: " + toJson(serviceTask.status()));
-                    return new Retrying.Result(false, false);
-                }
-                return Retrying.FAILURE;
-            }, serviceWaitTime, "Docker Swarm Service", 10, proxy, slog);
+            String containerId = waitForServiceTask(proxy, serviceName);
+            boolean containerFound = containerId != null;
+            if (containerFound) {
+                rContainerBuilder.id(containerId);
+            }
 
             if (!containerFound) {
                 dockerClient.removeService(serviceId);
@@ -266,7 +275,64 @@ public class DockerSwarmBackend extends AbstractDockerBackend {
         return new URI(String.format("%s://%s:%s%s", targetProtocol, targetHostName, targetPort, portMapping.getTargetPath()));
     }
 
-    private SecretBind convertSecret(DockerSwarmSecret secret) throws DockerException, InterruptedException {
+    /**
+     * Waits until the task of the service is running. Instead of polling the Swarm manager at a high frequency, the
+     * state of the task is only re-checked when an event is received for the service (or its container), or when the
+     * poll interval expires.
+     *
+     * @return the id of the container or null if the service did not start in time or failed to start
+     */
+    private String waitForServiceTask(Proxy proxy, String serviceName) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + serviceWaitTime;
+        int attempt = 0;
+        Exception exception = null;
+        try {
+            while (true) {
+                CompletableFuture<Void> change = metadataCache.watchService(serviceName);
+                try {
+                    Optional<Task> serviceTask = dockerClient
+                        .listTasks(Task.Criteria.builder().serviceName(serviceName).build())
+                        .stream().findAny();
+                    if (serviceTask.isPresent()) {
+                        Task task = serviceTask.get();
+                        if (task.status().containerStatus() != null && task.status().state().equals("running")) {
+                            if (attempt > 10) {
+                                slog.info(proxy, "Ready: Docker Swarm Service");
+                            }
+                            return task.status().containerStatus().containerId();
+                        } else if (!STARTING_STATES.contains(task.status().state())) {
+                            slog.warn(proxy, "Docker Swarm container failed: container not running, state reported by docker: " + toJson(task.status()));
+                            return null;
+                        }
+                    }
+                } catch (DockerException e) {
+                    exception = e;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    if (exception != null) {
+                        slog.warn(proxy, exception, "Failed: Docker Swarm Service");
+                    }
+                    return null;
+                }
+                if (attempt > 10) {
+                    slog.info(proxy, String.format("Waiting: Docker Swarm Service (%ds remaining)", remaining / 1000));
+                }
+                attempt++;
+                metadataCache.awaitServiceChange(change, Math.min(remaining, servicePollInterval));
+            }
+        } finally {
+            metadataCache.unwatchService(serviceName);
+        }
+    }
+
+    private String resolveNetwork(String network) {
+        // use the id of the network when it's known, otherwise let Docker resolve (or reject) the name
+        String networkId = metadataCache.getNetworkId(network);
+        return networkId != null ? networkId : network;
+    }
+
+    private SecretBind convertSecret(DockerSwarmSecret secret) {
         if (secret.getName() == null) {
             throw new IllegalArgumentException("No name for a Docker swarm secret provided");
         }
@@ -285,11 +351,12 @@ public class DockerSwarmBackend extends AbstractDockerBackend {
 
     }
 
-    private String getSecretId(String secretName) throws DockerException, InterruptedException {
-        return dockerClient.listSecrets().stream()
-            .filter(it -> it.secretSpec().name().equals(secretName))
-            .findFirst()
-            .map(org.mandas.docker.client.messages.swarm.Secret::id).orElseThrow(() -> new IllegalArgumentException("Secret not found!"));
+    private String getSecretId(String secretName) {
+        String secretId = metadataCache.getSecretId(secretName);
+        if (secretId == null) {
+            throw new IllegalArgumentException("Secret not found!");
+        }
+        return secretId;
     }
 
     @Override
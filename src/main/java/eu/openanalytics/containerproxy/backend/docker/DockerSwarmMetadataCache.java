@@ -0,0 +1,296 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.backend.docker;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.mandas.docker.client.DockerClient;
+import org.mandas.docker.client.EventStream;
+import org.mandas.docker.client.messages.Event;
+import org.mandas.docker.client.messages.Network;
+import org.mandas.docker.client.messages.swarm.Secret;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Caches metadata of the Docker Swarm (secrets and networks) that is needed when creating services.
+ * The cache is kept up-to-date using the events stream of the Swarm manager, in addition every entry expires after
+ * a configurable TTL. The TTL protects against missed events (e.g. while the events stream is reconnecting).
+ * A name that is not found causes a reload (the object may have been created after the last refresh), the miss is
+ * cached for a short time, such that repeated lookups of an unknown name do not reload all objects every time.
+ * Networks are looked up by name or id, a name that is used by multiple networks is rejected.
+ * <p>
+ * The same events stream is used to wake up threads waiting for a service (i.e. its task) to become ready, such that
+ * these threads don't have to poll the manager at a high frequency.
+ */
+public class DockerSwarmMetadataCache {
+
+    private static final String SERVICE_NAME_LABEL = "com.docker.swarm.service.name";
+    private static final int RECONNECT_DELAY = 5_000;
+    private static final long DEFAULT_MISS_TTL = 5_000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final DockerClient dockerClient;
+    private final Cache<Event.Type, Names> namesToIds;
+    private final Cache<String, Boolean> misses;
+    private final Map<String, CompletableFuture<Void>> serviceChanges = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+    private volatile EventStream eventStream;
+
+    public DockerSwarmMetadataCache(DockerClient dockerClient, long ttl, boolean listenForEvents) {
+        this(dockerClient, ttl, DEFAULT_MISS_TTL, listenForEvents);
+    }
+
+    /**
+     * @param ttl     the time (in milliseconds) after which the objects are reloaded
+     * @param missTtl the time (in milliseconds) a name that was not found is remembered
+     */
+    public DockerSwarmMetadataCache(DockerClient dockerClient, long ttl, long missTtl, boolean listenForEvents) {
+        this.dockerClient = dockerClient;
+        namesToIds = Caffeine.newBuilder()
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .build();
+        misses = Caffeine.newBuilder()
+            .expireAfterWrite(missTtl, TimeUnit.MILLISECONDS)
+            .maximumSize(1000)
+            .build();
+        if (listenForEvents) {
+            Thread eventProcessor = new Thread(this::processEvents, "DockerSwarmEvents");
+            eventProcessor.setDaemon(true);
+            eventProcessor.start();
+        }
+    }
+
+    /**
+     * @param secretName the name of the secret
+     * @return the id of the secret or null if no secret with this name exists
+     */
+    public String getSecretId(String secretName) {
+        return getId(Event.Type.SECRET, secretName);
+    }
+
+    /**
+     * @param networkName the name (or id) of the network
+     * @return the id of the network or null if no network with this name exists
+     * @throws IllegalArgumentException if multiple networks have the given name
+     */
+    public String getNetworkId(String networkName) {
+        return getId(Event.Type.NETWORK, networkName);
+    }
+
+    private String getId(Event.Type type, String name) {
+        String id = namesToIds.get(type, this::load).getId(type, name);
+        if (id == null) {
+            String missKey = type + "/" + name;
+            if (misses.getIfPresent(missKey) != null) {
+                return null;
+            }
+            // object may have been created after the last refresh and the event may not have been processed yet
+            namesToIds.invalidate(type);
+            id = namesToIds.get(type, this::load).getId(type, name);
+            if (id == null) {
+                misses.put(missKey, true);
+            }
+        }
+        return id;
+    }
+
+    private Names load(Event.Type type) {
+        Map<String, String> ids = new HashMap<>();
+        Map<String, List<String>> ambiguous = new HashMap<>();
+        try {
+            if (type == Event.Type.SECRET) {
+                // the names of secrets are unique
+                for (Secret secret : dockerClient.listSecrets()) {
+                    ids.put(secret.secretSpec().name(), secret.id());
+                }
+            } else if (type == Event.Type.NETWORK) {
+                // the names of networks are not unique (e.g. a local network and a swarm network with the same name)
+                Map<String, List<String>> idsByName = new HashMap<>();
+                for (Network network : dockerClient.listNetworks()) {
+                    idsByName.computeIfAbsent(network.name(), k -> new ArrayList<>()).add(network.id());
+                    ids.put(network.id(), network.id());
+                }
+                for (Map.Entry<String, List<String>> entry : idsByName.entrySet()) {
+                    if (entry.getValue().size() == 1) {
+                        ids.putIfAbsent(entry.getKey(), entry.getValue().getFirst());
+                    } else {
+                        ambiguous.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading Docker Swarm metadata", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error while loading Docker Swarm metadata", e);
+        }
+        return new Names(ids, ambiguous);
+    }
+
+    /**
+     * Registers interest in changes of the given service (or one of its containers).
+     * The watch must be registered before checking the state of the service, such that no event can be missed between
+     * checking the state and waiting for the next change.
+     *
+     * @param serviceName the name of the service
+     * @return the future that should be passed to {@link #awaitServiceChange(CompletableFuture, long)}
+     */
+    public CompletableFuture<Void> watchService(String serviceName) {
+        return serviceChanges.computeIfAbsent(serviceName, k -> new CompletableFuture<>());
+    }
+
+    /**
+     * Waits until the future returned by {@link #watchService(String)} is completed or the timeout expires.
+     * The caller should always re-check the state of the service after this method returns, since the timeout is
+     * used as fallback when no (relevant) events are received (e.g. because the task is running on a different node).
+     *
+     * @param change  the future returned by {@link #watchService(String)}
+     * @param timeout the maximum time to wait in milliseconds
+     */
+    public void awaitServiceChange(CompletableFuture<Void> change, long timeout) throws InterruptedException {
+        try {
+            change.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // fallback to polling
+        }
+    }
+
+    public void unwatchService(String serviceName) {
+        serviceChanges.remove(serviceName);
+    }
+
+    private void notifyServiceChange(String serviceName) {
+        if (serviceName == null) {
+            return;
+        }
+        CompletableFuture<Void> change = serviceChanges.remove(serviceName);
+        if (change != null) {
+            change.complete(null);
+        }
+    }
+
+    private void processEvents() {
+        while (running) {
+            try (EventStream stream = dockerClient.events(
+                DockerClient.EventsParam.type(Event.Type.SECRET),
+                DockerClient.EventsParam.type(Event.Type.NETWORK),
+                DockerClient.EventsParam.type(Event.Type.SERVICE),
+                DockerClient.EventsParam.type(Event.Type.CONTAINER))) {
+                eventStream = stream;
+                // events may have been missed while (re-)connecting
+                invalidateAll();
+                while (running && stream.hasNext()) {
+                    processEvent(stream.next());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Error while processing Docker Swarm events, reconnecting in {}ms", RECONNECT_DELAY, e);
+            }
+            if (!running) {
+                return;
+            }
+            invalidateAll();
+            try {
+                Thread.sleep(RECONNECT_DELAY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void processEvent(Event event) {
+        if (event.type() == null) {
+            return;
+        }
+        switch (event.type()) {
+            case SECRET -> {
+                namesToIds.invalidate(Event.Type.SECRET);
+                misses.invalidateAll();
+            }
+            case NETWORK -> {
+                namesToIds.invalidate(Event.Type.NETWORK);
+                misses.invalidateAll();
+            }
+            case SERVICE -> {
+                if (event.actor() != null && event.actor().attributes() != null) {
+                    notifyServiceChange(event.actor().attributes().get("name"));
+                }
+            }
+            case CONTAINER -> {
+                if (event.actor() != null && event.actor().attributes() != null) {
+                    notifyServiceChange(event.actor().attributes().get(SERVICE_NAME_LABEL));
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void invalidateAll() {
+        namesToIds.invalidateAll();
+        misses.invalidateAll();
+    }
+
+    public void close() {
+        running = false;
+        EventStream stream = eventStream;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (Exception e) {
+                // ignore, stream is being closed
+            }
+        }
+        serviceChanges.values().forEach(change -> change.complete(null));
+        serviceChanges.clear();
+    }
+
+    private record Names(Map<String, String> ids, Map<String, List<String>> ambiguous) {
+
+        private String getId(Event.Type type, String name) {
+            String id = ids.get(name);
+            if (id == null && ambiguous.containsKey(name)) {
+                throw new IllegalArgumentException(String.format("The Docker %s name '%s' is ambiguous, it is used by %s, use the id instead",
+                    type.name().toLowerCase(), name, String.join(", ", ambiguous.get(name))));
+            }
+            return id;
+        }
+
+    }
+
+}
@@ -20,6 +20,8 @@
  */
 package eu.openanalytics.containerproxy.backend.ecs;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import eu.openanalytics.containerproxy.ContainerFailedToStartException;
 import eu.openanalytics.containerproxy.backend.AbstractContainerBackend;
 import eu.openanalytics.containerproxy.event.NewProxyEvent;
@@ -31,6 +33,7 @@ import eu.openanalytics.containerproxy.model.runtime.ProxyStartupLog;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.BackendContainerName;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.BackendContainerNameKey;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ContainerImageKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.InstanceIdKey;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.PortMappingsKey;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValueKey;
@@ -38,8 +41,10 @@ import eu.openanalytics.containerproxy.model.runtime.runtimevalues.UserGroupsKey
 import eu.openanalytics.containerproxy.model.spec.ContainerSpec;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.spec.IProxySpecProvider;
+import eu.openanalytics.containerproxy.spec.IProxySpecValidator;
 import eu.openanalytics.containerproxy.util.EnvironmentUtils;
-import eu.openanalytics.containerproxy.util.Retrying;
+import eu.openanalytics.containerproxy.util.Sha1;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.util.Pair;
@@ -50,61 +55,80 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.ecs.EcsClient;
 import software.amazon.awssdk.services.ecs.model.Attachment;
 import software.amazon.awssdk.services.ecs.model.AwsVpcConfiguration;
+import software.amazon.awssdk.services.ecs.model.ClientException;
 import software.amazon.awssdk.services.ecs.model.Compatibility;
 import software.amazon.awssdk.services.ecs.model.ContainerDefinition;
-import software.amazon.awssdk.services.ecs.model.DescribeTasksResponse;
+import software.amazon.awssdk.services.ecs.model.ContainerOverride;
 import software.amazon.awssdk.services.ecs.model.EFSAuthorizationConfig;
 import software.amazon.awssdk.services.ecs.model.EFSVolumeConfiguration;
+import software.amazon.awssdk.services.ecs.model.EcsException;
 import software.amazon.awssdk.services.ecs.model.EphemeralStorage;
 import software.amazon.awssdk.services.ecs.model.KeyValuePair;
 import software.amazon.awssdk.services.ecs.model.LaunchType;
+import software.amazon.awssdk.services.ecs.model.ListTaskDefinitionsResponse;
 import software.amazon.awssdk.services.ecs.model.LogConfiguration;
 import software.amazon.awssdk.services.ecs.model.LogDriver;
 import software.amazon.awssdk.services.ecs.model.MountPoint;
 import software.amazon.awssdk.services.ecs.model.NetworkConfiguration;
 import software.amazon.awssdk.services.ecs.model.NetworkMode;
-import software.amazon.awssdk.services.ecs.model.PropagateTags;
-import software.amazon.awssdk.services.ecs.model.RegisterTaskDefinitionResponse;
+import software.amazon.awssdk.services.ecs.model.RegisterTaskDefinitionRequest;
 import software.amazon.awssdk.services.ecs.model.RepositoryCredentials;
 import software.amazon.awssdk.services.ecs.model.RunTaskResponse;
 import software.amazon.awssdk.services.ecs.model.RuntimePlatform;
 import software.amazon.awssdk.services.ecs.model.Secret;
 import software.amazon.awssdk.services.ecs.model.Tag;
 import software.amazon.awssdk.services.ecs.model.Task;
+import software.amazon.awssdk.services.ecs.model.TaskDefinition;
+import software.amazon.awssdk.services.ecs.model.TaskDefinitionStatus;
+import software.amazon.awssdk.services.ecs.model.TaskOverride;
 import software.amazon.awssdk.services.ecs.model.Volume;
-import software.amazon.awssdk.services.sts.StsClient;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 @Component
 @ConditionalOnProperty(name = "proxy.container-backend", havingValue = "ecs")
-public class EcsBackend extends AbstractContainerBackend {
+public class EcsBackend extends AbstractContainerBackend implements IProxySpecValidator {
 
     private static final String PROPERTY_PREFIX = "proxy.ecs.";
     private static final String PROPERTY_CLUSTER = "name";
     private static final String PROPERTY_REGION = "region";
     private static final String PROPERTY_SERVICE_WAIT_TIME = "service-wait-time";
-    private static final Pattern TAG_VALUE_PATTERN = Pattern.compile("^[a-zA-Z0-9 +-=._:/@]*$");
     private static final Pattern LOG_GROUP_REPLACE_PATTERN = Pattern.compile("[^a-zA-Z0-9_\\-.#]");
     private static final List<RuntimeValueKey<?>> IGNORED_RUNTIME_VALUES = Arrays.asList(PortMappingsKey.inst, UserGroupsKey.inst);
     private static final List<String> STARTING_STATES = List.of("PROVISIONING", "PENDING", "ACTIVATING");
     private static final List<String> STOPPING_STATES = List.of("DEACTIVATING", "STOPPING", "DEPROVISIONING", "STOPPED", "DELETED");
-    private static final Tag TO_DELETE_TAG = Tag.builder().key("openanalytics.eu/sp-to-delete").value("true").build();
+    // maximum size of the overrides passed to runTask (the limit of ECS is 8192 characters)
+    private static final int MAX_OVERRIDES_SIZE = 7168;
+    // family of task definitions that include the environment of a single proxy, these are deregistered when the proxy stops
+    private static final String PROXY_TASK_DEFINITION_PREFIX = "sp-proxy-task-definition-";
+    // family of task definitions that are re-used, based on the hash of their content
+    private static final String SHARED_TASK_DEFINITION_PREFIX = "sp-task-definition-";
+    private static final Pattern SHARED_TASK_DEFINITION_PATTERN = Pattern.compile("^" + SHARED_TASK_DEFINITION_PREFIX + "[0-9a-f]{40}$");
+    // older versions used the same family prefix for per-proxy task definitions and tagged these for deletion on shutdown
+    private static final Tag LEGACY_TO_DELETE_TAG = Tag.builder().key("openanalytics.eu/sp-to-delete").value("true").build();
 
     private EcsClient ecsClient;
     private Boolean enableCloudWatch;
@@ -117,11 +141,21 @@ public class EcsBackend extends AbstractContainerBackend {
     private String cluster;
     private String defaultRepositoryCredentialsParameter;
     private String region;
-    private String accountId;
+    private EcsTaskStatusPoller taskStatusPoller;
+    private EcsTaskScanner taskScanner;
+    private EcsRateLimiter rateLimiter;
+    // on a cache miss the task definition is looked up using describeTaskDefinition, therefore the cache can be small
+    private final Cache<String, String> taskDefinitions = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .expireAfterAccess(1, TimeUnit.HOURS)
+        .build();
 
     @Inject
     private IProxySpecProvider proxySpecProvider;
 
+    @Inject
+    private MeterRegistry meterRegistry;
+
     @Override
     @PostConstruct
     public void initialize() {
@@ -131,15 +165,16 @@ public class EcsBackend extends AbstractContainerBackend {
         if (region == null) {
             throw new IllegalStateException("Error in configuration of ECS backend: proxy.ecs.region not set");
         }
-        try (StsClient stsClient = StsClient.create()) {
-            accountId = stsClient.getCallerIdentity().account();
-        }
-
         ecsClient = EcsClient.builder()
             .region(Region.of(region))
             .build();
 
         cluster = getProperty(PROPERTY_CLUSTER);
+        rateLimiter = createRateLimiter();
+        taskStatusPoller = new EcsTaskStatusPoller(ecsClient, rateLimiter, cluster,
+            environment.getProperty("proxy.ecs.task-status-min-poll-interval", Long.class, 500L),
+            environment.getProperty("proxy.ecs.task-status-max-poll-interval", Long.class, 10_000L));
+        taskScanner = new EcsTaskScanner(ecsClient, rateLimiter, cluster);
         subnets = EnvironmentUtils.readList(environment, "proxy.ecs.subnets");
         securityGroups = EnvironmentUtils.readList(environment, "proxy.ecs.security-groups");
         totalWaitMs = environment.getProperty(PROPERTY_PREFIX + PROPERTY_SERVICE_WAIT_TIME, Integer.class, 180000);
@@ -166,7 +201,12 @@ public class EcsBackend extends AbstractContainerBackend {
             throw new IllegalStateException("Error in configuration of ECS backend: config has 'privileged: true' configured, this is not supported by ECS fargated");
         }
 
-        for (ProxySpec spec : proxySpecProvider.getSpecs()) {
+        validateSpecs(proxySpecProvider.getSpecs());
+    }
+
+    @Override
+    public void validateSpecs(List<ProxySpec> specs) {
+        for (ProxySpec spec : specs) {
             ContainerSpec containerSpec = spec.getContainerSpecs().getFirst();
             if (!containerSpec.getMemoryRequest().isOriginalValuePresent()) {
                 throw new IllegalStateException(String.format("Error in configuration of specs: spec with id '%s' has non 'memory-request' configured, this is required for running on ECS fargate", spec.getId()));
@@ -203,14 +243,13 @@ public class EcsBackend extends AbstractContainerBackend {
                     initialContainer.getRuntimeValues().values().stream()
                 )
                 .filter(v -> !IGNORED_RUNTIME_VALUES.contains(v.getKey()))
-                .forEach(runtimeValue -> {
-                    String value = runtimeValue.toString();
-                    if (runtimeValue.getKey().getIncludeAsLabel() || runtimeValue.getKey().getIncludeAsAnnotation()) {
-                        if (validateEcsTagValue(proxy, runtimeValue.getKey().getKeyAsLabel(), value)) {
-                            tags.add(Tag.builder().key(runtimeValue.getKey().getKeyAsLabel()).value(value).build());
-                        }
-                    }
-                });
+                .filter(v -> v.getKey().getIncludeAsLabel() || v.getKey().getIncludeAsAnnotation())
+                .forEach(runtimeValue -> tags.add(createRecoveryTag(runtimeValue.getKey().getKeyAsLabel(), EcsTaskScanner.encodeTagValue(runtimeValue.toString()))));
+
+            PortMappings portMappings = initialContainer.getRuntimeObject(PortMappingsKey.inst);
+            for (Map.Entry<String, String> portMapping : EcsTaskScanner.portMappingsAsTags(portMappings).entrySet()) {
+                tags.add(createRecoveryTag(portMapping.getKey(), portMapping.getValue()));
+            }
 
             for (Map.Entry<String, String> label : spec.getLabels().getValueOrDefault(new HashMap<>()).entrySet()) {
                 if (validateEcsTagValue(proxy, label.getKey(), label.getValue())) {
@@ -218,24 +257,37 @@ public class EcsBackend extends AbstractContainerBackend {
                 }
             }
 
-            String taskDefinitionArn = getTaskDefinition(user, spec, specExtension, proxy, initialContainer, tags);
+            EcsTaskDefinition taskDefinition = getTaskDefinition(user, spec, specExtension, proxy, initialContainer);
 
             // tell the status service we are starting the pod/container
             proxyStartupLogBuilder.startingContainer(initialContainer.getIndex());
-            RunTaskResponse runTaskResponse = ecsClient.runTask(builder -> builder
-                .cluster(cluster)
-                .count(1)
-                .taskDefinition(taskDefinitionArn)
-                .propagateTags(PropagateTags.TASK_DEFINITION)
-                .networkConfiguration(NetworkConfiguration.builder()
-                    .awsvpcConfiguration(AwsVpcConfiguration.builder()
-                        .subnets(subnets)
-                        .securityGroups(securityGroups)
+            RunTaskResponse runTaskResponse;
+            try {
+                runTaskResponse = rateLimiter.call(EcsRateLimiter.Api.RUN_TASK, () -> ecsClient.runTask(builder -> builder
+                    .cluster(cluster)
+                    .count(1)
+                    .taskDefinition(taskDefinition.arn())
+                    .overrides(taskDefinition.overrides())
+                    .networkConfiguration(NetworkConfiguration.builder()
+                        .awsvpcConfiguration(AwsVpcConfiguration.builder()
+                            .subnets(subnets)
+                            .securityGroups(securityGroups)
+                            .build())
                         .build())
-                    .build())
-                .launchType(LaunchType.FARGATE)
-                .enableExecuteCommand(specExtension.getEcsEnableExecuteCommand().getValueOrDefault(false))
-                .tags(tags));
+                    .launchType(LaunchType.FARGATE)
+                    .startedBy(EcsTaskScanner.STARTED_BY)
+                    .enableExecuteCommand(specExtension.getEcsEnableExecuteCommand().getValueOrDefault(false))
+                    .tags(tags)));
+            } catch (EcsException e) {
+                // e.g. the task definition was deregistered outside ShinyProxy, register it again on the next start
+                if (taskDefinition.hash() != null) {
+                    taskDefinitions.invalidate(taskDefinition.hash());
+                }
+                if (taskDefinition.proxySpecific()) {
+                    deregisterTaskDefinition(proxy, taskDefinition.arn());
+                }
+                throw e;
+            }
 
             if (!runTaskResponse.hasTasks()) {
                 throw new ContainerFailedToStartException("No task in taskResponse", null, rContainerBuilder.build());
@@ -246,33 +298,19 @@ public class EcsBackend extends AbstractContainerBackend {
             rContainerBuilder.addRuntimeValue(new RuntimeValue(BackendContainerNameKey.inst, new BackendContainerName(taskArn)), false);
             applicationEventPublisher.publishEvent(new NewProxyEvent(proxy.toBuilder().updateContainer(rContainerBuilder.build()).build(), user));
 
-            boolean serviceReady;
-            if (Retrying.retry((currentAttempt, maxAttempts) -> {
-                DescribeTasksResponse response = ecsClient.describeTasks(builder -> builder
-                    .cluster(cluster)
-                    .tasks(taskArn));
-
-                if (response.hasTasks()) {
-                    Task task = response.tasks().getFirst();
-                    if (task.lastStatus().equals("RUNNING")) {
-                        return Retrying.SUCCESS;
-                    } else if (!STARTING_STATES.contains(task.lastStatus()) || !task.desiredStatus().equals("RUNNING")) {
-                        slog.warn(proxy, String.format("ECS container failed: task not running, stopCode: '%s', stoppingAt: '%s', stoppedAt: '%s', stoppedReason: '%s'", task.stopCode(), task.stoppingAt(), task.stoppedAt(),
-                            task.stoppedReason()));
-                        return new Retrying.Result(false, false);
-                    }
-                }
-                return Retrying.FAILURE;
-            }, totalWaitMs, "ECS Task", 10, proxy, slog)) serviceReady = true;
-            else serviceReady = false;
-
-            if (!serviceReady) {
+            Task task = waitForTask(taskArn, t -> t != null && (t.lastStatus().equals("RUNNING") || !STARTING_STATES.contains(t.lastStatus()) || !t.desiredStatus().equals("RUNNING")));
+            if (task == null) {
+                throw new ContainerFailedToStartException("Service failed to start", null, rContainerBuilder.build());
+            }
+            if (!task.lastStatus().equals("RUNNING")) {
+                slog.warn(proxy, String.format("ECS container failed: task not running, stopCode: '%s', stoppingAt: '%s', stoppedAt: '%s', stoppedReason: '%s'", task.stopCode(), task.stoppingAt(), task.stoppedAt(),
+                    task.stoppedReason()));
                 throw new ContainerFailedToStartException("Service failed to start", null, rContainerBuilder.build());
             }
 
             proxyStartupLogBuilder.containerStarted(initialContainer.getIndex());
 
-            String image = ecsClient.describeTasks(builder -> builder.cluster(cluster).tasks(taskArn)).tasks().getFirst().containers().getFirst().image();
+            String image = task.containers().getFirst().image();
             rContainerBuilder.addRuntimeValue(new RuntimeValue(ContainerImageKey.inst, image), false);
 
             Map<Integer, Integer> portBindings = new HashMap<>();
@@ -289,25 +327,27 @@ public class EcsBackend extends AbstractContainerBackend {
         }
     }
 
-    private String getTaskDefinition(Authentication user, ContainerSpec spec, EcsSpecExtension specExtension, Proxy proxy, Container initialContainer, List<Tag> tags) throws IOException {
+    /**
+     * Returns the task definition to use for the given container.
+     * Task definitions are shared between proxies: the definition only contains values that are the same for every
+     * proxy using the same configuration, the per-proxy values (i.e. the environment variables) are passed as overrides
+     * to runTask. The family of the task definition contains a hash of its content, such that identical starts re-use
+     * an existing task definition, instead of registering (and afterward deregistering) a task definition for every
+     * proxy.
+     */
+    private EcsTaskDefinition getTaskDefinition(Authentication user, ContainerSpec spec, EcsSpecExtension specExtension, Proxy proxy, Container initialContainer) throws IOException {
         if (spec.getImage().getValue().startsWith("arn:aws:ecs:")) {
             // external task definition
-            return spec.getImage().getValue();
+            return new EcsTaskDefinition(spec.getImage().getValue(), null, null, false);
         }
 
         List<KeyValuePair> env = buildEnv(user, spec, proxy).entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
             .map(v -> KeyValuePair.builder().name(v.getKey()).value(v.getValue()).build())
             .toList();
 
-        Map<String, String> dockerLabels = spec.getLabels().getValueOrDefault(new HashMap<>());
-        Stream.concat(
-            proxy.getRuntimeValues().values().stream(),
-            initialContainer.getRuntimeValues().values().stream()
-        ).forEach(runtimeValue -> {
-            if (runtimeValue.getKey().getIncludeAsLabel() || runtimeValue.getKey().getIncludeAsAnnotation()) {
-                dockerLabels.put(runtimeValue.getKey().getKeyAsLabel(), runtimeValue.toString());
-            }
-        });
+        // runtime values are added as tags to the task, only the labels of the spec are part of the task definition
+        Map<String, String> dockerLabels = new TreeMap<>(spec.getLabels().getValueOrDefault(new HashMap<>()));
 
         Pair<List<Volume>, List<MountPoint>> volumes = getVolumes(spec, specExtension);
 
@@ -317,14 +357,22 @@ public class EcsBackend extends AbstractContainerBackend {
             .build();
 
         // name of the container inside the task (it's not possible to choose a name for the task)
-        // automatically used in the cloudwatch stream name
-        String containerName = StringUtils.left(spec.getResourceName().getValueOrDefault("sp-container-" + proxy.getId() + "-" + initialContainer.getIndex()), 255);
+        // automatically used in the cloudwatch stream name (together with the id of the task)
+        String containerName = StringUtils.left(spec.getResourceName().getValueOrDefault("sp-container-" + initialContainer.getIndex()), 255);
+
+        // the size of all overrides is limited by ECS, in case the environment is too large, it's included in the task definition
+        ContainerOverride containerOverride = ContainerOverride.builder()
+            .name(containerName)
+            .environment(env)
+            .build();
+        TaskOverride overrides = TaskOverride.builder().containerOverrides(containerOverride).build();
+        boolean envAsOverride = EcsCanonicalJson.toJson(overrides).getBytes(StandardCharsets.UTF_8).length < MAX_OVERRIDES_SIZE;
 
         ContainerDefinition.Builder containerDefinitionBuilder = ContainerDefinition.builder()
             .name(containerName)
             .image(spec.getImage().getValue())
             .command(spec.getCmd().getValueOrNull())
-            .environment(env)
+            .environment(envAsOverride ? List.of() : env)
             .stopTimeout(2)
             .dockerLabels(dockerLabels)
             .logConfiguration(getLogConfiguration(proxy.getSpecId()))
@@ -337,8 +385,7 @@ public class EcsBackend extends AbstractContainerBackend {
             containerDefinitionBuilder.repositoryCredentials(RepositoryCredentials.builder().credentialsParameter(credentials).build());
         }
 
-        RegisterTaskDefinitionResponse registerTaskDefinitionResponse = ecsClient.registerTaskDefinition(builder -> builder
-            .family("sp-task-definition-" + proxy.getId()) // family is a name for the task definition
+        RegisterTaskDefinitionRequest.Builder request = RegisterTaskDefinitionRequest.builder()
             .containerDefinitions(containerDefinitionBuilder.build())
             .networkMode(NetworkMode.AWSVPC) // only option when using fargate
             .requiresCompatibilities(Compatibility.FARGATE)
@@ -352,10 +399,112 @@ public class EcsBackend extends AbstractContainerBackend {
                 .build()
             )
             .ephemeralStorage(ephemeralStorage)
-            .volumes(volumes.getFirst())
-            .tags(tags));
+            .volumes(volumes.getFirst());
+
+        if (!envAsOverride) {
+            // the task definition contains the environment of this proxy and cannot be re-used, it's deregistered when the proxy stops
+            String arn = rateLimiter.call(EcsRateLimiter.Api.REGISTER_TASK_DEFINITION,
+                () -> ecsClient.registerTaskDefinition(request.family(PROXY_TASK_DEFINITION_PREFIX + proxy.getId()).build()).taskDefinition().taskDefinitionArn());
+            return new EcsTaskDefinition(arn, null, null, true);
+        }
+
+        String hash = Sha1.hash(EcsCanonicalJson.toJson(request.build()));
+        // family is a name for the task definition
+        String family = SHARED_TASK_DEFINITION_PREFIX + hash;
+
+        String arn = taskDefinitions.get(hash, k -> {
+            try {
+                // task definition may have been registered by a previous run or by another ShinyProxy server
+                TaskDefinition existing = rateLimiter.call(EcsRateLimiter.Api.DESCRIBE_TASK_DEFINITION,
+                    () -> ecsClient.describeTaskDefinition(builder -> builder.taskDefinition(family)).taskDefinition());
+                if (existing.status() == TaskDefinitionStatus.ACTIVE) {
+                    return existing.taskDefinitionArn();
+                }
+            } catch (ClientException e) {
+                // task definition does not exist yet (other errors, e.g. throttling or access errors, are not caught)
+            }
+            return rateLimiter.call(EcsRateLimiter.Api.REGISTER_TASK_DEFINITION,
+                () -> ecsClient.registerTaskDefinition(request.family(family).build()).taskDefinition().taskDefinitionArn());
+        });
+
+        return new EcsTaskDefinition(arn, hash, overrides, false);
+    }
+
+    private void deregisterTaskDefinition(Proxy proxy, String taskDefinitionArn) {
+        try {
+            rateLimiter.call(EcsRateLimiter.Api.DEREGISTER_TASK_DEFINITION,
+                () -> ecsClient.deregisterTaskDefinition(builder -> builder.taskDefinition(taskDefinitionArn)));
+        } catch (EcsException e) {
+            slog.warn(proxy, e, String.format("Error while deregistering task definition '%s'", taskDefinitionArn));
+        }
+    }
+
+    /**
+     * Removes the per-proxy task definitions that versions before the re-use of task definitions marked for deletion
+     * (using {@link #LEGACY_TO_DELETE_TAG}) when they were shut down. Runs once, a few minutes after startup.
+     */
+    @Scheduled(initialDelay = 5, timeUnit = TimeUnit.MINUTES)
+    public void cleanupLegacyTaskDefinitions() {
+        if (environment.getProperty("proxy.store-mode", "None").equals("Redis")) {
+            // older versions did not mark task definitions for deletion when using Redis
+            return;
+        }
+        try {
+            List<String> toDelete = new ArrayList<>();
+            String nextToken = null;
+            do {
+                String token = nextToken;
+                ListTaskDefinitionsResponse response = rateLimiter.call(EcsRateLimiter.Api.LIST_TASK_DEFINITIONS,
+                    () -> ecsClient.listTaskDefinitions(builder -> builder.familyPrefix(SHARED_TASK_DEFINITION_PREFIX).nextToken(token)));
+                for (String arn : response.taskDefinitionArns()) {
+                    if (isSharedTaskDefinition(arn)) {
+                        continue;
+                    }
+                    List<Tag> tags = rateLimiter.call(EcsRateLimiter.Api.LIST_TAGS_FOR_RESOURCE,
+                        () -> ecsClient.listTagsForResource(builder -> builder.resourceArn(arn)).tags());
+                    if (tags.contains(LEGACY_TO_DELETE_TAG)) {
+                        toDelete.add(arn);
+                    }
+                }
+                nextToken = response.nextToken();
+            } while (nextToken != null);
+
+            if (!toDelete.isEmpty()) {
+                log.info("Deleting {} task definitions marked for deletion by a previous version", toDelete.size());
+                for (String arn : toDelete) {
+                    rateLimiter.call(EcsRateLimiter.Api.DEREGISTER_TASK_DEFINITION, () -> ecsClient.deregisterTaskDefinition(builder -> builder.taskDefinition(arn)));
+                    rateLimiter.call(EcsRateLimiter.Api.DELETE_TASK_DEFINITIONS, () -> ecsClient.deleteTaskDefinitions(builder -> builder.taskDefinitions(arn)));
+                }
+                log.info("Deleted {} task definitions", toDelete.size());
+            }
+        } catch (Exception e) {
+            log.warn("Error while deleting task definitions marked for deletion by a previous version", e);
+        }
+    }
+
+    private static boolean isSharedTaskDefinition(String taskDefinitionArn) {
+        // e.g. arn:aws:ecs:eu-west-1:123456789012:task-definition/sp-task-definition-<sha1>:1
+        String family = taskDefinitionArn.substring(taskDefinitionArn.lastIndexOf('/') + 1).split(":")[0];
+        return SHARED_TASK_DEFINITION_PATTERN.matcher(family).matches();
+    }
+
+    private static boolean isProxyTaskDefinition(String taskDefinitionArn) {
+        // e.g. arn:aws:ecs:eu-west-1:123456789012:task-definition/sp-proxy-task-definition-<proxyId>:1
+        return taskDefinitionArn != null && taskDefinitionArn.substring(taskDefinitionArn.lastIndexOf('/') + 1).startsWith(PROXY_TASK_DEFINITION_PREFIX);
+    }
 
-        return registerTaskDefinitionResponse.taskDefinition().taskDefinitionArn();
+    private EcsRateLimiter createRateLimiter() {
+        Map<EcsRateLimiter.Api, EcsRateLimiter.TokenBucket> buckets = new EnumMap<>(EcsRateLimiter.Api.class);
+        if (environment.getProperty("proxy.ecs.rate-limits.enabled", Boolean.class, true)) {
+            for (EcsRateLimiter.Api api : EcsRateLimiter.Api.values()) {
+                String prefix = "proxy.ecs.rate-limits." + api.getPropertyName();
+                buckets.put(api, new EcsRateLimiter.TokenBucket(
+                    environment.getProperty(prefix + ".capacity", Integer.class, api.getDefaultCapacity()),
+                    environment.getProperty(prefix + ".refill-rate", Double.class, api.getDefaultRefillRate())));
+            }
+        }
+        return new EcsRateLimiter(buckets, meterRegistry,
+            environment.getProperty("proxy.ecs.rate-limits.max-wait", Long.class, EcsRateLimiter.DEFAULT_MAX_WAIT_MS));
     }
 
     private LogConfiguration getLogConfiguration(String specId) {
@@ -475,57 +624,56 @@ public class EcsBackend extends AbstractContainerBackend {
         }
         for (Container container : proxy.getContainers()) {
             String taskArn = container.getRuntimeValue(BackendContainerNameKey.inst);
-            ecsClient.stopTask(builder -> builder.cluster(cluster).task(taskArn));
-
-            // delete is ignored if task definition does not exist, this is the case if the task definition was not created by shinyproxy
-            ecsClient.deregisterTaskDefinition(builder -> builder.taskDefinition("sp-task-definition-" + proxy.getId() + ":1"));
-            ecsClient.deleteTaskDefinitions(builder -> builder.taskDefinitions("sp-task-definition-" + proxy.getId() + ":1"));
+            Task task = rateLimiter.call(EcsRateLimiter.Api.STOP_TASK, () -> ecsClient.stopTask(builder -> builder.cluster(cluster).task(taskArn))).task();
+            if (task != null && isProxyTaskDefinition(task.taskDefinitionArn())) {
+                // deregistering does not affect the task that is still stopping
+                deregisterTaskDefinition(proxy, task.taskDefinitionArn());
+            }
         }
 
-        boolean isInactive = Retrying.retry((currentAttempt, maxAttempts) -> {
-            for (Container container : proxy.getContainers()) {
-                String taskArn = container.getRuntimeValue(BackendContainerNameKey.inst);
-                DescribeTasksResponse response = ecsClient.describeTasks(builder -> builder
-                    .cluster(cluster)
-                    .tasks(taskArn));
-
-                if (response.hasTasks() && !STOPPING_STATES.contains(response.tasks().getFirst().desiredStatus())) {
-                    return Retrying.FAILURE;
-                }
-            }
-            return Retrying.SUCCESS;
-        }, totalWaitMs, "Stopping ECS Task", 0, proxy, slog);
+        List<CompletableFuture<Task>> stopping = new ArrayList<>();
+        for (Container container : proxy.getContainers()) {
+            String taskArn = container.getRuntimeValue(BackendContainerNameKey.inst);
+            stopping.add(taskStatusPoller.waitFor(taskArn, t -> t == null || STOPPING_STATES.contains(t.desiredStatus())));
+        }
 
-        if (!isInactive) {
+        try {
+            CompletableFuture.allOf(stopping.toArray(new CompletableFuture[0])).get(totalWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
             slog.warn(proxy, "Container did not get into stopping state");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopping.forEach(f -> f.cancel(false));
         }
     }
 
     @Override
     public void stopProxies(Collection<Proxy> proxies) {
-        // ECS has strict rate limits, on shutdown we don't have enough time to stop all task and proxies
+        // ECS has strict rate limits, on shutdown we don't have enough time to wait until all tasks are stopped
         // see https://docs.aws.amazon.com/AmazonECS/latest/APIReference/request-throttling.html
-        // therefore we stop all tasks (rate limit = 40/s * 120s = 4800 tasks) and tag the TaskDefinitions with a tag (rate limit = 10/s)
-        String taskDefinitionArnPrefix = String.format("arn:aws:ecs:%s:%s:task-definition/sp-task-definition-", region, accountId);
-        String taskDefinitionArnSuffix = ":1";
+        // therefore we only stop all tasks (rate limit = 40/s * 120s = 4800 tasks), task definitions are re-used
+        // the requests are sent asynchronously once the rate limiter allows it, instead of blocking for every task
+        List<CompletableFuture<Void>> stopping = new ArrayList<>();
         for (Proxy proxy : proxies) {
             for (Container container : proxy.getContainers()) {
                 String taskArn = container.getRuntimeValue(BackendContainerNameKey.inst);
-                try {
-                    ecsClient.stopTask(builder -> builder.cluster(cluster).task(taskArn));
-                } catch (Exception e) {
-                    log.warn("Error stopping task: ", e);
-                }
-                try {
-                    ecsClient.tagResource(builder -> builder
-                        .resourceArn(taskDefinitionArnPrefix + proxy.getId() + taskDefinitionArnSuffix)
-                        .tags(TO_DELETE_TAG)
-                    );
-                } catch (Exception e) {
-                    log.warn("Error tagging task definition: ", e);
-                }
+                stopping.add(rateLimiter.acquire(EcsRateLimiter.Api.STOP_TASK)
+                    .thenRun(() -> ecsClient.stopTask(builder -> builder.cluster(cluster).task(taskArn)))
+                    .exceptionally(e -> {
+                        log.warn("Error stopping task: ", e);
+                        return null;
+                    }));
             }
         }
+        CompletableFuture.allOf(stopping.toArray(new CompletableFuture[0])).join();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (taskStatusPoller != null) {
+            taskStatusPoller.shutdown();
+        }
     }
 
     @Override
@@ -535,7 +683,30 @@ public class EcsBackend extends AbstractContainerBackend {
 
     @Override
     public List<ExistingContainerInfo> scanExistingContainers() {
-        return new ArrayList<>();
+        log.debug("Looking for existing tasks in cluster {}", cluster);
+
+        ArrayList<ExistingContainerInfo> containers = new ArrayList<>();
+
+        for (Task task : taskScanner.listTasks()) {
+            Map<RuntimeValueKey<?>, RuntimeValue> runtimeValues = taskScanner.parseTagsAsRuntimeValues(task);
+            if (runtimeValues == null) {
+                continue;
+            }
+            runtimeValues.put(ContainerImageKey.inst, new RuntimeValue(ContainerImageKey.inst, task.containers().getFirst().image()));
+            runtimeValues.put(BackendContainerNameKey.inst, new RuntimeValue(BackendContainerNameKey.inst, new BackendContainerName(task.taskArn())));
+
+            String containerInstanceId = runtimeValues.get(InstanceIdKey.inst).getObject();
+            if (!appRecoveryService.canRecoverProxy(containerInstanceId)) {
+                log.warn("Ignoring task {} because instanceId {} is not correct", task.taskArn(), containerInstanceId);
+                continue;
+            }
+
+            // the id of the task (i.e. the last part of the arn) is used as id of the container
+            String containerId = StringUtils.substringAfterLast(task.taskArn(), "/");
+            containers.add(new ExistingContainerInfo(containerId, runtimeValues, task.containers().getFirst().image(), new HashMap<>()));
+        }
+
+        return containers;
     }
 
     @Override
@@ -581,44 +752,17 @@ public class EcsBackend extends AbstractContainerBackend {
     }
 
     /**
-     * Removes task definitions that are marked for deletion.
-     * On shutdown of ShinyProxy there is not enough time to delete the task definitions (because of the rate limit).
+     * Waits (at most totalWaitMs) until the task matches the predicate.
+     *
+     * @return the description of the task or null if the task did not match the predicate in time
      */
-    @Scheduled(initialDelay = 5, timeUnit = TimeUnit.MINUTES)
-    public void cleanupTaskDefinitions() {
-        if (environment.getProperty("proxy.store-mode", "None").equals("Redis")) {
-            // no task-definitions to clean up if using Redis
-            return;
-        }
-
-        List<String> toDelete = new ArrayList<>();
-        for (String arn : ecsClient.listTaskDefinitionsPaginator().taskDefinitionArns()) {
-            List<Tag> tags = ecsClient.listTagsForResource(builder -> builder.resourceArn(arn)).tags();
-            if (tags.contains(TO_DELETE_TAG)) {
-                toDelete.add(arn);
-                try {
-                    // sleep to respect rate limit
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
-        }
-        if (!toDelete.isEmpty()) {
-            log.info("Deleting {} task definitions from previous run", toDelete.size());
-            for (String arn : toDelete) {
-                ecsClient.deregisterTaskDefinition(builder -> builder.taskDefinition(arn).build());
-                ecsClient.deleteTaskDefinitions(builder -> builder.taskDefinitions(arn).build());
-                try {
-                    // sleep to respect rate limit
-                    Thread.sleep(1250);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
-            log.info("Deleted {} task definitions", toDelete.size());
+    private Task waitForTask(String taskArn, Predicate<Task> predicate) throws InterruptedException, ExecutionException {
+        CompletableFuture<Task> future = taskStatusPoller.waitFor(taskArn, predicate);
+        try {
+            return future.get(totalWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            return null;
         }
     }
 
@@ -635,21 +779,35 @@ public class EcsBackend extends AbstractContainerBackend {
     }
 
     private Optional<Task> getTask(String taskInfo) {
-        List<Task> tasks = ecsClient.describeTasks(builder -> builder
+        List<Task> tasks = rateLimiter.call(EcsRateLimiter.Api.DESCRIBE_TASKS, () -> ecsClient.describeTasks(builder -> builder
             .cluster(cluster)
             .tasks(taskInfo)
             .build()
-        ).tasks();
+        ).tasks());
 
         return Optional.ofNullable(tasks.getFirst());
     }
 
+    private record EcsTaskDefinition(String arn, String hash, TaskOverride overrides, boolean proxySpecific) {
+    }
+
+    /**
+     * Creates a tag that is needed to recover the proxy (see {@link EcsTaskScanner}), the value must already be encoded.
+     * Since the proxy cannot be recovered without the tag, the start fails if the tag cannot be created.
+     */
+    private Tag createRecoveryTag(String key, String value) {
+        if (value.length() > EcsTaskScanner.MAX_TAG_VALUE_LENGTH) {
+            throw new IllegalStateException(String.format("Cannot add ECS tag \"%s\" because it is longer than %s characters (after encoding)", key, EcsTaskScanner.MAX_TAG_VALUE_LENGTH));
+        }
+        return Tag.builder().key(key).value(value).build();
+    }
+
     private boolean validateEcsTagValue(Proxy proxy, String key, String value) {
-        if (value.length() > 256) {
+        if (value.length() > EcsTaskScanner.MAX_TAG_VALUE_LENGTH) {
             slog.warn(proxy, String.format("Not adding ECS tag \"%s\" because it is longer than 256 characters", key));
             return false;
         }
-        if (!TAG_VALUE_PATTERN.matcher(value).matches()) {
+        if (!EcsTaskScanner.isValidTagValue(value)) {
             slog.warn(proxy, String.format("Not adding ECS tag \"%s\" because it is contains invalid characters (only a-zA-Z0-9 +-=._:/@ allowed)", key));
             return false;
         }
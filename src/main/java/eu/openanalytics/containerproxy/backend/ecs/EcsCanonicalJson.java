@@ -0,0 +1,90 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.backend.ecs;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import software.amazon.awssdk.core.SdkField;
+import software.amazon.awssdk.core.SdkPojo;
+import software.amazon.awssdk.core.util.SdkAutoConstructList;
+import software.amazon.awssdk.core.util.SdkAutoConstructMap;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Serializes AWS SDK model objects to JSON using the wire names of their fields, with all object keys sorted.
+ * The output of equal objects is always identical (unlike {@link Object#toString()}, which may redact sensitive fields
+ * and whose format is not guaranteed), which makes it suitable to compute hashes and to estimate request sizes.
+ */
+public final class EcsCanonicalJson {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private EcsCanonicalJson() {
+    }
+
+    public static String toJson(SdkPojo pojo) {
+        try {
+            return MAPPER.writeValueAsString(toNode(pojo));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize " + pojo.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static JsonNode toNode(Object value) {
+        if (value == null) {
+            return MAPPER.nullNode();
+        }
+        if (value instanceof SdkPojo pojo) {
+            Map<String, JsonNode> fields = new TreeMap<>();
+            for (SdkField<?> field : pojo.sdkFields()) {
+                Object fieldValue = field.getValueOrDefault(pojo);
+                // unset lists and maps are not sent by the SDK
+                if (fieldValue != null && !(fieldValue instanceof SdkAutoConstructList<?>) && !(fieldValue instanceof SdkAutoConstructMap<?, ?>)) {
+                    fields.put(field.locationName(), toNode(fieldValue));
+                }
+            }
+            ObjectNode node = MAPPER.createObjectNode();
+            fields.forEach(node::set);
+            return node;
+        }
+        if (value instanceof Map<?, ?> map) {
+            ObjectNode node = MAPPER.createObjectNode();
+            new TreeMap<>(map).forEach((k, v) -> node.set(k.toString(), toNode(v)));
+            return node;
+        }
+        if (value instanceof Collection<?> collection) {
+            ArrayNode node = MAPPER.createArrayNode();
+            collection.forEach(v -> node.add(toNode(v)));
+            return node;
+        }
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return MAPPER.valueToTree(value);
+        }
+        return MAPPER.getNodeFactory().textNode(value.toString());
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.backend.ecs;
+
+import eu.openanalytics.containerproxy.ContainerProxyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Client-side rate limiter for the ECS API, using a token bucket per API family.
+ * ECS throttles requests using token buckets as well (see
+ * https://docs.aws.amazon.com/AmazonECS/latest/APIReference/request-throttling.html), by limiting the requests on the
+ * client side, the requests are spread at the sustainable rate instead of being throttled (and retried) in bursts.
+ * <p>
+ * Tokens are reserved in advance: a caller that has to wait, gets a future that is completed once its token becomes
+ * available. No thread is blocked while waiting, unless the caller decides to wait for the future.
+ * The backend API (starting and stopping a single proxy) is blocking, therefore {@link #call(Api, Supplier)} waits in
+ * the calling thread, which is a virtual thread when {@code proxy.virtual-threads} is enabled (the default). The time
+ * a caller waits is bounded by {@code proxy.ecs.rate-limits.max-wait}.
+ */
+public class EcsRateLimiter {
+
+    public enum Api {
+        RUN_TASK("run-task", 100, 40),
+        STOP_TASK("stop-task", 100, 40),
+        DESCRIBE_TASKS("describe-tasks", 100, 20),
+        LIST_TASKS("list-tasks", 100, 20),
+        REGISTER_TASK_DEFINITION("register-task-definition", 10, 1),
+        DESCRIBE_TASK_DEFINITION("describe-task-definition", 100, 20),
+        DEREGISTER_TASK_DEFINITION("deregister-task-definition", 10, 1),
+        DELETE_TASK_DEFINITIONS("delete-task-definitions", 10, 1),
+        LIST_TASK_DEFINITIONS("list-task-definitions", 50, 20),
+        LIST_TAGS_FOR_RESOURCE("list-tags-for-resource", 50, 10);
+
+        private final String propertyName;
+        private final int defaultCapacity;
+        private final double defaultRefillRate;
+
+        Api(String propertyName, int defaultCapacity, double defaultRefillRate) {
+            this.propertyName = propertyName;
+            this.defaultCapacity = defaultCapacity;
+            this.defaultRefillRate = defaultRefillRate;
+        }
+
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        public int getDefaultCapacity() {
+            return defaultCapacity;
+        }
+
+        public double getDefaultRefillRate() {
+            return defaultRefillRate;
+        }
+    }
+
+    public static final long DEFAULT_MAX_WAIT_MS = 5_000;
+
+    private final Map<Api, TokenBucket> buckets = new EnumMap<>(Api.class);
+    private final Map<Api, Timer> waitTimers = new EnumMap<>(Api.class);
+    private final long maxWaitNanos;
+
+    /**
+     * @param buckets  the buckets to use, APIs without bucket are not limited
+     * @param registry registry used to expose the wait time, may be null
+     */
+    public EcsRateLimiter(Map<Api, TokenBucket> buckets, MeterRegistry registry) {
+        this(buckets, registry, DEFAULT_MAX_WAIT_MS);
+    }
+
+    /**
+     * @param buckets   the buckets to use, APIs without bucket are not limited
+     * @param registry  registry used to expose the wait time, may be null
+     * @param maxWaitMs the maximum time {@link #call(Api, Supplier)} waits for a token
+     */
+    public EcsRateLimiter(Map<Api, TokenBucket> buckets, MeterRegistry registry, long maxWaitMs) {
+        this.buckets.putAll(buckets);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        if (registry != null) {
+            for (Api api : Api.values()) {
+                waitTimers.put(api, registry.timer("ecs_rate_limiter_wait_time", "api", api.getPropertyName()));
+            }
+        }
+    }
+
+    /**
+     * Reserves a token for the given API.
+     *
+     * @return future that completes once the request may be sent
+     */
+    public CompletableFuture<Void> acquire(Api api) {
+        TokenBucket bucket = buckets.get(api);
+        long waitNanos = bucket != null ? bucket.reserve() : 0;
+        recordWait(api, waitNanos);
+        if (waitNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Takes a token for the given API, only if one is available right now.
+     *
+     * @return whether the request may be sent
+     */
+    public boolean tryAcquire(Api api) {
+        TokenBucket bucket = buckets.get(api);
+        boolean acquired = bucket == null || bucket.tryTake();
+        if (acquired) {
+            recordWait(api, 0);
+        }
+        return acquired;
+    }
+
+    /**
+     * Waits for a token and executes the request.
+     * When no token becomes available within the maximum wait time, no token is taken and the request fails
+     * immediately, instead of blocking the calling thread until the (possibly very long) queue is processed.
+     *
+     * @throws ContainerProxyException when no token is available within the maximum wait time or when interrupted
+     */
+    public <T> T call(Api api, Supplier<T> request) {
+        TokenBucket bucket = buckets.get(api);
+        long waitNanos = bucket != null ? bucket.reserve(maxWaitNanos) : 0;
+        if (waitNanos < 0) {
+            throw new ContainerProxyException(String.format("ECS rate limit of %s exceeded, no request possible within %s ms",
+                api.getPropertyName(), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)));
+        }
+        recordWait(api, waitNanos);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ContainerProxyException("Interrupted while waiting for ECS rate limit of " + api.getPropertyName(), e);
+            }
+        }
+        return request.get();
+    }
+
+    private void recordWait(Api api, long waitNanos) {
+        Timer timer = waitTimers.get(api);
+        if (timer != null) {
+            timer.record(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public static class TokenBucket {
+
+        private final double capacity;
+        private final double refillPerNano;
+        private final LongSupplier ticker;
+        private double tokens;
+        private long lastRefill;
+
+        /**
+         * @param capacity   the maximum number of tokens (i.e. the maximum burst)
+         * @param refillRate the number of tokens added per second
+         */
+        public TokenBucket(int capacity, double refillRate) {
+            this(capacity, refillRate, System::nanoTime);
+        }
+
+        /**
+         * @param capacity   the maximum number of tokens (i.e. the maximum burst)
+         * @param refillRate the number of tokens added per second
+         * @param ticker     source of the current time in nanoseconds
+         */
+        public TokenBucket(int capacity, double refillRate, LongSupplier ticker) {
+            if (capacity < 1 || refillRate <= 0) {
+                throw new IllegalArgumentException("Capacity must be at least 1 and refill rate must be positive");
+            }
+            this.capacity = capacity;
+            this.refillPerNano = refillRate / TimeUnit.SECONDS.toNanos(1);
+            this.ticker = ticker;
+            this.tokens = capacity;
+            this.lastRefill = ticker.getAsLong();
+        }
+
+        /**
+         * Takes a token, the number of tokens may become negative, in which case the token is reserved.
+         *
+         * @return the time (in nanoseconds) until the reserved token is available
+         */
+        public long reserve() {
+            return reserve(Long.MAX_VALUE);
+        }
+
+        /**
+         * Takes a token, unless the token would only be available after the given time.
+         *
+         * @return the time (in nanoseconds) until the reserved token is available, or -1 if no token was taken
+         */
+        public synchronized long reserve(long maxWaitNanos) {
+            refill();
+            double remaining = tokens - 1;
+            long waitNanos = remaining >= 0 ? 0 : (long) Math.ceil(-remaining / refillPerNano);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            tokens = remaining;
+            return waitNanos;
+        }
+
+        public synchronized boolean tryTake() {
+            refill();
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        private void refill() {
+            long now = ticker.getAsLong();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+        }
+
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.backend.ecs;
+
+import eu.openanalytics.containerproxy.model.runtime.PortMappings;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.PortMappingsKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ProxiedAppKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValueKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValueKeyRegistry;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.UserGroupsKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.DesiredStatus;
+import software.amazon.awssdk.services.ecs.model.ListTasksResponse;
+import software.amazon.awssdk.services.ecs.model.Tag;
+import software.amazon.awssdk.services.ecs.model.Task;
+import software.amazon.awssdk.services.ecs.model.TaskField;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the ECS tasks created by ShinyProxy and converts their tags back into runtime values, such that running apps
+ * can be recovered after a restart.
+ * The tasks are listed using paginated listTasks calls (filtered on the startedBy value used by ShinyProxy) and
+ * described (including their tags) using batched describeTasks calls.
+ * The groups of the user are not stored as tag (the value is often too long), a recovered proxy therefore has an empty
+ * {@link UserGroupsKey} value.
+ */
+public class EcsTaskScanner {
+
+    /**
+     * Value passed as startedBy to runTask, makes it possible to only list tasks created by ShinyProxy.
+     */
+    public static final String STARTED_BY = "shinyproxy";
+
+    /**
+     * The port mappings are stored as one tag per entry, since the JSON representation is not a valid tag value.
+     */
+    public static final String PORT_MAPPING_TAG_PREFIX = "openanalytics.eu/sp-port-mapping-";
+
+    /**
+     * Prefix of tag values that are base64url encoded, see {@link #encodeTagValue}.
+     */
+    public static final String ENCODED_TAG_VALUE_PREFIX = "base64:";
+
+    /**
+     * Maximum length of the value of a tag.
+     */
+    public static final int MAX_TAG_VALUE_LENGTH = 256;
+
+    private static final Pattern TAG_VALUE_PATTERN = Pattern.compile("^[a-zA-Z0-9 +\\-=._:/@]*$");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final EcsClient ecsClient;
+    private final EcsRateLimiter rateLimiter;
+    private final String cluster;
+
+    public EcsTaskScanner(EcsClient ecsClient, EcsRateLimiter rateLimiter, String cluster) {
+        this.ecsClient = ecsClient;
+        this.rateLimiter = rateLimiter;
+        this.cluster = cluster;
+    }
+
+    /**
+     * @return the running tasks of the cluster that were created by ShinyProxy (i.e. have the proxied-app tag)
+     */
+    public List<Task> listTasks() {
+        List<String> taskArns = new ArrayList<>();
+        String nextToken = null;
+        do {
+            String token = nextToken;
+            ListTasksResponse response = rateLimiter.call(EcsRateLimiter.Api.LIST_TASKS, () -> ecsClient.listTasks(builder -> builder
+                .cluster(cluster)
+                .startedBy(STARTED_BY)
+                .desiredStatus(DesiredStatus.RUNNING)
+                .nextToken(token)));
+            taskArns.addAll(response.taskArns());
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+
+        List<Task> result = new ArrayList<>();
+        for (int i = 0; i < taskArns.size(); i += EcsTaskStatusPoller.MAX_TASKS_PER_REQUEST) {
+            List<String> batch = taskArns.subList(i, Math.min(i + EcsTaskStatusPoller.MAX_TASKS_PER_REQUEST, taskArns.size()));
+            List<Task> tasks = rateLimiter.call(EcsRateLimiter.Api.DESCRIBE_TASKS, () -> ecsClient.describeTasks(builder -> builder
+                .cluster(cluster)
+                .tasks(batch)
+                .include(TaskField.TAGS)
+            ).tasks());
+            for (Task task : tasks) {
+                if ("true".equals(getTags(task).get(ProxiedAppKey.inst.getKeyAsLabel()))) {
+                    result.add(task);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts the tags of the task into runtime values.
+     *
+     * @return the runtime values or null if a required runtime value is missing
+     */
+    public Map<RuntimeValueKey<?>, RuntimeValue> parseTagsAsRuntimeValues(Task task) {
+        Map<String, String> tags = getTags(task);
+        Map<RuntimeValueKey<?>, RuntimeValue> runtimeValues = new HashMap<>();
+
+        for (RuntimeValueKey<?> key : RuntimeValueKeyRegistry.getRuntimeValueKeys()) {
+            if (key == PortMappingsKey.inst || key == UserGroupsKey.inst || !(key.getIncludeAsLabel() || key.getIncludeAsAnnotation())) {
+                continue;
+            }
+            String value = tags.get(key.getKeyAsLabel());
+            if (value != null) {
+                runtimeValues.put(key, new RuntimeValue(key, key.deserializeFromString(decodeTagValue(value))));
+            } else if (key.isRequired()) {
+                logger.warn("Ignoring task {} because no tag named {} is found", task.taskArn(), key.getKeyAsLabel());
+                return null;
+            }
+        }
+
+        PortMappings portMappings = parsePortMappings(tags);
+        if (portMappings == null) {
+            logger.warn("Ignoring task {} because the port mapping tags are invalid", task.taskArn());
+            return null;
+        }
+        runtimeValues.put(PortMappingsKey.inst, new RuntimeValue(PortMappingsKey.inst, portMappings));
+        // the groups of the user are not stored as tag (the value is often too long), see the class documentation
+        runtimeValues.put(UserGroupsKey.inst, new RuntimeValue(UserGroupsKey.inst, ""));
+
+        return runtimeValues;
+    }
+
+    public static Map<String, String> getTags(Task task) {
+        Map<String, String> result = new HashMap<>();
+        if (task.hasTags()) {
+            for (Tag tag : task.tags()) {
+                result.put(tag.key(), tag.value());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return whether the value can be used as the value of a tag as is
+     */
+    public static boolean isValidTagValue(String value) {
+        return value.length() <= MAX_TAG_VALUE_LENGTH && TAG_VALUE_PATTERN.matcher(value).matches();
+    }
+
+    /**
+     * Encodes the value such that it only contains characters allowed in tag values. Values that only contain allowed
+     * characters are kept as is, other values are base64url encoded and prefixed with {@link #ENCODED_TAG_VALUE_PREFIX}.
+     * The result may still be longer than {@link #MAX_TAG_VALUE_LENGTH}.
+     */
+    public static String encodeTagValue(String value) {
+        if (TAG_VALUE_PATTERN.matcher(value).matches() && !value.startsWith(ENCODED_TAG_VALUE_PREFIX)) {
+            return value;
+        }
+        return ENCODED_TAG_VALUE_PREFIX + Base64.getUrlEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeTagValue(String value) {
+        if (!value.startsWith(ENCODED_TAG_VALUE_PREFIX)) {
+            return value;
+        }
+        return new String(Base64.getUrlDecoder().decode(value.substring(ENCODED_TAG_VALUE_PREFIX.length())), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converts the port mappings into tags, the value of every tag has the format {@code port:name:targetPath} (encoded
+     * using {@link #encodeTagValue}).
+     */
+    public static Map<String, String> portMappingsAsTags(PortMappings portMappings) {
+        Map<String, String> result = new HashMap<>();
+        List<PortMappings.PortMappingEntry> entries = portMappings.getPortMappings();
+        for (int i = 0; i < entries.size(); i++) {
+            PortMappings.PortMappingEntry entry = entries.get(i);
+            result.put(PORT_MAPPING_TAG_PREFIX + i, encodeTagValue(entry.getPort() + ":" + entry.getName() + ":" + entry.getTargetPath()));
+        }
+        return result;
+    }
+
+    private static PortMappings parsePortMappings(Map<String, String> tags) {
+        TreeMap<Integer, PortMappings.PortMappingEntry> entries = new TreeMap<>();
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!tag.getKey().startsWith(PORT_MAPPING_TAG_PREFIX)) {
+                continue;
+            }
+            String[] components;
+            try {
+                components = decodeTagValue(tag.getValue()).split(":", 3);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            if (components.length != 3) {
+                return null;
+            }
+            try {
+                int index = Integer.parseInt(tag.getKey().substring(PORT_MAPPING_TAG_PREFIX.length()));
+                entries.put(index, new PortMappings.PortMappingEntry(components[1], Integer.parseInt(components[0]), components[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return new PortMappings(new ArrayList<>(entries.values()));
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.backend.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksRequest;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksResponse;
+import software.amazon.awssdk.services.ecs.model.Failure;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Polls the status of ECS tasks that are being waited for (e.g. while starting or stopping).
+ * Instead of calling describeTasks for every task individually, the status of all pending tasks is requested using
+ * batched describeTasks calls (at most 100 tasks per call, the limit of the ECS API).
+ * When the ECS API throttles the requests, the poll interval is increased, it's decreased again once requests succeed.
+ * The requests also go through the {@link EcsRateLimiter}, when no token is available the remaining batches are
+ * postponed to the next poll, instead of blocking the poller.
+ */
+public class EcsTaskStatusPoller {
+
+    public static final int MAX_TASKS_PER_REQUEST = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final EcsClient ecsClient;
+    private final EcsRateLimiter rateLimiter;
+    private final String cluster;
+    private final long minInterval;
+    private final long maxInterval;
+    private final Set<PendingTask> pendingTasks = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "EcsTaskStatusPoller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile long currentInterval;
+
+    public EcsTaskStatusPoller(EcsClient ecsClient, EcsRateLimiter rateLimiter, String cluster, long minInterval, long maxInterval) {
+        this.ecsClient = ecsClient;
+        this.rateLimiter = rateLimiter;
+        this.cluster = cluster;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.currentInterval = minInterval;
+        executor.schedule(this::poll, minInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until the given task matches the predicate.
+     * The returned future is completed with the (latest) description of the task.
+     * When ECS reports that the task does not exist (anymore), the predicate is tested with null.
+     * When the caller is no longer interested in the task (e.g. because of a timeout), it should cancel the future.
+     *
+     * @param taskArn   the arn of the task
+     * @param predicate predicate that returns true once the task reached the expected state
+     * @return future completed with the description of the task
+     */
+    public CompletableFuture<Task> waitFor(String taskArn, Predicate<Task> predicate) {
+        CompletableFuture<Task> future = new CompletableFuture<>();
+        PendingTask pendingTask = new PendingTask(taskArn, future, predicate);
+        pendingTasks.add(pendingTask);
+        future.whenComplete((r, t) -> pendingTasks.remove(pendingTask));
+        return future;
+    }
+
+    public long getCurrentInterval() {
+        return currentInterval;
+    }
+
+    private void poll() {
+        try {
+            Map<String, List<PendingTask>> tasksByArn = pendingTasks.stream().collect(Collectors.groupingBy(PendingTask::taskArn));
+            List<String> taskArns = new ArrayList<>(tasksByArn.keySet());
+            for (int i = 0; i < taskArns.size(); i += MAX_TASKS_PER_REQUEST) {
+                List<String> batch = taskArns.subList(i, Math.min(i + MAX_TASKS_PER_REQUEST, taskArns.size()));
+                if (!rateLimiter.tryAcquire(EcsRateLimiter.Api.DESCRIBE_TASKS)) {
+                    // rate limited, the remaining batches are sent during the next poll
+                    break;
+                }
+                if (!describeBatch(batch, tasksByArn)) {
+                    // throttled, don't send the remaining batches
+                    break;
+                }
+            }
+        } catch (Throwable t) {
+            logger.warn("Error while polling status of ECS tasks", t);
+        } finally {
+            if (!executor.isShutdown()) {
+                executor.schedule(this::poll, currentInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private boolean describeBatch(List<String> taskArns, Map<String, List<PendingTask>> tasksByArn) {
+        DescribeTasksResponse response;
+        try {
+            response = ecsClient.describeTasks(DescribeTasksRequest.builder()
+                .cluster(cluster)
+                .tasks(taskArns)
+                .build());
+        } catch (AwsServiceException e) {
+            if (e.isThrottlingException()) {
+                currentInterval = Math.min(maxInterval, currentInterval * 2);
+                logger.debug("ECS describeTasks request throttled, increasing poll interval to {}ms", currentInterval);
+                return false;
+            }
+            throw e;
+        }
+        currentInterval = Math.max(minInterval, currentInterval / 2);
+
+        if (response.hasTasks()) {
+            for (Task task : response.tasks()) {
+                test(tasksByArn.get(task.taskArn()), task);
+            }
+        }
+        if (response.hasFailures()) {
+            for (Failure failure : response.failures()) {
+                if (Objects.equals(failure.reason(), "MISSING")) {
+                    test(tasksByArn.get(failure.arn()), null);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void test(List<PendingTask> waiting, Task task) {
+        if (waiting == null) {
+            return;
+        }
+        for (PendingTask pendingTask : waiting) {
+            try {
+                if (pendingTask.predicate.test(task)) {
+                    pendingTask.future.complete(task);
+                }
+            } catch (Throwable t) {
+                pendingTask.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        pendingTasks.forEach(pendingTask -> pendingTask.future.cancel(false));
+    }
+
+    private record PendingTask(String taskArn, CompletableFuture<Task> future, Predicate<Task> predicate) {
+    }
+
+}
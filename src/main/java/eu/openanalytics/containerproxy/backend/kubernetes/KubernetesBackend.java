@@ -373,7 +373,7 @@ public class KubernetesBackend extends AbstractContainerBackend {
             // create and start the pod
             Pod startedPod = kubeClient.pods().inNamespace(effectiveKubeNamespace).resource(patchedPod).create();
 
-            boolean podReady = Retrying.retry((currentAttempt, maxAttempts) -> {
+            boolean podReady = await(retryAsync((currentAttempt, maxAttempts) -> {
                 Pod pod = kubeClient.resource(startedPod).get();
                 Optional<String> error = getContainerFailure(pod);
                 if (error.isPresent()) {
@@ -384,7 +384,7 @@ public class KubernetesBackend extends AbstractContainerBackend {
                     return Retrying.FAILURE;
                 }
                 return Retrying.SUCCESS;
-            }, totalWaitMs, "Kubernetes Pod", 10, proxy, slog);
+            }, totalWaitMs, "Kubernetes Pod", 10, proxy));
 
             if (!podReady) {
                 // check a final time whether the pod is ready
@@ -428,7 +428,7 @@ public class KubernetesBackend extends AbstractContainerBackend {
                 // @formatter:on
 
                 // Workaround: waitUntilReady appears to be buggy.
-                Retrying.retry((currentAttempt, maxAttempts) -> new Retrying.Result(isServiceReady(kubeClient.resource(startupService).get())), 60_000);
+                await(retryAsync((currentAttempt, maxAttempts) -> new Retrying.Result(isServiceReady(kubeClient.resource(startupService).get())), 60_000, null, -1, proxy));
 
                 service = kubeClient.resource(startupService).get();
                 portBindings = service.getSpec().getPorts().stream()
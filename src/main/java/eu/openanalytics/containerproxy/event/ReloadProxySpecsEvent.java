@@ -0,0 +1,63 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.event;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * Sent to the other replicas after the specs have been reloaded by an admin, such that they reload the specs using the
+ * same configuration. Only contains the {@code proxy.specs} properties of the configuration file, the other properties
+ * (which may contain secrets) are not sent.
+ */
+@Value
+@EqualsAndHashCode(callSuper = true)
+@NoArgsConstructor(force = true, access = AccessLevel.PRIVATE) // Jackson deserialize compatibility
+public class ReloadProxySpecsEvent extends BridgeableEvent {
+
+    /**
+     * The (flattened) {@code proxy.specs} properties that were used to reload the specs.
+     */
+    Map<String, String> specProperties;
+
+    @JsonCreator
+    public ReloadProxySpecsEvent(@JsonProperty("source") String source,
+                                 @JsonProperty("specProperties") Map<String, String> specProperties) {
+        super(source);
+        this.specProperties = specProperties;
+    }
+
+    public ReloadProxySpecsEvent(Map<String, String> specProperties) {
+        this(SOURCE_NOT_AVAILABLE, specProperties);
+    }
+
+    @Override
+    public ReloadProxySpecsEvent withSource(String source) {
+        return new ReloadProxySpecsEvent(source, specProperties);
+    }
+
+}
@@ -25,7 +25,9 @@ import eu.openanalytics.containerproxy.util.ProxyHashMap;
 import org.springframework.core.env.Environment;
 
 import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -37,6 +39,7 @@ public abstract class AbstractLogStorage implements ILogStorage {
     protected Environment environment;
     protected String containerLogPath;
     private ConcurrentHashMap<String, LogPaths> proxyStreams = ProxyHashMap.create();
+    private ConcurrentHashMap<String, ReadableStreams> readableStreams = ProxyHashMap.create();
 
     @Override
     public void initialize() throws IOException {
@@ -53,15 +56,156 @@ public abstract class AbstractLogStorage implements ILogStorage {
         return proxyStreams.computeIfAbsent(proxy.getId(), (k) -> {
             String timestamp = new SimpleDateFormat("dd_MMM_yyyy_kk_mm_ss").format(new Date()); // TODO include time
             return new LogPaths(
-                Paths.get(containerLogPath, String.format("%s_%s_%s_stdout.log", proxy.getSpecId(), proxy.getId(), timestamp)),
-                Paths.get(containerLogPath, String.format("%s_%s_%s_stderr.log", proxy.getSpecId(), proxy.getId(), timestamp))
+                Paths.get(containerLogPath, getLogFilePrefix(proxy) + timestamp + getLogFileSuffix(LogType.Stdout)),
+                Paths.get(containerLogPath, getLogFilePrefix(proxy) + timestamp + getLogFileSuffix(LogType.Stderr))
             );
         });
     }
 
+    @Override
+    public LogChunk readLog(Proxy proxy, LogType type, long offset, int maxLength) throws IOException {
+        IReadableLogStream stream = getReadableStream(proxy, type);
+        if (stream == null) {
+            return null;
+        }
+        long end = stream.getReadableEnd();
+        long start = Math.min(Math.max(offset, stream.getReadableStart()), end);
+        byte[] data = read(stream, start, Math.min(end, start + maxLength));
+        int length = trimToLastLine(stream, data, start + data.length == end, data.length >= maxLength);
+        return new LogChunk(start, start + length, getSize(stream), new String(data, 0, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public LogChunk tailLog(Proxy proxy, LogType type, int lines, int maxLength) throws IOException {
+        IReadableLogStream stream = getReadableStream(proxy, type);
+        if (stream == null) {
+            return null;
+        }
+        long end = stream.getReadableEnd();
+        long lowerBound = Math.max(stream.getReadableStart(), end - maxLength);
+        // the index makes it possible to only read (approximately) the requested lines, instead of maxLength bytes
+        LogLineIndex index = stream.getIndex();
+        long lineOffset = -1;
+        if (index != null) {
+            // the index may cover output that cannot be read yet (e.g. the current S3 object), in that case count
+            // the lines from the last indexed line within the readable range
+            long lineCount = index.getSize() <= end ? index.getLineCount() : index.getLineBefore(end);
+            lineOffset = index.getOffsetBefore(lineCount - lines);
+        }
+        long start = Math.min(Math.max(lineOffset, lowerBound), end);
+        byte[] data = read(stream, start, end);
+        int length = trimToLastLine(stream, data, start + data.length == end, data.length >= maxLength);
+
+        // find the start of the requested lines, counting from the end
+        int first = length;
+        int count = 0;
+        while (first > 0 && count < lines) {
+            first--;
+            while (first > 0 && data[first - 1] != '\n') {
+                first--;
+            }
+            count++;
+        }
+        if (first == 0 && start != lineOffset && start != 0) {
+            // the first line is (possibly) incomplete
+            while (first < length && data[first] != '\n') {
+                first++;
+            }
+            first = Math.min(first + 1, length);
+        }
+        return new LogChunk(start + first, start + length, getSize(stream), new String(data, first, length - first, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Opens the output of the proxy as it's present in the storage, used when the output is not followed by this
+     * instance.
+     *
+     * @return the stream or null if the output cannot be found
+     */
+    protected IReadableLogStream openStoredLog(Proxy proxy, LogType type) throws IOException {
+        return null;
+    }
+
+    /**
+     * @return the prefix of the names of the log files of the proxy, the name continues with a timestamp, see {@link #getLogs}
+     */
+    protected static String getLogFilePrefix(Proxy proxy) {
+        return String.format("%s_%s_", proxy.getSpecId(), proxy.getId());
+    }
+
+    /**
+     * @return the suffix of the name of the (first) log file of the given type
+     */
+    protected static String getLogFileSuffix(LogType type) {
+        return type == LogType.Stdout ? "_stdout.log" : "_stderr.log";
+    }
+
+    /**
+     * Makes the output of the proxy available to {@link #readLog} and {@link #tailLog}.
+     */
+    protected void registerReadableStreams(Proxy proxy, IReadableLogStream stdout, IReadableLogStream stderr) {
+        readableStreams.put(proxy.getId(), new ReadableStreams(stdout, stderr));
+    }
+
+    /**
+     * Forgets the streams that are closed, should be called periodically.
+     */
+    protected void removeClosedReadableStreams() {
+        readableStreams.values().removeIf(streams -> streams.stdout.isClosed() && streams.stderr.isClosed());
+    }
+
+    private IReadableLogStream getReadableStream(Proxy proxy, LogType type) throws IOException {
+        ReadableStreams streams = readableStreams.get(proxy.getId());
+        if (streams == null) {
+            // the output is followed by another instance (i.e. the leader) or is no longer followed
+            return openStoredLog(proxy, type);
+        }
+        return type == LogType.Stdout ? streams.stdout : streams.stderr;
+    }
+
+    private static long getSize(IReadableLogStream stream) throws IOException {
+        return stream.getIndex() != null ? stream.getIndex().getSize() : stream.getReadableEnd();
+    }
+
+    private static byte[] read(IReadableLogStream stream, long start, long end) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        long position = start;
+        while (position < end) {
+            byte[] data = stream.read(position, (int) Math.min(Integer.MAX_VALUE, end - position));
+            if (data.length == 0) {
+                break;
+            }
+            result.writeBytes(data);
+            position += data.length;
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * @param atEnd whether the data ends at the end of the log
+     * @param full  whether the data has the maximum length
+     * @return the length of the data, excluding the last line if it's incomplete (i.e. more output of the line may
+     * follow), unless the data consists of a single line that is longer than the maximum length
+     */
+    private static int trimToLastLine(IReadableLogStream stream, byte[] data, boolean atEnd, boolean full) {
+        if (atEnd && stream.isClosed()) {
+            return data.length;
+        }
+        for (int i = data.length; i > 0; i--) {
+            if (data[i - 1] == '\n') {
+                return i;
+            }
+        }
+        return full ? data.length : 0;
+    }
+
     @Override
     public void stopService() {
         proxyStreams = ProxyHashMap.create();
+        readableStreams = ProxyHashMap.create();
+    }
+
+    private record ReadableStreams(IReadableLogStream stdout, IReadableLogStream stderr) {
     }
 
 }
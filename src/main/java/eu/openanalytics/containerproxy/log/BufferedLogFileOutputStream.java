@@ -0,0 +1,303 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a log file using a buffer, such that many small writes (e.g. a chunk per log line) result in a single write
+ * to the file.
+ *
+ * <p>
+ * The buffer is written to the file when it's full or when {@link #flushBuffer()} is called, which should be done
+ * periodically. The buffer is only allocated when output is written and is released again when no output was written
+ * since the previous {@link #flushBuffer()}, such that idle streams (e.g. the stderr of most apps) don't keep a buffer.
+ * Calls to {@link #flush()} are ignored, since some container backends (e.g. Docker) flush after every
+ * write. When the file reaches the maximum size, it is renamed to {@code x_stdout.1.log} (the next free index) and a
+ * new file is started.
+ * </p>
+ * <p>
+ * The output can be read back using offsets in the complete log (i.e. spanning the rotated files), see
+ * {@link IReadableLogStream}. Output in rotated files that have been compressed can no longer be read.
+ * </p>
+ */
+public class BufferedLogFileOutputStream extends OutputStream implements IReadableLogStream {
+
+    private final Path path;
+    private final long maxFileSize;
+    private final Consumer<Path> onRotated;
+    private final int bufferSize;
+    private final LogLineIndex index = new LogLineIndex(LogLineIndex.DEFAULT_INTERVAL, LogLineIndex.DEFAULT_MAX_ENTRIES);
+    private final List<RotatedFile> rotatedFiles = new ArrayList<>();
+    // not synchronized: writes are blocking I/O, which would pin the carrier of a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    private long fileSize;
+    // the offset in the complete log of the first byte of the current file
+    private long fileStart;
+    private ByteBuffer buffer;
+    private boolean closed;
+
+    /**
+     * @param bufferSize  the size (in bytes) of the buffer
+     * @param maxFileSize the size (in bytes) after which the file is rotated, or -1 to disable rotation
+     * @param onRotated   called with the path of every rotated file, may be null
+     */
+    public BufferedLogFileOutputStream(Path path, int bufferSize, long maxFileSize, Consumer<Path> onRotated) throws IOException {
+        this.path = path;
+        this.maxFileSize = maxFileSize;
+        this.onRotated = onRotated;
+        this.bufferSize = bufferSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len >= bufferSize) {
+                flushBuffer();
+                writeToFile(ByteBuffer.wrap(b, off, len));
+            } else {
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate(bufferSize);
+                } else if (len > buffer.remaining()) {
+                    flushBuffer();
+                }
+                buffer.put(b, off, len);
+            }
+            index.update(b, off, len);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ignored, see {@link #flushBuffer()}.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Writes the buffered output to the file, the buffer is released if nothing was written since the previous call.
+     */
+    public void flushBuffer() throws IOException {
+        lock.lock();
+        try {
+            if (closed || buffer == null) {
+                return;
+            }
+            if (buffer.position() == 0) {
+                buffer = null;
+                return;
+            }
+            buffer.flip();
+            try {
+                writeToFile(buffer);
+            } finally {
+                buffer.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                flushBuffer();
+            } finally {
+                closed = true;
+                buffer = null;
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public LogLineIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public long getReadableStart() {
+        lock.lock();
+        try {
+            for (RotatedFile rotatedFile : rotatedFiles) {
+                if (Files.exists(rotatedFile.path)) {
+                    return rotatedFile.start;
+                }
+            }
+            return fileStart;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getReadableEnd() {
+        lock.lock();
+        try {
+            return fileStart + fileSize + getBufferedSize();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        lock.lock();
+        try {
+            long bufferStart = fileStart + fileSize;
+            if (offset >= bufferStart) {
+                // output that is not yet written to the file
+                int position = (int) (offset - bufferStart);
+                byte[] result = new byte[Math.max(0, Math.min(length, getBufferedSize() - position))];
+                if (result.length > 0) {
+                    buffer.get(position, result);
+                }
+                return result;
+            }
+            if (offset >= fileStart) {
+                return readFile(path, offset - fileStart, (int) Math.min(length, bufferStart - offset));
+            }
+            for (RotatedFile rotatedFile : rotatedFiles) {
+                if (offset >= rotatedFile.start && offset < rotatedFile.end) {
+                    return readFile(rotatedFile.path, offset - rotatedFile.start, (int) Math.min(length, rotatedFile.end - offset));
+                }
+            }
+            return new byte[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int getBufferedSize() {
+        return buffer != null ? buffer.position() : 0;
+    }
+
+    static byte[] readFile(Path file, long position, int length) throws IOException {
+        ByteBuffer result = ByteBuffer.allocate(length);
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (result.hasRemaining() && readChannel.read(result, position + result.position()) >= 0) {
+                // continue until the requested length is read or the end of the file is reached
+            }
+        } catch (NoSuchFileException e) {
+            // the file has been compressed in the meantime
+            return new byte[0];
+        }
+        return Arrays.copyOf(result.array(), result.position());
+    }
+
+    private void writeToFile(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            fileSize += channel.write(data);
+        }
+        if (maxFileSize > 0 && fileSize >= maxFileSize) {
+            rotate();
+        }
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+        String fileName = path.getFileName().toString();
+        String baseName = fileName.endsWith(".log") ? fileName.substring(0, fileName.length() - ".log".length()) : fileName;
+        Path target;
+        int index = 1;
+        do {
+            target = path.resolveSibling(baseName + "." + index + ".log");
+            index++;
+        } while (Files.exists(target) || Files.exists(gzipPath(target)));
+        Files.move(path, target);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        rotatedFiles.add(new RotatedFile(target, fileStart, fileStart + fileSize));
+        fileStart += fileSize;
+        fileSize = 0;
+        if (onRotated != null) {
+            onRotated.accept(target);
+        }
+    }
+
+    /**
+     * Compresses the file using gzip, the original file is removed afterwards. The size of the original file is stored
+     * in a separate file (see {@link #uncompressedSizePath}), since gzip only stores it modulo 2^32.
+     */
+    public static void compress(Path file) throws IOException {
+        Path compressed = gzipPath(file);
+        Files.writeString(uncompressedSizePath(compressed), Long.toString(Files.size(file)));
+        try (InputStream in = Files.newInputStream(file); OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            in.transferTo(out);
+        }
+        Files.delete(file);
+    }
+
+    static Path gzipPath(Path file) {
+        return file.resolveSibling(file.getFileName() + ".gz");
+    }
+
+    static Path uncompressedSizePath(Path compressedFile) {
+        return compressedFile.resolveSibling(compressedFile.getFileName() + ".size");
+    }
+
+    private record RotatedFile(Path path, long start, long end) {
+    }
+
+}
@@ -21,27 +21,158 @@
 package eu.openanalytics.containerproxy.log;
 
 import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+/**
+ * Stores logs in files, the output is buffered (see {@link BufferedLogFileOutputStream}). The buffers are written to
+ * the files every {@code proxy.container-log-flush-interval} milliseconds (default 1000) or when they reach
+ * {@code proxy.container-log-buffer-size} bytes (default 64KiB).
+ * Files are rotated once they reach {@code proxy.container-log-max-file-size} bytes (disabled by default), rotated
+ * files are compressed in the background when {@code proxy.container-log-compress-rotated} is enabled.
+ * Instances that do not follow the output of a proxy read the files directly (without line index).
+ */
 public class FileLogStorage extends AbstractLogStorage {
 
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Set<BufferedLogFileOutputStream> streams = ConcurrentHashMap.newKeySet();
+    private int bufferSize;
+    private long maxFileSize;
+    private boolean compressRotated;
+    private ScheduledExecutorService executor;
+    // separate executor, such that compressing a (large) file doesn't delay flushing the buffers
+    private ExecutorService compressExecutor;
+
     @Override
     public void initialize() throws IOException {
         super.initialize();
         Files.createDirectories(Paths.get(containerLogPath));
+        bufferSize = environment.getProperty("proxy.container-log-buffer-size", Integer.class, 64 * 1024);
+        maxFileSize = environment.getProperty("proxy.container-log-max-file-size", Long.class, -1L);
+        compressRotated = environment.getProperty("proxy.container-log-compress-rotated", Boolean.class, false);
+        long flushInterval = environment.getProperty("proxy.container-log-flush-interval", Long.class, 1000L);
+
+        executor = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+            .namingPattern("FileLogStorage-%d")
+            .daemon(true)
+            .build());
+        executor.scheduleWithFixedDelay(this::flushStreams, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        if (compressRotated) {
+            compressExecutor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+                .namingPattern("FileLogStorageCompress-%d")
+                .daemon(true)
+                .build());
+        }
     }
 
     @Override
     public LogStreams createOutputStreams(Proxy proxy) throws IOException {
-        // TODO buffer
         LogPaths paths = getLogs(proxy);
-        return new LogStreams(
-            Files.newOutputStream(paths.getStdout()),
-            Files.newOutputStream(paths.getStderr())
-        );
+        BufferedLogFileOutputStream stdout = new BufferedLogFileOutputStream(paths.getStdout(), bufferSize, maxFileSize, this::onRotated);
+        BufferedLogFileOutputStream stderr = new BufferedLogFileOutputStream(paths.getStderr(), bufferSize, maxFileSize, this::onRotated);
+        streams.add(stdout);
+        streams.add(stderr);
+        registerReadableStreams(proxy, stdout, stderr);
+        return new LogStreams(stdout, stderr);
+    }
+
+    @Override
+    protected IReadableLogStream openStoredLog(Proxy proxy, LogType type) throws IOException {
+        String prefix = getLogFilePrefix(proxy);
+        String suffix = getLogFileSuffix(type);
+        Path current;
+        try (Stream<Path> files = Files.list(Paths.get(containerLogPath))) {
+            // there are multiple files when the output was followed again (e.g. after a restart), use the latest one
+            current = files
+                .filter(f -> f.getFileName().toString().startsWith(prefix) && f.getFileName().toString().endsWith(suffix))
+                .max(Comparator.comparingLong(f -> f.toFile().lastModified()))
+                .orElse(null);
+        }
+        if (current == null) {
+            return null;
+        }
+
+        // rotated files are numbered from old to new, the file without number is the current file
+        String fileName = current.getFileName().toString();
+        String baseName = fileName.substring(0, fileName.length() - ".log".length());
+        List<StoredLogStream.Part> parts = new ArrayList<>();
+        for (int i = 1; ; i++) {
+            Path rotated = current.resolveSibling(baseName + "." + i + ".log");
+            Path compressed = BufferedLogFileOutputStream.gzipPath(rotated);
+            if (Files.exists(rotated)) {
+                parts.add(new StoredLogStream.Part(rotated.toString(), Files.size(rotated), true));
+            } else if (Files.exists(compressed)) {
+                parts.add(new StoredLogStream.Part(compressed.toString(), getUncompressedSize(compressed), false));
+            } else {
+                break;
+            }
+        }
+        parts.add(new StoredLogStream.Part(current.toString(), Files.size(current), true));
+        return new StoredLogStream(parts, (name, position, length) -> BufferedLogFileOutputStream.readFile(Paths.get(name), position, length));
+    }
+
+    /**
+     * @return the size of the uncompressed content of a gzip file, as recorded when the file was compressed. Files
+     * compressed by older versions only have the size stored (modulo 2^32) in their last 4 bytes.
+     */
+    private static long getUncompressedSize(Path file) throws IOException {
+        Path sizeFile = BufferedLogFileOutputStream.uncompressedSizePath(file);
+        if (Files.exists(sizeFile)) {
+            return Long.parseLong(Files.readString(sizeFile).trim());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(size, channel.size() - 4);
+            return Integer.toUnsignedLong(size.getInt(0));
+        }
+    }
+
+    private void flushStreams() {
+        for (BufferedLogFileOutputStream stream : streams) {
+            if (stream.isClosed()) {
+                streams.remove(stream);
+                continue;
+            }
+            try {
+                stream.flushBuffer();
+            } catch (IOException e) {
+                logger.error("Failed to flush log file", e);
+            }
+        }
+        removeClosedReadableStreams();
+    }
+
+    private void onRotated(Path file) {
+        if (!compressRotated) {
+            return;
+        }
+        compressExecutor.submit(() -> {
+            try {
+                BufferedLogFileOutputStream.compress(file);
+            } catch (IOException e) {
+                logger.error("Failed to compress log file {}", file, e);
+            }
+        });
     }
 
 }
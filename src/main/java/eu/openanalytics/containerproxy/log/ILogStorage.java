@@ -34,6 +34,27 @@ public interface ILogStorage {
 
     LogPaths getLogs(Proxy proxy);
 
+    /**
+     * Reads the output of a proxy, starting from the given offset. The content ends at a line boundary, unless a single
+     * line is longer than maxLength. Output that is no longer available is skipped.
+     * When the output is followed by another instance, the output that has been stored so far is read (i.e. excluding
+     * buffered output, or for S3, the output of the object that is not yet completed).
+     *
+     * @param offset    the offset to start from, e.g. the nextOffset of the previous read
+     * @param maxLength the maximum number of bytes to return
+     * @return the output or null if no output of this proxy is found
+     */
+    LogChunk readLog(Proxy proxy, LogType type, long offset, int maxLength) throws IOException;
+
+    /**
+     * Reads the last lines of the output of a proxy.
+     *
+     * @param lines     the number of lines to return
+     * @param maxLength the maximum number of bytes to return, fewer lines are returned if they exceed this length
+     * @return the output or null if no output of this proxy is found
+     */
+    LogChunk tailLog(Proxy proxy, LogType type, int lines, int maxLength) throws IOException;
+
     void stopService();
 
 }
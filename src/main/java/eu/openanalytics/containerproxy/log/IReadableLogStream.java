@@ -0,0 +1,55 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.log;
+
+import java.io.IOException;
+
+/**
+ * Log output stream of which the output can be read back while it is written, see {@link ILogStorage#readLog}.
+ * The offsets are byte offsets in the complete log, also when the storage split the log in multiple files or objects.
+ */
+public interface IReadableLogStream {
+
+    /**
+     * @return the index of the lines, or null if no index is available (tail reads are then limited by the maximum length)
+     */
+    LogLineIndex getIndex();
+
+    /**
+     * @return the offset of the first byte that can be read, output before this offset is no longer available (e.g.
+     * because the file was compressed)
+     */
+    long getReadableStart() throws IOException;
+
+    /**
+     * @return the offset directly after the last byte that can be read
+     */
+    long getReadableEnd() throws IOException;
+
+    /**
+     * Reads at most {@code length} bytes starting from the given offset, which must be within the readable range.
+     * Fewer bytes may be returned, e.g. at the end of a file.
+     */
+    byte[] read(long offset, int length) throws IOException;
+
+    boolean isClosed();
+
+}
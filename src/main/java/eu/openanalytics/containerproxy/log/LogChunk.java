@@ -0,0 +1,54 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.log;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+
+/**
+ * Part of a log, returned by the range reads of {@link ILogStorage}.
+ * The offsets are byte offsets in the log, a client can poll for new output by passing {@code nextOffset} as the
+ * offset of the next read.
+ */
+@Value
+@EqualsAndHashCode
+@AllArgsConstructor
+public class LogChunk {
+
+    /**
+     * The offset of the first byte of the content.
+     */
+    long offset;
+
+    /**
+     * The offset directly after the content.
+     */
+    long nextOffset;
+
+    /**
+     * The number of bytes written to the log so far (including output that cannot be read yet).
+     */
+    long size;
+
+    String content;
+
+}
@@ -0,0 +1,143 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.log;
+
+import java.util.Arrays;
+
+/**
+ * Sparse index of the line offsets of a log, maintained while the log is written.
+ *
+ * <p>
+ * Only the start of a line that begins at least {@code interval} bytes after the previous entry is recorded, such that
+ * the index remains small. When the index is full, every other entry is dropped and the interval is doubled, the memory
+ * used by the index is therefore bounded, regardless of the size of the log.
+ * </p>
+ */
+public class LogLineIndex {
+
+    public static final long DEFAULT_INTERVAL = 64 * 1024;
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final int maxEntries;
+    private long interval;
+    private long[] lines;
+    private long[] offsets;
+    private int entries;
+    private long size;
+    private long lineCount;
+
+    /**
+     * @param interval   the minimum number of bytes between two entries
+     * @param maxEntries the maximum number of entries
+     */
+    public LogLineIndex(long interval, int maxEntries) {
+        if (interval <= 0 || maxEntries < 2) {
+            throw new IllegalArgumentException("Interval must be positive and max entries must be at least 2");
+        }
+        this.interval = interval;
+        this.maxEntries = maxEntries;
+        this.lines = new long[maxEntries];
+        this.offsets = new long[maxEntries];
+        // the first line always starts at offset 0
+        this.entries = 1;
+    }
+
+    /**
+     * Updates the index with output that was appended to the log.
+     */
+    public synchronized void update(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (b[i] != '\n') {
+                continue;
+            }
+            lineCount++;
+            long lineStart = size + (i - off) + 1;
+            if (lineStart - offsets[entries - 1] >= interval) {
+                addEntry(lineCount, lineStart);
+            }
+        }
+        size += len;
+    }
+
+    /**
+     * @return the number of bytes written to the log
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of complete (i.e. newline terminated) lines written to the log
+     */
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the offset of the last indexed line that starts at or before the given line
+     */
+    public synchronized long getOffsetBefore(long line) {
+        int index = Arrays.binarySearch(lines, 0, entries, line);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return offsets[Math.max(index, 0)];
+    }
+
+    /**
+     * @return the last indexed line that starts at or before the given offset
+     */
+    public synchronized long getLineBefore(long offset) {
+        int index = Arrays.binarySearch(offsets, 0, entries, offset);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return lines[Math.max(index, 0)];
+    }
+
+    /**
+     * @return the number of entries in the index
+     */
+    public synchronized int getEntries() {
+        return entries;
+    }
+
+    private void addEntry(long line, long offset) {
+        if (entries == maxEntries) {
+            // keep the first entry (offset 0) and every other entry
+            int kept = 1;
+            for (int i = 2; i < entries; i += 2) {
+                lines[kept] = lines[i];
+                offsets[kept] = offsets[i];
+                kept++;
+            }
+            entries = kept;
+            interval *= 2;
+            if (offset - offsets[entries - 1] < interval) {
+                return;
+            }
+        }
+        lines[entries] = line;
+        offsets[entries] = offset;
+        entries++;
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the total amount of memory used to buffer log output, shared by all streams of a log storage.
+ */
+public class LogMemoryBudget {
+
+    private final long maxBytes;
+    private final AtomicLong used = new AtomicLong();
+
+    /**
+     * @param maxBytes the maximum number of bytes that may be reserved
+     */
+    public LogMemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reserves memory, only if the reservation fits in the budget.
+     *
+     * @return whether the memory was reserved
+     */
+    public boolean tryReserve(long bytes) {
+        while (true) {
+            long current = used.get();
+            if (current + bytes > maxBytes) {
+                return false;
+            }
+            if (used.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long bytes) {
+        used.addAndGet(-bytes);
+    }
+
+    /**
+     * @return the number of bytes that are reserved
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+}
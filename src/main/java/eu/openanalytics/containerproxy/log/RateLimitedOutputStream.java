@@ -0,0 +1,128 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.log;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate at which output is written to the underlying stream, using a token bucket (one token per byte).
+ * When the limit is exceeded, the writer waits until enough tokens are available. The thread following the logs of a
+ * container is therefore slowed down (the output remains available in the container backend), without affecting the
+ * logs of other containers. The streams of a container (i.e. stdout and stderr) should share a single
+ * {@link TokenBucket}, such that the limit applies to the total output of the container.
+ */
+public class RateLimitedOutputStream extends FilterOutputStream {
+
+    private final TokenBucket bucket;
+
+    /**
+     * @param bytesPerSecond the sustained rate
+     * @param burst          the number of bytes that can be written at once, without waiting
+     */
+    public RateLimitedOutputStream(OutputStream out, long bytesPerSecond, long burst) {
+        this(out, new TokenBucket(bytesPerSecond, burst));
+    }
+
+    public RateLimitedOutputStream(OutputStream out, TokenBucket bucket) {
+        super(out);
+        this.bucket = bucket;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long waitNanos = bucket.reserve(len);
+        if (waitNanos > 0) {
+            try {
+                sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        out.write(b, off, len);
+    }
+
+    protected void sleep(long waitNanos) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+    public static class TokenBucket {
+
+        private final double capacity;
+        private final double bytesPerNano;
+        private final LongSupplier ticker;
+        private double tokens;
+        private long lastRefill;
+
+        /**
+         * @param bytesPerSecond the sustained rate
+         * @param burst          the number of bytes that can be written at once, without waiting
+         */
+        public TokenBucket(long bytesPerSecond, long burst) {
+            this(bytesPerSecond, burst, System::nanoTime);
+        }
+
+        /**
+         * @param bytesPerSecond the sustained rate
+         * @param burst          the number of bytes that can be written at once, without waiting
+         * @param ticker         source of the current time in nanoseconds
+         */
+        public TokenBucket(long bytesPerSecond, long burst, LongSupplier ticker) {
+            if (bytesPerSecond <= 0 || burst <= 0) {
+                throw new IllegalArgumentException("Rate and burst must be positive");
+            }
+            this.capacity = burst;
+            this.bytesPerNano = (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.ticker = ticker;
+            this.tokens = burst;
+            this.lastRefill = ticker.getAsLong();
+        }
+
+        /**
+         * Takes the tokens for the given number of bytes, the number of tokens may become negative, in which case the
+         * tokens are reserved.
+         *
+         * @return the time (in nanoseconds) the writer has to wait before writing
+         */
+        public synchronized long reserve(int len) {
+            long now = ticker.getAsLong();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * bytesPerNano);
+            lastRefill = now;
+            tokens -= len;
+            if (tokens >= 0) {
+                return 0;
+            }
+            return (long) Math.ceil(-tokens / bytesPerNano);
+        }
+
+    }
+
+}
@@ -21,34 +21,36 @@
 package eu.openanalytics.containerproxy.log;
 
 import eu.openanalytics.containerproxy.model.runtime.Proxy;
-import eu.openanalytics.containerproxy.util.ProxyHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.bouncycastle.util.Arrays;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.ResponseBytes;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3ClientBuilder;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.GetObjectResponse;
-import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.S3Exception;
-import software.amazon.awssdk.services.s3.model.ServerSideEncryption;
-
-import java.io.BufferedOutputStream;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URI;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * Stores logs in S3. Because S3 requests come with a cost and in order to reduce CPU usage, this class buffers the logs
- * and only write the logs to S3 either every 10 seconds or when the buffer reaches 1MB.
+ * Stores logs in S3. Every log file is written using a multipart upload (see {@link S3MultipartOutputStream}), such
+ * that the output is uploaded once and not re-uploaded on every write. The upload is completed when the container stops
+ * or when the rollover interval ({@code proxy.container-log-s3-rollover-interval}, default 5 minutes) has passed, in
+ * which case the logs are continued in a new object. Output only becomes readable once its object is completed.
+ * At most {@code proxy.container-log-s3-max-buffer-memory} bytes (default 128MiB) of output is buffered in memory (for all
+ * streams together), the buffers of the streams that exceed this limit are stored in temporary files.
+ * Instances that do not follow the output of a proxy read the completed objects directly (without line index).
  */
 public class S3LogStorage extends AbstractLogStorage {
 
@@ -56,7 +58,10 @@ public class S3LogStorage extends AbstractLogStorage {
     private String bucketName;
     private String bucketPath;
     private boolean enableSSE;
-    private ConcurrentHashMap<String, LogStreams> proxyStreams = ProxyHashMap.create();
+    private int partSize;
+    private long rolloverInterval;
+    private LogMemoryBudget memoryBudget;
+    private Set<S3MultipartOutputStream> streams = ConcurrentHashMap.newKeySet();
 
     private S3Client s3Client;
 
@@ -84,6 +89,10 @@ public class S3LogStorage extends AbstractLogStorage {
 
         s3Client = s3ClientBuilder.build();
         enableSSE = environment.getProperty("proxy.container-log-s3-sse", Boolean.class, false);
+        partSize = Math.max(S3MultipartOutputStream.MIN_PART_SIZE,
+            environment.getProperty("proxy.container-log-s3-part-size", Integer.class, S3MultipartOutputStream.MIN_PART_SIZE));
+        rolloverInterval = environment.getProperty("proxy.container-log-s3-rollover-interval", Long.class, TimeUnit.MINUTES.toMillis(5));
+        memoryBudget = new LogMemoryBudget(environment.getProperty("proxy.container-log-s3-max-buffer-memory", Long.class, 128L * 1024 * 1024));
 
         String subPath = containerLogPath.substring("s3://".length()).trim();
         if (subPath.endsWith("/")) subPath = subPath.substring(0, subPath.length() - 1);
@@ -100,149 +109,82 @@ public class S3LogStorage extends AbstractLogStorage {
         new Timer().schedule(new TimerTask() {
             @Override
             public void run() {
-                flushAllStreams();
+                rolloverStreams();
             }
         }, 10000, 10000);
     }
 
-    /**
-     * Creates OutputStreams for the given Proxy object.
-     *
-     * <p>
-     * The {@link S3OutputStream} is wrapped into a {@link BufferedOutputStream} with a buffer of 1MB.
-     * When this buffer is full, it will get flushed and the logs are written to S3.
-     * The {@link BufferedOutputStream} is stored in this class and a timer calls the flush method every 10 seconds.
-     * Therefore, the latest logs (if any) are written to S3 every 10 seconds.
-     * Finally, the {@link BufferedOutputStream} are wrapped in {@link IgnoreFlushOutputStream} streams, such that
-     * the flush method is ignored. This is important, since some container backends (e.g. Docker) flushes the logs
-     * for ever write, which would mean we re-upload the log file to S3 for every write.
-     * </p>
-     *
-     * @param proxy the proxy to create outputstreams for
-     * @return the streams for this proxy
-     */
     @Override
     public LogStreams createOutputStreams(Proxy proxy) {
         LogPaths paths = getLogs(proxy);
-        BufferedOutputStream stdout = new BufferedOutputStream(new S3OutputStream(bucketPath + paths.getStdout().getFileName().toString()), 1024 * 1024);
-        BufferedOutputStream stderr = new BufferedOutputStream(new S3OutputStream(bucketPath + paths.getStderr().getFileName().toString()), 1024 * 1024);
-        proxyStreams.put(proxy.getId(), new LogStreams(stdout, stderr));
-        return new LogStreams(new IgnoreFlushOutputStream(stdout), new IgnoreFlushOutputStream(stderr));
+        S3MultipartOutputStream stdout = new S3MultipartOutputStream(s3Client, bucketName, bucketPath + paths.getStdout().getFileName().toString(), partSize, rolloverInterval, enableSSE, memoryBudget);
+        S3MultipartOutputStream stderr = new S3MultipartOutputStream(s3Client, bucketName, bucketPath + paths.getStderr().getFileName().toString(), partSize, rolloverInterval, enableSSE, memoryBudget);
+        streams.add(stdout);
+        streams.add(stderr);
+        registerReadableStreams(proxy, stdout, stderr);
+        return new LogStreams(stdout, stderr);
     }
 
     @Override
-    public void stopService() {
-        super.stopService();
-        proxyStreams = ProxyHashMap.create();
-    }
-
-    private void doUpload(String key, byte[] bytes) throws IOException {
-        byte[] bytesToUpload = bytes;
-
-        byte[] originalBytes = getContent(key);
-        if (originalBytes != null) {
-            bytesToUpload = Arrays.copyOf(originalBytes, originalBytes.length + bytes.length);
-            System.arraycopy(bytes, 0, bytesToUpload, originalBytes.length, bytes.length);
+    protected IReadableLogStream openStoredLog(Proxy proxy, LogType type) throws IOException {
+        String prefix = bucketPath + getLogFilePrefix(proxy);
+        String suffix = getLogFileSuffix(type);
+        List<S3Object> objects;
+        try {
+            objects = s3Client.listObjectsV2Paginator(request -> request.bucket(bucketName).prefix(prefix)).contents().stream().toList();
+        } catch (SdkException e) {
+            throw new IOException(e);
         }
 
-        if (log.isDebugEnabled()) log.debug(String.format("Writing log file to S3 [size: %d] [path: %s]", bytesToUpload.length, key));
-
-        PutObjectRequest.Builder builder = PutObjectRequest.builder()
-            .bucket(bucketName)
-            .key(key);
-
-        if (enableSSE) {
-            builder.serverSideEncryption(ServerSideEncryption.AES256);
+        // there are multiple logs when the output was followed again (e.g. after a restart), use the latest one
+        S3Object first = objects.stream()
+            .filter(o -> o.key().endsWith(suffix))
+            .max(Comparator.comparing(S3Object::lastModified))
+            .orElse(null);
+        if (first == null) {
+            return null;
         }
 
-        try {
-            s3Client.putObject(builder.build(), RequestBody.fromBytes(bytesToUpload));
-        } catch (S3Exception e) {
-            throw new IOException(e);
+        // the objects started after a rollover are numbered (e.g. x_stdout.1.log), the current object is not yet visible
+        String baseName = first.key().substring(0, first.key().length() - ".log".length());
+        Pattern rolledOver = Pattern.compile(Pattern.quote(baseName) + "\\.(\\d+)\\.log");
+        TreeMap<Integer, S3Object> ordered = new TreeMap<>();
+        ordered.put(0, first);
+        for (S3Object object : objects) {
+            Matcher matcher = rolledOver.matcher(object.key());
+            if (matcher.matches()) {
+                ordered.put(Integer.parseInt(matcher.group(1)), object);
+            }
         }
+        List<StoredLogStream.Part> parts = ordered.values().stream()
+            .map(o -> new StoredLogStream.Part(o.key(), o.size(), true))
+            .toList();
+        return new StoredLogStream(parts, (key, position, length) -> S3MultipartOutputStream.readObject(s3Client, bucketName, key, position, length));
     }
 
-    private byte[] getContent(String key) {
-        try {
-            ResponseBytes<GetObjectResponse> object = s3Client.getObjectAsBytes(
-                GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .build());
-
-            return object.asByteArray();
-        } catch (NoSuchKeyException e) {
-            return null;
-        }
+    @Override
+    public void stopService() {
+        super.stopService();
+        streams = ConcurrentHashMap.newKeySet();
     }
 
     /**
-     * Flushes all streams of all proxies.
+     * Completes the uploads of the streams that reached the rollover interval (even if there was no output since) and
+     * forgets the streams that are closed.
      */
-    private void flushAllStreams() {
-        for (LogStreams streams : proxyStreams.values()) {
-            try {
-                streams.getStdout().flush();
-            } catch (IOException e) {
-                log.error("Failed to flush S3 log stream", e);
+    private void rolloverStreams() {
+        for (S3MultipartOutputStream stream : streams) {
+            if (stream.isClosed()) {
+                streams.remove(stream);
+                continue;
             }
             try {
-                streams.getStderr().flush();
+                stream.rolloverIfExpired();
             } catch (IOException e) {
-                log.error("Failed to flush S3 log stream", e);
+                log.error("Failed to complete S3 log stream", e);
             }
         }
+        removeClosedReadableStreams();
     }
 
-    /**
-     * A {@link OutputStream} that wraps a {@link BufferedOutputStream} and ignores any calls to {@link #flush()}.
-     */
-    private static class IgnoreFlushOutputStream extends OutputStream {
-
-        private final BufferedOutputStream bufferedOutputStream;
-
-        public IgnoreFlushOutputStream(BufferedOutputStream bufferedOutputStream) {
-            this.bufferedOutputStream = bufferedOutputStream;
-        }
-
-        @Override
-        public void write(int i) throws IOException {
-            bufferedOutputStream.write(i);
-
-        }
-
-        @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            bufferedOutputStream.write(b, off, len);
-        }
-
-        @Override
-        public void flush() {
-            // ignore external flush requests
-        }
-
-    }
-
-    private class S3OutputStream extends OutputStream {
-
-        private final String s3Key;
-
-        public S3OutputStream(String s3Key) {
-            this.s3Key = s3Key;
-        }
-
-        @Override
-        public void write(int b) throws IOException {
-            // Warning: highly inefficient. Always write arrays.
-            byte[] bytesToCopy = new byte[]{(byte) b};
-            write(bytesToCopy, 0, 1);
-        }
-
-        @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            byte[] bytesToCopy = new byte[len];
-            System.arraycopy(b, off, bytesToCopy, 0, len);
-            doUpload(s3Key, bytesToCopy);
-        }
-    }
 }
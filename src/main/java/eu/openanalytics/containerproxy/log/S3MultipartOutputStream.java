@@ -0,0 +1,462 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.log;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryption;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes a log file to S3 using a multipart upload.
+ *
+ * <p>
+ * The output is buffered until the buffer reaches the part size (at least 5MiB, the minimum size of a part), the
+ * buffer is then uploaded as the next part. When the stream is closed, the remaining output is uploaded as the last
+ * part and the upload is completed. Output that never reaches the part size is uploaded using a single PutObject
+ * request instead.
+ * </p>
+ * <p>
+ * The buffer is kept in memory, as long as the {@link LogMemoryBudget} shared by the streams allows it. Otherwise, the
+ * buffer is moved to a temporary file. When an upload fails, the output remains buffered and the upload is retried by
+ * {@link #rolloverIfExpired()} (or by a write, at most every {@value #RETRY_INTERVAL} ms), the error is not passed to
+ * the writer (e.g. the thread following the output of the container).
+ * </p>
+ * <p>
+ * An object only becomes visible once its upload is completed. Therefore, the upload is completed after the rollover
+ * interval, the output that follows is written to a new object (e.g. {@code x_stdout.1.log}, {@code x_stdout.2.log}).
+ * The rollover is checked on every write and by {@link #rolloverIfExpired()}, which should be called periodically.
+ * </p>
+ * <p>
+ * The completed objects can be read back using offsets in the complete log (i.e. spanning all objects), using ranged
+ * GetObject requests, see {@link IReadableLogStream}.
+ * </p>
+ */
+public class S3MultipartOutputStream extends OutputStream implements IReadableLogStream {
+
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final long RETRY_INTERVAL = 10_000;
+
+    private final Logger log = LogManager.getLogger(S3MultipartOutputStream.class);
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String baseKey;
+    private final int partSize;
+    private final long rolloverInterval;
+    private final boolean enableSSE;
+    private final PartBuffer buffer;
+    private final List<CompletedPart> parts = new ArrayList<>();
+    private final LogLineIndex index = new LogLineIndex(LogLineIndex.DEFAULT_INTERVAL, LogLineIndex.DEFAULT_MAX_ENTRIES);
+    private final List<CompletedObject> completedObjects = new ArrayList<>();
+    // not synchronized: uploads are blocking I/O, which would pin the carrier of a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private int objectIndex = 0;
+    private String key;
+    private String uploadId;
+    private long objectStarted;
+    // the offset in the complete log of the first byte of the current object
+    private long objectStart;
+    private long objectSize;
+    private boolean closed;
+    private long retryAfter;
+
+    /**
+     * @param partSize         the size of a part (in bytes), should be at least {@link #MIN_PART_SIZE}
+     * @param rolloverInterval the time (in milliseconds) after which a new object is started, or 0 to disable rollover
+     */
+    public S3MultipartOutputStream(S3Client s3Client, String bucketName, String key, int partSize, long rolloverInterval, boolean enableSSE) {
+        this(s3Client, bucketName, key, partSize, rolloverInterval, enableSSE, null);
+    }
+
+    /**
+     * @param partSize         the size of a part (in bytes), should be at least {@link #MIN_PART_SIZE}
+     * @param rolloverInterval the time (in milliseconds) after which a new object is started, or 0 to disable rollover
+     * @param memoryBudget     the budget for buffering output in memory, or null to always buffer in memory
+     */
+    public S3MultipartOutputStream(S3Client s3Client, String bucketName, String key, int partSize, long rolloverInterval, boolean enableSSE, LogMemoryBudget memoryBudget) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("Part size must be at least " + MIN_PART_SIZE + " bytes");
+        }
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.baseKey = key;
+        this.key = key;
+        this.partSize = partSize;
+        this.rolloverInterval = rolloverInterval;
+        this.enableSSE = enableSSE;
+        this.buffer = new PartBuffer(memoryBudget);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            if (!hasOutput()) {
+                objectStarted = System.currentTimeMillis();
+            }
+            buffer.write(b, off, len);
+            objectSize += len;
+            index.update(b, off, len);
+            if (System.currentTimeMillis() < retryAfter) {
+                return;
+            }
+            try {
+                if (buffer.size() >= partSize) {
+                    uploadPart();
+                }
+                if (isRolloverExpired()) {
+                    completeObject();
+                }
+            } catch (IOException e) {
+                // the output remains buffered, the upload is retried later
+                retryAfter = System.currentTimeMillis() + RETRY_INTERVAL;
+                log.warn(String.format("Failed to upload log file to S3, retrying later [path: %s]", key), e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ignored: some container backends (e.g. Docker) flush after every write, parts can only be uploaded once they
+     * reach the part size.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Retries the upload of a part that failed before and completes the current object if the rollover interval has
+     * passed since its first output.
+     */
+    public void rolloverIfExpired() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (buffer.size() >= partSize) {
+                uploadPart();
+            }
+            if (isRolloverExpired()) {
+                completeObject();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                completeObject();
+            } catch (IOException e) {
+                abort();
+                throw e;
+            } finally {
+                buffer.reset();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public LogLineIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public long getReadableStart() {
+        lock.lock();
+        try {
+            return completedObjects.isEmpty() ? 0 : completedObjects.getFirst().start;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getReadableEnd() {
+        lock.lock();
+        try {
+            return completedObjects.isEmpty() ? 0 : completedObjects.getLast().end;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads from the completed objects, output of the current object cannot be read until the object is completed.
+     */
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        CompletedObject object;
+        lock.lock();
+        try {
+            object = completedObjects.stream()
+                .filter(o -> offset >= o.start && offset < o.end)
+                .findFirst()
+                .orElse(null);
+        } finally {
+            lock.unlock();
+        }
+        if (object == null || length <= 0) {
+            return new byte[0];
+        }
+        return readObject(s3Client, bucketName, object.key, offset - object.start, (int) Math.min(length, object.end - offset));
+    }
+
+    /**
+     * Reads a range of an object using a ranged GetObject request.
+     */
+    static byte[] readObject(S3Client s3Client, String bucketName, String key, long position, int length) throws IOException {
+        long last = position + length - 1;
+        try {
+            return s3Client.getObjectAsBytes(request -> request
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + position + "-" + last)
+            ).asByteArray();
+        } catch (NoSuchKeyException e) {
+            return new byte[0];
+        } catch (SdkException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private boolean hasOutput() {
+        return uploadId != null || buffer.size() > 0;
+    }
+
+    private boolean isRolloverExpired() {
+        return rolloverInterval > 0 && hasOutput() && System.currentTimeMillis() - objectStarted >= rolloverInterval;
+    }
+
+    private void uploadPart() throws IOException {
+        try {
+            if (uploadId == null) {
+                CreateMultipartUploadRequest.Builder request = CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key);
+                if (enableSSE) {
+                    request.serverSideEncryption(ServerSideEncryption.AES256);
+                }
+                uploadId = s3Client.createMultipartUpload(request.build()).uploadId();
+            }
+            int partNumber = parts.size() + 1;
+            String eTag = s3Client.uploadPart(request -> request
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber),
+                buffer.toRequestBody()).eTag();
+            parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+            // only cleared after a successful upload, such that the next write retries the upload
+            buffer.reset();
+            if (log.isDebugEnabled()) log.debug(String.format("Uploaded part %d of log file to S3 [path: %s]", partNumber, key));
+        } catch (SdkException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Completes the current object, when this fails the current object remains as is, such that it can be retried.
+     */
+    private void completeObject() throws IOException {
+        try {
+            if (uploadId == null) {
+                if (buffer.size() > 0) {
+                    PutObjectRequest.Builder request = PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key);
+                    if (enableSSE) {
+                        request.serverSideEncryption(ServerSideEncryption.AES256);
+                    }
+                    s3Client.putObject(request.build(), buffer.toRequestBody());
+                }
+            } else {
+                if (buffer.size() > 0) {
+                    uploadPart();
+                }
+                s3Client.completeMultipartUpload(request -> request
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(upload -> upload.parts(parts)));
+            }
+        } catch (SdkException e) {
+            throw new IOException(e);
+        }
+        if (objectSize > 0) {
+            completedObjects.add(new CompletedObject(key, objectStart, objectStart + objectSize));
+        }
+        if (log.isDebugEnabled()) log.debug(String.format("Completed log file in S3 [path: %s]", key));
+        uploadId = null;
+        parts.clear();
+        buffer.reset();
+        objectStart += objectSize;
+        objectSize = 0;
+        objectIndex++;
+        key = baseKey.endsWith(".log")
+            ? baseKey.substring(0, baseKey.length() - ".log".length()) + "." + objectIndex + ".log"
+            : baseKey + "." + objectIndex;
+    }
+
+    private void abort() {
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            s3Client.abortMultipartUpload(request -> request
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId));
+        } catch (SdkException e) {
+            log.warn(String.format("Failed to abort multipart upload of log file [path: %s]", key), e);
+        }
+    }
+
+    private record CompletedObject(String key, long start, long end) {
+    }
+
+    /**
+     * Buffer of the next part, kept in memory while the budget allows it, otherwise in a temporary file.
+     */
+    private static class PartBuffer {
+
+        private final LogMemoryBudget memoryBudget;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private long reserved;
+        private Path file;
+        private FileChannel fileChannel;
+        private long size;
+
+        private PartBuffer(LogMemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            if (fileChannel == null && (memoryBudget == null || memoryBudget.tryReserve(len))) {
+                memory.write(b, off, len);
+                reserved += len;
+            } else {
+                if (fileChannel == null) {
+                    moveToFile();
+                }
+                ByteBuffer data = ByteBuffer.wrap(b, off, len);
+                while (data.hasRemaining()) {
+                    fileChannel.write(data);
+                }
+            }
+            size += len;
+        }
+
+        private void moveToFile() throws IOException {
+            file = Files.createTempFile("sp-s3-log-", ".part");
+            fileChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+            ByteBuffer data = ByteBuffer.wrap(memory.toByteArray());
+            while (data.hasRemaining()) {
+                fileChannel.write(data);
+            }
+            releaseMemory();
+        }
+
+        private long size() {
+            return size;
+        }
+
+        private RequestBody toRequestBody() {
+            return file != null ? RequestBody.fromFile(file) : RequestBody.fromBytes(memory.toByteArray());
+        }
+
+        private void reset() {
+            releaseMemory();
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LogManager.getLogger(S3MultipartOutputStream.class).warn("Failed to remove temporary log file {}", file, e);
+                }
+                fileChannel = null;
+                file = null;
+            }
+            size = 0;
+        }
+
+        private void releaseMemory() {
+            // a new stream is created such that the memory of the array is freed
+            memory = new ByteArrayOutputStream();
+            if (memoryBudget != null) {
+                memoryBudget.release(reserved);
+            }
+            reserved = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.log;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Read-only view of a log, based on the files or objects that are present in the storage. Used when the log is not
+ * followed by this instance (e.g. it's followed by the leader or the container has stopped), in which case no
+ * {@link LogLineIndex} is available.
+ *
+ * <p>
+ * The parts must be given in the order they were written, such that the offsets match the offsets used by the stream
+ * that writes the log. Parts that can no longer be read (e.g. compressed files) must still be included with their
+ * (uncompressed) size.
+ * </p>
+ */
+public class StoredLogStream implements IReadableLogStream {
+
+    private final List<Part> parts;
+    private final PartReader reader;
+    private final long[] starts;
+    private final long end;
+
+    public StoredLogStream(List<Part> parts, PartReader reader) {
+        this.parts = List.copyOf(parts);
+        this.reader = reader;
+        this.starts = new long[parts.size()];
+        long offset = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            starts[i] = offset;
+            offset += parts.get(i).size();
+        }
+        this.end = offset;
+    }
+
+    /**
+     * @return null, the line offsets are unknown
+     */
+    @Override
+    public LogLineIndex getIndex() {
+        return null;
+    }
+
+    @Override
+    public long getReadableStart() {
+        long start = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            if (!parts.get(i).readable()) {
+                start = starts[i] + parts.get(i).size();
+            }
+        }
+        return start;
+    }
+
+    @Override
+    public long getReadableEnd() {
+        return end;
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            long partEnd = starts[i] + part.size();
+            if (offset >= starts[i] && offset < partEnd) {
+                if (!part.readable() || length <= 0) {
+                    return new byte[0];
+                }
+                return reader.read(part.name(), offset - starts[i], (int) Math.min(length, partEnd - offset));
+            }
+        }
+        return new byte[0];
+    }
+
+    /**
+     * @return false, since it's unknown whether output is still being written
+     */
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    /**
+     * @param name     the name of the file or object
+     * @param size     the size (in bytes) of the (uncompressed) output in this part
+     * @param readable whether the part can be read
+     */
+    public record Part(String name, long size, boolean readable) {
+    }
+
+    @FunctionalInterface
+    public interface PartReader {
+
+        byte[] read(String name, long position, int length) throws IOException;
+
+    }
+
+}
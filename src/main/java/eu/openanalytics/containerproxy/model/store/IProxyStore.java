@@ -34,6 +34,15 @@ public interface IProxyStore {
 
     void addProxy(Proxy proxy);
 
+    /**
+     * Adds multiple proxies at once, stores should override this when they can write the proxies in a single operation.
+     */
+    default void addProxies(Collection<Proxy> proxies) {
+        for (Proxy proxy : proxies) {
+            addProxy(proxy);
+        }
+    }
+
     void removeProxy(Proxy proxy);
 
     void updateProxy(Proxy proxy);
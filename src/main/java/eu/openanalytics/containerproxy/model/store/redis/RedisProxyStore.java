@@ -37,7 +37,10 @@ import org.springframework.data.redis.core.SetOperations;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -87,6 +90,24 @@ public class RedisProxyStore implements IProxyStore {
         userProxyOps.add(userProxyRedisKey + proxy.getUserId(), proxy.getId());
     }
 
+    /**
+     * Adds the proxies using a single write, the mappings are not registered (see {@link eu.openanalytics.containerproxy.service.ProxyService#addExistingProxies}).
+     */
+    @Override
+    public void addProxies(Collection<Proxy> proxies) {
+        logger.debug("Add {} proxies", proxies.size());
+        Map<String, Proxy> entries = new HashMap<>();
+        Map<String, List<String>> proxyIdsPerUser = new HashMap<>();
+        for (Proxy proxy : proxies) {
+            entries.put(proxy.getId(), proxy);
+            proxyIdsPerUser.computeIfAbsent(proxy.getUserId(), k -> new ArrayList<>()).add(proxy.getId());
+        }
+        ops.putAll(redisKey, entries);
+        for (Map.Entry<String, List<String>> entry : proxyIdsPerUser.entrySet()) {
+            userProxyOps.add(userProxyRedisKey + entry.getKey(), entry.getValue().toArray(new String[0]));
+        }
+    }
+
     @Override
     public void removeProxy(Proxy proxy) {
         logger.debug("Remove proxy {}", proxy.getId());
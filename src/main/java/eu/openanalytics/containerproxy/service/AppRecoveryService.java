@@ -33,6 +33,7 @@ import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ProxySpecIdKe
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.TargetIdKey;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.UserIdKey;
 import eu.openanalytics.containerproxy.service.heartbeat.HeartbeatService;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -41,19 +42,30 @@ import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Service to recover running apps after restart.
  * This service does not contain code for specific backends, instead it delegates these parts to the
  * scanExistingContainers and setupPortMappingExistingProxy methods of the container backends.
+ * The proxies are recovered in parallel (using {@code proxy.recover-running-proxies-parallelism} threads) and added to
+ * the proxy store in batches.
  */
 @Service
 public class AppRecoveryService {
 
     public static final String PROPERTY_RECOVER_RUNNING_PROXIES = "proxy.recover-running-proxies";
     public static final String PROPERTY_RECOVER_RUNNING_PROXIES_FROM_DIFFERENT_CONFIG = "proxy.recover-running-proxies-from-different-config";
+    public static final String PROPERTY_RECOVER_RUNNING_PROXIES_PARALLELISM = "proxy.recover-running-proxies-parallelism";
+    public static final String PROPERTY_RECOVER_RUNNING_PROXIES_BATCH_SIZE = "proxy.recover-running-proxies-batch-size";
+    public static final String PROPERTY_RECOVER_RUNNING_PROXIES_EARLY_ROUTING = "proxy.recover-running-proxies-early-routing";
 
     private final Logger log = LogManager.getLogger(AppRecoveryService.class);
 
@@ -80,6 +92,9 @@ public class AppRecoveryService {
     public void recoverRunningApps() throws Exception {
         if (Boolean.parseBoolean(environment.getProperty(PROPERTY_RECOVER_RUNNING_PROXIES, "false"))) {
             recoverFromDifferentConfig = Boolean.parseBoolean(environment.getProperty(PROPERTY_RECOVER_RUNNING_PROXIES_FROM_DIFFERENT_CONFIG, "false"));
+            int parallelism = environment.getProperty(PROPERTY_RECOVER_RUNNING_PROXIES_PARALLELISM, Integer.class, 8);
+            int batchSize = environment.getProperty(PROPERTY_RECOVER_RUNNING_PROXIES_BATCH_SIZE, Integer.class, 500);
+            boolean earlyRouting = environment.getProperty(PROPERTY_RECOVER_RUNNING_PROXIES_EARLY_ROUTING, Boolean.class, false);
 
             if (recoverFromDifferentConfig) {
                 log.info("Recovery of running apps enabled (even apps started with a different config file)");
@@ -87,62 +102,44 @@ public class AppRecoveryService {
                 log.info("Recovery of running apps enabled (but only apps started with the current config file)");
             }
 
-            Map<String, Proxy.ProxyBuilder> proxies = new HashMap<>();
-
+            long start = System.currentTimeMillis();
+            Map<String, List<ExistingContainerInfo>> containersPerProxy = new LinkedHashMap<>();
             for (ExistingContainerInfo containerInfo : containerBackend.scanExistingContainers()) {
                 String proxyId = containerInfo.getRuntimeValue(ProxyIdKey.inst).getObject();
+                containersPerProxy.computeIfAbsent(proxyId, k -> new ArrayList<>()).add(containerInfo);
+            }
 
-                if (!proxies.containsKey(proxyId)) {
-                    Proxy.ProxyBuilder proxy = Proxy.builder();
-                    proxy.id(proxyId);
-                    proxy.specId(containerInfo.getRuntimeValue(ProxySpecIdKey.inst).getObject());
-                    proxy.targetId(containerInfo.getRuntimeValue(TargetIdKey.inst).getObject());
-                    proxy.status(ProxyStatus.Stopped);
-                    long createdTimestamp = Long.parseLong(containerInfo.getRuntimeValue(CreatedTimestampKey.inst).getObject());
-                    proxy.createdTimestamp(createdTimestamp);
-                    // we cannot store the startUpTimestamp in the ContainerBackend, therefore when recovering apps
-                    // we set the startUpTimestamp to the time the proxy was created. The distinction between created
-                    // and started is only important for the events (e.g. Prometheus) not for the whole application.
-                    proxy.startupTimestamp(createdTimestamp);
-                    proxy.userId(containerInfo.getRuntimeValue(UserIdKey.inst).getObject());
-                    proxy.displayName(containerInfo.getRuntimeValue(DisplayNameKey.inst).getObject());
-
-                    proxy.addRuntimeValues(containerInfo.getRuntimeValues()
-                        .values()
-                        .stream()
-                        .filter(r -> !r.getKey().isContainerSpecific())
-                        .toList()
-                    );
-
-                    proxies.put(proxyId, proxy);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                new BasicThreadFactory.Builder().namingPattern("AppRecovery-%d").build());
+            try {
+                ExecutorCompletionService<Proxy> completionService = new ExecutorCompletionService<>(executor);
+                for (Map.Entry<String, List<ExistingContainerInfo>> entry : containersPerProxy.entrySet()) {
+                    completionService.submit(() -> recoverProxy(entry.getKey(), entry.getValue()));
                 }
-                Proxy.ProxyBuilder proxy = proxies.get(proxyId);
-                Container.ContainerBuilder containerBuilder = Container.builder();
-                containerBuilder.id(containerInfo.getContainerId());
-                containerBuilder.addRuntimeValues(containerInfo.getRuntimeValues()
-                    .values()
-                    .stream()
-                    .filter(r -> r.getKey().isContainerSpecific())
-                    .toList()
-                );
-                containerBuilder.index(containerInfo.getRuntimeValue(ContainerIndexKey.inst).getObject());
-
-                Container container = containerBuilder.build();
-                if (containerInfo.getProxyStatus() != null) {
-                    proxy.status(containerInfo.getProxyStatus());
-                } else {
-                    proxy.status(ProxyStatus.Up);
-                }
-                proxy.addTargets(containerBackend.setupPortMappingExistingProxy(proxy.build(), container, containerInfo.getPortBindings()));
-                proxy.addContainer(container);
-            }
 
-            for (Proxy.ProxyBuilder proxyBuilder : proxies.values()) {
-                Proxy proxy = proxyBuilder.build();
-                proxyService.addExistingProxy(proxy);
-                heartbeatService.heartbeatReceived(HeartbeatService.HeartbeatSource.INTERNAL, proxy, null);
+                // proxies are added to the store (and thus become routable) in batches, either as soon as a batch is
+                // complete (early routing) or once all proxies have been recovered
+                List<Proxy> recovered = new ArrayList<>();
+                for (int i = 0; i < containersPerProxy.size(); i++) {
+                    recovered.add(completionService.take().get());
+                    if (earlyRouting && recovered.size() >= batchSize) {
+                        addProxies(recovered);
+                        recovered.clear();
+                    }
+                }
+                for (int i = 0; i < recovered.size(); i += batchSize) {
+                    addProxies(recovered.subList(i, Math.min(i + batchSize, recovered.size())));
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            } finally {
+                executor.shutdownNow();
             }
 
+            log.info("Recovered {} apps in {} ms", containersPerProxy.size(), System.currentTimeMillis() - start);
         } else {
             log.info("Recovery of running apps disabled");
         }
@@ -150,6 +147,59 @@ public class AppRecoveryService {
         isReady = true;
     }
 
+    private Proxy recoverProxy(String proxyId, List<ExistingContainerInfo> containers) throws Exception {
+        ExistingContainerInfo firstContainer = containers.get(0);
+        Proxy.ProxyBuilder proxy = Proxy.builder();
+        proxy.id(proxyId);
+        proxy.specId(firstContainer.getRuntimeValue(ProxySpecIdKey.inst).getObject());
+        proxy.targetId(firstContainer.getRuntimeValue(TargetIdKey.inst).getObject());
+        proxy.status(ProxyStatus.Stopped);
+        long createdTimestamp = Long.parseLong(firstContainer.getRuntimeValue(CreatedTimestampKey.inst).getObject());
+        proxy.createdTimestamp(createdTimestamp);
+        // we cannot store the startUpTimestamp in the ContainerBackend, therefore when recovering apps
+        // we set the startUpTimestamp to the time the proxy was created. The distinction between created
+        // and started is only important for the events (e.g. Prometheus) not for the whole application.
+        proxy.startupTimestamp(createdTimestamp);
+        proxy.userId(firstContainer.getRuntimeValue(UserIdKey.inst).getObject());
+        proxy.displayName(firstContainer.getRuntimeValue(DisplayNameKey.inst).getObject());
+
+        proxy.addRuntimeValues(firstContainer.getRuntimeValues()
+            .values()
+            .stream()
+            .filter(r -> !r.getKey().isContainerSpecific())
+            .toList()
+        );
+
+        for (ExistingContainerInfo containerInfo : containers) {
+            Container.ContainerBuilder containerBuilder = Container.builder();
+            containerBuilder.id(containerInfo.getContainerId());
+            containerBuilder.addRuntimeValues(containerInfo.getRuntimeValues()
+                .values()
+                .stream()
+                .filter(r -> r.getKey().isContainerSpecific())
+                .toList()
+            );
+            containerBuilder.index(containerInfo.getRuntimeValue(ContainerIndexKey.inst).getObject());
+
+            Container container = containerBuilder.build();
+            if (containerInfo.getProxyStatus() != null) {
+                proxy.status(containerInfo.getProxyStatus());
+            } else {
+                proxy.status(ProxyStatus.Up);
+            }
+            proxy.addTargets(containerBackend.setupPortMappingExistingProxy(proxy.build(), container, containerInfo.getPortBindings()));
+            proxy.addContainer(container);
+        }
+        return proxy.build();
+    }
+
+    private void addProxies(List<Proxy> proxies) {
+        proxyService.addExistingProxies(proxies);
+        for (Proxy proxy : proxies) {
+            heartbeatService.heartbeatReceived(HeartbeatService.HeartbeatSource.INTERNAL, proxy, null);
+        }
+    }
+
     public boolean isReady() {
         return isReady;
     }
@@ -25,9 +25,11 @@ import eu.openanalytics.containerproxy.model.runtime.ProxyStopReason;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.util.ExecutorServiceFactory;
+import org.springframework.core.env.Environment;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.util.List;
@@ -37,14 +39,22 @@ import java.util.concurrent.ExecutorService;
 @Service
 public class AsyncProxyService {
 
-    private final ExecutorService executor = ExecutorServiceFactory.create("AsyncProxyService");
-
     @Inject
     private ProxyService proxyService;
 
     @Inject
     private UserService userService;
 
+    @Inject
+    private Environment environment;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = ExecutorServiceFactory.create("AsyncProxyService", environment);
+    }
+
     public Proxy startProxy(ProxySpec spec, List<RuntimeValue> runtimeValues, String proxyId, Map<String, String> parameters) {
         Authentication user = userService.getCurrentAuth();
         ProxyService.Command command = proxyService.startProxy(user, spec, runtimeValues, proxyId, parameters);
@@ -92,7 +92,7 @@ public class IdentifierService {
         }
     }
 
-    private File getPathToConfigFile() {
+    public File getPathToConfigFile() {
         String path = environment.getProperty("spring.config.location");
         if (path != null) {
             return Paths.get(path).toFile();
@@ -26,9 +26,12 @@ import eu.openanalytics.containerproxy.event.ProxyResumeEvent;
 import eu.openanalytics.containerproxy.event.ProxyStartEvent;
 import eu.openanalytics.containerproxy.event.ProxyStopEvent;
 import eu.openanalytics.containerproxy.log.ILogStorage;
+import eu.openanalytics.containerproxy.log.LogChunk;
 import eu.openanalytics.containerproxy.log.LogPaths;
 import eu.openanalytics.containerproxy.log.LogStreams;
+import eu.openanalytics.containerproxy.log.LogType;
 import eu.openanalytics.containerproxy.log.NoopLogStorage;
+import eu.openanalytics.containerproxy.log.RateLimitedOutputStream;
 import eu.openanalytics.containerproxy.model.runtime.Proxy;
 import eu.openanalytics.containerproxy.model.store.IProxyStore;
 import eu.openanalytics.containerproxy.service.leader.ILeaderService;
@@ -36,6 +39,7 @@ import eu.openanalytics.containerproxy.util.ProxyHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
 import org.springframework.integration.leader.event.OnGrantedEvent;
 import org.springframework.integration.leader.event.OnRevokedEvent;
 import org.springframework.stereotype.Service;
@@ -52,6 +56,15 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 
+/**
+ * Follows the output of the containers and writes it to the {@link ILogStorage}.
+ * Every container is followed by a task that blocks until the container stops. By default, these tasks run in virtual
+ * threads ({@code proxy.container-log-virtual-threads}), such that a blocked task does not occupy an OS thread and the
+ * number of OS threads remains constant, regardless of the number of containers.
+ * The output of every container can be limited to {@code proxy.container-log-rate-limit} bytes per second (with a burst
+ * of {@code proxy.container-log-rate-limit-burst} bytes), a container that exceeds the limit is followed at a slower
+ * pace, without affecting the other containers.
+ */
 @Service
 public class LogService {
 
@@ -66,8 +79,13 @@ public class LogService {
     IProxyStore proxyStore;
     @Inject
     IContainerBackend backend;
+    @Inject
+    Environment environment;
     private ExecutorService executor;
     private boolean loggingEnabled;
+    private boolean virtualThreads;
+    private long rateLimit;
+    private long rateLimitBurst;
     // do not use ProxyHashMap
     private ConcurrentHashMap<String, LogStreams> proxyStreams = new ConcurrentHashMap<>();
 
@@ -76,6 +94,9 @@ public class LogService {
         try {
             logStorage.initialize();
             loggingEnabled = !(logStorage instanceof NoopLogStorage);
+            virtualThreads = environment.getProperty("proxy.container-log-virtual-threads", Boolean.class, true);
+            rateLimit = environment.getProperty("proxy.container-log-rate-limit", Long.class, -1L);
+            rateLimitBurst = environment.getProperty("proxy.container-log-rate-limit-burst", Long.class, Math.max(rateLimit, 1));
         } catch (IOException e) {
             log.error("Failed to initialize container log storage", e);
         }
@@ -100,6 +121,24 @@ public class LogService {
         return logStorage.getLogs(proxy);
     }
 
+    /**
+     * See {@link ILogStorage#readLog}.
+     */
+    public LogChunk readLog(Proxy proxy, LogType type, long offset, int maxLength) throws IOException {
+        if (!isLoggingEnabled()) return null;
+
+        return logStorage.readLog(proxy, type, offset, maxLength);
+    }
+
+    /**
+     * See {@link ILogStorage#tailLog}.
+     */
+    public LogChunk tailLog(Proxy proxy, LogType type, int lines, int maxLength) throws IOException {
+        if (!isLoggingEnabled()) return null;
+
+        return logStorage.tailLog(proxy, type, lines, maxLength);
+    }
+
     @EventListener
     public void onProxyStarted(ProxyStartEvent event) {
         if (!isLoggingEnabled() || !iLeaderService.isLeader()) return;
@@ -178,7 +217,11 @@ public class LogService {
     private synchronized void startService() {
         if (!isLoggingEnabled()) return;
         if (executor == null) {
-            executor = Executors.newCachedThreadPool();
+            if (virtualThreads) {
+                executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("LogService-", 0).factory());
+            } else {
+                executor = Executors.newCachedThreadPool();
+            }
         }
         log.info("Container logging enabled. Log files will be saved to {}", logStorage.getStorageLocation());
         // attach existing proxies
@@ -224,6 +267,13 @@ public class LogService {
                     slog.warn(proxy, "Failed to attach logging of proxy: no output streams defined");
                     return;
                 }
+                if (rateLimit > 0) {
+                    // the limit applies to the total output of the container
+                    RateLimitedOutputStream.TokenBucket bucket = new RateLimitedOutputStream.TokenBucket(rateLimit, rateLimitBurst);
+                    streams = new LogStreams(
+                        new RateLimitedOutputStream(streams.getStdout(), bucket),
+                        new RateLimitedOutputStream(streams.getStderr(), bucket));
+                }
                 proxyStreams.put(proxy.getId(), streams);
                 if (log.isDebugEnabled()) log.debug("Container logging started for proxy " + proxy.getId());
                 // Note that this call will block until the container is stopped.
@@ -28,6 +28,7 @@ import eu.openanalytics.containerproxy.model.spec.ParameterDefinition;
 import eu.openanalytics.containerproxy.model.spec.Parameters;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.spec.IProxySpecProvider;
+import eu.openanalytics.containerproxy.spec.IProxySpecValidator;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.util.Pair;
 import org.springframework.security.core.Authentication;
@@ -46,7 +47,7 @@ import java.util.Set;
 import java.util.regex.Pattern;
 
 @Service
-public class ParametersService {
+public class ParametersService implements IProxySpecValidator {
 
     private static final Pattern PARAMETER_ID_PATTERN = Pattern.compile("[a-zA-Z\\d_-]*");
     private final IProxySpecProvider baseSpecProvider;
@@ -59,7 +60,12 @@ public class ParametersService {
 
     @PostConstruct
     public void init() {
-        for (ProxySpec spec : baseSpecProvider.getSpecs()) {
+        validateSpecs(baseSpecProvider.getSpecs());
+    }
+
+    @Override
+    public void validateSpecs(List<ProxySpec> specs) {
+        for (ProxySpec spec : specs) {
             validateSpec(spec);
         }
     }
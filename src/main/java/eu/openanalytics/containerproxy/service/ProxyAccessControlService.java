@@ -23,8 +23,10 @@ package eu.openanalytics.containerproxy.service;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Scheduler;
+import eu.openanalytics.containerproxy.event.ProxySpecsReloadedEvent;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.spec.IProxySpecProvider;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
 import org.springframework.stereotype.Service;
@@ -102,6 +104,12 @@ public class ProxyAccessControlService {
             (k) -> checkAccess(auth, spec));
     }
 
+    @EventListener
+    public void onProxySpecsReloaded(ProxySpecsReloadedEvent event) {
+        // the access control of the specs may have changed
+        authorizationCache.invalidateAll();
+    }
+
     /**
      * @return the sessionId if the RequestContext is present
      */
@@ -66,11 +66,11 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -92,7 +92,7 @@ public class ProxyService {
     public static final String PROPERTY_STOP_PROXIES_ON_SHUTDOWN = "proxy.stop-proxies-on-shutdown";
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final StructuredLogger slog = new StructuredLogger(log);
-    private final Set<String> actionsInProgress = new HashSet<>();
+    private final Set<String> actionsInProgress = ConcurrentHashMap.newKeySet();
     @Inject
     protected IProxyTestStrategy testStrategy;
     protected Integer maxTotalInstances;
@@ -120,7 +120,7 @@ public class ProxyService {
     @Lazy
     private ProxyAccessControlService proxyAccessControlService;
     private boolean stopAppsOnShutdown;
-    private Pair<String, Instant> lastStop = null;
+    private volatile Pair<String, Instant> lastStop = null;
     private int requestTimeout;
 
     @PostConstruct
@@ -649,6 +649,21 @@ public class ProxyService {
         slog.info(proxy, "Existing Proxy re-activated");
     }
 
+    /**
+     * Add multiple existing Proxies to the ProxyService, the proxies are written to the store and their mappings are
+     * registered in bulk (only here, not by the store).
+     * This is used by the AppRecovery feature.
+     */
+    public void addExistingProxies(Collection<Proxy> proxies) {
+        proxyStore.addProxies(proxies);
+
+        mappingManager.addMappings(proxies.stream().filter(proxy -> !proxy.getStatus().isUnavailable()).toList());
+
+        for (Proxy proxy : proxies) {
+            slog.info(proxy, "Existing Proxy re-activated");
+        }
+    }
+
     /**
      * Setups the Mapping of proxy.
      */
@@ -659,13 +674,14 @@ public class ProxyService {
     /**
      * @return whether any long during proxy actions are being executed.
      */
-    public synchronized boolean isBusy() {
+    public boolean isBusy() {
         if (!actionsInProgress.isEmpty()) {
             // action in progress -> service is busy
             return true;
         }
         // if last stop was less than 1 minute ago -> service is busy
-        return lastStop != null && Duration.between(lastStop.getSecond(), Instant.now()).toMinutes() <= 1;
+        Pair<String, Instant> stop = lastStop;
+        return stop != null && Duration.between(stop.getSecond(), Instant.now()).toMinutes() <= 1;
     }
 
     /**
@@ -674,7 +690,7 @@ public class ProxyService {
      *
      * @param proxyId the proxyId for which the action is performed.
      */
-    private synchronized void actionStarted(String proxyId) {
+    private void actionStarted(String proxyId) {
         actionsInProgress.add(proxyId);
     }
 
@@ -684,9 +700,10 @@ public class ProxyService {
      *
      * @param proxyId the proxyId for which the action has been performed.
      */
-    private synchronized void actionFinished(String proxyId) {
-        actionsInProgress.remove(proxyId);
+    private void actionFinished(String proxyId) {
+        // set lastStop first, so that the service never appears idle in between
         lastStop = Pair.of(proxyId, Instant.now());
+        actionsInProgress.remove(proxyId);
     }
 
     /**
@@ -0,0 +1,371 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.service;
+
+import eu.openanalytics.containerproxy.backend.IContainerBackend;
+import eu.openanalytics.containerproxy.event.ProxySpecsReloadedEvent;
+import eu.openanalytics.containerproxy.event.ReloadProxySpecsEvent;
+import eu.openanalytics.containerproxy.model.spec.ISpecExtension;
+import eu.openanalytics.containerproxy.model.spec.ProxySpec;
+import eu.openanalytics.containerproxy.spec.IProxySpecValidator;
+import eu.openanalytics.containerproxy.spec.ISpecExtensionProvider;
+import eu.openanalytics.containerproxy.spec.impl.DefaultSpecProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.boot.context.properties.ConfigurationPropertiesBinding;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.PropertySourcesPlaceholdersResolver;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.boot.origin.OriginLookup;
+import org.springframework.boot.origin.TextResourceOrigin;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.Profiles;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the specs from the configuration file, without restarting. A reload is triggered by an admin (see
+ * {@link eu.openanalytics.containerproxy.api.ProxyController}) or, when {@code proxy.reload-specs-on-config-change} is
+ * enabled, when the configuration file changes.
+ *
+ * <p>
+ * The new specs are bound and validated (by every {@link IProxySpecValidator}) before they replace the current specs,
+ * an invalid configuration is rejected and the current specs remain in use. Running apps are not affected by a reload:
+ * they keep running until they are stopped (even if their spec was removed). Only the specs are reloaded, other
+ * properties require a restart.
+ * </p>
+ * <p>
+ * The specs are bound in the same way as during startup: the documents of the configuration file are only used when
+ * their {@code spring.config.activate.on-profile} matches, and properties set outside the file (e.g. environment
+ * variables or command line arguments) take precedence. After a successful reload triggered by an admin, the
+ * {@code proxy.specs} properties of the file (i.e. not the other properties, which may contain secrets) are sent to the
+ * other replicas (see {@link ReloadProxySpecsEvent}), which reload their specs using the same properties. A reload
+ * triggered by a change of the file is not sent to the other replicas, since every replica watches its own file.
+ * </p>
+ */
+@Service
+public class ProxySpecReloadService {
+
+    private static final String ATTACHED_PROPERTY_SOURCE_NAME = "configurationProperties";
+    private static final String SPECS_PROPERTY = "proxy.specs";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Inject
+    private DefaultSpecProvider specProvider;
+    @Inject
+    private List<ISpecExtensionProvider<?>> specExtensionProviders;
+    @Inject
+    private List<IProxySpecValidator> validators;
+    @Inject
+    private IContainerBackend backend;
+    @Inject
+    private IdentifierService identifierService;
+    @Inject
+    private Environment environment;
+    @Inject
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Inject
+    private ListableBeanFactory beanFactory;
+
+    private WatchService watchService;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!environment.getProperty("proxy.reload-specs-on-config-change", Boolean.class, false)) {
+            return;
+        }
+        File configFile = identifierService.getPathToConfigFile();
+        if (configFile == null) {
+            logger.warn("Not watching the configuration file for changes: no configuration file found");
+            return;
+        }
+        Path path = configFile.toPath().toAbsolutePath();
+        watchService = FileSystems.getDefault().newWatchService();
+        path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> watch(path), "ProxySpecReloadService");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Reloads the specs from the configuration file.
+     *
+     * @return the new specs
+     * @throws IllegalStateException if the new specs are invalid, the current specs remain in use
+     */
+    public List<ProxySpec> reload() throws IOException {
+        return reload(true);
+    }
+
+    private synchronized List<ProxySpec> reload(boolean notifyReplicas) throws IOException {
+        File configFile = identifierService.getPathToConfigFile();
+        if (configFile == null) {
+            throw new IllegalStateException("Cannot reload specs: no configuration file found");
+        }
+        List<PropertySource<?>> documents = loadDocuments(configFile);
+        List<ProxySpec> specs = reload(configFile, createBinder(configFile, documents, false));
+        if (notifyReplicas) {
+            // the copy of the file used by the other replicas may not be updated yet, send the properties that were used
+            applicationEventPublisher.publishEvent(new ReloadProxySpecsEvent(getSpecProperties(documents)));
+        }
+        return specs;
+    }
+
+    @EventListener
+    public synchronized void onReloadProxySpecsEvent(ReloadProxySpecsEvent event) {
+        if (event.isLocalEvent()) {
+            return;
+        }
+        try {
+            File configFile = identifierService.getPathToConfigFile();
+            PropertySource<?> specProperties = new MapPropertySource("reload", new LinkedHashMap<>(event.getSpecProperties()));
+            reload(configFile, createBinder(configFile, List.of(specProperties), true));
+        } catch (Exception e) {
+            logger.error("Failed to reload specs after they were reloaded by another replica, the current specs remain in use", e);
+        }
+    }
+
+    private List<ProxySpec> reload(File configFile, Binder binder) throws IOException {
+
+        List<ProxySpec> newSpecs = binder.bind("proxy.specs", Bindable.listOf(ProxySpec.class)).orElseGet(ArrayList::new);
+        List<ISpecExtension> specExtensions = new ArrayList<>();
+        for (ISpecExtensionProvider<?> specExtensionProvider : specExtensionProviders) {
+            Class<?> specExtensionType = ResolvableType.forClass(ClassUtils.getUserClass(specExtensionProvider))
+                .as(ISpecExtensionProvider.class)
+                .resolveGeneric(0);
+            if (specExtensionType != null) {
+                binder.bind("proxy.specs", Bindable.listOf(specExtensionType)).ifBound(extensions -> {
+                    for (Object extension : extensions) {
+                        specExtensions.add((ISpecExtension) extension);
+                    }
+                });
+            }
+        }
+
+        specProvider.prepareSpecs(newSpecs, specExtensions);
+        for (IProxySpecValidator validator : validators) {
+            validator.validateSpecs(newSpecs);
+        }
+        if (backend instanceof IProxySpecValidator validator && !validators.contains(validator)) {
+            validator.validateSpecs(newSpecs);
+        }
+        specProvider.replaceSpecs(newSpecs);
+
+        List<String> specIds = newSpecs.stream().map(ProxySpec::getId).toList();
+        logger.info("Reloaded {} specs from {}", specIds.size(), configFile);
+        applicationEventPublisher.publishEvent(new ProxySpecsReloadedEvent(this, specIds));
+        return specProvider.getSpecs();
+    }
+
+    /**
+     * @return the active documents of the configuration file, ordered by precedence
+     */
+    private List<PropertySource<?>> loadDocuments(File configFile) throws IOException {
+        byte[] config = Files.readAllBytes(configFile.toPath());
+        List<PropertySource<?>> documents = new ArrayList<>();
+        for (PropertySource<?> document : new YamlPropertySourceLoader().load("reload", new ByteArrayResource(config, configFile.toString()))) {
+            if (isActive(document)) {
+                documents.add(document);
+            }
+        }
+        // in a multi-document file, later documents override earlier documents
+        Collections.reverse(documents);
+        return documents;
+    }
+
+    /**
+     * @return the {@code proxy.specs} properties of the document with the highest precedence containing specs (a list is
+     * always bound from a single source)
+     */
+    private static Map<String, String> getSpecProperties(List<PropertySource<?>> documents) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (PropertySource<?> document : documents) {
+            if (document instanceof EnumerablePropertySource<?> enumerableDocument) {
+                for (String name : enumerableDocument.getPropertyNames()) {
+                    if (isSpecProperty(name)) {
+                        result.put(name, String.valueOf(document.getProperty(name)));
+                    }
+                }
+            }
+            if (!result.isEmpty()) {
+                return result;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSpecProperty(String name) {
+        return name.equals(SPECS_PROPERTY) || name.startsWith(SPECS_PROPERTY + "[") || name.startsWith(SPECS_PROPERTY + ".");
+    }
+
+    /**
+     * Creates a binder for the property sources of the environment, in which the sources loaded from the configuration
+     * file are replaced by the given documents. Uses the same conversions and placeholder resolution as the binding
+     * during startup.
+     *
+     * @param keepFileProperties whether to keep the properties of the configuration file that are not part of the
+     *                           specs (e.g. used by placeholders), used when the documents only contain the specs
+     */
+    private Binder createBinder(File configFile, List<PropertySource<?>> documents, boolean keepFileProperties) throws IOException {
+        MutablePropertySources propertySources = new MutablePropertySources();
+        boolean replaced = false;
+        Iterable<PropertySource<?>> currentSources = environment instanceof ConfigurableEnvironment configurableEnvironment
+            ? configurableEnvironment.getPropertySources() : List.of();
+        for (PropertySource<?> source : currentSources) {
+            if (source.getName().equals(ATTACHED_PROPERTY_SOURCE_NAME)) {
+                // view on all (current) sources of the environment, added by Spring Boot
+                continue;
+            }
+            if (!isLoadedFrom(source, configFile)) {
+                propertySources.addLast(source);
+                continue;
+            }
+            if (!replaced) {
+                documents.forEach(propertySources::addLast);
+                replaced = true;
+            }
+            if (keepFileProperties) {
+                propertySources.addLast(withoutSpecs(source));
+            }
+        }
+        if (!replaced) {
+            documents.forEach(propertySources::addLast);
+        }
+
+        ApplicationConversionService conversionService = new ApplicationConversionService();
+        for (Object converter : beanFactory.getBeansWithAnnotation(ConfigurationPropertiesBinding.class).values()) {
+            if (converter instanceof Converter<?, ?> c) {
+                conversionService.addConverter(c);
+            }
+        }
+        return new Binder(ConfigurationPropertySources.from(propertySources), new PropertySourcesPlaceholdersResolver(propertySources), conversionService);
+    }
+
+    private static PropertySource<?> withoutSpecs(PropertySource<?> source) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (String name : ((EnumerablePropertySource<?>) source).getPropertyNames()) {
+            if (!isSpecProperty(name)) {
+                properties.put(name, source.getProperty(name));
+            }
+        }
+        return new MapPropertySource(source.getName(), properties);
+    }
+
+    private boolean isActive(PropertySource<?> document) {
+        Object onProfile = document.getProperty("spring.config.activate.on-profile");
+        return onProfile == null || environment.acceptsProfiles(Profiles.of(StringUtils.commaDelimitedListToStringArray(onProfile.toString())));
+    }
+
+    /**
+     * @return whether the property source contains properties loaded from the given file
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean isLoadedFrom(PropertySource<?> source, File file) throws IOException {
+        if (file == null || !(source instanceof OriginLookup<?>) || !(source instanceof EnumerablePropertySource<?> enumerableSource)) {
+            return false;
+        }
+        for (String name : enumerableSource.getPropertyNames()) {
+            if (((OriginLookup<String>) source).getOrigin(name) instanceof TextResourceOrigin origin
+                && origin.getResource() != null && origin.getResource().isFile()) {
+                return origin.getResource().getFile().getCanonicalFile().equals(file.getCanonicalFile());
+            }
+            return false;
+        }
+        return false;
+    }
+
+    private void watch(Path path) {
+        while (true) {
+            try {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path changedPath && path.getFileName().equals(changedPath)) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                // editors often write a file in multiple steps, wait until the changes settle
+                TimeUnit.SECONDS.sleep(1);
+                WatchKey pending;
+                while ((pending = watchService.poll()) != null) {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+                reload(false);
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Failed to reload specs after the configuration file changed, the current specs remain in use", e);
+            }
+        }
+    }
+
+}
@@ -29,13 +29,28 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Bridges {@link BridgeableEvent}s between the replicas using Redis pub/sub.
+ * Events generated within the batch window (i.e. {@code proxy.redis-event-bridge.batch-window}, 5ms by default) are
+ * sent as a single {@link RedisEventFrame} (of at most {@value #MAX_BATCH_SIZE} events).
+ */
 public class RedisEventBridge implements MessageListener {
 
+    private static final int MAX_BATCH_SIZE = 1000;
+
     private final RedisTemplate<String, BridgeableEvent> redisTemplate;
 
     private final ChannelTopic channelTopic;
@@ -46,12 +61,26 @@ public class RedisEventBridge implements MessageListener {
 
     private final String source;
 
+    private final long batchWindow;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "RedisEventBridge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private List<BridgeableEvent> pendingEvents = new ArrayList<>();
+
+    // held while taking and publishing a batch, such that the batches are published in order
+    private final Object publishLock = new Object();
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
-    public RedisEventBridge(RedisTemplate<String, BridgeableEvent> redisTemplate, ChannelTopic channelTopic, ApplicationEventPublisher applicationEventPublisher) {
+    public RedisEventBridge(RedisTemplate<String, BridgeableEvent> redisTemplate, ChannelTopic channelTopic, ApplicationEventPublisher applicationEventPublisher, long batchWindow) {
         this.redisTemplate = redisTemplate;
         this.channelTopic = channelTopic;
         this.applicationEventPublisher = applicationEventPublisher;
+        this.batchWindow = batchWindow;
         String instanceId = java.util.UUID.randomUUID().toString();
         objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
@@ -64,15 +93,36 @@ public class RedisEventBridge implements MessageListener {
             return;
         }
 
-        BridgeableEvent outgoingEvent = event.withSource(source);
-        redisTemplate.convertAndSend(channelTopic.getTopic(), outgoingEvent);
+        boolean firstEvent;
+        boolean full;
+        synchronized (this) {
+            pendingEvents.add(event);
+            firstEvent = pendingEvents.size() == 1;
+            full = pendingEvents.size() >= MAX_BATCH_SIZE;
+        }
+        if (batchWindow <= 0 || full) {
+            flush();
+        } else if (firstEvent) {
+            scheduler.schedule(this::flush, batchWindow, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void onMessage(Message message, byte[] pattern) {
         try {
-            BridgeableEvent incomingEvent = objectMapper.readValue(message.getBody(), BridgeableEvent.class);
-
-            if (!incomingEvent.getSource().equals(source)) {
+            if (message.getBody().length > 0 && message.getBody()[0] == '{') {
+                // single JSON event, sent by a replica running an older version
+                BridgeableEvent incomingEvent = objectMapper.readValue(message.getBody(), BridgeableEvent.class);
+                if (!incomingEvent.getSource().equals(source)) {
+                    applicationEventPublisher.publishEvent(incomingEvent.withSource(source));
+                }
+                return;
+            }
+            if (RedisEventFrame.readSource(message.getBody()).equals(source)) {
+                // sent by this replica
+                return;
+            }
+            for (byte[] event : RedisEventFrame.decode(message.getBody()).events()) {
+                BridgeableEvent incomingEvent = objectMapper.readValue(event, BridgeableEvent.class);
                 applicationEventPublisher.publishEvent(incomingEvent.withSource(source));
             }
         } catch (IOException e) {
@@ -80,4 +130,39 @@ public class RedisEventBridge implements MessageListener {
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        flush();
+    }
+
+    private void flush() {
+        synchronized (publishLock) {
+            List<BridgeableEvent> events;
+            synchronized (this) {
+                if (pendingEvents.isEmpty()) {
+                    return;
+                }
+                events = pendingEvents;
+                pendingEvents = new ArrayList<>();
+            }
+            publish(events);
+        }
+    }
+
+    private void publish(List<BridgeableEvent> events) {
+        try {
+            List<byte[]> encodedEvents = new ArrayList<>(events.size());
+            for (BridgeableEvent event : events) {
+                // the source of the frame is used, no need to include it in every event
+                encodedEvents.add(objectMapper.writeValueAsBytes(event.withSource("")));
+            }
+            byte[] frame = new RedisEventFrame(source, encodedEvents).encode();
+            byte[] channel = channelTopic.getTopic().getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, frame));
+        } catch (Exception e) {
+            log.error("Error while sending {} events to Redis", events.size(), e);
+        }
+    }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of (JSON encoded) events sent by the {@link RedisEventBridge} as a single Redis message.
+ * Binary format:
+ * <ul>
+ *     <li>1 byte: the version of the format (currently {@link #VERSION})</li>
+ *     <li>the source of the events, encoded using {@link DataOutputStream#writeUTF(String)}</li>
+ *     <li>4 bytes: the number of events</li>
+ *     <li>for every event: 4 bytes containing the length, followed by the JSON representation of the event</li>
+ * </ul>
+ * The source is stored in front of the events, such that a replica can ignore its own messages without parsing the
+ * events.
+ */
+public record RedisEventFrame(String source, List<byte[]> events) {
+
+    public static final byte VERSION = 1;
+
+    public byte[] encode() throws IOException {
+        int size = 1 + 2 + source.length() + 4;
+        for (byte[] event : events) {
+            size += 4 + event.length;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeUTF(source);
+        out.writeInt(events.size());
+        for (byte[] event : events) {
+            out.writeInt(event.length);
+            out.write(event);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the source of the frame, without decoding the events
+     */
+    public static String readSource(byte[] frame) throws IOException {
+        DataInputStream in = open(frame);
+        return in.readUTF();
+    }
+
+    public static RedisEventFrame decode(byte[] frame) throws IOException {
+        DataInputStream in = open(frame);
+        String source = in.readUTF();
+        int count = in.readInt();
+        List<byte[]> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] event = new byte[in.readInt()];
+            in.readFully(event);
+            events.add(event);
+        }
+        return new RedisEventFrame(source, events);
+    }
+
+    private static DataInputStream open(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported event frame version %s", version));
+        }
+        return in;
+    }
+
+}
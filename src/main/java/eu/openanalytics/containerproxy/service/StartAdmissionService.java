@@ -0,0 +1,243 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.service;
+
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of proxies that are being started (or resumed) on the container backend at the same time.
+ * When the limit is reached, additional starts are queued. The queue is served round-robin across users: a user
+ * starting many apps at once cannot delay the apps of other users. Within the queue of a single user, apps are started
+ * in FIFO order.
+ * <p>
+ * The limit is configured using {@code proxy.max-concurrent-starts}, by default no limit is applied. The limit, the
+ * queue and therefore the queue position and depth are local to a replica: when running multiple replicas, the total
+ * number of concurrent starts is at most {@code max-concurrent-starts} times the number of replicas, and the queue
+ * position of a proxy is only known by the replica that is starting it.
+ */
+@Service
+public class StartAdmissionService {
+
+    public static final String PROPERTY_MAX_CONCURRENT_STARTS = "proxy.max-concurrent-starts";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, ArrayDeque<Ticket>> queuesPerUser = new HashMap<>();
+    private final ArrayDeque<String> userOrder = new ArrayDeque<>();
+    private final Map<String, Ticket> tickets = new HashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private final int maxConcurrentStarts;
+    private final Timer waitTimer;
+
+    public StartAdmissionService(Environment environment, MeterRegistry registry) {
+        maxConcurrentStarts = environment.getProperty(PROPERTY_MAX_CONCURRENT_STARTS, Integer.class, -1);
+        waitTimer = registry.timer("proxy_start_queue_wait_time");
+        registry.gauge("proxy_start_queue_depth", this, StartAdmissionService::getQueueDepth);
+        registry.gauge("proxy_start_in_flight", this, StartAdmissionService::getInFlight);
+        if (maxConcurrentStarts > 0) {
+            logger.info("Limiting the number of concurrent starts to {}", maxConcurrentStarts);
+        }
+    }
+
+    /**
+     * Waits until the proxy may be started on the backend. After the proxy has been started (or failed to start),
+     * {@link #release(String)} must be called.
+     *
+     * @return true if the proxy may be started, false if the start was cancelled while waiting
+     */
+    public boolean acquire(Proxy proxy) throws InterruptedException {
+        if (maxConcurrentStarts <= 0) {
+            return true;
+        }
+        Ticket ticket;
+        lock.lock();
+        try {
+            if (tickets.isEmpty() && inFlight.size() < maxConcurrentStarts) {
+                inFlight.add(proxy.getId());
+                waitTimer.record(0, TimeUnit.NANOSECONDS);
+                return true;
+            }
+            ticket = new Ticket(proxy.getId(), proxy.getUserId());
+            ArrayDeque<Ticket> queue = queuesPerUser.computeIfAbsent(ticket.userId, k -> new ArrayDeque<>());
+            if (queue.isEmpty()) {
+                userOrder.addLast(ticket.userId);
+            }
+            queue.addLast(ticket);
+            tickets.put(ticket.proxyId, ticket);
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            return ticket.admitted.get();
+        } catch (InterruptedException e) {
+            cancel(ticket.proxyId);
+            if (ticket.admitted.getNow(false)) {
+                // admitted right before being interrupted
+                release(ticket.proxyId);
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Marks the start of the proxy as finished, such that the next queued proxy can be started.
+     */
+    public void release(String proxyId) {
+        if (maxConcurrentStarts <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (inFlight.remove(proxyId)) {
+                admitNext();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the proxy from the queue (e.g. because it is being stopped), {@link #acquire(Proxy)} returns false.
+     */
+    public void cancel(String proxyId) {
+        lock.lock();
+        try {
+            Ticket ticket = tickets.remove(proxyId);
+            if (ticket == null) {
+                return;
+            }
+            ArrayDeque<Ticket> queue = queuesPerUser.get(ticket.userId);
+            queue.remove(ticket);
+            if (queue.isEmpty()) {
+                queuesPerUser.remove(ticket.userId);
+                userOrder.remove(ticket.userId);
+            }
+            ticket.admitted.complete(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the (1-based) position of the proxy in the queue, or null if the proxy is not queued
+     */
+    public Integer getQueuePosition(String proxyId) {
+        lock.lock();
+        try {
+            Ticket ticket = tickets.get(proxyId);
+            if (ticket == null) {
+                return null;
+            }
+            // simulate the round-robin order: every user gets one turn per round
+            int round = 0;
+            for (Ticket other : queuesPerUser.get(ticket.userId)) {
+                if (other == ticket) {
+                    break;
+                }
+                round++;
+            }
+            int position = 1;
+            boolean beforeUser = true;
+            for (String userId : userOrder) {
+                if (userId.equals(ticket.userId)) {
+                    beforeUser = false;
+                }
+                int queued = queuesPerUser.get(userId).size();
+                position += Math.min(queued, round);
+                if (beforeUser && queued > round) {
+                    position++;
+                }
+            }
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return tickets.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void admitNext() {
+        while (inFlight.size() < maxConcurrentStarts && !userOrder.isEmpty()) {
+            String userId = userOrder.pollFirst();
+            ArrayDeque<Ticket> queue = queuesPerUser.get(userId);
+            Ticket ticket = queue.pollFirst();
+            if (queue.isEmpty()) {
+                queuesPerUser.remove(userId);
+            } else {
+                userOrder.addLast(userId);
+            }
+            tickets.remove(ticket.proxyId);
+            inFlight.add(ticket.proxyId);
+            waitTimer.record(System.nanoTime() - ticket.queuedAt, TimeUnit.NANOSECONDS);
+            ticket.admitted.complete(true);
+        }
+    }
+
+    private static class Ticket {
+
+        private final String proxyId;
+        private final String userId;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Boolean> admitted = new CompletableFuture<>();
+
+        private Ticket(String proxyId, String userId) {
+            this.proxyId = proxyId;
+            this.userId = userId;
+        }
+
+    }
+
+}
@@ -20,59 +20,157 @@
  */
 package eu.openanalytics.containerproxy.service.leader;
 
+import eu.openanalytics.containerproxy.util.ExecutorServiceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Service used to run background processing on a single server, determined by the {@link ILeaderService}.
  * This implies that the processing always happens on a single server running the latest configuration.
  *
  * This unrelated to events send within or between servers. This only acts as an eventloop.
+ *
+ * Tasks are executed on lanes: the tasks of a single lane are executed one at a time (in the order they were
+ * scheduled), while different lanes are processed concurrently. Tasks scheduled without lane, use the default lane.
+ * A coalesced task is only added to the lane if the same task is not already waiting to be executed on that lane.
+ * An exclusive task (see {@link #scheduleExclusive(Runnable)}) waits for the running tasks of all lanes and no other
+ * task starts while it runs.
  */
 @Service
 public class GlobalEventLoopService {
 
-    private final LinkedBlockingQueue<Callback> channel = new LinkedBlockingQueue<>();
+    private static final String DEFAULT_LANE = "";
+
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ILeaderService leaderService;
+    private final ExecutorService executor;
+    // exclusive tasks hold the write lock, all other tasks the read lock
+    private final ReadWriteLock exclusiveLock = new ReentrantReadWriteLock();
 
-    public GlobalEventLoopService(ILeaderService leaderService) {
-        Thread eventProcessor = new Thread(() -> {
-            while (true) {
-                try {
-                    Callback event = channel.take();
-                    try {
-                        logger.debug("Processing event");
-
-                        if (event.onlyIfLeader && !leaderService.isLeader()) {
-                            // not the leader -> ignore events send to this channel
-                            continue;
-                        }
-
-                        event.callback.run();
-                    } catch (Exception ex) {
-                        logger.error("Error while processing event in the GlobalEventLoop {}: ", event, ex);
-                    }
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        }, "GlobalEventLoop");
-        eventProcessor.setDaemon(true);
-        eventProcessor.start();
+    public GlobalEventLoopService(ILeaderService leaderService, Environment environment) {
+        this.leaderService = leaderService;
+        this.executor = ExecutorServiceFactory.create("GlobalEventLoop", environment);
     }
 
     public void schedule(Runnable runnable) {
-        channel.add(new Callback(runnable, true));
+        schedule(DEFAULT_LANE, runnable, true);
     }
 
     public void schedule(Runnable runnable, boolean onlyIfLeader) {
-        channel.add(new Callback(runnable, onlyIfLeader));
+        schedule(DEFAULT_LANE, runnable, onlyIfLeader);
+    }
+
+    /**
+     * Schedules the task on the given lane, it is executed after all tasks previously scheduled on this lane.
+     */
+    public void schedule(String lane, Runnable runnable) {
+        schedule(lane, runnable, true);
+    }
+
+    /**
+     * Schedules the task on the given lane, unless a task with the same id is already waiting on this lane.
+     * Once the task has started, a new task with the same id can be scheduled again.
+     */
+    public void scheduleCoalesced(String lane, String taskId, Runnable runnable) {
+        lanes.computeIfAbsent(lane, Lane::new).add(new Callback(runnable, true, taskId, false));
+    }
+
+    /**
+     * Schedules the task on the default lane, the task only starts once the tasks that are running on any lane have
+     * finished and no task of any lane starts while it runs. Used by tasks that may end the leadership of this server,
+     * such that no background processing is running when the leadership is given up.
+     */
+    public void scheduleExclusive(Runnable runnable) {
+        scheduleExclusive(runnable, true);
+    }
+
+    public void scheduleExclusive(Runnable runnable, boolean onlyIfLeader) {
+        lanes.computeIfAbsent(DEFAULT_LANE, Lane::new).add(new Callback(runnable, onlyIfLeader, null, true));
     }
 
-    private record Callback(Runnable callback, boolean onlyIfLeader) {
+    private void schedule(String lane, Runnable runnable, boolean onlyIfLeader) {
+        lanes.computeIfAbsent(lane, Lane::new).add(new Callback(runnable, onlyIfLeader, null, false));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record Callback(Runnable callback, boolean onlyIfLeader, String taskId, boolean exclusive) {
+
+    }
+
+    private class Lane {
+
+        private final String name;
+        private final ArrayDeque<Callback> queue = new ArrayDeque<>();
+        private final Set<String> pendingTaskIds = new HashSet<>();
+        private boolean running = false;
+
+        private Lane(String name) {
+            this.name = name;
+        }
+
+        private void add(Callback callback) {
+            synchronized (this) {
+                if (callback.taskId != null && !pendingTaskIds.add(callback.taskId)) {
+                    // same task is already pending
+                    return;
+                }
+                queue.add(callback);
+                if (running) {
+                    return;
+                }
+                running = true;
+            }
+            executor.execute(this::process);
+        }
+
+        private void process() {
+            while (true) {
+                Callback event;
+                synchronized (this) {
+                    event = queue.poll();
+                    if (event == null) {
+                        running = false;
+                        return;
+                    }
+                    if (event.taskId != null) {
+                        pendingTaskIds.remove(event.taskId);
+                    }
+                }
+                Lock lock = event.exclusive ? exclusiveLock.writeLock() : exclusiveLock.readLock();
+                lock.lock();
+                try {
+                    logger.debug("Processing event");
+
+                    if (event.onlyIfLeader && !leaderService.isLeader()) {
+                        // not the leader -> ignore events send to this channel
+                        continue;
+                    }
+
+                    event.callback.run();
+                } catch (Exception ex) {
+                    logger.error("Error while processing event in the GlobalEventLoop (lane: {}) {}: ", name, event, ex);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
 
     }
 
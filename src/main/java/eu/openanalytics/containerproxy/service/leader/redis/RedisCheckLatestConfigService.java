@@ -42,8 +42,8 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Checks whether this server is running the latest configuration, in order to determine whether to take part in the leader election.
- * The checks are scheduled on the {@link GlobalEventLoopService} such that all background processing has finished when this server
- * stops being the leader.
+ * The checks (and releasing the leadership) are scheduled as exclusive tasks on the {@link GlobalEventLoopService}, such that
+ * no background processing (on any lane) is running when this server stops being the leader.
  */
 public class RedisCheckLatestConfigService {
 
@@ -90,7 +90,7 @@ public class RedisCheckLatestConfigService {
 
     @Scheduled(fixedDelay = 20, timeUnit = TimeUnit.SECONDS)
     public void schedule() {
-        globalEventLoop.schedule(this::check);
+        globalEventLoop.scheduleExclusive(this::check);
     }
 
     public boolean check() {
@@ -125,7 +125,7 @@ public class RedisCheckLatestConfigService {
                     Thread.sleep(25_000);
                 } catch (InterruptedException ignored) {
                 }
-                lockRegistryLeaderInitiator.destroy();
+                globalEventLoop.scheduleExclusive(lockRegistryLeaderInitiator::destroy, false);
             });
             thread.start();
         } else {
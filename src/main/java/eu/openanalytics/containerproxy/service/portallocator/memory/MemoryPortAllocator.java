@@ -23,43 +23,104 @@ package eu.openanalytics.containerproxy.service.portallocator.memory;
 import eu.openanalytics.containerproxy.ContainerProxyException;
 import eu.openanalytics.containerproxy.service.portallocator.IPortAllocator;
 
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * In-memory port allocator.
+ * The allocated ports are stored in bitsets, the port space is split in segments (of {@link #SEGMENT_SIZE} ports),
+ * every segment has its own lock. Finding a free port uses {@link BitSet#nextClearBit(int)} instead of scanning all
+ * allocated ports. The ports of every owner are stored in a separate index, such that releasing only touches the ports
+ * of that owner.
+ */
 public class MemoryPortAllocator implements IPortAllocator {
 
-    private final HashMap<String, HashSet<Integer>> ports = new HashMap<>();
+    private static final int SEGMENT_SIZE = 1024;
+
+    private final ConcurrentHashMap<Integer, BitSet> segments = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Integer>> owners = new ConcurrentHashMap<>();
 
     @Override
-    public synchronized Integer allocate(int rangeFrom, int rangeTo, String ownerId) {
-        Set<Integer> allocated = ports.values().stream().flatMap(Collection::stream).collect(Collectors.toSet());
+    public Integer allocate(int rangeFrom, int rangeTo, String ownerId) {
         int nextPort = rangeFrom;
-        while (allocated.contains(nextPort)) nextPort++;
-        if (rangeTo > 0 && nextPort > rangeTo) {
-            throw new ContainerProxyException("Cannot create container: all allocated ports are currently in use. Please try again later or contact an administrator.");
+        while (rangeTo <= 0 || nextPort <= rangeTo) {
+            int segmentIndex = nextPort / SEGMENT_SIZE;
+            BitSet segment = getSegment(segmentIndex);
+            int segmentStart = segmentIndex * SEGMENT_SIZE;
+            int port = -1;
+            synchronized (segment) {
+                int bit = segment.nextClearBit(nextPort - segmentStart);
+                if (bit < SEGMENT_SIZE) {
+                    port = segmentStart + bit;
+                    if (rangeTo > 0 && port > rangeTo) {
+                        break;
+                    }
+                    segment.set(bit);
+                }
+            }
+            if (port >= 0) {
+                addOwnedPort(ownerId, port);
+                return port;
+            }
+            // segment is full, continue with the next segment
+            nextPort = segmentStart + SEGMENT_SIZE;
         }
-        ports.putIfAbsent(ownerId, new HashSet<>());
-        ports.get(ownerId).add(nextPort);
-        return nextPort;
+        throw new ContainerProxyException("Cannot create container: all allocated ports are currently in use. Please try again later or contact an administrator.");
     }
 
     @Override
-    public synchronized void addExistingPort(String ownerId, int port) {
-        ports.putIfAbsent(ownerId, new HashSet<>());
-        ports.get(ownerId).add(port);
+    public void addExistingPort(String ownerId, int port) {
+        BitSet segment = getSegment(port / SEGMENT_SIZE);
+        synchronized (segment) {
+            segment.set(port % SEGMENT_SIZE);
+        }
+        addOwnedPort(ownerId, port);
     }
 
     @Override
-    public synchronized void release(String ownerId) {
-        ports.remove(ownerId);
+    public void release(String ownerId) {
+        Set<Integer> ownedPorts = owners.remove(ownerId);
+        if (ownedPorts == null) {
+            return;
+        }
+        // the set can no longer be modified, since addOwnedPort creates a new set once the owner is removed
+        for (Integer port : ownedPorts) {
+            BitSet segment = getSegment(port / SEGMENT_SIZE);
+            synchronized (segment) {
+                segment.clear(port % SEGMENT_SIZE);
+            }
+        }
     }
 
     @Override
-    public synchronized Set<Integer> getOwnedPorts(String ownerId) {
-        return new HashSet<>(ports.getOrDefault(ownerId, new HashSet<>()));
+    public Set<Integer> getOwnedPorts(String ownerId) {
+        Set<Integer> ownedPorts = owners.get(ownerId);
+        if (ownedPorts == null) {
+            return new HashSet<>();
+        }
+        synchronized (ownedPorts) {
+            return new HashSet<>(ownedPorts);
+        }
+    }
+
+    private BitSet getSegment(int segmentIndex) {
+        return segments.computeIfAbsent(segmentIndex, k -> new BitSet(SEGMENT_SIZE));
+    }
+
+    private void addOwnedPort(String ownerId, int port) {
+        // compute is atomic for the given owner, therefore the port is either added before the owner is released or
+        // added to a new set (and thus remains allocated)
+        owners.compute(ownerId, (k, ownedPorts) -> {
+            if (ownedPorts == null) {
+                ownedPorts = new HashSet<>();
+            }
+            synchronized (ownedPorts) {
+                ownedPorts.add(port);
+            }
+            return ownedPorts;
+        });
     }
 
 }
@@ -20,70 +20,134 @@
  */
 package eu.openanalytics.containerproxy.service.portallocator.redis;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.openanalytics.containerproxy.ContainerProxyException;
 import eu.openanalytics.containerproxy.service.IdentifierService;
 import eu.openanalytics.containerproxy.service.portallocator.IPortAllocator;
-import org.springframework.dao.DataAccessException;
-import org.springframework.data.redis.core.HashOperations;
-import org.springframework.data.redis.core.RedisOperations;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.SessionCallback;
-
-import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.Collection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import javax.annotation.PostConstruct;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Port allocator storing the allocated ports in Redis.
+ * The allocated ports are stored in a bitmap (one bit per port), in addition a set is stored for every owner containing
+ * its ports. Allocating and releasing ports is done using Lua scripts, such that it's atomic and requires a single
+ * round trip, without any optimistic locking. The scripts only access the keys passed as KEYS, these keys share a hash
+ * tag such that they are stored in the same slot when using Redis Cluster.
+ * <p>
+ * Previous versions stored the ports in a single hash ({@code __ports}, containing a JSON list of ports for every owner).
+ * At startup, the entries of this hash (if it exists) are moved into the bitmap and the sets of the owners, such that
+ * ports allocated before the upgrade are not handed out again. Instances running a previous version do not see the
+ * ports allocated by this version, therefore these versions should not allocate ports at the same time (i.e. the old
+ * instances should no longer start apps once the new instances are running).
+ */
 public class RedisPortAllocator implements IPortAllocator {
 
-    private final String portOwnersKey;
-
-    private final RedisTemplate<String, PortList> portListRedisTemplate;
-
-    public RedisPortAllocator(RedisTemplate<String, PortList> portListRedisTemplate,
+    /**
+     * Finds and sets the first clear bit in the range [from, to] (or [from, ...[ if to <= 0).
+     * BITPOS only accepts byte offsets (in Redis < 7), therefore the bits before the first byte boundary are checked
+     * using GETBIT.
+     */
+    private static final RedisScript<Long> ALLOCATE_SCRIPT = RedisScript.of("""
+        local from = tonumber(ARGV[1])
+        local to = tonumber(ARGV[2])
+        local port = -1
+        for p = from, math.floor(from / 8) * 8 + 7 do
+            if redis.call('GETBIT', KEYS[1], p) == 0 then
+                port = p
+                break
+            end
+        end
+        if port == -1 then
+            local startByte = math.floor(from / 8) + 1
+            port = redis.call('BITPOS', KEYS[1], 0, startByte)
+            if port < startByte * 8 then
+                -- key does not exist or the range starts after the end of the bitmap
+                port = math.max(startByte * 8, redis.call('STRLEN', KEYS[1]) * 8)
+            end
+        end
+        if to > 0 and port > to then
+            return -1
+        end
+        redis.call('SETBIT', KEYS[1], port, 1)
+        redis.call('SADD', KEYS[2], port)
+        return port
+        """, Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of("""
+        local ports = redis.call('SMEMBERS', KEYS[2])
+        for _, port in ipairs(ports) do
+            redis.call('SETBIT', KEYS[1], tonumber(port), 0)
+        end
+        redis.call('DEL', KEYS[2])
+        return #ports
+        """, Long.class);
+
+    private final String portBitmapKey;
+
+    private final String portOwnerKeyPrefix;
+
+    private final String legacyPortsKey;
+
+    private final StringRedisTemplate portRedisTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public RedisPortAllocator(StringRedisTemplate portRedisTemplate,
                               IdentifierService identifierService) {
-        this.portListRedisTemplate = portListRedisTemplate;
-        portOwnersKey = "shinyproxy_" + identifierService.realmId + "__ports";
+        this.portRedisTemplate = portRedisTemplate;
+        portBitmapKey = "{shinyproxy_" + identifierService.realmId + "__port}_bitmap";
+        portOwnerKeyPrefix = "{shinyproxy_" + identifierService.realmId + "__port}_owner_";
+        legacyPortsKey = "shinyproxy_" + identifierService.realmId + "__ports";
+    }
+
+    /**
+     * Moves the ports stored in the hash used by previous versions to the bitmap and the sets of the owners. Setting
+     * the bits and adding the ports to the sets is idempotent, therefore multiple instances may migrate at the same time.
+     */
+    @PostConstruct
+    public void migrateLegacyPorts() {
+        Map<Object, Object> entries = portRedisTemplate.opsForHash().entries(legacyPortsKey);
+        if (entries.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            List<Integer> ports;
+            try {
+                ports = objectMapper.readValue(entry.getValue().toString(), new TypeReference<>() {
+                });
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(String.format("Cannot migrate the ports of owner '%s'", entry.getKey()), e);
+            }
+            for (Integer port : ports) {
+                portRedisTemplate.opsForValue().setBit(portBitmapKey, port, true);
+                portRedisTemplate.opsForSet().add(portOwnerKeyPrefix + entry.getKey(), port.toString());
+            }
+        }
+        portRedisTemplate.delete(legacyPortsKey);
+        logger.info("Migrated the ports of {} owners", entries.size());
     }
 
     @Override
     public Integer allocate(int rangeFrom, int rangeTo, String ownerId) {
-        return portListRedisTemplate.execute(new SessionCallback<>() {
-            @SuppressWarnings({"unchecked", "rawtypes"})
-            @Override
-            public Integer execute(@Nonnull RedisOperations operations) throws DataAccessException {
-                int nextPort;
-                do {
-                    HashOperations ops = operations.opsForHash();
-
-                    operations.watch(portOwnersKey);
-
-                    // 1. get all currently allocated ports
-                    Map<String, PortList> entries = ops.entries(portOwnersKey);
-                    Set<Integer> allocated = entries.values().stream().flatMap(Collection::stream).collect(Collectors.toSet());
-
-                    // 2. find first available port
-                    nextPort = rangeFrom;
-                    while (allocated.contains(nextPort)) nextPort++;
-
-                    if (rangeTo > 0 && nextPort > rangeTo) {
-                        throw new ContainerProxyException("Cannot create container: all allocated ports are currently in use. Please try again later or contact an administrator.");
-                    }
-
-                    // 3. save this port under ownerId
-                    PortList ownedPorts = entries.getOrDefault(ownerId, new PortList());
-                    ownedPorts.add(nextPort);
-
-                    operations.multi();
-                    ops.put(portOwnersKey, ownerId, ownedPorts);
-                } while (operations.exec().isEmpty());
-                return nextPort;
-            }
-        });
+        Long port = portRedisTemplate.execute(ALLOCATE_SCRIPT, getKeys(ownerId),
+            String.valueOf(rangeFrom), String.valueOf(rangeTo));
+        if (port == null || port < 0) {
+            throw new ContainerProxyException("Cannot create container: all allocated ports are currently in use. Please try again later or contact an administrator.");
+        }
+        return port.intValue();
     }
 
     @Override
@@ -93,21 +157,20 @@ public class RedisPortAllocator implements IPortAllocator {
 
     @Override
     public void release(String ownerId) {
-        HashOperations<String, String, PortList> ops = portListRedisTemplate.opsForHash();
-        ops.delete(portOwnersKey, ownerId);
+        portRedisTemplate.execute(RELEASE_SCRIPT, getKeys(ownerId));
     }
 
     @Override
     public Set<Integer> getOwnedPorts(String ownerId) {
-        HashOperations<String, PortList, PortList> ops = portListRedisTemplate.opsForHash();
-        List<Integer> res = ops.get(portOwnersKey, ownerId);
+        Set<String> res = portRedisTemplate.opsForSet().members(portOwnerKeyPrefix + ownerId);
         if (res == null) {
             return new HashSet<>();
         }
-        return new HashSet<>(res);
+        return res.stream().map(Integer::valueOf).collect(Collectors.toCollection(HashSet::new));
     }
 
-    public static class PortList extends ArrayList<Integer> {
+    private List<String> getKeys(String ownerId) {
+        return List.of(portBitmapKey, portOwnerKeyPrefix + ownerId);
     }
 
 }
@@ -35,10 +35,13 @@ import org.springframework.context.expression.EnvironmentAccessor;
 import org.springframework.context.expression.MapAccessor;
 import org.springframework.context.expression.StandardBeanExpressionResolver;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.core.env.Environment;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionException;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.ParserContext;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.expression.spel.support.StandardTypeConverter;
@@ -53,12 +56,21 @@ import java.util.stream.StreamSupport;
 
 /**
  * Note: inspired by org.springframework.context.expression.StandardBeanExpressionResolver
+ * <p>
+ * Parsed expressions are cached (at most {@code proxy.spel-expression-cache-size} expressions, default 10000), since
+ * the same expressions are evaluated for every app start. Expressions can be compiled to bytecode by setting
+ * {@code proxy.spel-compiler-mode} to {@code MIXED} or {@code IMMEDIATE} (see {@link SpelCompilerMode}), by default
+ * expressions are interpreted.
+ * </p>
  */
 @Component
 public class SpecExpressionResolver {
 
     private final ApplicationContext appContext;
     private final ExpressionParser expressionParser;
+    private final ExpressionParser compilingExpressionParser;
+    private final Cache<ExpressionKey, Expression> expressionCache;
+    private volatile StandardEvaluationContext sharedEvaluationContext;
     private final Cache<SpecExpressionContext, StandardEvaluationContext> evaluationCache =  Caffeine.newBuilder()
         .scheduler(Scheduler.systemScheduler())
         .expireAfterAccess(1, TimeUnit.MINUTES)
@@ -83,7 +95,13 @@ public class SpecExpressionResolver {
 
     public SpecExpressionResolver(ApplicationContext appContext) {
         this.appContext = appContext;
-        this.expressionParser = new SpelExpressionParser();
+        Environment environment = appContext.getEnvironment();
+        SpelCompilerMode compilerMode = environment.getProperty("proxy.spel-compiler-mode", SpelCompilerMode.class, SpelCompilerMode.OFF);
+        this.expressionParser = new SpelExpressionParser(new SpelParserConfiguration(compilerMode, getClass().getClassLoader()));
+        this.compilingExpressionParser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader()));
+        this.expressionCache = Caffeine.newBuilder()
+            .maximumSize(environment.getProperty("proxy.spel-expression-cache-size", Long.class, 10_000L))
+            .build();
     }
 
     public <T> T evaluate(String expression, SpecExpressionContext context, Class<T> resType) {
@@ -91,23 +109,9 @@ public class SpecExpressionResolver {
         if (expression.isEmpty()) return null;
 
         try {
-            Expression expr = this.expressionParser.parseExpression(expression, this.beanExpressionParserContext);
-
-            ConfigurableBeanFactory beanFactory = ((ConfigurableApplicationContext) appContext).getBeanFactory();
-
-            StandardEvaluationContext sec = evaluationCache.get(context, k -> {
-                StandardEvaluationContext result = new StandardEvaluationContext();
-                result.setRootObject(context);
-                result.addPropertyAccessor(new BeanExpressionContextAccessor());
-                result.addPropertyAccessor(new BeanFactoryAccessor());
-                result.addPropertyAccessor(new MapAccessor());
-                result.addPropertyAccessor(new EnvironmentAccessor());
-                result.setBeanResolver(new BeanFactoryResolver(appContext));
-                result.setTypeLocator(new StandardTypeLocator(beanFactory.getBeanClassLoader()));
-                ConversionService conversionService = beanFactory.getConversionService();
-                if (conversionService != null) result.setTypeConverter(new StandardTypeConverter(conversionService));
-                return result;
-            });
+            Expression expr = parse(expressionParser, expression, beanExpressionParserContext);
+
+            StandardEvaluationContext sec = evaluationCache.get(context, this::createEvaluationContext);
 
             return expr.getValue(sec, resType);
         } catch (ExpressionException ex) {
@@ -117,9 +121,54 @@ public class SpecExpressionResolver {
         }
     }
 
+    /**
+     * Parses an expression that is evaluated many times (e.g. for every event), using
+     * {@link #evaluate(Expression, SpecExpressionContext, Class)}. The expression is compiled to bytecode
+     * ({@link SpelCompilerMode#MIXED}) once it has been interpreted a number of times, if compilation or the compiled
+     * code fails, the expression is interpreted again.
+     */
+    public Expression parseCompiled(String expression) {
+        if (expression == null) return null;
+        if (expression.isEmpty()) return null;
+
+        try {
+            return parse(compilingExpressionParser, expression, beanExpressionParserContext);
+        } catch (ExpressionException ex) {
+            throw new SpelException(ex, expression);
+        }
+    }
+
+    /**
+     * Evaluates an expression created by {@link #parseCompiled(String)}. All evaluations share a single evaluation
+     * context, the {@link SpecExpressionContext} is passed as root object.
+     */
+    public <T> T evaluate(Expression expression, SpecExpressionContext context, Class<T> resType) {
+        if (expression == null) return null;
+
+        try {
+            StandardEvaluationContext sec = sharedEvaluationContext;
+            if (sec == null) {
+                sec = createEvaluationContext(null);
+                sharedEvaluationContext = sec;
+            }
+            return expression.getValue(sec, context, resType);
+        } catch (ExpressionException ex) {
+            throw new SpelException(ex, expression.getExpressionString());
+        } catch (Throwable ex) {
+            throw new SpelException(ex, expression.getExpressionString());
+        }
+    }
+
+    public String evaluateToString(Expression expression, SpecExpressionContext context) {
+        return toString(evaluate(expression, context, Object.class));
+    }
+
     public String evaluateToString(String expression, SpecExpressionContext context) {
+        return toString(evaluate(expression, context, Object.class));
+    }
+
+    private String toString(Object res) {
         // use the toString() method and not the conversionService in order to maintain behaviour of ShinyProxy 2.6.1 and earlier
-        Object res = evaluate(expression, context, Object.class);
         if (res == null) {
             return "";
         }
@@ -159,4 +208,31 @@ public class SpecExpressionResolver {
             })
             .toList();
     }
+
+    /**
+     * Parses the expression or returns the cached result of a previous parse. Parsed expressions are thread-safe and
+     * therefore shared by all evaluations (compiled expressions are compiled once, for all evaluations).
+     */
+    private Expression parse(ExpressionParser parser, String expression, ParserContext parserContext) {
+        return expressionCache.get(new ExpressionKey(parser, expression, parserContext), k -> parser.parseExpression(expression, parserContext));
+    }
+
+    private StandardEvaluationContext createEvaluationContext(SpecExpressionContext context) {
+        ConfigurableBeanFactory beanFactory = ((ConfigurableApplicationContext) appContext).getBeanFactory();
+        StandardEvaluationContext result = new StandardEvaluationContext();
+        result.setRootObject(context);
+        result.addPropertyAccessor(new BeanExpressionContextAccessor());
+        result.addPropertyAccessor(new BeanFactoryAccessor());
+        result.addPropertyAccessor(new MapAccessor());
+        result.addPropertyAccessor(new EnvironmentAccessor());
+        result.setBeanResolver(new BeanFactoryResolver(appContext));
+        result.setTypeLocator(new StandardTypeLocator(beanFactory.getBeanClassLoader()));
+        ConversionService conversionService = beanFactory.getConversionService();
+        if (conversionService != null) result.setTypeConverter(new StandardTypeConverter(conversionService));
+        return result;
+    }
+
+    private record ExpressionKey(ExpressionParser parser, String expression, ParserContext parserContext) {
+    }
+
 }
@@ -30,8 +30,16 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Provides the specs of the configuration file. The specs are kept in an immutable index (by id), which is replaced as a
+ * whole when the specs are reloaded (see {@link eu.openanalytics.containerproxy.service.ProxySpecReloadService}), such
+ * that a lookup never sees a partially reloaded set of specs.
+ */
 @Component
 @ConfigurationProperties(prefix = "proxy")
 public class DefaultSpecProvider implements IProxySpecProvider {
@@ -39,10 +47,13 @@ public class DefaultSpecProvider implements IProxySpecProvider {
     @Inject
     private List<ISpecExtensionProvider<?>> specExtensionProviders;
 
+    // the specs as bound by Spring, only used during startup
     private List<ProxySpec> specs = new ArrayList<>();
 
+    private volatile SpecIndex index = new SpecIndex(List.of(), Map.of());
+
     public List<ProxySpec> getSpecs() {
-        return new ArrayList<>(specs);
+        return new ArrayList<>(index.specs);
     }
 
     public void setSpecs(List<ProxySpec> specs) {
@@ -51,19 +62,59 @@ public class DefaultSpecProvider implements IProxySpecProvider {
 
     public ProxySpec getSpec(String id) {
         if (id == null || id.isEmpty()) return null;
-        return specs.stream().filter(s -> id.equals(s.getId())).findAny().orElse(null);
+        return index.specsById.get(id);
     }
 
     @PostConstruct
     public void init() {
-        specs.forEach(ProxySpec::setContainerIndex);
+        List<ISpecExtension> specExtensions = new ArrayList<>();
         for (ISpecExtensionProvider<?> specExtensionProvider : specExtensionProviders) {
             if (specExtensionProvider.getSpecs() != null) {
-                for (ISpecExtension specExtension : specExtensionProvider.getSpecs()) {
-                    getSpec(specExtension.getId()).addSpecExtension(specExtension);
-                }
+                specExtensions.addAll(specExtensionProvider.getSpecs());
+            }
+        }
+        replaceSpecs(prepareSpecs(specs, specExtensions));
+    }
+
+    /**
+     * Prepares (and validates the ids of) specs that are loaded from the configuration, the spec extensions are added
+     * to the spec with the same id.
+     *
+     * @return the prepared specs
+     */
+    public List<ProxySpec> prepareSpecs(List<ProxySpec> newSpecs, Collection<? extends ISpecExtension> specExtensions) {
+        Map<String, ProxySpec> specsById = new HashMap<>();
+        for (ProxySpec spec : newSpecs) {
+            if (spec.getId() == null || spec.getId().isEmpty()) {
+                throw new IllegalStateException("Configuration error: spec without id found");
+            }
+            if (specsById.put(spec.getId(), spec) != null) {
+                throw new IllegalStateException(String.format("Configuration error: duplicate spec with id '%s'", spec.getId()));
             }
+            spec.setContainerIndex();
         }
+        for (ISpecExtension specExtension : specExtensions) {
+            ProxySpec spec = specsById.get(specExtension.getId());
+            if (spec == null) {
+                throw new IllegalStateException(String.format("Configuration error: no spec found with id '%s'", specExtension.getId()));
+            }
+            spec.addSpecExtension(specExtension);
+        }
+        return newSpecs;
+    }
+
+    /**
+     * Atomically replaces the specs by specs created using {@link #prepareSpecs(List, Collection)}.
+     */
+    public void replaceSpecs(List<ProxySpec> newSpecs) {
+        Map<String, ProxySpec> specsById = new HashMap<>();
+        for (ProxySpec spec : newSpecs) {
+            specsById.put(spec.getId(), spec);
+        }
+        index = new SpecIndex(List.copyOf(newSpecs), Map.copyOf(specsById));
+    }
+
+    private record SpecIndex(List<ProxySpec> specs, Map<String, ProxySpec> specsById) {
     }
 
 }
@@ -26,6 +26,7 @@ import eu.openanalytics.containerproxy.event.ProxyStartFailedEvent;
 import eu.openanalytics.containerproxy.event.ProxyStopEvent;
 import eu.openanalytics.containerproxy.event.UserLoginEvent;
 import eu.openanalytics.containerproxy.event.UserLogoutEvent;
+import eu.openanalytics.containerproxy.spec.expression.SpelException;
 import eu.openanalytics.containerproxy.spec.expression.SpecExpressionContext;
 import eu.openanalytics.containerproxy.spec.expression.SpecExpressionResolver;
 import eu.openanalytics.containerproxy.stat.IStatCollector;
@@ -34,11 +35,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.expression.Expression;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.core.Authentication;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +52,28 @@ public abstract class AbstractDbCollector implements IStatCollector {
     @Inject
     private SpecExpressionResolver specExpressionResolver;
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    private List<ParsedAttribute> parsedAttributes = List.of();
+
+    /**
+     * Parses the attribute expressions once, such that invalid expressions are reported at startup. The parsed
+     * expressions are compiled after they have been evaluated a number of times.
+     */
+    @PostConstruct
+    public void parseAttributes() {
+        List<StatCollectorFactory.UsageStatsAttribute> usageStatsAttributes = getUsageStatsAttributes();
+        if (usageStatsAttributes == null) {
+            return;
+        }
+        List<ParsedAttribute> result = new ArrayList<>();
+        for (StatCollectorFactory.UsageStatsAttribute attribute : usageStatsAttributes) {
+            try {
+                result.add(new ParsedAttribute(attribute.getName(), specExpressionResolver.parseCompiled(attribute.getExpression())));
+            } catch (SpelException e) {
+                throw new IllegalStateException(String.format("Configuration error: invalid expression for usage statistics attribute '%s'", attribute.getName()), e);
+            }
+        }
+        parsedAttributes = result;
+    }
 
     @Async
     @EventListener
@@ -105,8 +131,18 @@ public abstract class AbstractDbCollector implements IStatCollector {
 
     protected abstract void writeToDb(ApplicationEvent event, long timestamp, String userId, String type, String data, Authentication authentication) throws Exception;
 
-    protected Map<String, String> resolveAttributes(Authentication authentication, ApplicationEvent event, List<StatCollectorFactory.UsageStatsAttribute> usageStatsAttributes) {
-        if (usageStatsAttributes == null) {
+    /**
+     * @return the attributes to add to every event, or null if the collector doesn't support attributes
+     */
+    protected List<StatCollectorFactory.UsageStatsAttribute> getUsageStatsAttributes() {
+        return null;
+    }
+
+    /**
+     * Resolves the attribute expressions (see {@link #getUsageStatsAttributes()}) that were parsed at startup.
+     */
+    protected Map<String, String> resolveAttributes(Authentication authentication, ApplicationEvent event) {
+        if (parsedAttributes.isEmpty()) {
             return new HashMap<>();
         }
         SpecExpressionContext context;
@@ -118,14 +154,17 @@ public abstract class AbstractDbCollector implements IStatCollector {
 
         Map<String, String> result = new HashMap<>();
 
-        for (StatCollectorFactory.UsageStatsAttribute attribute : usageStatsAttributes) {
+        for (ParsedAttribute attribute : parsedAttributes) {
             try {
-                result.put(attribute.getName(), specExpressionResolver.evaluateToString(attribute.getExpression(), context));
+                result.put(attribute.name(), specExpressionResolver.evaluateToString(attribute.expression(), context));
             } catch (Exception e) {
-                logger.warn("Error while resolving attribute expression '{}'", attribute.getName(), e);
+                logger.warn("Error while resolving attribute expression '{}'", attribute.name(), e);
             }
         }
         return result;
     }
 
+    private record ParsedAttribute(String name, Expression expression) {
+    }
+
 }
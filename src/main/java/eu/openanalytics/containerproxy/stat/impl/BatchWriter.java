@@ -0,0 +1,233 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.stat.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers usage statistics in a bounded queue, which is drained by a single writer thread.
+ * The writer collects items into batches and writes a batch as soon as it is full ({@code batch-size}) or when the
+ * oldest item in the batch has been waiting for {@code flush-interval} milliseconds.
+ * When the queue is full, the {@link OverflowPolicy} decides whether items are dropped or the producer waits.
+ *
+ * @param <T> type of the items
+ */
+public class BatchWriter<T> implements UsageStatsWriter<T> {
+
+    public static final String PROPERTY_PREFIX = "proxy.usage-stats-buffer.";
+
+    /**
+     * Maximum time (in milliseconds) the writer waits for new items, before checking whether it has been closed.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    public enum OverflowPolicy {
+        /**
+         * Drop the item that is being added.
+         */
+        DropNewest,
+        /**
+         * Drop the oldest item in the queue, to make place for the new item.
+         */
+        DropOldest,
+        /**
+         * Wait until there is place in the queue.
+         */
+        Block
+    }
+
+    @FunctionalInterface
+    public interface Handler<T> {
+        void write(List<T> batch) throws Exception;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String name;
+    private final ArrayBlockingQueue<T> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final OverflowPolicy overflowPolicy;
+    private final Handler<T> handler;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final Timer writeTimer;
+
+    /**
+     * @param name          name of the writer, used as thread name and as tag of the metrics
+     * @param capacity      the maximum number of items in the queue
+     * @param batchSize     the maximum number of items in a batch
+     * @param flushInterval the maximum time (in milliseconds) an item waits before its batch is written
+     * @param registry      registry used to expose metrics, may be null
+     */
+    public BatchWriter(String name, int capacity, int batchSize, long flushInterval, OverflowPolicy overflowPolicy, Handler<T> handler, MeterRegistry registry) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.overflowPolicy = overflowPolicy;
+        this.handler = handler;
+        if (registry != null) {
+            registry.gaugeCollectionSize("usage_stats_queue_size", Tags.of("writer", name), queue);
+            writtenCounter = registry.counter("usage_stats_written", "writer", name);
+            droppedCounter = registry.counter("usage_stats_dropped", "writer", name);
+            failedCounter = registry.counter("usage_stats_write_failures", "writer", name);
+            writeTimer = registry.timer("usage_stats_batch_write_time", "writer", name);
+        } else {
+            writtenCounter = null;
+            droppedCounter = null;
+            failedCounter = null;
+            writeTimer = null;
+        }
+        writerThread = new Thread(this::run, name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Creates a writer configured using the {@code proxy.usage-stats-buffer} properties.
+     */
+    public static <T> BatchWriter<T> create(String name, Environment environment, Handler<T> handler, MeterRegistry registry) {
+        return new BatchWriter<>(name,
+            environment.getProperty(PROPERTY_PREFIX + "queue-size", Integer.class, 10_000),
+            environment.getProperty(PROPERTY_PREFIX + "batch-size", Integer.class, 500),
+            environment.getProperty(PROPERTY_PREFIX + "flush-interval", Long.class, 1000L),
+            environment.getProperty(PROPERTY_PREFIX + "overflow-policy", OverflowPolicy.class, OverflowPolicy.DropNewest),
+            handler,
+            registry);
+    }
+
+    @Override
+    public void add(T item) {
+        switch (overflowPolicy) {
+            case DropNewest -> {
+                if (!queue.offer(item)) {
+                    dropped();
+                }
+            }
+            case DropOldest -> {
+                while (!queue.offer(item)) {
+                    if (queue.poll() != null) {
+                        dropped();
+                    }
+                }
+            }
+            case Block -> {
+                try {
+                    queue.put(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the writer thread, after writing all items that are still in the queue.
+     */
+    @Override
+    public void close() {
+        // no interrupt: the writer notices within POLL_INTERVAL and an interrupt could abort a write in progress
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(batchSize);
+        try {
+            while (running) {
+                T first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    T next = queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL)), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                write(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        do {
+            queue.drainTo(batch, batchSize - batch.size());
+            write(batch);
+        } while (!queue.isEmpty());
+    }
+
+    private void write(List<T> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            handler.write(batch);
+            if (writtenCounter != null) {
+                writtenCounter.increment(batch.size());
+            }
+        } catch (Exception e) {
+            logger.warn("Writing {} usage statistics using {} failed", batch.size(), name, e);
+            if (failedCounter != null) {
+                failedCounter.increment(batch.size());
+            }
+        } finally {
+            if (writeTimer != null) {
+                writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            batch.clear();
+        }
+    }
+
+    private void dropped() {
+        if (droppedCounter != null) {
+            droppedCounter.increment();
+        }
+    }
+
+}
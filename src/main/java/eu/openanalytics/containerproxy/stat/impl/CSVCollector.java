@@ -22,26 +22,48 @@ package eu.openanalytics.containerproxy.stat.impl;
 
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import eu.openanalytics.containerproxy.stat.StatCollectorFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
 import org.springframework.security.core.Authentication;
 
 import javax.annotation.PostConstruct;
+import javax.inject.Inject;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Writes the usage statistics to a CSV file.
+ * The rows are buffered (see {@link BatchWriter}) and written by a single thread, the file is flushed once per batch.
+ * The file can be rotated when it becomes larger than {@code proxy.usage-stats-csv.max-file-size} (bytes) or older
+ * than {@code proxy.usage-stats-csv.rotation-interval} (milliseconds). A rotated file gets the time of rotation as
+ * suffix and is compressed (in the background) when {@code proxy.usage-stats-csv.compress-rotated-files} is enabled.
+ */
 public class CSVCollector extends AbstractDbCollector implements AutoCloseable {
 
     private final Path url;
@@ -51,6 +73,19 @@ public class CSVCollector extends AbstractDbCollector implements AutoCloseable {
     private SequenceWriter writer;
     private CsvSchema schema;
     private CsvMapper csvMapper;
+    private Path currentFile;
+    private long currentFileOpened;
+    private long maxFileSize;
+    private long rotationInterval;
+    private boolean compressRotatedFiles;
+    private BatchWriter<Map<String, String>> batchWriter;
+    private ExecutorService compressExecutor;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private MeterRegistry meterRegistry;
 
     public CSVCollector(String url, List<StatCollectorFactory.UsageStatsAttribute> usageStatsAttributes) {
         this.url = Path.of(url);
@@ -59,9 +94,22 @@ public class CSVCollector extends AbstractDbCollector implements AutoCloseable {
 
     @PostConstruct
     public void init() throws IOException {
+        maxFileSize = environment.getProperty("proxy.usage-stats-csv.max-file-size", Long.class, -1L);
+        rotationInterval = environment.getProperty("proxy.usage-stats-csv.rotation-interval", Long.class, -1L);
+        compressRotatedFiles = environment.getProperty("proxy.usage-stats-csv.compress-rotated-files", Boolean.class, false);
+        if (compressRotatedFiles) {
+            // compress on a separate thread, such that the writer thread is not blocked
+            compressExecutor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+                .namingPattern("CSVCollector-compress-%d")
+                .daemon(true)
+                .build());
+        }
+
         csvMapper = new CsvMapper();
         csvMapper.enable(CsvGenerator.Feature.ALWAYS_QUOTE_STRINGS);
         csvMapper.enable(CsvGenerator.Feature.ALWAYS_QUOTE_EMPTY_STRINGS);
+        // flushed once per batch
+        csvMapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
         CsvSchema.Builder schemaBuilder = CsvSchema.builder();
         if (Files.exists(url) && Files.size(url) > 0) {
             CsvSchema csvSchema = csvMapper.typedSchemaFor(Map.class).withHeader();
@@ -73,14 +121,16 @@ public class CSVCollector extends AbstractDbCollector implements AutoCloseable {
                         schemaBuilder.addColumn(existingColumn);
                     }
                 }
+                currentFile = url;
                 fileWriter = new FileWriter(url.toFile(), true);
             } catch (Exception e) {
-                String newUrl = url.toString().replace(".csv", "-" + UUID.randomUUID() + ".csv");
-                logger.warn("Not re-using existing csv file for usage stats (not in expected format), writing to {}", newUrl, e);
-                fileWriter = new FileWriter(newUrl);
+                currentFile = siblingWithSuffix(url, "-" + UUID.randomUUID());
+                logger.warn("Not re-using existing csv file for usage stats (not in expected format), writing to {}", currentFile, e);
+                fileWriter = new FileWriter(currentFile.toFile());
                 schemaBuilder.setUseHeader(true);
             }
         } else {
+            currentFile = url;
             fileWriter = new FileWriter(url.toFile());
             schemaBuilder.setUseHeader(true);
         }
@@ -107,11 +157,18 @@ public class CSVCollector extends AbstractDbCollector implements AutoCloseable {
 
         schema = schemaBuilder.build();
         writer = csvMapper.writer(schema).writeValues(fileWriter);
+        currentFileOpened = System.currentTimeMillis();
         schema = schemaBuilder.setUseHeader(false).build(); // don't write header when writer re-starts
+        batchWriter = BatchWriter.create("CSVCollector", environment, this::writeBatch, meterRegistry);
     }
 
     @Override
-    protected synchronized void writeToDb(ApplicationEvent event, long timestamp, String userId, String type, String data, Authentication authentication) throws Exception {
+    protected List<StatCollectorFactory.UsageStatsAttribute> getUsageStatsAttributes() {
+        return usageStatsAttributes;
+    }
+
+    @Override
+    protected void writeToDb(ApplicationEvent event, long timestamp, String userId, String type, String data, Authentication authentication) throws Exception {
         Map<String, String> row = new HashMap<>();
         for (String column : schema.getColumnNames()) {
             row.put(column, "");
@@ -120,18 +177,87 @@ public class CSVCollector extends AbstractDbCollector implements AutoCloseable {
         row.put("username", Objects.requireNonNullElse(userId, ""));
         row.put("type", Objects.requireNonNullElse(type, ""));
         row.put("data", Objects.requireNonNullElse(data, ""));
-        row.putAll(resolveAttributes(authentication, event, usageStatsAttributes));
+        row.putAll(resolveAttributes(authentication, event));
+        batchWriter.add(row);
+    }
+
+    private void writeBatch(List<Map<String, String>> rows) throws IOException {
+        for (Map<String, String> row : rows) {
+            try {
+                writer.write(row);
+            } catch (Exception e) {
+                logger.warn("Error while writing to CSV file, data: {}", row, e);
+                writer = csvMapper.writer(schema).writeValues(fileWriter);
+            }
+        }
+        writer.flush();
+
+        if ((maxFileSize > 0 && Files.size(currentFile) >= maxFileSize)
+            || (rotationInterval > 0 && System.currentTimeMillis() - currentFileOpened >= rotationInterval)) {
+            rotate();
+        }
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        fileWriter.close();
+
+        Path rotatedFile = siblingWithSuffix(currentFile, "-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()));
+        boolean moved = false;
+        try {
+            Files.move(currentFile, rotatedFile);
+            moved = true;
+        } finally {
+            // when the move failed, keep appending to the current file
+            fileWriter = new FileWriter(currentFile.toFile(), !moved);
+            writer = csvMapper.writer(moved ? schema.withHeader() : schema).writeValues(fileWriter);
+            currentFileOpened = System.currentTimeMillis();
+        }
+        logger.info("Rotated usage statistics file to {}", rotatedFile);
+
+        if (compressRotatedFiles) {
+            compressExecutor.submit(() -> compress(rotatedFile));
+        }
+    }
+
+    private void compress(Path file) {
+        Path compressedFile = file.resolveSibling(file.getFileName() + ".gz");
         try {
-            writer.write(row);
-        } catch (Exception e) {
-            logger.warn("Error while writing to CSV file, data: {}", row, e);
-            writer = csvMapper.writer(schema).writeValues(fileWriter);
+            try (InputStream in = Files.newInputStream(file); OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressedFile))) {
+                in.transferTo(out);
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            logger.error("Failed to compress usage statistics file {}", file, e);
+        }
+    }
+
+    /**
+     * @return a path next to the given file that does not exist yet, the suffix is added before the .csv extension
+     */
+    private static Path siblingWithSuffix(Path file, String suffix) {
+        String fileName = file.getFileName().toString();
+        String baseName = fileName.endsWith(".csv") ? fileName.substring(0, fileName.length() - ".csv".length()) : fileName;
+        Path target = file.resolveSibling(baseName + suffix + ".csv");
+        int index = 1;
+        while (Files.exists(target) || Files.exists(target.resolveSibling(target.getFileName() + ".gz"))) {
+            target = file.resolveSibling(baseName + suffix + "-" + index + ".csv");
+            index++;
         }
+        return target;
     }
 
     @Override
+    @EventListener(ContextClosedEvent.class)
     public void close() throws Exception {
+        batchWriter.close();
         writer.close();
         fileWriter.close();
+        if (compressExecutor != null) {
+            compressExecutor.shutdown();
+            if (!compressExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Timeout while waiting for usage statistics files to be compressed");
+            }
+        }
     }
 }
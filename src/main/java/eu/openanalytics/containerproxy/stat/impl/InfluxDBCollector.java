@@ -20,53 +20,135 @@
  */
 package eu.openanalytics.containerproxy.stat.impl;
 
-import org.apache.commons.io.IOUtils;
+import eu.openanalytics.containerproxy.util.Retrying;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.ApplicationEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
 import org.springframework.security.core.Authentication;
 
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
  * E.g.:
  * usage-stats-url: http://localhost:8086/write?db=shinyproxy_usagestats
+ *
+ * The points are buffered (see {@link BatchWriter}) and written in batches, using a gzip compressed body. The HTTP
+ * client keeps the connection to InfluxDB open between batches. A batch that fails because of a network or server
+ * error, is retried (at most {@code proxy.usage-stats-influx.max-attempts} times), a batch rejected by InfluxDB (client
+ * error) is not retried. When a spool directory is configured, the points are kept in a {@link UsageStatsSpool} until
+ * InfluxDB accepts them, the spool then retries failed batches (using its own {@code max-attempts}) and every batch is
+ * only sent once by this collector.
  */
 public class InfluxDBCollector extends AbstractDbCollector {
 
+    private static final Retrying.Backoff BACKOFF = new Retrying.Backoff(500, 10_000, 2, 0.2);
+
     private final String destination;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+        .connectTimeout(Duration.ofSeconds(10))
+        .build();
+    private UsageStatsWriter<String> writer;
+    private int maxAttempts;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private MeterRegistry meterRegistry;
 
     public InfluxDBCollector(String url) {
         destination = url;
     }
 
+    @PostConstruct
+    public void init() throws IOException {
+        // retry at a single layer: the spool retries failed batches itself
+        maxAttempts = UsageStatsWriter.isSpooled(environment) ? 1 : environment.getProperty("proxy.usage-stats-influx.max-attempts", Integer.class, 5);
+        writer = UsageStatsWriter.create("InfluxDBCollector", String.class, environment, this::writeBatch, meterRegistry);
+    }
+
     @Override
     protected void writeToDb(ApplicationEvent event, long timestamp, String userId, String type, String data, Authentication authentication) throws Exception {
-        String body = String.format("event,username=%s,type=%s data=\"%s\"",
-            userId.replace(" ", "\\ "),
-            type.replace(" ", "\\ "),
-            Optional.ofNullable(data).orElse(""));
-
-        HttpURLConnection conn = (HttpURLConnection) new URI(destination).toURL().openConnection();
-        conn.setRequestMethod("POST");
-        conn.setDoOutput(true);
-        try (DataOutputStream dos = new DataOutputStream(conn.getOutputStream())) {
-            dos.write(body.getBytes(StandardCharsets.UTF_8));
-            dos.flush();
+        // the timestamp is required, since the points of a batch are received at the same time
+        writer.add(String.format("event,username=%s,type=%s data=\"%s\" %d",
+            escapeTagValue(userId),
+            escapeTagValue(type),
+            escapeFieldValue(Optional.ofNullable(data).orElse("")),
+            TimeUnit.MILLISECONDS.toNanos(timestamp)));
+    }
+
+    /**
+     * Escapes a tag value according to the InfluxDB line protocol.
+     */
+    private static String escapeTagValue(String value) {
+        return value.replace(",", "\\,")
+            .replace("=", "\\=")
+            .replace(" ", "\\ ");
+    }
+
+    /**
+     * Escapes a string field value according to the InfluxDB line protocol.
+     */
+    private static String escapeFieldValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void close() {
+        writer.close();
+    }
+
+    private void writeBatch(List<String> points) throws IOException, InterruptedException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+            gzip.write(String.join("\n", points).getBytes(StandardCharsets.UTF_8));
         }
-        int responseCode = conn.getResponseCode();
-        if (responseCode == 204) {
-            // All is well.
-        } else {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            IOUtils.copy(conn.getErrorStream(), bos);
-            throw new IOException(bos.toString());
+        HttpRequest request = HttpRequest.newBuilder(URI.create(destination))
+            .timeout(Duration.ofSeconds(30))
+            .header("Content-Encoding", "gzip")
+            .header("Content-Type", "text/plain; charset=utf-8")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(bos.toByteArray()))
+            .build();
+
+        for (int attempt = 1; ; attempt++) {
+            IOException error;
+            try {
+                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 204) {
+                    // All is well.
+                    return;
+                }
+                String message = String.format("InfluxDB responded with status %s: %s", response.statusCode(), response.body());
+                if (response.statusCode() < 500 && response.statusCode() != 429) {
+                    // retrying does not help for client errors (e.g. invalid points)
+                    throw new UsageStatsRejectedException(message);
+                }
+                error = new IOException(message);
+            } catch (UsageStatsRejectedException e) {
+                throw e;
+            } catch (IOException e) {
+                error = e;
+            }
+            if (attempt >= maxAttempts) {
+                throw error;
+            }
+            Thread.sleep(BACKOFF.delay(attempt));
         }
     }
 
@@ -22,7 +22,10 @@ package eu.openanalytics.containerproxy.stat.impl;
 
 import com.zaxxer.hikari.HikariDataSource;
 import eu.openanalytics.containerproxy.stat.StatCollectorFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.ApplicationEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.security.core.Authentication;
 
@@ -36,9 +39,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * # MonetDB, Postgresql, MySQL/MariaDB usage-stats-url:
@@ -59,6 +62,9 @@ import java.util.Set;
  *
  * create table event( event_time datetime, username varchar(128), type
  * varchar(128), data text );
+ *
+ * The events are written asynchronously and in batches, see {@link BatchWriter}. When a spool directory is configured,
+ * the events are stored in a {@link UsageStatsSpool} until the database accepts them.
  */
 public class JDBCCollector extends AbstractDbCollector {
 
@@ -67,11 +73,17 @@ public class JDBCCollector extends AbstractDbCollector {
     private final String password;
     private final String tableName;
     private final List<StatCollectorFactory.UsageStatsAttribute> usageStatsAttributes;
+    private final List<String> attributeColumns = new ArrayList<>();
     private HikariDataSource ds;
+    private String insertQuery;
+    private UsageStatsWriter<Row> writer;
 
     @Inject
     private Environment environment;
 
+    @Inject
+    private MeterRegistry meterRegistry;
+
     public JDBCCollector(String url, String username, String password, String tableName, List<StatCollectorFactory.UsageStatsAttribute> usageStatsAttributes) {
         this.url = url;
         this.username = username;
@@ -144,31 +156,59 @@ public class JDBCCollector extends AbstractDbCollector {
         } catch (SQLException e) {
             throw new IOException("Exception while logging stats", e);
         }
+
+        if (usageStatsAttributes != null) {
+            for (StatCollectorFactory.UsageStatsAttribute attribute : usageStatsAttributes) {
+                attributeColumns.add(attribute.getName());
+            }
+        }
+        insertQuery = buildQuery(attributeColumns);
+        writer = UsageStatsWriter.create("JDBCCollector", Row.class, environment, this::writeBatch, meterRegistry);
+    }
+
+    @Override
+    protected List<StatCollectorFactory.UsageStatsAttribute> getUsageStatsAttributes() {
+        return usageStatsAttributes;
     }
 
     @Override
     protected void writeToDb(ApplicationEvent event, long timestamp, String userId, String type, String data, Authentication authentication) throws Exception {
+        Map<String, String> attributes = resolveAttributes(authentication, event);
+        writer.add(new Row(timestamp, userId, type, data, attributes));
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void close() {
+        writer.close();
+        ds.close();
+    }
+
+    private void writeBatch(List<Row> rows) throws SQLException {
         try (Connection con = ds.getConnection()) {
-            Map<String, String> attributes = resolveAttributes(authentication, event, usageStatsAttributes);
-            String sql = buildQuery(attributes.keySet());
-
-            try (PreparedStatement stmt = con.prepareStatement(sql)) {
-                stmt.setTimestamp(1, new Timestamp(timestamp));
-                stmt.setString(2, userId);
-                stmt.setString(3, type);
-                stmt.setString(4, data);
-
-                int i = 5;
-                for (String value: attributes.values()) {
-                    stmt.setString(i++, value);
+            con.setAutoCommit(false);
+            try (PreparedStatement stmt = con.prepareStatement(insertQuery)) {
+                for (Row row : rows) {
+                    stmt.setTimestamp(1, new Timestamp(row.timestamp));
+                    stmt.setString(2, row.userId);
+                    stmt.setString(3, row.type);
+                    stmt.setString(4, row.data);
+
+                    int i = 5;
+                    for (String column : attributeColumns) {
+                        stmt.setString(i++, row.attributes.get(column));
+                    }
+                    stmt.addBatch();
                 }
-
-                stmt.executeUpdate();
+                stmt.executeBatch();
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
             }
         }
     }
 
-    private String buildQuery(Set<String> columns) {
+    private String buildQuery(List<String> columns) {
         // note: do not use any user-generated content in the query
         StringBuilder sql = new StringBuilder();
         sql.append("INSERT INTO ");
@@ -184,4 +224,8 @@ public class JDBCCollector extends AbstractDbCollector {
         sql.append(")");
         return sql.toString();
     }
+
+    private record Row(long timestamp, String userId, String type, String data, Map<String, String> attributes) {
+    }
+
 }
@@ -20,11 +20,10 @@
  */
 package eu.openanalytics.containerproxy.stat.impl;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.Scheduler;
 import eu.openanalytics.containerproxy.event.AuthFailedEvent;
 import eu.openanalytics.containerproxy.event.NewProxyEvent;
+import eu.openanalytics.containerproxy.event.ProxyPauseEvent;
+import eu.openanalytics.containerproxy.event.ProxyResumeEvent;
 import eu.openanalytics.containerproxy.event.ProxyStartEvent;
 import eu.openanalytics.containerproxy.event.ProxyStartFailedEvent;
 import eu.openanalytics.containerproxy.event.ProxyStopEvent;
@@ -50,26 +49,42 @@ import io.micrometer.core.instrument.search.MeterNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.ToDoubleFunction;
-import java.util.stream.Collectors;
 
+/**
+ * The number of running apps (absolute_apps_running) and the appInfo gauges are updated using the (bridged) proxy
+ * events. Since events may get lost (e.g. while a replica is starting), all proxies are periodically
+ * ({@code proxy.usage-stats-micrometer.reconcile-interval}, default 5 minutes) reconciled with the proxy store.
+ */
 public class Micrometer implements IStatCollector {
 
-    private static final int CACHE_UPDATE_INTERVAL = 20 * 1000; // update cache every 20 seconds
+    private static final int CLEANUP_INTERVAL = 20 * 1000; // remove gauges of stopped apps every 20 seconds
+    // time to keep the appInfo gauge after an app stopped, so that the metrics systems knows the app was stopped
+    private static final long STOPPED_RETENTION = TimeUnit.MINUTES.toMillis(2);
     private final Logger logger = LoggerFactory.getLogger(getClass());
     // keeps track of the number of proxies per spec id
     private final ConcurrentHashMap<String, Integer> proxyCountCache = new ConcurrentHashMap<>();
+    // spec id of every proxy that is Up
+    private final Map<String, String> upProxies = new HashMap<>();
+    // appInfo gauge of every proxy
+    private final Map<String, AppInfo> appInfos = new HashMap<>();
+    // proxies updated by events while a reconciliation is running (null if no reconciliation is running)
+    private Set<String> updatedDuringReconcile;
     // need to store a reference to the proxyCounters as the Micrometer library only stores weak references
     @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
     private final List<ProxyCounter> proxyCounters = new ArrayList<>();
@@ -81,6 +96,8 @@ public class Micrometer implements IStatCollector {
     private ISessionService sessionService;
     @Inject
     private IProxySpecProvider specProvider;
+    @Inject
+    private Environment environment;
 
     private Counter authFailedCounter;
 
@@ -88,8 +105,6 @@ public class Micrometer implements IStatCollector {
 
     private Counter userLogouts;
 
-    private Cache<String, String> recentProxies;
-
     private static final Map<ProxyStatus, Integer> PROXY_STATUS_TO_INTEGER = Map.of(
         ProxyStatus.New, 1,
         ProxyStatus.Up, 10,
@@ -121,10 +136,7 @@ public class Micrometer implements IStatCollector {
 
     @PostConstruct
     public void init() {
-        recentProxies = Caffeine.newBuilder()
-            .scheduler(Scheduler.systemScheduler())
-            .expireAfterWrite(2, TimeUnit.MINUTES)
-            .build();
+        long reconcileInterval = environment.getProperty("proxy.usage-stats-micrometer.reconcile-interval", Long.class, TimeUnit.MINUTES.toMillis(5));
         userLogins = registry.counter("userLogins");
         userLogouts = registry.counter("userLogouts");
         authFailedCounter = registry.counter("authFailed");
@@ -149,13 +161,19 @@ public class Micrometer implements IStatCollector {
             registry.timer("usageTime", "spec.id", spec.getId());
         }
 
-        new Timer().schedule(new TimerTask() {
+        Timer timer = new Timer(true);
+        timer.schedule(new TimerTask() {
             @Override
             public void run() {
-                updateCachedProxyCount();
-                updateAppInfo();
+                reconcile();
             }
-        }, 0, CACHE_UPDATE_INTERVAL);
+        }, 0, reconcileInterval);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                removeStoppedAppInfo();
+            }
+        }, CLEANUP_INTERVAL, CLEANUP_INTERVAL);
     }
 
     @EventListener
@@ -183,18 +201,10 @@ public class Micrometer implements IStatCollector {
         try {
             // must run on each instance (gauge is registered on every instance)
             if (event.getUserId() != null && event.getBackendContainerName() != null) {
-                registry.gauge("appInfo",
-                    Tags.of(
-                        "spec.id", event.getSpecId(),
-                        "user.id", event.getUserId(),
-                        "proxy.instance", event.getInstance(),
-                        "proxy.id", event.getProxyId(),
-                        "proxy.created.timestamp", event.getCreatedTimestamp().toString(),
-                        "resource.id", event.getBackendContainerName().getName(),
-                        "proxy.namespace", event.getBackendContainerName().getNamespace()),
-                    PROXY_STATUS_TO_INTEGER.get(ProxyStatus.New)
-                );
-                recentProxies.put(event.getProxyId(), event.getProxyId());
+                setAppInfo(event.getProxyId(),
+                    appInfoTags(event.getSpecId(), event.getUserId(), event.getInstance(), event.getProxyId(), event.getCreatedTimestamp().toString(),
+                        event.getBackendContainerName().getName(), event.getBackendContainerName().getNamespace()),
+                    PROXY_STATUS_TO_INTEGER.get(ProxyStatus.New));
             }
             logger.debug("NewProxyEvent [user: {}]", event.getUserId());
         } catch (Exception e) {
@@ -206,20 +216,12 @@ public class Micrometer implements IStatCollector {
     public void onProxyStartEvent(ProxyStartEvent event) {
         try {
             // must run on each instance (gauge is registered on every instance)
+            proxyUp(event.getProxyId(), event.getSpecId());
             if (event.getBackendContainerName() != null) {
-                removeExistingAppInfo(event.getProxyId());
-                registry.gauge("appInfo",
-                    Tags.of(
-                        "spec.id", event.getSpecId(),
-                        "user.id", event.getUserId(),
-                        "proxy.instance", event.getInstance(),
-                        "proxy.id", event.getProxyId(),
-                        "proxy.created.timestamp", event.getCreatedTimestamp().toString(),
-                        "resource.id", event.getBackendContainerName().getName(),
-                        "proxy.namespace", event.getBackendContainerName().getNamespace()),
-                    PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Up)
-                );
-                recentProxies.put(event.getProxyId(), event.getProxyId());
+                setAppInfo(event.getProxyId(),
+                    appInfoTags(event.getSpecId(), event.getUserId(), event.getInstance(), event.getProxyId(), event.getCreatedTimestamp().toString(),
+                        event.getBackendContainerName().getName(), event.getBackendContainerName().getNamespace()),
+                    PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Up));
             }
             if (!event.isLocalEvent()) {
                 return;
@@ -262,36 +264,13 @@ public class Micrometer implements IStatCollector {
     @EventListener
     public void onProxyStopEvent(ProxyStopEvent event) {
         try {
-            recentProxies.put(event.getProxyId(), event.getProxyId());
             // must run on each instance (gauge is registered on every instance)
+            proxyDown(event.getProxyId());
             Integer value = PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Stopped);
             if (event.getProxyStopReason().equals(ProxyStopReason.Crashed)) {
                 value = PROXY_STATUS_CRASHED_TO_INTEGER;
             }
-            String resourceId;
-            String namespace;
-            Gauge gauge = removeExistingAppInfo(event.getProxyId());
-            if (event.getBackendContainerName() != null) {
-                resourceId = event.getBackendContainerName().getName();
-                namespace = event.getBackendContainerName().getNamespace();
-            } else if (gauge != null) {
-                resourceId = gauge.getId().getTag("resource.id");
-                namespace = gauge.getId().getTag("proxy.namespace");
-            } else {
-                resourceId = "NA";
-                namespace = "NA";
-            }
-            registry.gauge("appInfo",
-                Tags.of(
-                    "spec.id", event.getSpecId(),
-                    "user.id", event.getUserId(),
-                    "proxy.instance", event.getInstance(),
-                    "proxy.id", event.getProxyId(),
-                    "proxy.created.timestamp", event.getCreatedTimestamp().toString(),
-                    "resource.id", resourceId,
-                    "proxy.namespace", namespace),
-                value
-            );
+            setAppInfo(event.getProxyId(), event.getSpecId(), event.getUserId(), event.getInstance(), event.getCreatedTimestamp(), event.getBackendContainerName(), value);
             if (!event.isLocalEvent()) {
                 return;
             }
@@ -311,33 +290,10 @@ public class Micrometer implements IStatCollector {
     @EventListener
     public void onProxyStartFailedEvent(ProxyStartFailedEvent event) {
         try {
-            recentProxies.put(event.getProxyId(), event.getProxyId());
             // must run on each instance (gauge is registered on every instance)
-            String resourceId;
-            String namespace;
-            Gauge gauge = removeExistingAppInfo(event.getProxyId());
-            if (event.getBackendContainerName() != null) {
-                resourceId = event.getBackendContainerName().getName();
-                namespace = event.getBackendContainerName().getNamespace();
-            } else if (gauge != null) {
-                resourceId = gauge.getId().getTag("resource.id");
-                namespace = gauge.getId().getTag("proxy.namespace");
-            } else {
-                resourceId = "NA";
-                namespace = "NA";
-            }
-            registry.gauge("appInfo",
-                Tags.of(
-                    "spec.id", event.getSpecId(),
-                    "user.id", event.getUserId(),
-                    "proxy.instance", event.getInstance(),
-                    "proxy.id", event.getProxyId(),
-                    "proxy.created.timestamp", event.getCreatedTimestamp().toString(),
-                    "resource.id", resourceId,
-                    "proxy.namespace", namespace
-                ),
-                PROXY_STATUS_FAILED_TO_START_TO_INTEGER
-            );
+            proxyDown(event.getProxyId());
+            setAppInfo(event.getProxyId(), event.getSpecId(), event.getUserId(), event.getInstance(), event.getCreatedTimestamp(), event.getBackendContainerName(),
+                PROXY_STATUS_FAILED_TO_START_TO_INTEGER);
             if (!event.isLocalEvent()) {
                 return;
             }
@@ -348,6 +304,28 @@ public class Micrometer implements IStatCollector {
         }
     }
 
+    @EventListener
+    public void onProxyPauseEvent(ProxyPauseEvent event) {
+        try {
+            // must run on each instance (gauge is registered on every instance)
+            proxyDown(event.getProxyId());
+            updateAppInfoStatus(event.getProxyId(), PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Paused));
+        } catch (Exception e) {
+            logger.warn("Collecting event failed", e);
+        }
+    }
+
+    @EventListener
+    public void onProxyResumeEvent(ProxyResumeEvent event) {
+        try {
+            // must run on each instance (gauge is registered on every instance)
+            proxyUp(event.getProxyId(), event.getSpecId());
+            updateAppInfoStatus(event.getProxyId(), PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Up));
+        } catch (Exception e) {
+            logger.warn("Collecting event failed", e);
+        }
+    }
+
     @EventListener
     public void onAuthFailedEvent(AuthFailedEvent event) {
         try {
@@ -358,27 +336,21 @@ public class Micrometer implements IStatCollector {
         }
     }
 
-    /**
-     * Updates the cache containing the number of proxies running for each spec id.
-     * We only update this value every CACHE_UPDATE_INTERVAL because this is a relative heavy computation to do.
-     * Therefore, we don't want that this calculation is performed every time the gauge is updated.
-     * Especially since this could be called using an HTTP request.
-     */
-    private void updateCachedProxyCount() {
-        Map<String, Integer> intermediate = new HashMap<>();
-        // for all specs, reset to zero
-        for (String specId : proxyCountCache.keySet()) {
-            intermediate.put(specId, 0);
-        }
-        // count number of running apps
-        for (Proxy proxy : proxyService.getAllUpProxies()) {
-            intermediate.put(proxy.getSpecId(), intermediate.getOrDefault(proxy.getSpecId(), 0) + 1);
+    private synchronized void proxyUp(String proxyId, String specId) {
+        markUpdated(proxyId);
+        if (upProxies.put(proxyId, specId) == null) {
+            if (!proxyCountCache.containsKey(specId)) {
+                createMetersForExistingProxySpec(specId);
+            }
+            proxyCountCache.merge(specId, 1, Integer::sum);
         }
+    }
 
-        for (Map.Entry<String, Integer> entry : intermediate.entrySet()) {
-            createMetersForExistingProxySpec(entry.getKey());
-            proxyCountCache.put(entry.getKey(), entry.getValue());
-            logger.debug(String.format("Running proxies count for spec %s: %s ", entry.getKey(), entry.getValue()));
+    private synchronized void proxyDown(String proxyId) {
+        markUpdated(proxyId);
+        String specId = upProxies.remove(proxyId);
+        if (specId != null) {
+            proxyCountCache.merge(specId, -1, Integer::sum);
         }
     }
 
@@ -418,96 +390,193 @@ public class Micrometer implements IStatCollector {
     }
 
     /**
-     * Registers the appInfo gauge for every running app and removes any registrations for apps that have been stopped.
+     * Reconciles the number of running apps and the appInfo gauges with the proxy store, this corrects any drift caused by
+     * missed events (e.g. on startup).
      * All gauges must be registered on every replica. If the gauge was only registered on the instance the app was started,
      * it would be removed from prometheus when that instance stopped, although the app could still be running.
-     *
-     * The periodic sync keeps the registry in sync (e.g. on startup).
-     * It also ensure the appInfo gauge is removed after the proxy has stopped. We can't do this in the onProxyStopEvent function,
-     * since otherwise the Gauge will not be updated to the Stopped state.
      */
-    private void updateAppInfo() {
+    private void reconcile() {
         try {
-            Map<String, Gauge> existingGauges = getAppInfoGauges();
-            for (Proxy proxy : proxyService.getAllProxies()) {
-                Gauge existingGauge = existingGauges.remove(proxy.getId());
-                if (existingGauge != null && (existingGauge.value() == PROXY_STATUS_TO_INTEGER.get(proxy.getStatus())
-                    || existingGauge.value() == PROXY_STATUS_CRASHED_TO_INTEGER
-                    || existingGauge.value() == PROXY_STATUS_FAILED_TO_START_TO_INTEGER)) {
-                    // gauge already exists and value is correct
-                    continue;
-                }
-                if (existingGauge != null) {
-                    registry.remove(existingGauge);
-                }
+            synchronized (this) {
+                updatedDuringReconcile = new HashSet<>();
+            }
+            // the snapshot is taken without holding the lock, such that events are not blocked by the (possibly slow)
+            // proxy store, proxies updated by an event in the meantime keep their (more recent) state
+            List<Proxy> proxies = proxyService.getAllProxies();
+            synchronized (this) {
+                Set<String> updated = updatedDuringReconcile;
+                List<Proxy> unchanged = proxies.stream().filter(p -> !updated.contains(p.getId())).toList();
+                reconcileProxyCount(unchanged, updated);
+                reconcileAppInfo(unchanged, updated);
+            }
+        } catch (Exception e) {
+            logger.error("Error in reconcile", e);
+        } finally {
+            synchronized (this) {
+                updatedDuringReconcile = null;
+            }
+        }
+    }
+
+    private void reconcileProxyCount(List<Proxy> proxies, Set<String> updated) {
+        Map<String, String> reconciled = new HashMap<>();
+        for (Proxy proxy : proxies) {
+            if (proxy.getStatus() == ProxyStatus.Up) {
+                reconciled.put(proxy.getId(), proxy.getSpecId());
+            }
+        }
+        for (String proxyId : updated) {
+            String specId = upProxies.get(proxyId);
+            if (specId != null) {
+                reconciled.put(proxyId, specId);
+            }
+        }
+        upProxies.clear();
+        upProxies.putAll(reconciled);
 
-                BackendContainerName backendContainerName = getBackendContainerName(proxy);
-                if (backendContainerName == null) {
-                    // container not fully ready, will be registered later
-                    continue;
+        Map<String, Integer> intermediate = new HashMap<>();
+        // for all specs, reset to zero
+        for (String specId : proxyCountCache.keySet()) {
+            intermediate.put(specId, 0);
+        }
+        // count number of running apps
+        for (String specId : upProxies.values()) {
+            intermediate.put(specId, intermediate.getOrDefault(specId, 0) + 1);
+        }
+
+        for (Map.Entry<String, Integer> entry : intermediate.entrySet()) {
+            createMetersForExistingProxySpec(entry.getKey());
+            Integer previous = proxyCountCache.put(entry.getKey(), entry.getValue());
+            if (previous != null && !previous.equals(entry.getValue())) {
+                logger.debug("Corrected running proxies count for spec {}: {} -> {}", entry.getKey(), previous, entry.getValue());
+            }
+        }
+    }
+
+    private void reconcileAppInfo(List<Proxy> proxies, Set<String> updated) {
+        Map<String, AppInfo> existing = new HashMap<>(appInfos);
+        existing.keySet().removeAll(updated);
+        for (Proxy proxy : proxies) {
+            AppInfo appInfo = existing.remove(proxy.getId());
+            if (appInfo != null && (appInfo.status.get() == PROXY_STATUS_TO_INTEGER.get(proxy.getStatus())
+                || appInfo.isTerminal())) {
+                // gauge already exists and value is correct
+                continue;
+            }
+
+            BackendContainerName backendContainerName = getBackendContainerName(proxy);
+            if (backendContainerName == null) {
+                // container not fully ready, will be registered later
+                continue;
+            }
+            setAppInfo(proxy.getId(),
+                appInfoTags(proxy.getSpecId(), proxy.getUserId(), proxy.getRuntimeValueOrDefault("SHINYPROXY_APP_INSTANCE", ""), proxy.getId(),
+                    Long.toString(proxy.getCreatedTimestamp()), backendContainerName.getName(), backendContainerName.getNamespace()),
+                PROXY_STATUS_TO_INTEGER.get(proxy.getStatus()));
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, AppInfo> entry : existing.entrySet()) {
+            AppInfo appInfo = entry.getValue();
+            if (now - appInfo.updated < STOPPED_RETENTION) {
+                // this proxy was recently updated, we should not yet remove the gauge
+                // so that the metrics systems knows the app was stopped
+                if (!appInfo.isTerminal()) {
+                    // gauge not yet updated -> set is as stopped
+                    appInfo.setStatus(PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Stopped));
                 }
-                registry.gauge("appInfo",
-                    Tags.of(
-                        "spec.id", proxy.getSpecId(),
-                        "user.id", proxy.getUserId(),
-                        "proxy.instance", proxy.getRuntimeValueOrDefault("SHINYPROXY_APP_INSTANCE", ""),
-                        "proxy.id", proxy.getId(),
-                        "proxy.created.timestamp", Long.toString(proxy.getCreatedTimestamp()),
-                        "resource.id", backendContainerName.getName(),
-                        "proxy.namespace", backendContainerName.getNamespace()),
-                    PROXY_STATUS_TO_INTEGER.get(proxy.getStatus())
-                );
+                continue;
             }
-            for (Gauge gauge : existingGauges.values()) {
-                String proxyId = gauge.getId().getTag("proxy.id");
-                if (proxyId != null && recentProxies.getIfPresent(proxyId) != null) {
-                    // this proxy was recently stopped, we should not yet remove the gauge
-                    // so that the metrics systems knows the app was stopped
-                    if (gauge.value() != PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Stopped)
-                        && gauge.value() != PROXY_STATUS_CRASHED_TO_INTEGER
-                        && gauge.value() != PROXY_STATUS_FAILED_TO_START_TO_INTEGER) {
-                        // gauge not yet updated -> set is as stopped
-                        registry.remove(gauge);
-                        registry.gauge("appInfo",
-                            Tags.of(
-                                "spec.id", gauge.getId().getTag("spec.id"),
-                                "user.id", gauge.getId().getTag("user.id"),
-                                "proxy.instance", gauge.getId().getTag("proxy.instance"),
-                                "proxy.id", gauge.getId().getTag("proxy.id"),
-                                "proxy.created.timestamp", gauge.getId().getTag("proxy.created.timestamp"),
-                                "resource.id", gauge.getId().getTag("resource.id"),
-                                "proxy.namespace", gauge.getId().getTag("proxy.namespace")),
-                            PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Stopped)
-                        );
-                    }
-                    continue;
+            // the proxy of this gauge no longer exists -> remove the gauge
+            removeAppInfo(entry.getKey());
+        }
+    }
+
+    /**
+     * Removes the appInfo gauge of apps that stopped more than STOPPED_RETENTION ago. We can't do this in the
+     * onProxyStopEvent function, since otherwise the Gauge will not be updated to the Stopped state.
+     */
+    private synchronized void removeStoppedAppInfo() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, AppInfo> entry : new ArrayList<>(appInfos.entrySet())) {
+                if (entry.getValue().isTerminal() && now - entry.getValue().updated >= STOPPED_RETENTION) {
+                    removeAppInfo(entry.getKey());
                 }
-                // the proxy of this gauge no longer exists -> remove the gauge
-                registry.remove(gauge);
             }
         } catch (Exception e) {
-            logger.error("Error in updateAppInfo", e);
+            logger.error("Error in removeStoppedAppInfo", e);
         }
     }
 
-    private Map<String, Gauge> getAppInfoGauges() {
-        try {
-            return new HashMap<>(registry.get("appInfo").gauges().stream()
-                .collect(Collectors.toMap(g -> g.getId().getTag("proxy.id"), g -> g)));
-        } catch (MeterNotFoundException ignored) {
-            return new HashMap<>();
+    /**
+     * Sets the appInfo gauge of a proxy that is stopped or failed to start, the event may not contain the name of the
+     * container, in that case the name of the existing gauge is re-used.
+     */
+    private synchronized void setAppInfo(String proxyId, String specId, String userId, String instance, Long createdTimestamp,
+                                         BackendContainerName backendContainerName, Integer value) {
+        String resourceId;
+        String namespace;
+        AppInfo existing = appInfos.get(proxyId);
+        if (backendContainerName != null) {
+            resourceId = backendContainerName.getName();
+            namespace = backendContainerName.getNamespace();
+        } else if (existing != null) {
+            resourceId = existing.gauge.getId().getTag("resource.id");
+            namespace = existing.gauge.getId().getTag("proxy.namespace");
+        } else {
+            resourceId = "NA";
+            namespace = "NA";
         }
+        setAppInfo(proxyId, appInfoTags(specId, userId, instance, proxyId, createdTimestamp.toString(), resourceId, namespace), value);
     }
 
-    private Gauge removeExistingAppInfo(String proxyId) {
-        try {
-            Gauge gauge = registry.get("appInfo").tag("proxy.id", proxyId).gauge();
-            registry.remove(gauge);
-            return gauge;
-        } catch (MeterNotFoundException ignored) {
+    private synchronized void setAppInfo(String proxyId, Tags tags, Integer value) {
+        markUpdated(proxyId);
+        AppInfo existing = appInfos.get(proxyId);
+        if (existing != null) {
+            if (Tags.of(existing.gauge.getId().getTags()).equals(tags)) {
+                existing.setStatus(value);
+                return;
+            }
+            registry.remove(existing.gauge);
+        }
+        AtomicInteger status = new AtomicInteger(value);
+        Gauge gauge = Gauge.builder("appInfo", status, AtomicInteger::get)
+            .tags(tags)
+            .register(registry);
+        appInfos.put(proxyId, new AppInfo(gauge, status));
+    }
 
+    private synchronized void updateAppInfoStatus(String proxyId, Integer value) {
+        markUpdated(proxyId);
+        AppInfo existing = appInfos.get(proxyId);
+        if (existing != null) {
+            existing.setStatus(value);
+        }
+    }
+
+    private synchronized void removeAppInfo(String proxyId) {
+        AppInfo appInfo = appInfos.remove(proxyId);
+        if (appInfo != null) {
+            registry.remove(appInfo.gauge);
+        }
+    }
+
+    private void markUpdated(String proxyId) {
+        if (updatedDuringReconcile != null) {
+            updatedDuringReconcile.add(proxyId);
         }
-        return null;
+    }
+
+    private static Tags appInfoTags(String specId, String userId, String instance, String proxyId, String createdTimestamp, String resourceId, String namespace) {
+        return Tags.of(
+            "spec.id", specId,
+            "user.id", userId,
+            "proxy.instance", instance,
+            "proxy.id", proxyId,
+            "proxy.created.timestamp", createdTimestamp,
+            "resource.id", resourceId,
+            "proxy.namespace", namespace);
     }
 
     private BackendContainerName getBackendContainerName(Proxy proxy) {
@@ -517,4 +586,30 @@ public class Micrometer implements IStatCollector {
         return null;
     }
 
+    private static class AppInfo {
+
+        private final Gauge gauge;
+        // the gauge keeps a weak reference to the value
+        private final AtomicInteger status;
+        private volatile long updated = System.currentTimeMillis();
+
+        private AppInfo(Gauge gauge, AtomicInteger status) {
+            this.gauge = gauge;
+            this.status = status;
+        }
+
+        private void setStatus(int value) {
+            status.set(value);
+            updated = System.currentTimeMillis();
+        }
+
+        private boolean isTerminal() {
+            int value = status.get();
+            return value == PROXY_STATUS_TO_INTEGER.get(ProxyStatus.Stopped)
+                || value == PROXY_STATUS_CRASHED_TO_INTEGER
+                || value == PROXY_STATUS_FAILED_TO_START_TO_INTEGER;
+        }
+
+    }
+
 }
@@ -0,0 +1,542 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.stat.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.openanalytics.containerproxy.util.Retrying;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log for usage statistics, such that no statistics are lost while the sink is unavailable (or when
+ * ShinyProxy is restarted in the meantime).
+ * <p>
+ * Items are appended to segment files in the spool directory, every record consists of the length and the CRC32 of the
+ * payload, followed by the payload (the item serialized as JSON). Adding an item only appends to the current segment,
+ * it never waits for the sink. A new segment is started once the current segment reaches {@code segment-size} bytes.
+ * <p>
+ * A shipper thread reads the records in batches and writes them to the sink, failed batches are retried using an
+ * exponential backoff (at most {@code max-attempts} times). Items rejected by the sink (see
+ * {@link UsageStatsRejectedException}) are dropped without retrying. The current segment is synced to disk before every
+ * batch and when a new segment is started. The position of the shipper is stored (and synced) in a checkpoint file after
+ * every batch and segments are deleted once they are shipped. Records are delivered at least once: a batch is written again when ShinyProxy stops
+ * between writing the batch and storing the checkpoint. A record with an invalid CRC (e.g. a partial write) ends its
+ * segment.
+ *
+ * @param <T> type of the items
+ */
+public class UsageStatsSpool<T> implements UsageStatsWriter<T> {
+
+    public static final String PROPERTY_PREFIX = "proxy.usage-stats-spool.";
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final Retrying.Backoff BACKOFF = new Retrying.Backoff(500, 60_000, 2, 0.2);
+    /**
+     * With the backoff capped at one minute, a batch is dropped after the sink has been unavailable for about 1.5 hours.
+     */
+    private static final int DEFAULT_MAX_ATTEMPTS = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String name;
+    private final Path directory;
+    private final Class<T> type;
+    private final int batchSize;
+    private final long flushInterval;
+    private final long segmentSize;
+    private final long maxSize;
+    private final int maxAttempts;
+    private final BatchWriter.Handler<T> handler;
+    private final Thread shipperThread;
+    private final Object shipperMonitor = new Object();
+    private volatile boolean running = true;
+
+    // guarded by lock
+    private final Object lock = new Object();
+    private FileChannel writeChannel;
+    private long writeSegment;
+    private long writePosition;
+    private long size;
+    private boolean closed;
+    private boolean unsynced;
+
+    // only used by the shipper thread
+    private FileChannel readChannel;
+    private long readSegment;
+    private long readPosition;
+
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final Timer writeTimer;
+
+    /**
+     * @param name          name of the spool, used as thread name and as tag of the metrics
+     * @param directory     directory containing the segments, should only be used by this spool
+     * @param batchSize     the maximum number of items written to the sink at once
+     * @param flushInterval time (in milliseconds) to wait for new items, when less than batchSize items are available
+     * @param segmentSize   the size (in bytes) after which a new segment is started
+     * @param maxSize       the maximum size (in bytes) of the spool, new items are dropped when the spool is full
+     * @param maxAttempts   the number of attempts to write a batch before it's dropped, -1 for unlimited (not recommended,
+     *                      a batch that keeps failing blocks the spool)
+     * @param registry      registry used to expose metrics, may be null
+     */
+    public UsageStatsSpool(String name, Path directory, Class<T> type, int batchSize, long flushInterval, long segmentSize, long maxSize, int maxAttempts,
+                           BatchWriter.Handler<T> handler, MeterRegistry registry) throws IOException {
+        this.name = name;
+        this.directory = directory;
+        this.type = type;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.maxAttempts = maxAttempts;
+        this.handler = handler;
+
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments();
+        long lastSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        readCheckpoint();
+        if (readSegment == 0) {
+            readSegment = segments.isEmpty() ? 1 : segments.get(0);
+        }
+        for (long segment : segments) {
+            if (segment < readSegment) {
+                Files.delete(segmentPath(segment));
+            } else {
+                size += Files.size(segmentPath(segment));
+            }
+        }
+        // never append to an existing segment, it may end with a partial record
+        writeSegment = Math.max(lastSegment, readSegment) + 1;
+        writeChannel = FileChannel.open(segmentPath(writeSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (size > 0) {
+            logger.info("Spool {} contains {} bytes of usage statistics that have not been written yet", name, size);
+        }
+
+        if (registry != null) {
+            registry.gauge("usage_stats_spool_size", Tags.of("writer", name), this, UsageStatsSpool::getSize);
+            writtenCounter = registry.counter("usage_stats_written", "writer", name);
+            droppedCounter = registry.counter("usage_stats_dropped", "writer", name);
+            failedCounter = registry.counter("usage_stats_write_failures", "writer", name);
+            writeTimer = registry.timer("usage_stats_batch_write_time", "writer", name);
+        } else {
+            writtenCounter = null;
+            droppedCounter = null;
+            failedCounter = null;
+            writeTimer = null;
+        }
+        shipperThread = new Thread(this::run, name);
+        shipperThread.setDaemon(true);
+        shipperThread.start();
+    }
+
+    /**
+     * Creates a spool configured using the {@code proxy.usage-stats-spool} and {@code proxy.usage-stats-buffer}
+     * properties.
+     */
+    public static <T> UsageStatsSpool<T> create(String name, Path directory, Class<T> type, Environment environment, BatchWriter.Handler<T> handler, MeterRegistry registry) throws IOException {
+        return new UsageStatsSpool<>(name, directory, type,
+            environment.getProperty(BatchWriter.PROPERTY_PREFIX + "batch-size", Integer.class, 500),
+            environment.getProperty(BatchWriter.PROPERTY_PREFIX + "flush-interval", Long.class, 1000L),
+            environment.getProperty(PROPERTY_PREFIX + "segment-size", Long.class, 16L * 1024 * 1024),
+            environment.getProperty(PROPERTY_PREFIX + "max-size", Long.class, 1024L * 1024 * 1024),
+            environment.getProperty(PROPERTY_PREFIX + "max-attempts", Integer.class, DEFAULT_MAX_ATTEMPTS),
+            handler,
+            registry);
+    }
+
+    @Override
+    public void add(T item) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(item);
+        } catch (IOException e) {
+            logger.warn("Cannot serialize usage statistic for spool {}", name, e);
+            dropped();
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length)
+            .putInt(payload.length)
+            .putInt((int) crc.getValue())
+            .put(payload)
+            .flip();
+
+        synchronized (lock) {
+            if (closed || size + record.remaining() > maxSize) {
+                dropped();
+                return;
+            }
+            try {
+                if (writePosition > 0 && writePosition + record.remaining() > segmentSize) {
+                    nextWriteSegment();
+                }
+                while (record.hasRemaining()) {
+                    int written = writeChannel.write(record);
+                    writePosition += written;
+                    size += written;
+                }
+                unsynced = true;
+            } catch (IOException e) {
+                logger.warn("Writing usage statistic to spool {} failed", name, e);
+                dropped();
+                try {
+                    // the segment may end with a partial record now
+                    nextWriteSegment();
+                } catch (IOException ex) {
+                    logger.warn("Starting new segment in spool {} failed", name, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the shipper, after it tried to write the items that are in the spool (once).
+     * Items that could not be written, stay in the spool until the next start.
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (shipperMonitor) {
+            shipperMonitor.notifyAll();
+        }
+        try {
+            shipperThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            closed = true;
+            try {
+                writeChannel.force(false);
+                writeChannel.close();
+            } catch (IOException e) {
+                logger.warn("Closing spool {} failed", name, e);
+            }
+        }
+    }
+
+    /**
+     * @return the size (in bytes) of the segments, i.e. the records that are not yet written and the records in the
+     * current segment
+     */
+    public long getSize() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                syncWriteSegment();
+                Batch<T> batch = readBatch();
+                if (batch.items.isEmpty()) {
+                    if (batch.endOfSegment) {
+                        nextReadSegment();
+                        continue;
+                    }
+                    if (!running) {
+                        break;
+                    }
+                    await(flushInterval);
+                    continue;
+                }
+                if (!ship(batch.items)) {
+                    break;
+                }
+                readPosition = batch.position;
+                writeCheckpoint();
+                if (running && !batch.endOfSegment && batch.items.size() < batchSize) {
+                    await(flushInterval);
+                }
+            } catch (Exception e) {
+                logger.warn("Error in usage statistics spool {}", name, e);
+                if (!running) {
+                    break;
+                }
+                await(BACKOFF.maxInterval());
+            }
+        }
+        try {
+            if (readChannel != null) {
+                readChannel.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Closing spool {} failed", name, e);
+        }
+    }
+
+    /**
+     * @return whether the batch is written (or dropped), false if the spool is closed before the batch could be written
+     */
+    private boolean ship(List<T> items) {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                handler.write(items);
+                if (writtenCounter != null) {
+                    writtenCounter.increment(items.size());
+                }
+                return true;
+            } catch (UsageStatsRejectedException e) {
+                if (failedCounter != null) {
+                    failedCounter.increment(items.size());
+                }
+                return shipRejected(items, e);
+            } catch (Exception e) {
+                if (failedCounter != null) {
+                    failedCounter.increment(items.size());
+                }
+                if (maxAttempts > 0 && attempt >= maxAttempts) {
+                    logger.warn("Writing {} usage statistics using {} failed after {} attempts, dropping them", items.size(), name, attempt, e);
+                    if (droppedCounter != null) {
+                        droppedCounter.increment(items.size());
+                    }
+                    return true;
+                }
+                if (attempt == 1) {
+                    logger.warn("Writing {} usage statistics using {} failed, retrying", items.size(), name, e);
+                }
+                if (!running) {
+                    return false;
+                }
+            } finally {
+                if (writeTimer != null) {
+                    writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }
+            await(BACKOFF.delay(attempt));
+        }
+    }
+
+    /**
+     * Handles a batch that was rejected by the sink. The batch is split in halves that are written separately, such that
+     * only the rejected items are dropped instead of the whole batch.
+     */
+    private boolean shipRejected(List<T> items, UsageStatsRejectedException e) {
+        if (items.size() == 1) {
+            logger.warn("Usage statistic {} was rejected by {}, dropping it", items.getFirst(), name, e);
+            dropped();
+            return true;
+        }
+        int middle = items.size() / 2;
+        return ship(items.subList(0, middle)) && ship(items.subList(middle, items.size()));
+    }
+
+    private Batch<T> readBatch() throws IOException {
+        boolean active;
+        long limit;
+        synchronized (lock) {
+            active = readSegment == writeSegment;
+            limit = writePosition;
+        }
+        List<T> items = new ArrayList<>();
+        if (readChannel == null) {
+            Path path = segmentPath(readSegment);
+            if (!Files.exists(path)) {
+                return new Batch<>(items, readPosition, !active);
+            }
+            readChannel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        if (!active) {
+            limit = readChannel.size();
+        }
+
+        long position = readPosition;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (items.size() < batchSize && position + HEADER_SIZE <= limit) {
+            readFully(header.clear(), position);
+            int length = header.getInt(0);
+            if (length < 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > limit) {
+                logger.warn("Spool {} contains an invalid record in segment {} at position {}, skipping the remainder of the segment", name, readSegment, position);
+                position = limit;
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                logger.warn("Spool {} contains a corrupt record in segment {} at position {}, skipping the remainder of the segment", name, readSegment, position);
+                position = limit;
+                break;
+            }
+            position += HEADER_SIZE + length;
+            try {
+                items.add(objectMapper.readValue(payload.array(), type));
+            } catch (IOException e) {
+                logger.warn("Cannot deserialize usage statistic in spool {}, skipping it", name, e);
+            }
+        }
+        return new Batch<>(items, position, !active && position >= limit);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = readChannel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private void nextReadSegment() throws IOException {
+        if (readChannel != null) {
+            readChannel.close();
+            readChannel = null;
+        }
+        Path path = segmentPath(readSegment);
+        long segmentSize = Files.exists(path) ? Files.size(path) : 0;
+        Files.deleteIfExists(path);
+        synchronized (lock) {
+            size -= segmentSize;
+        }
+        readSegment++;
+        readPosition = 0;
+        writeCheckpoint();
+    }
+
+    private void nextWriteSegment() throws IOException {
+        try {
+            writeChannel.force(false);
+        } finally {
+            writeChannel.close();
+        }
+        unsynced = false;
+        writeSegment++;
+        writePosition = 0;
+        writeChannel = FileChannel.open(segmentPath(writeSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Syncs the records that have been added to the current segment to disk. The sync itself happens outside the lock,
+     * such that adding items is not blocked.
+     */
+    private void syncWriteSegment() throws IOException {
+        FileChannel channel;
+        synchronized (lock) {
+            if (!unsynced || closed) {
+                return;
+            }
+            unsynced = false;
+            channel = writeChannel;
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // a new segment was started in the meantime, the previous segment was synced before it was closed
+        }
+    }
+
+    private void readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+        String[] checkpoint = Files.readString(path, StandardCharsets.UTF_8).trim().split(" ");
+        try {
+            readSegment = Long.parseLong(checkpoint[0]);
+            readPosition = Long.parseLong(checkpoint[1]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            logger.warn("Ignoring invalid checkpoint of spool {}", name);
+            readSegment = 0;
+            readPosition = 0;
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap((readSegment + " " + readPosition).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .map(f -> f.getFileName().toString())
+                .filter(f -> f.startsWith(SEGMENT_PREFIX) && f.endsWith(SEGMENT_SUFFIX))
+                .map(f -> Long.parseLong(f.substring(SEGMENT_PREFIX.length(), f.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private void await(long millis) {
+        synchronized (shipperMonitor) {
+            if (running) {
+                try {
+                    shipperMonitor.wait(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+        }
+    }
+
+    private void dropped() {
+        if (droppedCounter != null) {
+            droppedCounter.increment();
+        }
+    }
+
+    private record Batch<T>(List<T> items, long position, boolean endOfSegment) {
+    }
+
+}
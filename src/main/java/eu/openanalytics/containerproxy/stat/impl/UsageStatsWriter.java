@@ -0,0 +1,64 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.stat.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes usage statistics to a sink, without blocking the caller on the sink.
+ *
+ * @param <T> type of the items
+ */
+public interface UsageStatsWriter<T> {
+
+    void add(T item);
+
+    /**
+     * Stops the writer, pending items are written (or kept for the next start) first.
+     */
+    void close();
+
+    /**
+     * Creates a {@link UsageStatsSpool} if {@code proxy.usage-stats-spool.directory} is configured, otherwise a
+     * {@link BatchWriter}.
+     *
+     * @param type the type of the items, used to (de-)serialize items in the spool
+     */
+    static <T> UsageStatsWriter<T> create(String name, Class<T> type, Environment environment, BatchWriter.Handler<T> handler, MeterRegistry registry) throws IOException {
+        if (!isSpooled(environment)) {
+            return BatchWriter.create(name, environment, handler, registry);
+        }
+        Path directory = Path.of(environment.getRequiredProperty(UsageStatsSpool.PROPERTY_PREFIX + "directory"));
+        return UsageStatsSpool.create(name, directory.resolve(name), type, environment, handler, registry);
+    }
+
+    /**
+     * @return whether {@link #create} creates a {@link UsageStatsSpool}, which retries failed batches itself
+     */
+    static boolean isSpooled(Environment environment) {
+        return environment.getProperty(UsageStatsSpool.PROPERTY_PREFIX + "directory") != null;
+    }
+
+}
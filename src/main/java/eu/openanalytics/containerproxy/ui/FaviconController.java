@@ -22,6 +22,7 @@ package eu.openanalytics.containerproxy.ui;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import eu.openanalytics.containerproxy.event.ProxySpecsReloadedEvent;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.service.UserService;
 import eu.openanalytics.containerproxy.spec.IProxySpecProvider;
@@ -29,6 +30,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
@@ -101,6 +103,11 @@ public class FaviconController {
         return toResponse(favicon);
     }
 
+    @EventListener
+    public void onProxySpecsReloaded(ProxySpecsReloadedEvent event) {
+        faviconCache.invalidateAll();
+    }
+
     private Favicon resolveFavicon(String path) {
         if (path == null) {
             return null;
@@ -21,8 +21,10 @@
 package eu.openanalytics.containerproxy.util;
 
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.core.env.Environment;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -30,6 +32,8 @@ import java.util.concurrent.TimeUnit;
 
 public class ExecutorServiceFactory {
 
+    public static final String PROPERTY_VIRTUAL_THREADS = "proxy.virtual-threads";
+
     public static ExecutorService create(String name) {
         ThreadFactory threadFactory = new BasicThreadFactory.Builder().namingPattern(name + "-%d").build();
         ThreadPoolExecutor executor = new ThreadPoolExecutor(16, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue(), threadFactory);
@@ -37,4 +41,17 @@ public class ExecutorServiceFactory {
         return executor;
     }
 
+    /**
+     * Creates an executor for (long-running and blocking) proxy lifecycle work.
+     * When {@code proxy.virtual-threads} is enabled (the default), every task runs in its own virtual thread, such that a
+     * blocking task (e.g. waiting for a container to become ready) does not occupy an OS thread. Otherwise, the platform
+     * thread pool of {@link #create(String)} is used.
+     */
+    public static ExecutorService create(String name, Environment environment) {
+        if (environment.getProperty(PROPERTY_VIRTUAL_THREADS, Boolean.class, true)) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        }
+        return create(name);
+    }
+
 }
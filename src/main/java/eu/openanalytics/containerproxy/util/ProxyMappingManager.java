@@ -62,10 +62,12 @@ import java.lang.reflect.Field;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 /**
@@ -84,6 +86,8 @@ public class ProxyMappingManager {
     private final StructuredLogger slogger = new StructuredLogger(logger);
     // the current set of prefixPaths registered in the pathHandler
     private final Map<String, List<String>> prefixPaths = new HashMap<>();
+    // a lock instead of synchronized methods, such that virtual threads waiting for the lock don't pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
     private ProxyPathHandler pathHandler;
     private volatile boolean isShuttingDown = false;
 
@@ -148,14 +152,42 @@ public class ProxyMappingManager {
     @Inject
     private ProxyCacheHeadersService proxyCacheHeadersService;
 
-    public synchronized HttpHandler createHttpHandler(HttpHandler defaultHandler) {
-        if (pathHandler == null) {
-            pathHandler = new ProxyPathHandler(defaultHandler);
+    public HttpHandler createHttpHandler(HttpHandler defaultHandler) {
+        lock.lock();
+        try {
+            if (pathHandler == null) {
+                pathHandler = new ProxyPathHandler(defaultHandler);
+            }
+            return pathHandler;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void addMappings(Proxy proxy) {
+        lock.lock();
+        try {
+            doAddMappings(proxy);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the mappings of all proxies while holding the lock only once.
+     */
+    public void addMappings(Collection<Proxy> proxies) {
+        lock.lock();
+        try {
+            for (Proxy proxy : proxies) {
+                doAddMappings(proxy);
+            }
+        } finally {
+            lock.unlock();
         }
-        return pathHandler;
     }
 
-    public synchronized void addMappings(Proxy proxy) {
+    private void doAddMappings(Proxy proxy) {
         if (pathHandler == null) throw new IllegalStateException("Cannot change mappings: web server is not yet running.");
 
         if (proxy.getTargets().isEmpty() || prefixPaths.containsKey(proxy.getId())) {
@@ -178,7 +210,7 @@ public class ProxyMappingManager {
     }
 
     @SuppressWarnings("deprecation")
-    private synchronized String addMapping(Proxy proxy, String mapping, URI target) {
+    private String addMapping(Proxy proxy, String mapping, URI target) {
         String prefixPath = getPrefixPath(proxy.getId(), mapping);
         SimpleProxyClientProvider proxyClient = new SimpleProxyClientProvider(target) {
             @Override
@@ -202,14 +234,19 @@ public class ProxyMappingManager {
         return prefixPath;
     }
 
-    public synchronized void removeMappings(String proxyId) {
-        if (pathHandler == null) throw new IllegalStateException("Cannot change mappings: web server is not yet running.");
-        List<String> prefixPathsOfProxy = prefixPaths.remove(proxyId);
-        if (prefixPathsOfProxy == null) {
-            return;
-        }
-        for (String prefixPath : prefixPathsOfProxy) {
-            pathHandler.removePrefixPath(prefixPath);
+    public void removeMappings(String proxyId) {
+        lock.lock();
+        try {
+            if (pathHandler == null) throw new IllegalStateException("Cannot change mappings: web server is not yet running.");
+            List<String> prefixPathsOfProxy = prefixPaths.remove(proxyId);
+            if (prefixPathsOfProxy == null) {
+                return;
+            }
+            for (String prefixPath : prefixPathsOfProxy) {
+                pathHandler.removePrefixPath(prefixPath);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
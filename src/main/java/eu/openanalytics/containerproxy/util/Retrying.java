@@ -22,13 +22,28 @@ package eu.openanalytics.containerproxy.util;
 
 import eu.openanalytics.containerproxy.model.runtime.Proxy;
 import eu.openanalytics.containerproxy.service.StructuredLogger;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 public class Retrying {
 
     private static final Logger log = LoggerFactory.getLogger(Retrying.class);
 
+    /**
+     * Scheduler used by {@link #retryAsync}, the number of threads is independent of the number of retries.
+     */
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4, new BasicThreadFactory.Builder()
+        .namingPattern("Retrying-%d")
+        .daemon(true)
+        .build());
+
     public static boolean retry(Attempt job, int maxDelay) {
         return retry(job, maxDelay, null, -1);
     }
@@ -46,11 +61,7 @@ public class Retrying {
                 Result result = job.attempt(currentAttempt, maxAttempts);
                 if (!result.keepGoing) {
                     if (result.success && currentAttempt > logAfterAttempts && logMessage != null) {
-                        if (slog != null && proxy != null) {
-                            slog.info(proxy, String.format("Ready: %s", logMessage));
-                        } else {
-                            log.info(String.format("Ready: %s", logMessage));
-                        }
+                        logInfo(proxy, slog, String.format("Ready: %s", logMessage));
                     }
                     return result.success;
                 }
@@ -64,23 +75,112 @@ public class Retrying {
                 return false;
             }
             if (currentAttempt > logAfterAttempts && logMessage != null) {
-                if (slog != null && proxy != null) {
-                    slog.info(proxy, String.format("Waiting: %s (%d/%d)", logMessage, currentAttempt, maxAttempts));
-                } else {
-                    log.info(String.format("Waiting: %s (%d/%d)", logMessage, currentAttempt, maxAttempts));
-                }
+                logInfo(proxy, slog, String.format("Waiting: %s (%d/%d)", logMessage, currentAttempt, maxAttempts));
             }
         }
         if (exception != null) {
-            if (slog != null && proxy != null) {
-                slog.warn(proxy, exception, String.format("Failed: %s", logMessage));
-            } else {
-                log.warn(String.format("Failed: %s", logMessage), exception);
-            }
+            logFailure(proxy, slog, logMessage, exception);
         }
         return false;
     }
 
+    public static CompletableFuture<Boolean> retryAsync(Attempt job, int maxDelay, Backoff backoff) {
+        return retryAsync(job, maxDelay, backoff, null, -1, null, null);
+    }
+
+    /**
+     * Asynchronous version of {@link #retry(Attempt, int, String, int, Proxy, StructuredLogger)}.
+     * Instead of sleeping between attempts, every attempt is scheduled on a small shared scheduler, therefore no thread
+     * is blocked while waiting for the next attempt. The attempts itself run on the threads of this scheduler and should
+     * thus be short (e.g. a single API call). The delay between attempts is determined by the (jittered, exponential)
+     * backoff. Cancelling the returned future stops any further attempts.
+     *
+     * @return future completed with true if the job succeeded, or false if it failed or all attempts were used
+     */
+    public static CompletableFuture<Boolean> retryAsync(Attempt job, int maxDelay, Backoff backoff, String logMessage, int logAfterAttempts, Proxy proxy, StructuredLogger slog) {
+        AsyncRetry retry = new AsyncRetry(job, backoff, backoff.numberOfAttempts(maxDelay), logMessage, logAfterAttempts, proxy, slog);
+        scheduler.execute(retry);
+        return retry.future;
+    }
+
+    private static class AsyncRetry implements Runnable {
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        private final Attempt job;
+        private final Backoff backoff;
+        private final int maxAttempts;
+        private final String logMessage;
+        private final int logAfterAttempts;
+        private final Proxy proxy;
+        private final StructuredLogger slog;
+        // only accessed by the attempt that is running, attempts never run concurrently
+        private int currentAttempt = 0;
+        private Exception exception;
+
+        private AsyncRetry(Attempt job, Backoff backoff, int maxAttempts, String logMessage, int logAfterAttempts, Proxy proxy, StructuredLogger slog) {
+            this.job = job;
+            this.backoff = backoff;
+            this.maxAttempts = maxAttempts;
+            this.logMessage = logMessage;
+            this.logAfterAttempts = logAfterAttempts;
+            this.proxy = proxy;
+            this.slog = slog;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                // cancelled
+                return;
+            }
+            try {
+                Result result = job.attempt(currentAttempt, maxAttempts);
+                if (!result.keepGoing) {
+                    if (result.success && currentAttempt > logAfterAttempts && logMessage != null) {
+                        logInfo(proxy, slog, String.format("Ready: %s", logMessage));
+                    }
+                    future.complete(result.success);
+                    return;
+                }
+            } catch (Exception e) {
+                exception = e;
+            }
+            if (currentAttempt > logAfterAttempts && logMessage != null) {
+                logInfo(proxy, slog, String.format("Waiting: %s (%d/%d)", logMessage, currentAttempt, maxAttempts));
+            }
+            currentAttempt++;
+            if (currentAttempt >= maxAttempts) {
+                if (exception != null) {
+                    logFailure(proxy, slog, logMessage, exception);
+                }
+                future.complete(false);
+                return;
+            }
+            try {
+                scheduler.schedule(this, backoff.delay(currentAttempt), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+    }
+
+    private static void logInfo(Proxy proxy, StructuredLogger slog, String message) {
+        if (slog != null && proxy != null) {
+            slog.info(proxy, message);
+        } else {
+            log.info(message);
+        }
+    }
+
+    private static void logFailure(Proxy proxy, StructuredLogger slog, String logMessage, Exception exception) {
+        if (slog != null && proxy != null) {
+            slog.warn(proxy, exception, String.format("Failed: %s", logMessage));
+        } else {
+            log.warn(String.format("Failed: %s", logMessage), exception);
+        }
+    }
+
     public static void delay(Integer attempt) throws InterruptedException {
         if (attempt == 0) {
         } else if (attempt <= 5) {
@@ -100,6 +200,60 @@ public class Retrying {
         return (int) Math.ceil((maxDelay - 3_000) / 2_000.0) + 11;
     }
 
+    /**
+     * Exponential backoff with jitter.
+     *
+     * @param initialDelay the delay (in ms) before the second attempt
+     * @param maxInterval  the maximum delay (in ms) between two attempts
+     * @param multiplier   factor by which the delay increases after every attempt
+     * @param jitter       the fraction by which every delay is randomly increased or decreased (e.g. 0.2 for +/- 20%)
+     */
+    public record Backoff(long initialDelay, long maxInterval, double multiplier, double jitter) {
+
+        public static final Backoff DEFAULT = new Backoff(200, 2_000, 1.5, 0.2);
+
+        public Backoff {
+            if (initialDelay <= 0 || maxInterval < initialDelay || multiplier < 1 || jitter < 0 || jitter >= 1) {
+                throw new IllegalArgumentException("Invalid backoff configuration");
+            }
+        }
+
+        /**
+         * @return the delay (without jitter) before the given attempt
+         */
+        public long baseDelay(int attempt) {
+            if (attempt == 0) {
+                return 0;
+            }
+            return (long) Math.min(maxInterval, initialDelay * Math.pow(multiplier, attempt - 1));
+        }
+
+        /**
+         * @return the delay (with jitter) before the given attempt
+         */
+        public long delay(int attempt) {
+            long delay = baseDelay(attempt);
+            if (jitter == 0 || delay == 0) {
+                return delay;
+            }
+            return (long) (delay * (1 - jitter + 2 * jitter * ThreadLocalRandom.current().nextDouble()));
+        }
+
+        /**
+         * @return the number of attempts such that the sum of the (average) delays is at least maxDelay
+         */
+        public int numberOfAttempts(int maxDelay) {
+            long total = 0;
+            int attempts = 1;
+            while (total < maxDelay) {
+                total += baseDelay(attempts);
+                attempts++;
+            }
+            return attempts;
+        }
+
+    }
+
     @FunctionalInterface
     public interface Attempt {
         Result attempt(int currentAttempt, int maxAttempts) throws Exception;
@@ -106,12 +106,15 @@ public class TestIntegrationOnEcs {
                 ContainerDefinition containerDefinition = taskDefinition.containerDefinitions().getFirst();
                 Assertions.assertEquals(List.of("R", "-e", "shinyproxy::run_01_hello()"), containerDefinition.command());
                 Assertions.assertEquals(List.of(), containerDefinition.dnsServers());
+                // runtime values are only added as tags, since the task definition is shared between proxies
                 Map<String, String> dockerLabels = containerDefinition.dockerLabels();
-                Assertions.assertTrue(dockerLabels.size() > 15);
-                Assertions.assertEquals("demo", dockerLabels.get("openanalytics.eu/sp-user-id"));
-                Assertions.assertEquals("01_hello", dockerLabels.get("openanalytics.eu/sp-spec-id"));
+                Assertions.assertEquals("myvalue", dockerLabels.get("valid-label"));
+                Assertions.assertFalse(dockerLabels.containsKey("openanalytics.eu/sp-user-id"));
+                Assertions.assertFalse(dockerLabels.containsKey("openanalytics.eu/sp-proxy-id"));
 
-                Map<String, String> environment = containerDefinition.environment().stream().collect(Collectors.toMap(KeyValuePair::name, KeyValuePair::value));
+                // environment is passed as override
+                Assertions.assertTrue(containerDefinition.environment().isEmpty());
+                Map<String, String> environment = task.overrides().containerOverrides().getFirst().environment().stream().collect(Collectors.toMap(KeyValuePair::name, KeyValuePair::value));
                 Assertions.assertEquals(3, environment.size());
                 Assertions.assertEquals("demo", environment.get("SHINYPROXY_USERNAME"));
                 Assertions.assertEquals("", environment.get("SHINYPROXY_USERGROUPS"));
@@ -123,8 +126,9 @@ public class TestIntegrationOnEcs {
 
                 inst.client.stopProxy(id);
 
+                // task definition is re-used by the next proxy
                 taskDefinition = getTaskDefinition(task);
-                Assertions.assertNotNull(taskDefinition.deregisteredAt());
+                Assertions.assertNull(taskDefinition.deregisteredAt());
             }
         }
     }
@@ -161,8 +165,9 @@ public class TestIntegrationOnEcs {
 
                 inst.client.stopProxy(id);
 
+                // task definition is re-used by the next proxy
                 taskDefinition = getTaskDefinition(task);
-                Assertions.assertNotNull(taskDefinition.deregisteredAt());
+                Assertions.assertNull(taskDefinition.deregisteredAt());
             }
         }
     }
@@ -192,8 +197,9 @@ public class TestIntegrationOnEcs {
 
                 inst.client.stopProxy(id);
 
+                // task definition is re-used by the next proxy
                 taskDefinition = getTaskDefinition(task);
-                Assertions.assertNotNull(taskDefinition.deregisteredAt());
+                Assertions.assertNull(taskDefinition.deregisteredAt());
             }
         }
     }
@@ -29,14 +29,16 @@ import eu.openanalytics.containerproxy.test.helpers.ShinyProxyInstance;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -46,7 +48,7 @@ import java.util.stream.Stream;
 public class TestIntegrationPortAllocator {
 
     private static final ShinyProxyInstance inst = new ShinyProxyInstance("application-redis-integration.yml", new HashMap<>());
-    private static final RedisTemplate<String, RedisPortAllocator.PortList> portTemplate = inst.getBean("portRedisTemplate", RedisTemplate.class);
+    private static final StringRedisTemplate portTemplate = inst.getBean("portRedisTemplate", StringRedisTemplate.class);
     private static final IdentifierService identifierService = inst.getBean("identifierService", IdentifierService.class);
     private static final RedisPortAllocator redisPortAllocator = inst.getBean("portAllocator", RedisPortAllocator.class);
 
@@ -64,6 +66,7 @@ public class TestIntegrationPortAllocator {
 
     @BeforeEach
     public void beforeTest() {
+        portTemplate.delete(portTemplate.keys("{shinyproxy_" + identifierService.realmId + "__port}_*"));
         portTemplate.delete("shinyproxy_" + identifierService.realmId + "__ports");
     }
 
@@ -213,4 +216,22 @@ public class TestIntegrationPortAllocator {
         }, "Cannot create container: all allocated ports are currently in use. Please try again later or contact an administrator.");
     }
 
+    @Test
+    public void testMigrateLegacyPorts() {
+        // ports allocated by a previous version
+        String legacyKey = "shinyproxy_" + identifierService.realmId + "__ports";
+        portTemplate.opsForHash().put(legacyKey, "owner1", "[100,102]");
+        portTemplate.opsForHash().put(legacyKey, "owner2", "[101]");
+        redisPortAllocator.migrateLegacyPorts();
+
+        Assertions.assertEquals(Set.of(100, 102), redisPortAllocator.getOwnedPorts("owner1"));
+        Assertions.assertFalse(portTemplate.hasKey(legacyKey));
+
+        Assertions.assertEquals(103, redisPortAllocator.allocate(100, 1000, "owner3"));
+        redisPortAllocator.release("owner2");
+        Assertions.assertEquals(101, redisPortAllocator.allocate(100, 1000, "owner3"));
+        Assertions.assertEquals(Set.of(100, 102), redisPortAllocator.getOwnedPorts("owner1"));
+        Assertions.assertEquals(Set.of(101, 103), redisPortAllocator.getOwnedPorts("owner3"));
+    }
+
 }
@@ -33,6 +33,8 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @SpringBootTest(classes = {ContainerProxyApplication.class})
@@ -76,4 +78,46 @@ public class RetryingTest {
         Assertions.assertEquals(15, called.get());
     }
 
+    @Test
+    public void testBackoffNumberOfAttempts() {
+        Retrying.Backoff backoff = new Retrying.Backoff(100, 1_000, 2, 0);
+        // delays: 100, 200, 400, 800, 1000
+        Assertions.assertEquals(0, backoff.delay(0));
+        Assertions.assertEquals(100, backoff.delay(1));
+        Assertions.assertEquals(800, backoff.delay(4));
+        Assertions.assertEquals(1_000, backoff.delay(10));
+        Assertions.assertEquals(6, backoff.numberOfAttempts(2_500));
+    }
+
+    @Test
+    public void testBackoffJitter() {
+        Retrying.Backoff backoff = new Retrying.Backoff(1_000, 1_000, 1, 0.2);
+        for (int i = 0; i < 100; i++) {
+            long delay = backoff.delay(1);
+            Assertions.assertTrue(delay >= 800 && delay <= 1_200);
+        }
+    }
+
+    @Test
+    public void testRetryAsync() throws Exception {
+        AtomicInteger called = new AtomicInteger(0);
+        CompletableFuture<Boolean> result = Retrying.retryAsync((i, m) -> {
+            called.incrementAndGet();
+            return new Retrying.Result(i == 3);
+        }, 3_000, new Retrying.Backoff(100, 1_000, 2, 0));
+        Assertions.assertTrue(result.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(4, called.get());
+    }
+
+    @Test
+    public void testRetryAsyncFailure() throws Exception {
+        AtomicInteger called = new AtomicInteger(0);
+        CompletableFuture<Boolean> result = Retrying.retryAsync((i, m) -> {
+            called.incrementAndGet();
+            throw new IllegalStateException("failure");
+        }, 500, new Retrying.Backoff(100, 100, 1, 0), "test", 1, null, null);
+        Assertions.assertFalse(result.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(6, called.get());
+    }
+
 }
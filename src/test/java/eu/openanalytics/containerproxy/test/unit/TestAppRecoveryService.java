@@ -0,0 +1,151 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.backend.IContainerBackend;
+import eu.openanalytics.containerproxy.model.runtime.Container;
+import eu.openanalytics.containerproxy.model.runtime.ExistingContainerInfo;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.runtime.ProxyStatus;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ContainerIndexKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.CreatedTimestampKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.DisplayNameKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ProxyIdKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ProxySpecIdKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValueKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.TargetIdKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.UserIdKey;
+import eu.openanalytics.containerproxy.service.AppRecoveryService;
+import eu.openanalytics.containerproxy.service.ProxyService;
+import eu.openanalytics.containerproxy.service.heartbeat.HeartbeatService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestAppRecoveryService {
+
+    private static final int NUM_PROXIES = 5_000;
+
+    /**
+     * Recovers 10k containers (two containers per proxy) from a fake backend, the time it takes is logged by the service.
+     */
+    @Test
+    public void testRecoverManyContainers() throws Exception {
+        List<ExistingContainerInfo> containers = new ArrayList<>();
+        for (int i = 0; i < NUM_PROXIES; i++) {
+            containers.add(container("proxy-" + i, 0));
+        }
+        for (int i = 0; i < NUM_PROXIES; i++) {
+            containers.add(container("proxy-" + i, 1));
+        }
+
+        Map<String, Proxy> recovered = new ConcurrentHashMap<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        AppRecoveryService service = createService(containers, recovered, batchSizes, new MockEnvironment()
+            .withProperty(AppRecoveryService.PROPERTY_RECOVER_RUNNING_PROXIES, "true")
+            .withProperty(AppRecoveryService.PROPERTY_RECOVER_RUNNING_PROXIES_BATCH_SIZE, "1000"));
+
+        service.recoverRunningApps();
+
+        Assertions.assertTrue(service.isReady());
+        Assertions.assertEquals(NUM_PROXIES, recovered.size());
+        Assertions.assertEquals(NUM_PROXIES / 1000, batchSizes.size());
+        Proxy proxy = recovered.get("proxy-42");
+        Assertions.assertEquals(ProxyStatus.Up, proxy.getStatus());
+        Assertions.assertEquals("jack", proxy.getUserId());
+        Assertions.assertEquals(2, proxy.getContainers().size());
+        Assertions.assertEquals(2, proxy.getTargets().size());
+    }
+
+    @Test
+    public void testEarlyRouting() throws Exception {
+        List<ExistingContainerInfo> containers = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            containers.add(container("proxy-" + i, 0));
+        }
+
+        Map<String, Proxy> recovered = new ConcurrentHashMap<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        AppRecoveryService service = createService(containers, recovered, batchSizes, new MockEnvironment()
+            .withProperty(AppRecoveryService.PROPERTY_RECOVER_RUNNING_PROXIES, "true")
+            .withProperty(AppRecoveryService.PROPERTY_RECOVER_RUNNING_PROXIES_BATCH_SIZE, "100")
+            .withProperty(AppRecoveryService.PROPERTY_RECOVER_RUNNING_PROXIES_EARLY_ROUTING, "true"));
+
+        service.recoverRunningApps();
+
+        Assertions.assertEquals(250, recovered.size());
+        Assertions.assertEquals(List.of(100, 100, 50), batchSizes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AppRecoveryService createService(List<ExistingContainerInfo> containers, Map<String, Proxy> recovered, List<Integer> batchSizes, MockEnvironment environment) throws Exception {
+        IContainerBackend backend = mock(IContainerBackend.class);
+        when(backend.scanExistingContainers()).thenReturn(containers);
+        when(backend.setupPortMappingExistingProxy(any(), any(), any())).thenAnswer(invocation -> {
+            Proxy proxy = invocation.getArgument(0);
+            Integer index = ((Container) invocation.getArgument(1)).getIndex();
+            return Map.of(proxy.getId() + "/" + index, new URI("http://localhost:" + (20000 + index)));
+        });
+
+        ProxyService proxyService = mock(ProxyService.class);
+        doAnswer(invocation -> {
+            Collection<Proxy> proxies = invocation.getArgument(0);
+            batchSizes.add(proxies.size());
+            proxies.forEach(p -> recovered.put(p.getId(), p));
+            return null;
+        }).when(proxyService).addExistingProxies(any());
+
+        AppRecoveryService service = new AppRecoveryService();
+        ReflectionTestUtils.setField(service, "environment", environment);
+        ReflectionTestUtils.setField(service, "containerBackend", backend);
+        ReflectionTestUtils.setField(service, "proxyService", proxyService);
+        ReflectionTestUtils.setField(service, "heartbeatService", mock(HeartbeatService.class));
+        return service;
+    }
+
+    private ExistingContainerInfo container(String proxyId, int index) {
+        Map<RuntimeValueKey<?>, RuntimeValue> runtimeValues = new HashMap<>();
+        runtimeValues.put(ProxyIdKey.inst, new RuntimeValue(ProxyIdKey.inst, proxyId));
+        runtimeValues.put(ProxySpecIdKey.inst, new RuntimeValue(ProxySpecIdKey.inst, "01_hello"));
+        runtimeValues.put(TargetIdKey.inst, new RuntimeValue(TargetIdKey.inst, proxyId));
+        runtimeValues.put(CreatedTimestampKey.inst, new RuntimeValue(CreatedTimestampKey.inst, "1700000000000"));
+        runtimeValues.put(UserIdKey.inst, new RuntimeValue(UserIdKey.inst, "jack"));
+        runtimeValues.put(DisplayNameKey.inst, new RuntimeValue(DisplayNameKey.inst, "Hello Application"));
+        runtimeValues.put(ContainerIndexKey.inst, new RuntimeValue(ContainerIndexKey.inst, index));
+        return new ExistingContainerInfo(proxyId + "-" + index, runtimeValues, "openanalytics/shinyproxy-demo", new HashMap<>());
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.log.BufferedLogFileOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+public class TestBufferedLogFileOutputStream {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void testBuffering() throws IOException {
+        Path file = tempDir.resolve("app_stdout.log");
+        BufferedLogFileOutputStream stream = new BufferedLogFileOutputStream(file, 1024, -1, null);
+
+        stream.write("line 1\n".getBytes(StandardCharsets.UTF_8));
+        stream.flush();
+        // flush is ignored, the output is still buffered
+        Assertions.assertEquals(0, Files.size(file));
+
+        stream.flushBuffer();
+        Assertions.assertEquals("line 1\n", Files.readString(file));
+
+        // large writes bypass the buffer
+        byte[] large = new byte[4096];
+        stream.write("line 2\n".getBytes(StandardCharsets.UTF_8));
+        stream.write(large);
+        Assertions.assertEquals(7 + 7 + 4096, Files.size(file));
+
+        stream.write("line 3\n".getBytes(StandardCharsets.UTF_8));
+        stream.close();
+        Assertions.assertEquals(7 + 7 + 4096 + 7, Files.size(file));
+        Assertions.assertThrows(IOException.class, () -> stream.write(1));
+    }
+
+    @Test
+    public void testBufferIsAllocatedLazily() throws IOException {
+        Path file = tempDir.resolve("app_stderr.log");
+        BufferedLogFileOutputStream stream = new BufferedLogFileOutputStream(file, 1024, -1, null);
+        Assertions.assertNull(ReflectionTestUtils.getField(stream, "buffer"));
+
+        stream.write("line 1\n".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertNotNull(ReflectionTestUtils.getField(stream, "buffer"));
+        Assertions.assertArrayEquals("line 1\n".getBytes(StandardCharsets.UTF_8), stream.read(0, 100));
+
+        // the buffer is kept while output is written
+        stream.flushBuffer();
+        Assertions.assertNotNull(ReflectionTestUtils.getField(stream, "buffer"));
+
+        // and released when the stream is idle
+        stream.flushBuffer();
+        Assertions.assertNull(ReflectionTestUtils.getField(stream, "buffer"));
+        Assertions.assertEquals(7, stream.getReadableEnd());
+        Assertions.assertArrayEquals("line 1\n".getBytes(StandardCharsets.UTF_8), stream.read(0, 100));
+        Assertions.assertArrayEquals(new byte[0], stream.read(7, 100));
+
+        stream.write("line 2\n".getBytes(StandardCharsets.UTF_8));
+        stream.close();
+        Assertions.assertNull(ReflectionTestUtils.getField(stream, "buffer"));
+        Assertions.assertEquals("line 1\nline 2\n", Files.readString(file));
+    }
+
+    @Test
+    public void testRotation() throws IOException {
+        Path file = tempDir.resolve("app_stdout.log");
+        List<Path> rotated = new ArrayList<>();
+        BufferedLogFileOutputStream stream = new BufferedLogFileOutputStream(file, 100, 1000, rotated::add);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 200; i++) {
+            byte[] line = String.format("line %04d\n", i).getBytes(StandardCharsets.UTF_8);
+            stream.write(line);
+            expected.write(line);
+        }
+        stream.close();
+
+        Assertions.assertEquals(List.of(tempDir.resolve("app_stdout.1.log"), tempDir.resolve("app_stdout.2.log")), rotated);
+        BufferedLogFileOutputStream.compress(rotated.get(0));
+        Assertions.assertFalse(Files.exists(rotated.get(0)));
+        Assertions.assertEquals("1000", Files.readString(tempDir.resolve("app_stdout.1.log.gz.size")));
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(tempDir.resolve("app_stdout.1.log.gz")))) {
+            in.transferTo(actual);
+        }
+        actual.write(Files.readAllBytes(rotated.get(1)));
+        actual.write(Files.readAllBytes(file));
+        Assertions.assertEquals(expected.toString(StandardCharsets.UTF_8), actual.toString(StandardCharsets.UTF_8));
+
+        // a new stream for the same file, does not overwrite the rotated files
+        stream = new BufferedLogFileOutputStream(file, 100, 10, rotated::add);
+        stream.write(new byte[20]);
+        stream.close();
+        Assertions.assertEquals(tempDir.resolve("app_stdout.3.log"), rotated.get(2));
+    }
+
+}
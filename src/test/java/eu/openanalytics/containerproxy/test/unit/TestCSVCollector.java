@@ -0,0 +1,141 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.event.UserLoginEvent;
+import eu.openanalytics.containerproxy.stat.impl.CSVCollector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+public class TestCSVCollector {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void testBufferedWrites() throws Exception {
+        Path file = tempDir.resolve("usage_stats.csv");
+        CSVCollector collector = createCollector(file, new MockEnvironment());
+
+        for (int i = 0; i < 1000; i++) {
+            collector.onUserLoginEvent(new UserLoginEvent(this, "user-" + i, null));
+        }
+        collector.close();
+
+        List<String> lines = Files.readAllLines(file);
+        Assertions.assertEquals(1001, lines.size());
+        Assertions.assertEquals("\"event_time\",\"username\",\"type\",\"data\"", lines.get(0));
+        Assertions.assertTrue(lines.get(1).endsWith(",\"user-0\",\"Login\",\"\""));
+        Assertions.assertEquals(1, listFiles().size());
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        Path file = tempDir.resolve("usage_stats.csv");
+        CSVCollector collector = createCollector(file, new MockEnvironment()
+            .withProperty("proxy.usage-stats-csv.max-file-size", "1000")
+            .withProperty("proxy.usage-stats-csv.compress-rotated-files", "true")
+            .withProperty("proxy.usage-stats-buffer.batch-size", "10"));
+
+        for (int i = 0; i < 100; i++) {
+            collector.onUserLoginEvent(new UserLoginEvent(this, "user-" + i, null));
+        }
+        collector.close();
+
+        List<Path> files = listFiles();
+        Assertions.assertTrue(files.size() > 2);
+        List<String> rows = new ArrayList<>();
+        for (Path rotated : files) {
+            if (rotated.equals(file)) {
+                continue;
+            }
+            Assertions.assertTrue(rotated.getFileName().toString().matches("usage_stats-.*\\.csv\\.gz"));
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(rotated))) {
+                List<String> lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+                // every file starts with a header
+                Assertions.assertEquals("\"event_time\",\"username\",\"type\",\"data\"", lines.get(0));
+                rows.addAll(lines.subList(1, lines.size()));
+            }
+        }
+        List<String> lines = Files.readAllLines(file);
+        if (!lines.isEmpty()) {
+            Assertions.assertEquals("\"event_time\",\"username\",\"type\",\"data\"", lines.get(0));
+            rows.addAll(lines.subList(1, lines.size()));
+        }
+        Assertions.assertEquals(100, rows.size());
+    }
+
+    @Test
+    public void testRotationWithoutCsvExtension() throws Exception {
+        Path file = tempDir.resolve("usage_stats");
+        CSVCollector collector = createCollector(file, new MockEnvironment()
+            .withProperty("proxy.usage-stats-csv.max-file-size", "1000")
+            .withProperty("proxy.usage-stats-buffer.batch-size", "10"));
+
+        for (int i = 0; i < 100; i++) {
+            collector.onUserLoginEvent(new UserLoginEvent(this, "user-" + i, null));
+        }
+        collector.close();
+
+        List<Path> files = listFiles();
+        Assertions.assertTrue(files.size() > 2);
+        int rows = 0;
+        for (Path rotated : files) {
+            if (!rotated.equals(file)) {
+                Assertions.assertTrue(rotated.getFileName().toString().matches("usage_stats-.*\\.csv"));
+            }
+            List<String> lines = Files.readAllLines(rotated);
+            if (!lines.isEmpty()) {
+                Assertions.assertEquals("\"event_time\",\"username\",\"type\",\"data\"", lines.get(0));
+                rows += lines.size() - 1;
+            }
+        }
+        Assertions.assertEquals(100, rows);
+    }
+
+    private CSVCollector createCollector(Path file, MockEnvironment environment) throws Exception {
+        CSVCollector collector = new CSVCollector(file.toString(), null);
+        ReflectionTestUtils.setField(collector, "environment", environment);
+        ReflectionTestUtils.setField(collector, "meterRegistry", new SimpleMeterRegistry());
+        collector.init();
+        return collector;
+    }
+
+    private List<Path> listFiles() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.toList();
+        }
+    }
+
+}
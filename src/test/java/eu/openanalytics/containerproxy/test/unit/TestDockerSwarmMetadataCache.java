@@ -0,0 +1,171 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.backend.docker.DockerSwarmMetadataCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mandas.docker.client.DockerClient;
+import org.mandas.docker.client.EventStream;
+import org.mandas.docker.client.messages.Event;
+import org.mandas.docker.client.messages.Network;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestDockerSwarmMetadataCache {
+
+    @Test
+    public void testLookupIsCached() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        stubNetworks(dockerClient, network("id-1", "net-1"), network("id-2", "net-2"));
+        DockerSwarmMetadataCache cache = new DockerSwarmMetadataCache(dockerClient, 60_000, false);
+
+        Assertions.assertEquals("id-1", cache.getNetworkId("net-1"));
+        Assertions.assertEquals("id-2", cache.getNetworkId("net-2"));
+        Assertions.assertEquals("id-2", cache.getNetworkId("id-2"));
+        verify(dockerClient, times(1)).listNetworks();
+    }
+
+    @Test
+    public void testAmbiguousNetworkName() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        stubNetworks(dockerClient, network("id-1", "net"), network("id-2", "net"), network("id-3", "other"));
+        DockerSwarmMetadataCache cache = new DockerSwarmMetadataCache(dockerClient, 60_000, false);
+
+        IllegalArgumentException ex = Assertions.assertThrows(IllegalArgumentException.class, () -> cache.getNetworkId("net"));
+        Assertions.assertTrue(ex.getMessage().contains("id-1"));
+        Assertions.assertTrue(ex.getMessage().contains("id-2"));
+        // the ids of the networks can still be used
+        Assertions.assertEquals("id-1", cache.getNetworkId("id-1"));
+        Assertions.assertEquals("id-2", cache.getNetworkId("id-2"));
+        Assertions.assertEquals("id-3", cache.getNetworkId("other"));
+    }
+
+    @Test
+    public void testMissIsCached() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        stubNetworks(dockerClient, network("id-1", "net-1"));
+        DockerSwarmMetadataCache cache = new DockerSwarmMetadataCache(dockerClient, 60_000, 200, false);
+
+        // a miss reloads the networks once
+        Assertions.assertNull(cache.getNetworkId("unknown"));
+        verify(dockerClient, times(2)).listNetworks();
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertNull(cache.getNetworkId("unknown"));
+        }
+        verify(dockerClient, times(2)).listNetworks();
+
+        // once the miss expires, the networks are reloaded again
+        stubNetworks(dockerClient, network("id-1", "net-1"), network("id-2", "unknown"));
+        Thread.sleep(300);
+        Assertions.assertEquals("id-2", cache.getNetworkId("unknown"));
+        verify(dockerClient, times(3)).listNetworks();
+    }
+
+    @Test
+    public void testEventInvalidatesCache() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        stubNetworks(dockerClient, network("id-1", "net-1"));
+        StubEventStream eventStream = new StubEventStream();
+        when(dockerClient.events(any(DockerClient.EventsParam[].class))).thenReturn(eventStream.stream);
+        DockerSwarmMetadataCache cache = new DockerSwarmMetadataCache(dockerClient, 60_000, 60_000, true);
+        try {
+            eventStream.awaitWaiting();
+
+            Assertions.assertNull(cache.getNetworkId("net-2"));
+            Assertions.assertEquals("id-1", cache.getNetworkId("net-1"));
+            verify(dockerClient, times(2)).listNetworks();
+
+            // network created -> both the cached networks and the cached miss are invalidated
+            stubNetworks(dockerClient, network("id-1", "net-1"), network("id-2", "net-2"));
+            eventStream.send(Event.builder().type(Event.Type.NETWORK).action("create").time(new Date()).build());
+            eventStream.awaitWaiting();
+
+            Assertions.assertEquals("id-2", cache.getNetworkId("net-2"));
+            Assertions.assertEquals("id-1", cache.getNetworkId("net-1"));
+            verify(dockerClient, times(3)).listNetworks();
+
+            // other events don't invalidate the cache
+            eventStream.send(Event.builder().type(Event.Type.IMAGE).action("pull").time(new Date()).build());
+            eventStream.awaitWaiting();
+            Assertions.assertEquals("id-2", cache.getNetworkId("net-2"));
+            verify(dockerClient, times(3)).listNetworks();
+        } finally {
+            cache.close();
+            eventStream.send(null);
+        }
+    }
+
+    private static void stubNetworks(DockerClient dockerClient, Network... networks) throws Exception {
+        when(dockerClient.listNetworks()).thenReturn(List.of(networks));
+    }
+
+    private static Network network(String id, String name) {
+        Network network = mock(Network.class);
+        when(network.id()).thenReturn(id);
+        when(network.name()).thenReturn(name);
+        return network;
+    }
+
+    /**
+     * Stream that returns the events passed to {@link #send(Event)} and allows to wait until all events are processed.
+     */
+    private static class StubEventStream {
+
+        private final BlockingQueue<Optional<Event>> events = new LinkedBlockingQueue<>();
+        private final Semaphore waiting = new Semaphore(0);
+        private final AtomicReference<Event> current = new AtomicReference<>();
+        private final EventStream stream = mock(EventStream.class);
+
+        private StubEventStream() {
+            when(stream.hasNext()).thenAnswer(invocation -> {
+                waiting.release();
+                Optional<Event> event = events.take();
+                current.set(event.orElse(null));
+                return event.isPresent();
+            });
+            when(stream.next()).thenAnswer(invocation -> current.get());
+        }
+
+        private void send(Event event) {
+            events.add(Optional.ofNullable(event));
+        }
+
+        private void awaitWaiting() throws InterruptedException {
+            Assertions.assertTrue(waiting.tryAcquire(10, TimeUnit.SECONDS));
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.backend.ecs.EcsCanonicalJson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ecs.model.ContainerDefinition;
+import software.amazon.awssdk.services.ecs.model.ContainerOverride;
+import software.amazon.awssdk.services.ecs.model.KeyValuePair;
+import software.amazon.awssdk.services.ecs.model.TaskOverride;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestEcsCanonicalJson {
+
+    @Test
+    public void testOverrides() {
+        TaskOverride overrides = TaskOverride.builder()
+            .containerOverrides(ContainerOverride.builder()
+                .name("sp-container-0")
+                .environment(KeyValuePair.builder().name("SHINYPROXY_USERNAME").value("jack \"the\" user").build())
+                .build())
+            .build();
+
+        Assertions.assertEquals(
+            "{\"containerOverrides\":[{\"environment\":[{\"name\":\"SHINYPROXY_USERNAME\",\"value\":\"jack \\\"the\\\" user\"}],\"name\":\"sp-container-0\"}]}",
+            EcsCanonicalJson.toJson(overrides));
+    }
+
+    @Test
+    public void testMapOrder() {
+        Map<String, String> labels1 = new LinkedHashMap<>();
+        labels1.put("b", "2");
+        labels1.put("a", "1");
+        Map<String, String> labels2 = new LinkedHashMap<>();
+        labels2.put("a", "1");
+        labels2.put("b", "2");
+
+        String json1 = EcsCanonicalJson.toJson(ContainerDefinition.builder().name("test").dockerLabels(labels1).build());
+        String json2 = EcsCanonicalJson.toJson(ContainerDefinition.builder().name("test").dockerLabels(labels2).build());
+        Assertions.assertEquals(json1, json2);
+        Assertions.assertEquals("{\"dockerLabels\":{\"a\":\"1\",\"b\":\"2\"},\"name\":\"test\"}", json1);
+    }
+
+    @Test
+    public void testDifferentValues() {
+        // all values must be part of the JSON, otherwise different task definitions would get the same hash
+        String json1 = EcsCanonicalJson.toJson(ContainerDefinition.builder().name("test").environment(List.of(KeyValuePair.builder().name("A").value("1").build())).build());
+        String json2 = EcsCanonicalJson.toJson(ContainerDefinition.builder().name("test").environment(List.of(KeyValuePair.builder().name("A").value("2").build())).build());
+        Assertions.assertNotEquals(json1, json2);
+    }
+
+}
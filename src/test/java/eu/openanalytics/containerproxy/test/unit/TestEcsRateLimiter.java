@@ -0,0 +1,103 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.ContainerProxyException;
+import eu.openanalytics.containerproxy.backend.ecs.EcsRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestEcsRateLimiter {
+
+    @Test
+    public void testBurstAndRefill() {
+        AtomicLong time = new AtomicLong();
+        EcsRateLimiter.TokenBucket bucket = new EcsRateLimiter.TokenBucket(5, 10, time::get);
+
+        // the burst is allowed immediately, the remaining requests are spread at the refill rate (100 ms per token)
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(0, bucket.reserve());
+        }
+        for (int i = 1; i <= 5; i++) {
+            Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(100 * i), bucket.reserve());
+        }
+
+        // after one second, the reserved tokens are used and 5 tokens are refilled
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assertions.assertEquals(0, bucket.reserve());
+        // the bucket never holds more than its capacity
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(0, bucket.reserve());
+        }
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve());
+    }
+
+    @Test
+    public void testAcquire() {
+        AtomicLong time = new AtomicLong();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EcsRateLimiter rateLimiter = new EcsRateLimiter(Map.of(EcsRateLimiter.Api.RUN_TASK, new EcsRateLimiter.TokenBucket(5, 10, time::get)), registry);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(rateLimiter.acquire(EcsRateLimiter.Api.RUN_TASK));
+        }
+        // the burst is allowed immediately, the remaining requests are delayed
+        Assertions.assertTrue(futures.subList(0, 5).stream().allMatch(CompletableFuture::isDone));
+        Assertions.assertEquals(10, registry.timer("ecs_rate_limiter_wait_time", "api", "run-task").count());
+        Assertions.assertEquals(500, registry.timer("ecs_rate_limiter_wait_time", "api", "run-task").max(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTryAcquire() {
+        EcsRateLimiter rateLimiter = new EcsRateLimiter(Map.of(EcsRateLimiter.Api.DESCRIBE_TASKS, new EcsRateLimiter.TokenBucket(2, 0.1)), null);
+
+        Assertions.assertTrue(rateLimiter.tryAcquire(EcsRateLimiter.Api.DESCRIBE_TASKS));
+        Assertions.assertTrue(rateLimiter.tryAcquire(EcsRateLimiter.Api.DESCRIBE_TASKS));
+        Assertions.assertFalse(rateLimiter.tryAcquire(EcsRateLimiter.Api.DESCRIBE_TASKS));
+        // APIs without bucket are not limited
+        Assertions.assertTrue(rateLimiter.tryAcquire(EcsRateLimiter.Api.LIST_TASKS));
+    }
+
+    @Test
+    public void testCallFailsFast() {
+        // one token per 10 seconds, the caller waits at most 200 ms
+        AtomicLong time = new AtomicLong();
+        EcsRateLimiter.TokenBucket bucket = new EcsRateLimiter.TokenBucket(1, 0.1, time::get);
+        EcsRateLimiter rateLimiter = new EcsRateLimiter(Map.of(EcsRateLimiter.Api.RUN_TASK, bucket), null, 200);
+
+        Assertions.assertEquals("first", rateLimiter.call(EcsRateLimiter.Api.RUN_TASK, () -> "first"));
+        Assertions.assertThrows(ContainerProxyException.class, () -> rateLimiter.call(EcsRateLimiter.Api.RUN_TASK, () -> "second"));
+        // a failed call does not take a token: the next token is available after 10 seconds instead of 20 seconds
+        Assertions.assertEquals(-1, bucket.reserve(TimeUnit.SECONDS.toNanos(9)));
+        Assertions.assertEquals(TimeUnit.SECONDS.toNanos(10), bucket.reserve());
+    }
+
+}
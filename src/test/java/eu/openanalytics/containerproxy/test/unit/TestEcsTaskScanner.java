@@ -0,0 +1,206 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.backend.ecs.EcsRateLimiter;
+import eu.openanalytics.containerproxy.backend.ecs.EcsTaskScanner;
+import eu.openanalytics.containerproxy.backend.ecs.EcsTaskStatusPoller;
+import eu.openanalytics.containerproxy.model.runtime.PortMappings;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.CacheHeadersModeKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ContainerIndexKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.CreatedTimestampKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.DisplayNameKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.HeartbeatTimeoutKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.InstanceIdKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.MaxLifetimeKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.PortMappingsKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ProxiedAppKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ProxyIdKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ProxySpecIdKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.PublicPathKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValueKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.TargetIdKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.UserGroupsKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.UserIdKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksRequest;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksResponse;
+import software.amazon.awssdk.services.ecs.model.ListTasksRequest;
+import software.amazon.awssdk.services.ecs.model.ListTasksResponse;
+import software.amazon.awssdk.services.ecs.model.Tag;
+import software.amazon.awssdk.services.ecs.model.Task;
+import software.amazon.awssdk.services.ecs.model.TaskField;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestEcsTaskScanner {
+
+    @Test
+    public void testListTasks() {
+        StubEcsClient ecsClient = new StubEcsClient();
+        for (int i = 0; i < 250; i++) {
+            ecsClient.tasks.put("arn:task-" + i, proxyTags("proxy-" + i));
+        }
+        // task not created by ShinyProxy
+        ecsClient.tasks.put("arn:other", new HashMap<>());
+
+        List<Task> tasks = new EcsTaskScanner(ecsClient, new EcsRateLimiter(Map.of(), null), "cluster").listTasks();
+
+        Assertions.assertEquals(250, tasks.size());
+        Assertions.assertEquals(3, ecsClient.listTasksCalls);
+        Assertions.assertEquals(List.of(100, 100, 51), ecsClient.batchSizes);
+    }
+
+    @Test
+    public void testParseTags() {
+        PortMappings portMappings = new PortMappings();
+        portMappings.addPortMapping(new PortMappings.PortMappingEntry("default", 3838, "/app_proxy/abc"));
+        portMappings.addPortMapping(new PortMappings.PortMappingEntry("other", 8080, ""));
+
+        Map<String, String> tags = proxyTags("my-proxy");
+        tags.putAll(EcsTaskScanner.portMappingsAsTags(portMappings));
+        Task task = toTask("arn:task", tags);
+
+        Map<RuntimeValueKey<?>, RuntimeValue> runtimeValues = new EcsTaskScanner(new StubEcsClient(), new EcsRateLimiter(Map.of(), null), "cluster").parseTagsAsRuntimeValues(task);
+
+        Assertions.assertNotNull(runtimeValues);
+        Assertions.assertEquals("my-proxy", runtimeValues.get(ProxyIdKey.inst).getObject());
+        Assertions.assertEquals("01_hello", runtimeValues.get(ProxySpecIdKey.inst).getObject());
+        Assertions.assertEquals(0, (Integer) runtimeValues.get(ContainerIndexKey.inst).getObject());
+        Assertions.assertEquals("", runtimeValues.get(UserGroupsKey.inst).getObject());
+
+        PortMappings parsed = runtimeValues.get(PortMappingsKey.inst).getObject();
+        Assertions.assertEquals(2, parsed.getPortMappings().size());
+        Assertions.assertEquals("default", parsed.getPortMappings().get(0).getName());
+        Assertions.assertEquals(3838, parsed.getPortMappings().get(0).getPort());
+        Assertions.assertEquals("/app_proxy/abc", parsed.getPortMappings().get(0).getTargetPath());
+        Assertions.assertEquals("other", parsed.getPortMappings().get(1).getName());
+        Assertions.assertEquals(8080, parsed.getPortMappings().get(1).getPort());
+        Assertions.assertEquals("", parsed.getPortMappings().get(1).getTargetPath());
+    }
+
+    @Test
+    public void testEncodedTags() {
+        Assertions.assertEquals("jack@example.com", EcsTaskScanner.encodeTagValue("jack@example.com"));
+        for (String value : new String[]{"Jöhn", "a,b;c", "base64:abc", ""}) {
+            String encoded = EcsTaskScanner.encodeTagValue(value);
+            Assertions.assertTrue(EcsTaskScanner.isValidTagValue(encoded));
+            Assertions.assertEquals(value, EcsTaskScanner.decodeTagValue(encoded));
+        }
+
+        PortMappings portMappings = new PortMappings();
+        portMappings.addPortMapping(new PortMappings.PortMappingEntry("default", 3838, "/app_proxy/abc?x=1&y=2"));
+        Map<String, String> tags = proxyTags("my-proxy");
+        tags.put(UserIdKey.inst.getKeyAsLabel(), EcsTaskScanner.encodeTagValue("Jöhn"));
+        tags.put(DisplayNameKey.inst.getKeyAsLabel(), EcsTaskScanner.encodeTagValue("Hello, Application!"));
+        tags.putAll(EcsTaskScanner.portMappingsAsTags(portMappings));
+
+        Map<RuntimeValueKey<?>, RuntimeValue> runtimeValues = new EcsTaskScanner(new StubEcsClient(), new EcsRateLimiter(Map.of(), null), "cluster").parseTagsAsRuntimeValues(toTask("arn:task", tags));
+
+        Assertions.assertNotNull(runtimeValues);
+        Assertions.assertEquals("Jöhn", runtimeValues.get(UserIdKey.inst).getObject());
+        Assertions.assertEquals("Hello, Application!", runtimeValues.get(DisplayNameKey.inst).getObject());
+        PortMappings parsed = runtimeValues.get(PortMappingsKey.inst).getObject();
+        Assertions.assertEquals("/app_proxy/abc?x=1&y=2", parsed.getPortMappings().getFirst().getTargetPath());
+    }
+
+    @Test
+    public void testParseTagsMissingRequiredTag() {
+        Map<String, String> tags = proxyTags("my-proxy");
+        tags.remove(UserIdKey.inst.getKeyAsLabel());
+
+        Assertions.assertNull(new EcsTaskScanner(new StubEcsClient(), new EcsRateLimiter(Map.of(), null), "cluster").parseTagsAsRuntimeValues(toTask("arn:task", tags)));
+    }
+
+    private static Map<String, String> proxyTags(String proxyId) {
+        Map<String, String> tags = new HashMap<>();
+        tags.put(ProxiedAppKey.inst.getKeyAsLabel(), "true");
+        tags.put(ProxyIdKey.inst.getKeyAsLabel(), proxyId);
+        tags.put(ProxySpecIdKey.inst.getKeyAsLabel(), "01_hello");
+        tags.put(TargetIdKey.inst.getKeyAsLabel(), proxyId);
+        tags.put(UserIdKey.inst.getKeyAsLabel(), "jack");
+        tags.put(DisplayNameKey.inst.getKeyAsLabel(), "Hello Application");
+        tags.put(CreatedTimestampKey.inst.getKeyAsLabel(), "1700000000000");
+        tags.put(ContainerIndexKey.inst.getKeyAsLabel(), "0");
+        tags.put(InstanceIdKey.inst.getKeyAsLabel(), "abc");
+        tags.put(PublicPathKey.inst.getKeyAsLabel(), "/app_proxy/" + proxyId + "/");
+        tags.put(HeartbeatTimeoutKey.inst.getKeyAsLabel(), "60000");
+        tags.put(MaxLifetimeKey.inst.getKeyAsLabel(), "-1");
+        tags.put(CacheHeadersModeKey.inst.getKeyAsLabel(), "Passthrough");
+        return tags;
+    }
+
+    private static Task toTask(String arn, Map<String, String> tags) {
+        return Task.builder()
+            .taskArn(arn)
+            .tags(tags.entrySet().stream().map(e -> Tag.builder().key(e.getKey()).value(e.getValue()).build()).toList())
+            .build();
+    }
+
+    private static class StubEcsClient implements EcsClient {
+
+        private static final int PAGE_SIZE = 100;
+
+        private final Map<String, Map<String, String>> tasks = new HashMap<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private int listTasksCalls = 0;
+
+        @Override
+        public ListTasksResponse listTasks(ListTasksRequest request) {
+            listTasksCalls++;
+            Assertions.assertEquals(EcsTaskScanner.STARTED_BY, request.startedBy());
+            List<String> arns = new ArrayList<>(tasks.keySet());
+            int start = request.nextToken() == null ? 0 : Integer.parseInt(request.nextToken());
+            int end = Math.min(start + PAGE_SIZE, arns.size());
+            return ListTasksResponse.builder()
+                .taskArns(arns.subList(start, end))
+                .nextToken(end < arns.size() ? String.valueOf(end) : null)
+                .build();
+        }
+
+        @Override
+        public DescribeTasksResponse describeTasks(DescribeTasksRequest request) {
+            Assertions.assertTrue(request.tasks().size() <= EcsTaskStatusPoller.MAX_TASKS_PER_REQUEST);
+            Assertions.assertTrue(request.include().contains(TaskField.TAGS));
+            batchSizes.add(request.tasks().size());
+            return DescribeTasksResponse.builder()
+                .tasks(request.tasks().stream().map(arn -> toTask(arn, tasks.get(arn))).toList())
+                .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "ecs";
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
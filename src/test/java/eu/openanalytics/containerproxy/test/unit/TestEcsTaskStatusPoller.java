@@ -0,0 +1,151 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.backend.ecs.EcsRateLimiter;
+import eu.openanalytics.containerproxy.backend.ecs.EcsTaskStatusPoller;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksRequest;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksResponse;
+import software.amazon.awssdk.services.ecs.model.EcsException;
+import software.amazon.awssdk.services.ecs.model.Failure;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestEcsTaskStatusPoller {
+
+    @Test
+    public void testBatchesRequests() throws Exception {
+        StubEcsClient ecsClient = new StubEcsClient();
+        EcsTaskStatusPoller poller = new EcsTaskStatusPoller(ecsClient, new EcsRateLimiter(Map.of(), null), "cluster", 50, 1000);
+        try {
+            List<CompletableFuture<Task>> futures = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                String arn = "arn:task-" + i;
+                ecsClient.statuses.put(arn, "PENDING");
+                futures.add(poller.waitFor(arn, t -> t != null && t.lastStatus().equals("RUNNING")));
+            }
+            Thread.sleep(300);
+            Assertions.assertTrue(futures.stream().noneMatch(CompletableFuture::isDone));
+            for (Integer batchSize : ecsClient.batchSizes) {
+                Assertions.assertTrue(batchSize <= EcsTaskStatusPoller.MAX_TASKS_PER_REQUEST);
+            }
+
+            ecsClient.statuses.replaceAll((k, v) -> "RUNNING");
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 250; i++) {
+                Assertions.assertEquals("arn:task-" + i, futures.get(i).get().taskArn());
+            }
+
+            // completed tasks are no longer polled
+            int calls = ecsClient.calls.get();
+            Thread.sleep(300);
+            Assertions.assertEquals(calls, ecsClient.calls.get());
+        } finally {
+            poller.shutdown();
+        }
+    }
+
+    @Test
+    public void testMissingTask() throws Exception {
+        StubEcsClient ecsClient = new StubEcsClient();
+        EcsTaskStatusPoller poller = new EcsTaskStatusPoller(ecsClient, new EcsRateLimiter(Map.of(), null), "cluster", 50, 1000);
+        try {
+            CompletableFuture<Task> stopped = poller.waitFor("arn:missing", t -> t == null);
+            Assertions.assertNull(stopped.get(5, TimeUnit.SECONDS));
+        } finally {
+            poller.shutdown();
+        }
+    }
+
+    @Test
+    public void testThrottling() throws Exception {
+        StubEcsClient ecsClient = new StubEcsClient();
+        EcsTaskStatusPoller poller = new EcsTaskStatusPoller(ecsClient, new EcsRateLimiter(Map.of(), null), "cluster", 10, 160);
+        try {
+            ecsClient.statuses.put("arn:task", "PENDING");
+            CompletableFuture<Task> future = poller.waitFor("arn:task", t -> t != null && t.lastStatus().equals("RUNNING"));
+            ecsClient.throttle = true;
+            Thread.sleep(1000);
+            Assertions.assertEquals(160, poller.getCurrentInterval());
+
+            ecsClient.throttle = false;
+            ecsClient.statuses.put("arn:task", "RUNNING");
+            Assertions.assertEquals("RUNNING", future.get(5, TimeUnit.SECONDS).lastStatus());
+            Assertions.assertTrue(poller.getCurrentInterval() < 160);
+        } finally {
+            poller.shutdown();
+        }
+    }
+
+    private static class StubEcsClient implements EcsClient {
+
+        private final Map<String, String> statuses = new ConcurrentHashMap<>();
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean throttle = false;
+
+        @Override
+        public DescribeTasksResponse describeTasks(DescribeTasksRequest request) {
+            calls.incrementAndGet();
+            if (throttle) {
+                throw EcsException.builder()
+                    .statusCode(400)
+                    .awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottlingException").build())
+                    .build();
+            }
+            batchSizes.add(request.tasks().size());
+            List<Task> tasks = new ArrayList<>();
+            List<Failure> failures = new ArrayList<>();
+            for (String arn : request.tasks()) {
+                String status = statuses.get(arn);
+                if (status == null) {
+                    failures.add(Failure.builder().arn(arn).reason("MISSING").build());
+                } else {
+                    tasks.add(Task.builder().taskArn(arn).lastStatus(status).desiredStatus("RUNNING").build());
+                }
+            }
+            return DescribeTasksResponse.builder().tasks(tasks).failures(failures).build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "ecs";
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.service.leader.GlobalEventLoopService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGlobalEventLoopService {
+
+    @Test
+    public void testCoalescePendingTasks() throws InterruptedException {
+        GlobalEventLoopService eventLoop = new GlobalEventLoopService(() -> true, new MockEnvironment());
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        eventLoop.schedule("spec", () -> {
+            started.countDown();
+            await(blocked);
+        });
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        AtomicInteger reconciles = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            eventLoop.scheduleCoalesced("spec", "reconcile", reconciles::incrementAndGet);
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        eventLoop.schedule("spec", done::countDown);
+        blocked.countDown();
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, reconciles.get());
+    }
+
+    @Test
+    public void testLanesAreIndependent() throws InterruptedException {
+        GlobalEventLoopService eventLoop = new GlobalEventLoopService(() -> true, new MockEnvironment());
+        CountDownLatch blocked = new CountDownLatch(1);
+        eventLoop.schedule("slow-spec", () -> await(blocked));
+
+        CountDownLatch done = new CountDownLatch(1);
+        eventLoop.schedule("other-spec", done::countDown);
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        blocked.countDown();
+    }
+
+    @Test
+    public void testLaneIsSerial() throws InterruptedException {
+        GlobalEventLoopService eventLoop = new GlobalEventLoopService(() -> true, new MockEnvironment());
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            eventLoop.schedule("spec", () -> {
+                order.add(value);
+                done.countDown();
+            });
+        }
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(i, order.get(i));
+        }
+    }
+
+    @Test
+    public void testOnlyIfLeader() throws InterruptedException {
+        GlobalEventLoopService eventLoop = new GlobalEventLoopService(() -> false, new MockEnvironment());
+        AtomicInteger executed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        eventLoop.schedule(executed::incrementAndGet);
+        eventLoop.schedule(done::countDown, false);
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, executed.get());
+    }
+
+    @Test
+    public void testExclusiveWaitsForAllLanes() throws InterruptedException {
+        GlobalEventLoopService eventLoop = new GlobalEventLoopService(() -> true, new MockEnvironment());
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean specTaskRunning = new AtomicBoolean();
+        eventLoop.schedule("spec", () -> {
+            specTaskRunning.set(true);
+            started.countDown();
+            await(blocked);
+            specTaskRunning.set(false);
+        });
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch exclusiveDone = new CountDownLatch(1);
+        eventLoop.scheduleExclusive(() -> {
+            overlapped.set(specTaskRunning.get());
+            exclusiveDone.countDown();
+        });
+        // the exclusive task waits for the task on the other lane
+        Assertions.assertFalse(exclusiveDone.await(200, TimeUnit.MILLISECONDS));
+        blocked.countDown();
+        Assertions.assertTrue(exclusiveDone.await(10, TimeUnit.SECONDS));
+        Assertions.assertFalse(overlapped.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import com.sun.net.httpserver.HttpServer;
+import eu.openanalytics.containerproxy.event.UserLoginEvent;
+import eu.openanalytics.containerproxy.stat.impl.BatchWriter;
+import eu.openanalytics.containerproxy.stat.impl.InfluxDBCollector;
+import eu.openanalytics.containerproxy.stat.impl.UsageStatsSpool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+public class TestInfluxDBCollector {
+
+    private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failuresToReturn = new AtomicInteger();
+    private HttpServer server;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/write", exchange -> {
+            requests.incrementAndGet();
+            Assertions.assertEquals("gzip", exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            try (InputStream body = new GZIPInputStream(exchange.getRequestBody())) {
+                String content = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                if (failuresToReturn.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                } else {
+                    lines.addAll(List.of(content.split("\n")));
+                    exchange.sendResponseHeaders(204, -1);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testBatchedWrites() throws Exception {
+        InfluxDBCollector collector = createCollector();
+        for (int i = 0; i < 1000; i++) {
+            collector.onUserLoginEvent(new UserLoginEvent(this, "user " + i, null));
+        }
+        collector.close();
+
+        Assertions.assertEquals(1000, lines.size());
+        Assertions.assertEquals(10, requests.get());
+        Assertions.assertTrue(lines.get(0).startsWith("event,username=user\\ 0,type=Login data=\"\" "));
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        InfluxDBCollector collector = createCollector();
+        collector.onUserLoginEvent(new UserLoginEvent(this, "jack,team=a b", null));
+        collector.close();
+
+        Assertions.assertEquals(1, lines.size());
+        Assertions.assertTrue(lines.get(0).startsWith("event,username=jack\\,team\\=a\\ b,type=Login data=\"\" "));
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        failuresToReturn.set(2);
+        InfluxDBCollector collector = createCollector();
+        collector.onUserLoginEvent(new UserLoginEvent(this, "jack", null));
+        collector.close();
+
+        Assertions.assertEquals(1, lines.size());
+        Assertions.assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testNoRetryWhenSpooled() throws Exception {
+        failuresToReturn.set(100);
+        MockEnvironment environment = createEnvironment()
+            .withProperty(UsageStatsSpool.PROPERTY_PREFIX + "directory", tempDir.toString());
+        InfluxDBCollector collector = createCollector(environment);
+        collector.onUserLoginEvent(new UserLoginEvent(this, "jack", null));
+        collector.close();
+
+        // the spool retries the batch (on the next start), the collector only sends it once
+        Assertions.assertEquals(0, lines.size());
+        Assertions.assertEquals(1, requests.get());
+    }
+
+    private InfluxDBCollector createCollector() throws IOException {
+        return createCollector(createEnvironment());
+    }
+
+    private static MockEnvironment createEnvironment() {
+        return new MockEnvironment()
+            .withProperty(BatchWriter.PROPERTY_PREFIX + "batch-size", "100")
+            .withProperty(BatchWriter.PROPERTY_PREFIX + "flush-interval", "60000");
+    }
+
+    private InfluxDBCollector createCollector(MockEnvironment environment) throws IOException {
+        InfluxDBCollector collector = new InfluxDBCollector("http://localhost:" + server.getAddress().getPort() + "/write?db=shinyproxy_usagestats");
+        ReflectionTestUtils.setField(collector, "environment", environment);
+        ReflectionTestUtils.setField(collector, "meterRegistry", new SimpleMeterRegistry());
+        collector.init();
+        return collector;
+    }
+
+}
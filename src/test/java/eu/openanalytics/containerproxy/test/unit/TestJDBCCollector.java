@@ -0,0 +1,109 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.event.UserLoginEvent;
+import eu.openanalytics.containerproxy.stat.impl.BatchWriter;
+import eu.openanalytics.containerproxy.stat.impl.JDBCCollector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestJDBCCollector {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void testBatchedWrites() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("usage_stats.db");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        JDBCCollector collector = new JDBCCollector(url, null, null, "event", null);
+        ReflectionTestUtils.setField(collector, "environment", new MockEnvironment()
+            .withProperty(BatchWriter.PROPERTY_PREFIX + "batch-size", "100"));
+        ReflectionTestUtils.setField(collector, "meterRegistry", registry);
+        collector.init();
+
+        for (int i = 0; i < 1000; i++) {
+            collector.onUserLoginEvent(new UserLoginEvent(this, "user-" + i, null));
+        }
+        collector.close();
+
+        try (Connection con = DriverManager.getConnection(url); ResultSet rs = con.createStatement().executeQuery("select count(*), min(type) from event")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(1000, rs.getInt(1));
+            Assertions.assertEquals("Login", rs.getString(2));
+        }
+        Assertions.assertEquals(1000, registry.get("usage_stats_written").counter().count());
+        Assertions.assertTrue(registry.get("usage_stats_batch_write_time").timer().count() >= 10);
+    }
+
+    @Test
+    public void testBatchWriterFlushesAfterInterval() throws Exception {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        BatchWriter<Integer> writer = new BatchWriter<>("test", 100, 50, 100, BatchWriter.OverflowPolicy.DropNewest,
+            batch -> batchSizes.add(batch.size()), null);
+        for (int i = 0; i < 10; i++) {
+            writer.add(i);
+        }
+        for (int i = 0; i < 100 && batchSizes.isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        Assertions.assertEquals(List.of(10), batchSizes);
+        writer.close();
+    }
+
+    @Test
+    public void testBatchWriterOverflow() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Object lock = new Object();
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        BatchWriter<Integer> writer;
+        synchronized (lock) {
+            // the writer is blocked until all items are added
+            writer = new BatchWriter<>("test", 10, 1, 10, BatchWriter.OverflowPolicy.DropOldest, batch -> {
+                synchronized (lock) {
+                    written.addAll(batch);
+                }
+            }, registry);
+            writer.add(-1);
+            Thread.sleep(200);
+            for (int i = 0; i < 100; i++) {
+                writer.add(i);
+            }
+        }
+        writer.close();
+        Assertions.assertEquals(90, registry.get("usage_stats_dropped").counter().count());
+        Assertions.assertEquals(List.of(-1, 90, 91, 92, 93, 94, 95, 96, 97, 98, 99), written);
+    }
+
+}
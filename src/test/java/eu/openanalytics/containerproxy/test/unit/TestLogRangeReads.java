@@ -0,0 +1,290 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.log.AbstractLogStorage;
+import eu.openanalytics.containerproxy.log.BufferedLogFileOutputStream;
+import eu.openanalytics.containerproxy.log.FileLogStorage;
+import eu.openanalytics.containerproxy.log.IReadableLogStream;
+import eu.openanalytics.containerproxy.log.LogChunk;
+import eu.openanalytics.containerproxy.log.LogLineIndex;
+import eu.openanalytics.containerproxy.log.LogStreams;
+import eu.openanalytics.containerproxy.log.LogType;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+public class TestLogRangeReads {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void testLineIndex() {
+        LogLineIndex index = new LogLineIndex(100, 8);
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            byte[] line = String.format("line %04d\n", i).getBytes(StandardCharsets.UTF_8);
+            index.update(line, 0, line.length);
+            log.append(String.format("line %04d\n", i));
+        }
+        Assertions.assertEquals(10_000, index.getSize());
+        Assertions.assertEquals(1000, index.getLineCount());
+        // the index remains bounded
+        Assertions.assertTrue(index.getEntries() <= 8);
+
+        for (long line : new long[]{0, 1, 250, 999, 1000}) {
+            long offset = index.getOffsetBefore(line);
+            // every entry is the start of a line, at or before the requested line
+            Assertions.assertEquals(0, offset % 10);
+            Assertions.assertTrue(offset <= line * 10);
+        }
+        Assertions.assertEquals(0, index.getOffsetBefore(-5));
+        // the entries are spread over the log
+        Assertions.assertTrue(index.getOffsetBefore(1000) > 5000);
+    }
+
+    @Test
+    public void testReadAndTail() throws IOException {
+        FileLogStorage storage = createStorage(-1);
+        Proxy proxy = Proxy.builder().id("proxy-1").specId("01_hello").build();
+        LogStreams streams = storage.createOutputStreams(proxy);
+        for (int i = 0; i < 10_000; i++) {
+            streams.getStdout().write(String.format("line %04d\n", i).getBytes(StandardCharsets.UTF_8));
+        }
+        // incomplete line
+        streams.getStdout().write("partial".getBytes(StandardCharsets.UTF_8));
+
+        LogChunk tail = storage.tailLog(proxy, LogType.Stdout, 3, 64 * 1024);
+        Assertions.assertEquals("line 9997\nline 9998\nline 9999\n", tail.getContent());
+        Assertions.assertEquals(99_970, tail.getOffset());
+        Assertions.assertEquals(100_000, tail.getNextOffset());
+        Assertions.assertEquals(100_007, tail.getSize());
+
+        // the chunk ends at the last complete line
+        LogChunk chunk = storage.readLog(proxy, LogType.Stdout, 50, 25);
+        Assertions.assertEquals("line 0005\nline 0006\n", chunk.getContent());
+        Assertions.assertEquals(70, chunk.getNextOffset());
+
+        // polling for new output
+        Assertions.assertEquals("", storage.readLog(proxy, LogType.Stdout, 100_000, 1024).getContent());
+        streams.getStdout().write(" line\nnext".getBytes(StandardCharsets.UTF_8));
+        chunk = storage.readLog(proxy, LogType.Stdout, 100_000, 1024);
+        Assertions.assertEquals("partial line\n", chunk.getContent());
+
+        // once closed, the incomplete line is returned as well
+        streams.getStdout().close();
+        streams.getStderr().close();
+        chunk = storage.readLog(proxy, LogType.Stdout, chunk.getNextOffset(), 1024);
+        Assertions.assertEquals("next", chunk.getContent());
+        Assertions.assertEquals("", storage.tailLog(proxy, LogType.Stderr, 10, 1024).getContent());
+
+        // unknown proxy
+        Assertions.assertNull(storage.readLog(Proxy.builder().id("proxy-2").specId("01_hello").build(), LogType.Stdout, 0, 1024));
+    }
+
+    @Test
+    public void testTailIsLimited() throws IOException {
+        FileLogStorage storage = createStorage(-1);
+        Proxy proxy = Proxy.builder().id("proxy-1").specId("01_hello").build();
+        LogStreams streams = storage.createOutputStreams(proxy);
+        for (int i = 0; i < 1000; i++) {
+            streams.getStdout().write(String.format("line %04d\n", i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // only complete lines within the limit are returned
+        LogChunk tail = storage.tailLog(proxy, LogType.Stdout, 100, 25);
+        Assertions.assertEquals("line 0998\nline 0999\n", tail.getContent());
+    }
+
+    @Test
+    public void testReadAcrossRotatedFiles() throws IOException {
+        FileLogStorage storage = createStorage(1000);
+        Proxy proxy = Proxy.builder().id("proxy-1").specId("01_hello").build();
+        LogStreams streams = storage.createOutputStreams(proxy);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String line = String.format("line %04d\n", i);
+            streams.getStdout().write(line.getBytes(StandardCharsets.UTF_8));
+            expected.append(line);
+        }
+
+        StringBuilder actual = new StringBuilder();
+        long offset = 0;
+        while (true) {
+            LogChunk chunk = storage.readLog(proxy, LogType.Stdout, offset, 4096);
+            if (chunk.getContent().isEmpty()) {
+                break;
+            }
+            actual.append(chunk.getContent());
+            offset = chunk.getNextOffset();
+        }
+        Assertions.assertEquals(expected.toString(), actual.toString());
+
+        LogChunk tail = storage.tailLog(proxy, LogType.Stdout, 150, 64 * 1024);
+        Assertions.assertEquals(expected.substring(8500), tail.getContent());
+    }
+
+    @Test
+    public void testReadFromOtherInstance() throws IOException {
+        FileLogStorage storage = createStorage(1000);
+        Proxy proxy = Proxy.builder().id("proxy-1").specId("01_hello").build();
+        LogStreams streams = storage.createOutputStreams(proxy);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String line = String.format("line %04d\n", i);
+            streams.getStdout().write(line.getBytes(StandardCharsets.UTF_8));
+            expected.append(line);
+        }
+        streams.getStdout().close();
+        streams.getStderr().close();
+        Path compressed;
+        try (Stream<Path> files = Files.list(tempDir)) {
+            Path rotated = files.filter(f -> f.getFileName().toString().endsWith("_stdout.1.log")).findFirst().orElseThrow();
+            BufferedLogFileOutputStream.compress(rotated);
+            compressed = rotated.resolveSibling(rotated.getFileName() + ".gz");
+        }
+        // gzip only stores the size modulo 2^32 (i.e. it's wrong for files of 4GiB or more), the recorded size is used instead
+        try (FileChannel channel = FileChannel.open(compressed, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4), channel.size() - 4);
+        }
+
+        // another instance does not follow the output, it reads the files directly
+        FileLogStorage other = createStorage(1000);
+        StringBuilder actual = new StringBuilder();
+        LogChunk first = other.readLog(proxy, LogType.Stdout, 0, 4096);
+        // the compressed file is skipped, but the offsets still match the offsets of the complete log
+        Assertions.assertTrue(first.getOffset() > 0);
+        Assertions.assertEquals(10_000, first.getSize());
+        long offset = first.getOffset();
+        while (true) {
+            LogChunk chunk = other.readLog(proxy, LogType.Stdout, offset, 4096);
+            if (chunk.getContent().isEmpty()) {
+                break;
+            }
+            actual.append(chunk.getContent());
+            offset = chunk.getNextOffset();
+        }
+        Assertions.assertEquals(expected.substring((int) first.getOffset()), actual.toString());
+
+        LogChunk tail = other.tailLog(proxy, LogType.Stdout, 3, 1024);
+        Assertions.assertEquals("line 0997\nline 0998\nline 0999\n", tail.getContent());
+        Assertions.assertEquals(9970, tail.getOffset());
+    }
+
+    @Test
+    public void testTailWhenIndexCoversUnreadableOutput() throws IOException {
+        // like S3, the output of the current object cannot be read until the object is completed
+        StubLogStream stdout = new StubLogStream();
+        for (int i = 0; i < 1000; i++) {
+            stdout.write(String.format("line %04d\n", i));
+        }
+        stdout.readableEnd = 6000;
+        StubLogStorage storage = new StubLogStorage();
+        Proxy proxy = Proxy.builder().id("proxy-1").specId("01_hello").build();
+        storage.register(proxy, stdout, new StubLogStream());
+
+        LogChunk tail = storage.tailLog(proxy, LogType.Stdout, 3, 64 * 1024);
+        Assertions.assertEquals("line 0597\nline 0598\nline 0599\n", tail.getContent());
+        Assertions.assertEquals(5970, tail.getOffset());
+        Assertions.assertEquals(6000, tail.getNextOffset());
+
+        // nothing readable yet
+        stdout.readableEnd = 0;
+        Assertions.assertEquals("", storage.tailLog(proxy, LogType.Stdout, 3, 64 * 1024).getContent());
+    }
+
+    private FileLogStorage createStorage(long maxFileSize) throws IOException {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setProperty("proxy.container-log-path", tempDir.toString());
+        environment.setProperty("proxy.container-log-buffer-size", "1024");
+        environment.setProperty("proxy.container-log-max-file-size", String.valueOf(maxFileSize));
+        FileLogStorage storage = new FileLogStorage();
+        ReflectionTestUtils.setField(storage, "environment", environment);
+        storage.initialize();
+        return storage;
+    }
+
+    private static class StubLogStorage extends AbstractLogStorage {
+
+        public void register(Proxy proxy, IReadableLogStream stdout, IReadableLogStream stderr) {
+            registerReadableStreams(proxy, stdout, stderr);
+        }
+
+        @Override
+        public LogStreams createOutputStreams(Proxy proxy) {
+            return null;
+        }
+
+    }
+
+    private static class StubLogStream implements IReadableLogStream {
+
+        private final LogLineIndex index = new LogLineIndex(100, 8);
+        private final StringBuilder output = new StringBuilder();
+        private long readableEnd;
+
+        public void write(String data) {
+            byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+            index.update(bytes, 0, bytes.length);
+            output.append(data);
+        }
+
+        @Override
+        public LogLineIndex getIndex() {
+            return index;
+        }
+
+        @Override
+        public long getReadableStart() {
+            return 0;
+        }
+
+        @Override
+        public long getReadableEnd() {
+            return readableEnd;
+        }
+
+        @Override
+        public byte[] read(long offset, int length) {
+            return output.substring((int) offset, (int) Math.min(readableEnd, offset + length)).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.ContainerProxyException;
+import eu.openanalytics.containerproxy.service.portallocator.memory.MemoryPortAllocator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class TestMemoryPortAllocator {
+
+    @Test
+    public void testAllocateAcrossSegments() {
+        MemoryPortAllocator portAllocator = new MemoryPortAllocator();
+        Set<Integer> ports = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            ports.add(portAllocator.allocate(20_000, 40_000, "owner" + (i % 100)));
+        }
+        Assertions.assertEquals(10_000, ports.size());
+        Assertions.assertEquals(20_000, ports.stream().mapToInt(i -> i).min().orElseThrow());
+        Assertions.assertEquals(29_999, ports.stream().mapToInt(i -> i).max().orElseThrow());
+
+        Set<Integer> owner5 = portAllocator.getOwnedPorts("owner5");
+        Assertions.assertEquals(100, owner5.size());
+        portAllocator.release("owner5");
+        Assertions.assertTrue(portAllocator.getOwnedPorts("owner5").isEmpty());
+
+        // released ports are re-used first
+        Set<Integer> reallocated = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            reallocated.add(portAllocator.allocate(20_000, 40_000, "owner-new"));
+        }
+        Assertions.assertEquals(owner5, reallocated);
+        Assertions.assertEquals(30_000, portAllocator.allocate(20_000, 40_000, "owner-new"));
+    }
+
+    @Test
+    public void testRangeEndInSegment() {
+        MemoryPortAllocator portAllocator = new MemoryPortAllocator();
+        portAllocator.addExistingPort("existing", 1025);
+        Assertions.assertEquals(1024, portAllocator.allocate(1024, 1026, "owner"));
+        Assertions.assertEquals(1026, portAllocator.allocate(1024, 1026, "owner"));
+        Assertions.assertThrows(ContainerProxyException.class, () -> portAllocator.allocate(1024, 1026, "owner"));
+        Assertions.assertEquals(1027, portAllocator.allocate(1024, 0, "owner"));
+    }
+
+}
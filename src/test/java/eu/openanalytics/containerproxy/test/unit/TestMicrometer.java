@@ -0,0 +1,182 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.event.ProxyPauseEvent;
+import eu.openanalytics.containerproxy.event.ProxyResumeEvent;
+import eu.openanalytics.containerproxy.event.ProxyStartEvent;
+import eu.openanalytics.containerproxy.event.ProxyStopEvent;
+import eu.openanalytics.containerproxy.model.runtime.Container;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.runtime.ProxyStatus;
+import eu.openanalytics.containerproxy.model.runtime.ProxyStopReason;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.BackendContainerName;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.BackendContainerNameKey;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
+import eu.openanalytics.containerproxy.service.ProxyService;
+import eu.openanalytics.containerproxy.service.session.ISessionService;
+import eu.openanalytics.containerproxy.spec.IProxySpecProvider;
+import eu.openanalytics.containerproxy.stat.impl.Micrometer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestMicrometer {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ProxyService proxyService = mock(ProxyService.class);
+    private final List<Proxy> proxies = new ArrayList<>();
+    private Micrometer micrometer;
+
+    @BeforeEach
+    public void init() {
+        IProxySpecProvider specProvider = mock(IProxySpecProvider.class);
+        when(specProvider.getSpecs()).thenReturn(List.of());
+        when(proxyService.getAllProxies()).thenAnswer(i -> new ArrayList<>(proxies));
+
+        micrometer = new Micrometer();
+        ReflectionTestUtils.setField(micrometer, "registry", registry);
+        ReflectionTestUtils.setField(micrometer, "proxyService", proxyService);
+        ReflectionTestUtils.setField(micrometer, "sessionService", mock(ISessionService.class));
+        ReflectionTestUtils.setField(micrometer, "specProvider", specProvider);
+        ReflectionTestUtils.setField(micrometer, "environment", new MockEnvironment()
+            .withProperty("proxy.usage-stats-micrometer.reconcile-interval", "3600000"));
+        micrometer.init();
+        // wait for the initial reconciliation
+        verify(proxyService, timeout(5000)).getAllProxies();
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        for (int i = 0; i < 3; i++) {
+            micrometer.onProxyStartEvent(startEvent("proxy-" + i));
+        }
+        Assertions.assertEquals(3, appsRunning());
+        Assertions.assertEquals(3, registry.get("appInfo").gauges().size());
+        Assertions.assertEquals(10, appInfo("proxy-0"));
+
+        micrometer.onProxyPauseEvent(new ProxyPauseEvent("other-replica", "proxy-0", "jack", "01_hello", null));
+        Assertions.assertEquals(2, appsRunning());
+        Assertions.assertEquals(20, appInfo("proxy-0"));
+
+        micrometer.onProxyResumeEvent(new ProxyResumeEvent("other-replica", "proxy-0", "jack", "01_hello"));
+        Assertions.assertEquals(3, appsRunning());
+        Assertions.assertEquals(10, appInfo("proxy-0"));
+
+        ProxyStopEvent stopEvent = new ProxyStopEvent("other-replica", "proxy-1", "jack", "01_hello", "", 1L, null, ProxyStopReason.Crashed, null);
+        micrometer.onProxyStopEvent(stopEvent);
+        micrometer.onProxyStopEvent(stopEvent);
+        Assertions.assertEquals(2, appsRunning());
+        Assertions.assertEquals(50, appInfo("proxy-1"));
+        // the name of the container is re-used from the existing gauge
+        Assertions.assertEquals("container-proxy-1", registry.get("appInfo").tag("proxy.id", "proxy-1").gauge().getId().getTag("resource.id"));
+        Assertions.assertEquals(3, registry.get("appInfo").gauges().size());
+
+        // the proxies are only listed by the initial reconciliation
+        verify(proxyService, times(1)).getAllProxies();
+    }
+
+    @Test
+    public void testReconcile() {
+        proxies.add(proxy("proxy-0", ProxyStatus.Up));
+        proxies.add(proxy("proxy-1", ProxyStatus.Paused));
+        // event for a proxy that is not in the store
+        micrometer.onProxyStartEvent(startEvent("proxy-2"));
+
+        ReflectionTestUtils.invokeMethod(micrometer, "reconcile");
+        Assertions.assertEquals(1, appsRunning());
+        Assertions.assertEquals(10, appInfo("proxy-0"));
+        Assertions.assertEquals(20, appInfo("proxy-1"));
+        // recently updated: marked as stopped, but not yet removed
+        Assertions.assertEquals(40, appInfo("proxy-2"));
+
+        proxies.clear();
+        ReflectionTestUtils.invokeMethod(micrometer, "reconcile");
+        Assertions.assertEquals(0, appsRunning());
+        Assertions.assertEquals(40, appInfo("proxy-0"));
+    }
+
+    @Test
+    public void testEventsDuringReconcile() throws InterruptedException {
+        proxies.add(proxy("proxy-0", ProxyStatus.Up));
+        micrometer.onProxyStartEvent(startEvent("proxy-0"));
+        when(proxyService.getAllProxies()).thenAnswer(i -> {
+            List<Proxy> snapshot = new ArrayList<>(proxies);
+            // events handled while the snapshot is taken (by another thread, i.e. they may not be blocked)
+            Thread thread = new Thread(() -> {
+                micrometer.onProxyStopEvent(new ProxyStopEvent("other-replica", "proxy-0", "jack", "01_hello", "", 1L, null, ProxyStopReason.Crashed, null));
+                micrometer.onProxyStartEvent(startEvent("proxy-1"));
+            });
+            thread.start();
+            thread.join(5000);
+            Assertions.assertFalse(thread.isAlive());
+            return snapshot;
+        });
+
+        ReflectionTestUtils.invokeMethod(micrometer, "reconcile");
+        // the outdated snapshot does not overwrite the events
+        Assertions.assertEquals(1, appsRunning());
+        Assertions.assertEquals(50, appInfo("proxy-0"));
+        Assertions.assertEquals(10, appInfo("proxy-1"));
+    }
+
+    private double appsRunning() {
+        return registry.get("absolute_apps_running").tag("spec.id", "01_hello").gauge().value();
+    }
+
+    private double appInfo(String proxyId) {
+        Gauge gauge = registry.get("appInfo").tag("proxy.id", proxyId).gauge();
+        return gauge.value();
+    }
+
+    private static ProxyStartEvent startEvent(String proxyId) {
+        return new ProxyStartEvent("other-replica", proxyId, "jack", "01_hello", "", 1L, new BackendContainerName("default", "container-" + proxyId), null);
+    }
+
+    private static Proxy proxy(String proxyId, ProxyStatus status) {
+        Container container = Container.builder()
+            .index(0)
+            .addRuntimeValue(new RuntimeValue(BackendContainerNameKey.inst, new BackendContainerName("default", "container-" + proxyId)), false)
+            .build();
+        return Proxy.builder()
+            .id(proxyId)
+            .userId("jack")
+            .specId("01_hello")
+            .status(status)
+            .createdTimestamp(1L)
+            .containers(List.of(container))
+            .build();
+    }
+
+}
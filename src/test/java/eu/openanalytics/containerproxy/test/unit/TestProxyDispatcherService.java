@@ -0,0 +1,83 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.backend.dispatcher.DefaultProxyDispatcher;
+import eu.openanalytics.containerproxy.backend.dispatcher.ProxyDispatcherService;
+import eu.openanalytics.containerproxy.backend.dispatcher.proxysharing.IDelegateProxyStore;
+import eu.openanalytics.containerproxy.backend.dispatcher.proxysharing.ProxySharingScaler;
+import eu.openanalytics.containerproxy.backend.dispatcher.proxysharing.ProxySharingSpecExtension;
+import eu.openanalytics.containerproxy.backend.dispatcher.proxysharing.store.IProxySharingStoreFactory;
+import eu.openanalytics.containerproxy.backend.dispatcher.proxysharing.store.ISeatStore;
+import eu.openanalytics.containerproxy.model.spec.ContainerSpec;
+import eu.openanalytics.containerproxy.model.spec.ProxySpec;
+import eu.openanalytics.containerproxy.spec.IProxySpecProvider;
+import eu.openanalytics.containerproxy.spec.expression.SpelField;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestProxyDispatcherService {
+
+    @Test
+    public void testReloadOfProxySharingSpecs() {
+        IProxySpecProvider specProvider = mock(IProxySpecProvider.class);
+        when(specProvider.getSpecs()).thenReturn(List.of(spec("01_hello", null, "image"), spec("02_shared", 1, "image")));
+        ProxyDispatcherService service = new ProxyDispatcherService(specProvider, mock(IProxySharingStoreFactory.class),
+            mock(ConfigurableListableBeanFactory.class), mock(DefaultProxyDispatcher.class)) {
+            @Override
+            protected ProxySharingScaler createProxySharingScaler(ISeatStore seatStore, ProxySpec proxySpec, IDelegateProxyStore delegateProxyStore) {
+                return mock(ProxySharingScaler.class);
+            }
+        };
+        service.init();
+
+        // unchanged (or only other specs changed)
+        service.validateSpecs(List.of(spec("01_hello", null, "other-image"), spec("02_shared", 1, "image"), spec("03_new", null, "image")));
+
+        // changed
+        IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class,
+            () -> service.validateSpecs(List.of(spec("01_hello", null, "image"), spec("02_shared", 1, "other-image"))));
+        Assertions.assertEquals("Configuration error: spec '02_shared' uses proxy sharing and cannot be changed without a restart", ex.getMessage());
+
+        // removed or added
+        Assertions.assertThrows(IllegalStateException.class, () -> service.validateSpecs(List.of(spec("01_hello", null, "image"))));
+        Assertions.assertThrows(IllegalStateException.class,
+            () -> service.validateSpecs(List.of(spec("01_hello", 1, "image"), spec("02_shared", 1, "image"))));
+    }
+
+    private static ProxySpec spec(String id, Integer minimumSeatsAvailable, String image) {
+        ProxySpec spec = ProxySpec.builder()
+            .id(id)
+            .containerSpecs(List.of(ContainerSpec.builder()
+                .image(new SpelField.String(image))
+                .build()))
+            .build();
+        spec.addSpecExtension(ProxySharingSpecExtension.builder().minimumSeatsAvailable(minimumSeatsAvailable).build());
+        return spec;
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.event.ProxySpecsReloadedEvent;
+import eu.openanalytics.containerproxy.event.ReloadProxySpecsEvent;
+import eu.openanalytics.containerproxy.model.spec.ProxySpec;
+import eu.openanalytics.containerproxy.service.IdentifierService;
+import eu.openanalytics.containerproxy.service.ParametersService;
+import eu.openanalytics.containerproxy.service.ProxySpecReloadService;
+import eu.openanalytics.containerproxy.spec.expression.SpelFieldConverters;
+import eu.openanalytics.containerproxy.spec.impl.DefaultSpecProvider;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class TestProxySpecReload {
+
+    @TempDir
+    private Path tempDir;
+
+    private Path configFile;
+    private MockEnvironment environment;
+    private DefaultSpecProvider specProvider;
+    private ProxySpecReloadService reloadService;
+    private final List<Object> events = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        configFile = tempDir.resolve("application.yml");
+        environment = new MockEnvironment();
+        environment.setProperty("spring.config.location", configFile.toString());
+
+        specProvider = new DefaultSpecProvider();
+        ReflectionTestUtils.setField(specProvider, "specExtensionProviders", List.of());
+        specProvider.setSpecs(List.of(spec("01_hello"), spec("06_tabsets")));
+        specProvider.init();
+
+        IdentifierService identifierService = new IdentifierService();
+        ReflectionTestUtils.setField(identifierService, "environment", environment);
+
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("integerConverter", new RootBeanDefinition(SpelFieldConverters.IntegerToSpelFieldStringConvertor.class));
+
+        reloadService = new ProxySpecReloadService();
+        ReflectionTestUtils.setField(reloadService, "specProvider", specProvider);
+        ReflectionTestUtils.setField(reloadService, "specExtensionProviders", List.of());
+        ReflectionTestUtils.setField(reloadService, "validators", List.of(new ParametersService(specProvider, null, null)));
+        ReflectionTestUtils.setField(reloadService, "identifierService", identifierService);
+        ReflectionTestUtils.setField(reloadService, "environment", environment);
+        ReflectionTestUtils.setField(reloadService, "beanFactory", beanFactory);
+        ReflectionTestUtils.setField(reloadService, "applicationEventPublisher", (ApplicationEventPublisher) events::add);
+    }
+
+    @Test
+    public void testGetSpec() {
+        Assertions.assertEquals("01_hello", specProvider.getSpec("01_hello").getId());
+        Assertions.assertEquals("06_tabsets", specProvider.getSpec("06_tabsets").getId());
+        Assertions.assertNull(specProvider.getSpec("unknown"));
+        Assertions.assertNull(specProvider.getSpec(null));
+        Assertions.assertEquals(List.of("01_hello", "06_tabsets"), specProvider.getSpecs().stream().map(ProxySpec::getId).toList());
+    }
+
+    @Test
+    public void testDuplicateId() {
+        IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class,
+            () -> specProvider.prepareSpecs(List.of(spec("01_hello"), spec("01_hello")), List.of()));
+        Assertions.assertEquals("Configuration error: duplicate spec with id '01_hello'", ex.getMessage());
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        ProxySpec oldSpec = specProvider.getSpec("01_hello");
+        Files.writeString(configFile, """
+            proxy:
+              specs:
+                - id: 01_hello
+                  display-name: Hello Application
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+                - id: 02_new
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+                      memory-request: 2048
+            """);
+
+        List<ProxySpec> specs = reloadService.reload();
+
+        Assertions.assertEquals(List.of("01_hello", "02_new"), specs.stream().map(ProxySpec::getId).toList());
+        Assertions.assertEquals("Hello Application", specProvider.getSpec("01_hello").getDisplayName());
+        Assertions.assertEquals("openanalytics/shinyproxy-demo", specProvider.getSpec("02_new").getContainerSpecs().getFirst().getImage().getOriginalValue());
+        Assertions.assertEquals("2048", specProvider.getSpec("02_new").getContainerSpecs().getFirst().getMemoryRequest().getOriginalValue());
+        Assertions.assertNull(specProvider.getSpec("06_tabsets"));
+        // the spec used by running apps is not modified
+        Assertions.assertNull(oldSpec.getDisplayName());
+
+        Assertions.assertEquals(2, events.size());
+        Assertions.assertEquals(List.of("01_hello", "02_new"), ((ProxySpecsReloadedEvent) events.get(0)).getSpecIds());
+        // the other replicas reload using the same specs
+        Assertions.assertEquals(Map.of(
+            "proxy.specs[0].id", "01_hello",
+            "proxy.specs[0].display-name", "Hello Application",
+            "proxy.specs[0].container-specs[0].image", "openanalytics/shinyproxy-demo",
+            "proxy.specs[1].id", "02_new",
+            "proxy.specs[1].container-specs[0].image", "openanalytics/shinyproxy-demo",
+            "proxy.specs[1].container-specs[0].memory-request", "2048"
+        ), ((ReloadProxySpecsEvent) events.get(1)).getSpecProperties());
+    }
+
+    @Test
+    public void testOnlySpecsAreSentToOtherReplicas() throws IOException {
+        environment.setActiveProfiles("dev");
+        Files.writeString(configFile, """
+            proxy:
+              specs:
+                - id: 01_hello
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+            ---
+            spring:
+              config:
+                activate:
+                  on-profile: dev
+              datasource:
+                password: secret
+            proxy:
+              specs:
+                - id: 02_dev
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+            """);
+
+        reloadService.reload();
+
+        // only the specs of the document with the highest precedence, without any other property
+        Assertions.assertEquals(Map.of(
+            "proxy.specs[0].id", "02_dev",
+            "proxy.specs[0].container-specs[0].image", "openanalytics/shinyproxy-demo"
+        ), ((ReloadProxySpecsEvent) events.get(1)).getSpecProperties());
+    }
+
+    @Test
+    public void testReloadUsesEnvironment() throws IOException {
+        environment.setActiveProfiles("dev");
+        // e.g. set using an environment variable
+        environment.setProperty("app-name", "From environment");
+        Files.writeString(configFile, """
+            proxy:
+              specs:
+                - id: 01_hello
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+            ---
+            spring:
+              config:
+                activate:
+                  on-profile: dev
+            proxy:
+              specs:
+                - id: 01_hello
+                  display-name: Development
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+                - id: 02_new
+                  display-name: ${app-name}
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+            ---
+            spring:
+              config:
+                activate:
+                  on-profile: prod
+            proxy:
+              specs:
+                - id: 01_hello
+                  display-name: Production
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+            """);
+
+        reloadService.reload();
+
+        Assertions.assertEquals(List.of("01_hello", "02_new"), specProvider.getSpecs().stream().map(ProxySpec::getId).toList());
+        Assertions.assertEquals("Development", specProvider.getSpec("01_hello").getDisplayName());
+        Assertions.assertEquals("From environment", specProvider.getSpec("02_new").getDisplayName());
+    }
+
+    @Test
+    public void testReloadByOtherReplica() throws IOException {
+        // the configuration file loaded at startup, its other properties can still be used by placeholders
+        Files.writeString(configFile, """
+            app-name: From file
+            proxy:
+              specs:
+                - id: 01_hello
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+            """);
+        for (PropertySource<?> source : new YamlPropertySourceLoader().load("application.yml", new FileSystemResource(configFile))) {
+            environment.getPropertySources().addLast(source);
+        }
+
+        reloadService.onReloadProxySpecsEvent(new ReloadProxySpecsEvent("SHINYPROXY_REDIS_BRIDGE/other", Map.of(
+            "proxy.specs[0].id", "03_bridged",
+            "proxy.specs[0].display-name", "${app-name}",
+            "proxy.specs[0].container-specs[0].image", "openanalytics/shinyproxy-demo")));
+
+        Assertions.assertEquals(List.of("03_bridged"), specProvider.getSpecs().stream().map(ProxySpec::getId).toList());
+        Assertions.assertEquals("From file", specProvider.getSpec("03_bridged").getDisplayName());
+        // not sent again
+        Assertions.assertEquals(1, events.size());
+
+        // events of this replica are ignored
+        reloadService.onReloadProxySpecsEvent(new ReloadProxySpecsEvent(Map.of()));
+        Assertions.assertEquals(List.of("03_bridged"), specProvider.getSpecs().stream().map(ProxySpec::getId).toList());
+    }
+
+    @Test
+    public void testReloadInvalidSpecs() throws IOException {
+        Files.writeString(configFile, """
+            proxy:
+              specs:
+                - id: 01_hello
+                  container-specs:
+                    - image: openanalytics/shinyproxy-demo
+                  parameters:
+                    definitions:
+                      - id: environment
+                    value-sets:
+                      - values:
+                          other: [a]
+            """);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> reloadService.reload());
+
+        // the current specs remain in use
+        Assertions.assertEquals(List.of("01_hello", "06_tabsets"), specProvider.getSpecs().stream().map(ProxySpec::getId).toList());
+        Assertions.assertTrue(events.isEmpty());
+    }
+
+    private static ProxySpec spec(String id) {
+        return ProxySpec.builder().id(id).containerSpecs(List.of()).build();
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.log.RateLimitedOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestRateLimitedOutputStream {
+
+    private final AtomicLong time = new AtomicLong();
+
+    @Test
+    public void testBurstIsNotLimited() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TestStream stream = new TestStream(out, new RateLimitedOutputStream.TokenBucket(100, 10_000, time::get));
+
+        stream.write(new byte[10_000]);
+
+        Assertions.assertEquals(10_000, out.size());
+        Assertions.assertEquals(List.of(), stream.waits);
+    }
+
+    @Test
+    public void testRateIsLimited() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TestStream stream = new TestStream(out, new RateLimitedOutputStream.TokenBucket(10_000, 1_000, time::get));
+
+        for (int i = 0; i < 6; i++) {
+            stream.write(new byte[1_000]);
+        }
+
+        // the first 1000 bytes are the burst, every next 1000 bytes waits 100ms
+        Assertions.assertEquals(6_000, out.size());
+        Assertions.assertEquals(List.of(100L, 100L, 100L, 100L, 100L), stream.waits);
+    }
+
+    @Test
+    public void testSharedBucket() throws IOException {
+        RateLimitedOutputStream.TokenBucket bucket = new RateLimitedOutputStream.TokenBucket(10_000, 1_000, time::get);
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        TestStream stdoutStream = new TestStream(stdout, bucket);
+        TestStream stderrStream = new TestStream(stderr, bucket);
+
+        for (int i = 0; i < 3; i++) {
+            stdoutStream.write(new byte[1_000]);
+            stderrStream.write(new byte[1_000]);
+        }
+
+        // both streams use the same limit: only the first 1000 bytes are the burst
+        Assertions.assertEquals(3_000, stdout.size());
+        Assertions.assertEquals(3_000, stderr.size());
+        Assertions.assertEquals(List.of(100L, 100L), stdoutStream.waits);
+        Assertions.assertEquals(List.of(100L, 100L, 100L), stderrStream.waits);
+    }
+
+    @Test
+    public void testConcurrentWritersReserve() {
+        RateLimitedOutputStream.TokenBucket bucket = new RateLimitedOutputStream.TokenBucket(10_000, 1_000, time::get);
+
+        // writers that don't wait for each other, reserve the tokens in advance
+        Assertions.assertEquals(0, bucket.reserve(1_000));
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve(1_000));
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bucket.reserve(1_000));
+        // the bucket is refilled over time, up to the burst
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        Assertions.assertEquals(0, bucket.reserve(1_000));
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve(1_000));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RateLimitedOutputStream(new ByteArrayOutputStream(), 0, 100));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RateLimitedOutputStream(new ByteArrayOutputStream(), 100, 0));
+    }
+
+    /**
+     * Records the waits (in ms) instead of sleeping, the time advances as if the writer waited.
+     */
+    private class TestStream extends RateLimitedOutputStream {
+
+        private final List<Long> waits = new ArrayList<>();
+
+        private TestStream(OutputStream out, TokenBucket bucket) {
+            super(out, bucket);
+        }
+
+        @Override
+        protected void sleep(long waitNanos) {
+            waits.add(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            time.addAndGet(waitNanos);
+        }
+
+    }
+
+}
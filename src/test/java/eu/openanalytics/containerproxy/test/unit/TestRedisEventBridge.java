@@ -0,0 +1,137 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.event.BridgeableEvent;
+import eu.openanalytics.containerproxy.event.SeatClaimedEvent;
+import eu.openanalytics.containerproxy.service.RedisEventBridge;
+import eu.openanalytics.containerproxy.service.RedisEventFrame;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestRedisEventBridge {
+
+    @Test
+    public void testFrameRoundTrip() throws IOException {
+        RedisEventFrame frame = new RedisEventFrame("replica-1", List.of("{\"a\":1}".getBytes(), new byte[0]));
+        byte[] encoded = frame.encode();
+
+        Assertions.assertEquals("replica-1", RedisEventFrame.readSource(encoded));
+        RedisEventFrame decoded = RedisEventFrame.decode(encoded);
+        Assertions.assertEquals("replica-1", decoded.source());
+        Assertions.assertEquals(2, decoded.events().size());
+        Assertions.assertArrayEquals("{\"a\":1}".getBytes(), decoded.events().get(0));
+        Assertions.assertEquals(0, decoded.events().get(1).length);
+
+        // unknown version (e.g. a plain JSON event)
+        Assertions.assertThrows(IOException.class, () -> RedisEventFrame.decode("{}".getBytes()));
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        List<byte[]> messages = Collections.synchronizedList(new ArrayList<>());
+        RedisEventBridge sender = createBridge(messages, 50, mock(ApplicationEventPublisher.class));
+
+        for (int i = 0; i < 10; i++) {
+            sender.onGenerateEvent(new SeatClaimedEvent("01_hello", "proxy-" + i));
+        }
+        waitForMessages(messages, 1);
+        Assertions.assertEquals(1, messages.size());
+
+        List<Object> received = new ArrayList<>();
+        RedisEventBridge receiver = createBridge(new ArrayList<>(), 50, received::add);
+        receiver.onMessage(new DefaultMessage(new byte[0], messages.get(0)), null);
+        Assertions.assertEquals(10, received.size());
+        SeatClaimedEvent event = (SeatClaimedEvent) received.get(3);
+        Assertions.assertEquals("01_hello", event.getSpecId());
+        Assertions.assertEquals("proxy-3", event.getClaimingProxyId());
+        Assertions.assertFalse(event.isLocalEvent());
+
+        // the sender ignores its own messages
+        List<Object> echoed = new ArrayList<>();
+        RedisEventBridge loopback = createBridge(messages, 50, echoed::add);
+        loopback.onGenerateEvent(new SeatClaimedEvent("01_hello", "proxy"));
+        waitForMessages(messages, 2);
+        loopback.onMessage(new DefaultMessage(new byte[0], messages.get(1)), null);
+        Assertions.assertTrue(echoed.isEmpty());
+    }
+
+    @Test
+    public void testOrdering() throws Exception {
+        int numEvents = 200_000;
+        List<byte[]> messages = Collections.synchronizedList(new ArrayList<>());
+        // full batches are sent by the generating thread, the others by the scheduler, both must keep the order
+        RedisEventBridge sender = createBridge(messages, 1, mock(ApplicationEventPublisher.class));
+        List<Object> received = new ArrayList<>();
+        RedisEventBridge receiver = createBridge(new ArrayList<>(), 1, received::add);
+
+        for (int i = 0; i < numEvents; i++) {
+            sender.onGenerateEvent(new SeatClaimedEvent("01_hello", "proxy-" + i));
+        }
+        sender.shutdown();
+        for (byte[] message : new ArrayList<>(messages)) {
+            receiver.onMessage(new DefaultMessage(new byte[0], message), null);
+        }
+
+        Assertions.assertEquals(numEvents, received.size());
+        for (int i = 0; i < numEvents; i++) {
+            Assertions.assertEquals("proxy-" + i, ((SeatClaimedEvent) received.get(i)).getClaimingProxyId());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisEventBridge createBridge(List<byte[]> messages, long batchWindow, ApplicationEventPublisher publisher) {
+        RedisTemplate<String, BridgeableEvent> redisTemplate = mock(RedisTemplate.class);
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.publish(any(), any())).thenAnswer(invocation -> {
+            messages.add(invocation.getArgument(1));
+            return 1L;
+        });
+        when(redisTemplate.execute(any(RedisCallback.class))).thenAnswer(invocation -> ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(connection));
+        return new RedisEventBridge(redisTemplate, new ChannelTopic("events"), publisher, batchWindow);
+    }
+
+    private void waitForMessages(List<byte[]> messages, int count) throws Exception {
+        CompletableFuture.runAsync(() -> {
+            while (messages.size() < count) {
+                Thread.onSpinWait();
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.log.LogMemoryBudget;
+import eu.openanalytics.containerproxy.log.S3MultipartOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestS3MultipartOutputStream {
+
+    private static final int PART_SIZE = S3MultipartOutputStream.MIN_PART_SIZE;
+
+    @Test
+    public void testMultipartUpload() throws IOException {
+        StubS3Client s3Client = new StubS3Client();
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "logs/app_stdout.log", PART_SIZE, 0, false);
+
+        byte[] line = "0123456789abcdefghijklmnopqrstuvwxyz\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        // ~12 MiB written in small chunks, with a flush after every write
+        while (expected.size() < 12 * 1024 * 1024) {
+            stream.write(line);
+            stream.flush();
+            expected.write(line);
+        }
+        Assertions.assertEquals(2, s3Client.uploadedParts);
+        Assertions.assertTrue(s3Client.objects.isEmpty());
+
+        stream.close();
+        Assertions.assertEquals(3, s3Client.uploadedParts);
+        Assertions.assertEquals(0, s3Client.putObjects);
+        Assertions.assertArrayEquals(expected.toByteArray(), s3Client.objects.get("logs/app_stdout.log"));
+    }
+
+    @Test
+    public void testSmallLogUsesSingleRequest() throws IOException {
+        StubS3Client s3Client = new StubS3Client();
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "logs/app_stdout.log", PART_SIZE, 0, false);
+        stream.write("hello\n".getBytes(StandardCharsets.UTF_8));
+        stream.close();
+        // closing again has no effect
+        stream.close();
+
+        Assertions.assertEquals(1, s3Client.putObjects);
+        Assertions.assertEquals(0, s3Client.uploadedParts);
+        Assertions.assertEquals("hello\n", new String(s3Client.objects.get("logs/app_stdout.log"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRollover() throws Exception {
+        StubS3Client s3Client = new StubS3Client();
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "logs/app_stdout.log", PART_SIZE, 100, false);
+        stream.write("first\n".getBytes(StandardCharsets.UTF_8));
+        Thread.sleep(150);
+        stream.rolloverIfExpired();
+        Assertions.assertEquals("first\n", new String(s3Client.objects.get("logs/app_stdout.log"), StandardCharsets.UTF_8));
+
+        // no output: no new object
+        Thread.sleep(150);
+        stream.rolloverIfExpired();
+        Assertions.assertEquals(1, s3Client.objects.size());
+
+        stream.write("second\n".getBytes(StandardCharsets.UTF_8));
+        stream.close();
+        Assertions.assertEquals("second\n", new String(s3Client.objects.get("logs/app_stdout.1.log"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadCompletedObjects() throws Exception {
+        StubS3Client s3Client = new StubS3Client();
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "logs/app_stdout.log", PART_SIZE, 100, false);
+        stream.write("first\n".getBytes(StandardCharsets.UTF_8));
+        // the current object cannot be read yet
+        Assertions.assertEquals(0, stream.getReadableEnd());
+
+        Thread.sleep(150);
+        stream.rolloverIfExpired();
+        stream.write("second\n".getBytes(StandardCharsets.UTF_8));
+        stream.close();
+
+        Assertions.assertEquals(0, stream.getReadableStart());
+        Assertions.assertEquals(13, stream.getReadableEnd());
+        Assertions.assertEquals("rst\n", new String(stream.read(2, 100), StandardCharsets.UTF_8));
+        // offsets span both objects
+        Assertions.assertEquals("sec", new String(stream.read(6, 3), StandardCharsets.UTF_8));
+        Assertions.assertEquals(2, stream.getIndex().getLineCount());
+    }
+
+    @Test
+    public void testFailedUploadIsAborted() throws IOException {
+        StubS3Client s3Client = new StubS3Client();
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "logs/app_stdout.log", PART_SIZE, 0, false);
+        stream.write(new byte[PART_SIZE]);
+        s3Client.failCompletion = true;
+        Assertions.assertThrows(IOException.class, stream::close);
+        Assertions.assertEquals(1, s3Client.abortedUploads);
+        Assertions.assertTrue(s3Client.uploads.isEmpty());
+    }
+
+    @Test
+    public void testFailedPartUploadIsRetried() throws IOException {
+        StubS3Client s3Client = new StubS3Client();
+        S3MultipartOutputStream stream = new S3MultipartOutputStream(s3Client, "bucket", "logs/app_stdout.log", PART_SIZE, 0, false);
+        s3Client.failUploads = true;
+        byte[] part = new byte[PART_SIZE];
+        Arrays.fill(part, (byte) 'a');
+        // the error is not passed to the writer
+        stream.write(part);
+        stream.write("more\n".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(0, s3Client.uploadedParts);
+
+        s3Client.failUploads = false;
+        stream.rolloverIfExpired();
+        Assertions.assertEquals(1, s3Client.uploadedParts);
+
+        stream.close();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(part);
+        expected.write("more\n".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertArrayEquals(expected.toByteArray(), s3Client.objects.get("logs/app_stdout.log"));
+    }
+
+    @Test
+    public void testMemoryBudget() throws IOException {
+        StubS3Client s3Client = new StubS3Client();
+        LogMemoryBudget memoryBudget = new LogMemoryBudget(1024 * 1024);
+        S3MultipartOutputStream stream1 = new S3MultipartOutputStream(s3Client, "bucket", "logs/app1_stdout.log", PART_SIZE, 0, false, memoryBudget);
+        S3MultipartOutputStream stream2 = new S3MultipartOutputStream(s3Client, "bucket", "logs/app2_stdout.log", PART_SIZE, 0, false, memoryBudget);
+
+        byte[] line = "0123456789abcdefghijklmnopqrstuvwxyz\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        while (expected.size() < 7 * 1024 * 1024) {
+            stream1.write(line);
+            stream2.write(line);
+            expected.write(line);
+            Assertions.assertTrue(memoryBudget.getUsed() <= 1024 * 1024);
+        }
+        stream1.close();
+        stream2.close();
+
+        // buffers moved to a file are uploaded as well
+        Assertions.assertArrayEquals(expected.toByteArray(), s3Client.objects.get("logs/app1_stdout.log"));
+        Assertions.assertArrayEquals(expected.toByteArray(), s3Client.objects.get("logs/app2_stdout.log"));
+        Assertions.assertEquals(0, memoryBudget.getUsed());
+    }
+
+    private static class StubS3Client implements S3Client {
+
+        private final Map<String, byte[]> objects = new HashMap<>();
+        private final Map<String, Map<Integer, byte[]>> uploads = new HashMap<>();
+        private int uploadedParts = 0;
+        private int putObjects = 0;
+        private int abortedUploads = 0;
+        private boolean failCompletion = false;
+        private boolean failUploads = false;
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+            String uploadId = "upload-" + uploads.size();
+            uploads.put(uploadId, new HashMap<>());
+            return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+            if (failUploads) {
+                throw S3Exception.builder().message("Upload failed").statusCode(500).build();
+            }
+            uploads.get(request.uploadId()).put(request.partNumber(), read(body));
+            uploadedParts++;
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            if (failCompletion) {
+                throw S3Exception.builder().message("Completion failed").statusCode(500).build();
+            }
+            Map<Integer, byte[]> parts = uploads.remove(request.uploadId());
+            ByteArrayOutputStream object = new ByteArrayOutputStream();
+            List<CompletedPart> completedParts = new ArrayList<>(request.multipartUpload().parts());
+            for (int i = 0; i < completedParts.size(); i++) {
+                Assertions.assertEquals(i + 1, completedParts.get(i).partNumber());
+                byte[] part = parts.get(completedParts.get(i).partNumber());
+                if (i < completedParts.size() - 1) {
+                    Assertions.assertTrue(part.length >= S3MultipartOutputStream.MIN_PART_SIZE);
+                }
+                object.writeBytes(part);
+            }
+            objects.put(request.key(), object.toByteArray());
+            return CompleteMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+            uploads.remove(request.uploadId());
+            abortedUploads++;
+            return AbortMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+            objects.put(request.key(), read(body));
+            putObjects++;
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public ResponseBytes<GetObjectResponse> getObjectAsBytes(GetObjectRequest request) {
+            byte[] object = objects.get(request.key());
+            String[] range = request.range().substring("bytes=".length()).split("-");
+            byte[] data = Arrays.copyOfRange(object, Integer.parseInt(range[0]), Math.min(object.length, Integer.parseInt(range[1]) + 1));
+            return ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), data);
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private static byte[] read(RequestBody body) {
+            try {
+                return body.contentStreamProvider().newStream().readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.spec.ContainerSpec;
+import eu.openanalytics.containerproxy.model.spec.ProxySpec;
+import eu.openanalytics.containerproxy.spec.expression.SpecExpressionContext;
+import eu.openanalytics.containerproxy.spec.expression.SpecExpressionResolver;
+import eu.openanalytics.containerproxy.spec.expression.SpelException;
+import eu.openanalytics.containerproxy.spec.expression.SpelField;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+public class TestSpecExpressionResolver {
+
+    @Test
+    public void testParsedExpressionsAreCached() {
+        SpecExpressionResolver resolver = createResolver(new MockEnvironment());
+        for (int i = 0; i < 100; i++) {
+            SpecExpressionContext context = SpecExpressionContext.create(Proxy.builder().id("proxy-" + i).userId("user-" + i).build()).build();
+            Assertions.assertEquals("user-" + i + "-proxy-" + i, resolver.evaluateToString("#{proxy.userId}-#{proxy.id}", context));
+            Assertions.assertEquals(i + 1, resolver.evaluateToInteger("#{" + i + " + 1}", context));
+        }
+        // the first expression is parsed once, the second expression is different for every iteration
+        Assertions.assertEquals(101, getExpressionCache(resolver).estimatedSize());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setProperty("proxy.spel-expression-cache-size", "10");
+        SpecExpressionResolver resolver = createResolver(environment);
+        SpecExpressionContext context = SpecExpressionContext.create().build();
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(i, resolver.evaluateToInteger("#{" + i + "}", context));
+        }
+        getExpressionCache(resolver).cleanUp();
+        Assertions.assertTrue(getExpressionCache(resolver).estimatedSize() <= 10);
+    }
+
+    @Test
+    public void testInvalidExpressionIsNotCached() {
+        SpecExpressionResolver resolver = createResolver(new MockEnvironment());
+        SpecExpressionContext context = SpecExpressionContext.create().build();
+        Assertions.assertThrows(SpelException.class, () -> resolver.evaluateToString("#{proxy.}", context));
+        Assertions.assertThrows(SpelException.class, () -> resolver.evaluateToString("#{proxy.}", context));
+        Assertions.assertEquals(0, getExpressionCache(resolver).estimatedSize());
+    }
+
+    @Test
+    public void testCompilerMode() {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setProperty("proxy.spel-compiler-mode", "MIXED");
+        SpecExpressionResolver resolver = createResolver(environment);
+        ProxySpec spec = createProxySpec();
+        for (int i = 0; i < 500; i++) {
+            ProxySpec resolved = resolve(resolver, spec, i);
+            ContainerSpec containerSpec = resolved.getContainerSpecs().getFirst();
+            Assertions.assertEquals("openanalytics/app-user-" + i, containerSpec.getImage().getValue());
+            Assertions.assertEquals(Map.of("USER", "user-" + i, "PROXY_ID", "proxy-" + i, "SPEC", "01_hello"), containerSpec.getEnv().getValue());
+            Assertions.assertEquals(List.of("R", "-e", "run('user-" + i + "')"), containerSpec.getCmd().getValue());
+        }
+    }
+
+    private ProxySpec resolve(SpecExpressionResolver resolver, ProxySpec spec, int i) {
+        Proxy proxy = Proxy.builder().id("proxy-" + i).userId("user-" + i).specId(spec.getId()).build();
+        SpecExpressionContext context = SpecExpressionContext.create(spec, proxy).build();
+        return spec.firstResolve(resolver, context).finalResolve(resolver, context);
+    }
+
+    private static ProxySpec createProxySpec() {
+        ContainerSpec containerSpec = ContainerSpec.builder()
+            .image(new SpelField.String("openanalytics/app-#{proxy.userId}"))
+            .cmd(new SpelField.StringList(List.of("R", "-e", "run('#{proxy.userId}')")))
+            .env(new SpelField.StringMap(Map.of(
+                "USER", "#{proxy.userId}",
+                "PROXY_ID", "#{proxy.id}",
+                "SPEC", "#{proxySpec.id}")))
+            .labels(new SpelField.StringMap(Map.of(
+                "app", "#{proxySpec.id}",
+                "owner", "#{proxy.userId.toLowerCase()}")))
+            .memoryLimit(new SpelField.String("#{proxy.userId.startsWith('admin') ? '4g' : '2g'}"))
+            .cpuLimit(new SpelField.String("#{proxy.userId.length() > 100 ? '4' : '2'}"))
+            .volumes(new SpelField.StringList(List.of("/data/#{proxy.userId}:/home/user", "/data/shared/#{proxySpec.id}:/shared")))
+            .build();
+        return ProxySpec.builder()
+            .id("01_hello")
+            .containerSpecs(List.of(containerSpec))
+            .build();
+    }
+
+    private static SpecExpressionResolver createResolver(MockEnvironment environment) {
+        GenericApplicationContext applicationContext = new GenericApplicationContext();
+        applicationContext.setEnvironment(environment);
+        return new SpecExpressionResolver(applicationContext);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cache<Object, Object> getExpressionCache(SpecExpressionResolver resolver) {
+        return (Cache<Object, Object>) ReflectionTestUtils.getField(resolver, "expressionCache");
+    }
+
+}
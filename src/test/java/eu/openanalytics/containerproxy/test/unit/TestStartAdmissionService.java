@@ -0,0 +1,147 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.service.StartAdmissionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestStartAdmissionService {
+
+    @Test
+    public void testDisabledByDefault() throws InterruptedException {
+        StartAdmissionService service = new StartAdmissionService(new MockEnvironment(), new SimpleMeterRegistry());
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(service.acquire(proxy("proxy-" + i, "jack")));
+        }
+        Assertions.assertEquals(0, service.getQueueDepth());
+    }
+
+    @Test
+    public void testRoundRobinAcrossUsers() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StartAdmissionService service = createService(1, registry);
+        Assertions.assertTrue(service.acquire(proxy("running", "jack")));
+
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        // jack queues three apps before jeff and demo queue theirs
+        threads.add(enqueue(service, proxy("jack-1", "jack"), admitted));
+        threads.add(enqueue(service, proxy("jack-2", "jack"), admitted));
+        threads.add(enqueue(service, proxy("jack-3", "jack"), admitted));
+        threads.add(enqueue(service, proxy("jeff-1", "jeff"), admitted));
+        threads.add(enqueue(service, proxy("demo-1", "demo"), admitted));
+        threads.add(enqueue(service, proxy("demo-2", "demo"), admitted));
+
+        Assertions.assertEquals(6, service.getQueueDepth());
+        Assertions.assertEquals(6, registry.get("proxy_start_queue_depth").gauge().value());
+        Assertions.assertEquals(1, service.getQueuePosition("jack-1"));
+        Assertions.assertEquals(2, service.getQueuePosition("jeff-1"));
+        Assertions.assertEquals(3, service.getQueuePosition("demo-1"));
+        Assertions.assertEquals(4, service.getQueuePosition("jack-2"));
+        Assertions.assertEquals(5, service.getQueuePosition("demo-2"));
+        Assertions.assertEquals(6, service.getQueuePosition("jack-3"));
+        Assertions.assertNull(service.getQueuePosition("running"));
+
+        service.release("running");
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+
+        Assertions.assertEquals(List.of("jack-1", "jeff-1", "demo-1", "jack-2", "demo-2", "jack-3"), admitted);
+        Assertions.assertEquals(0, service.getQueueDepth());
+        Assertions.assertEquals(0, service.getInFlight());
+        Assertions.assertEquals(7, registry.get("proxy_start_queue_wait_time").timer().count());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        StartAdmissionService service = createService(1, new SimpleMeterRegistry());
+        Assertions.assertTrue(service.acquire(proxy("running", "jack")));
+
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] result = new boolean[]{true};
+        Thread thread = new Thread(() -> {
+            try {
+                result[0] = service.acquire(proxy("queued", "jeff"));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            done.countDown();
+        });
+        thread.start();
+        waitForQueueDepth(service, 1);
+
+        service.cancel("queued");
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assertions.assertFalse(result[0]);
+        Assertions.assertEquals(0, service.getQueueDepth());
+        Assertions.assertEquals(1, service.getInFlight());
+    }
+
+    private StartAdmissionService createService(int maxConcurrentStarts, SimpleMeterRegistry registry) {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setProperty(StartAdmissionService.PROPERTY_MAX_CONCURRENT_STARTS, String.valueOf(maxConcurrentStarts));
+        return new StartAdmissionService(environment, registry);
+    }
+
+    /**
+     * Starts a thread that waits for the proxy to be admitted and immediately releases it again.
+     * Only returns once the proxy is queued, such that the order of the queue is deterministic.
+     */
+    private Thread enqueue(StartAdmissionService service, Proxy proxy, List<String> admitted) throws InterruptedException {
+        int depth = service.getQueueDepth();
+        Thread thread = new Thread(() -> {
+            try {
+                if (service.acquire(proxy)) {
+                    admitted.add(proxy.getId());
+                    service.release(proxy.getId());
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        waitForQueueDepth(service, depth + 1);
+        return thread;
+    }
+
+    private void waitForQueueDepth(StartAdmissionService service, int depth) throws InterruptedException {
+        for (int i = 0; i < 1000 && service.getQueueDepth() != depth; i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(depth, service.getQueueDepth());
+    }
+
+    private Proxy proxy(String id, String userId) {
+        return Proxy.builder().id(id).userId(userId).build();
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.event.UserLoginEvent;
+import eu.openanalytics.containerproxy.spec.expression.SpecExpressionResolver;
+import eu.openanalytics.containerproxy.stat.StatCollectorFactory;
+import eu.openanalytics.containerproxy.stat.impl.AbstractDbCollector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestUsageStatsAttributes {
+
+    private final SpecExpressionResolver specExpressionResolver = new SpecExpressionResolver(new GenericApplicationContext());
+
+    @Test
+    public void testResolveAttributes() {
+        List<StatCollectorFactory.UsageStatsAttribute> attributes = List.of(
+            attribute("user", "#{event.userId}"),
+            attribute("upper", "#{event.userId.toUpperCase()}"),
+            attribute("static", "static-value"),
+            attribute("empty", ""),
+            attribute("failing", "#{event.userId.substring(100)}"));
+        TestCollector collector = createCollector(attributes, specExpressionResolver);
+
+        // evaluate often enough for the expressions to be compiled
+        for (int i = 0; i < 500; i++) {
+            Map<String, String> result = collector.resolve(new UserLoginEvent(this, "user-" + i, null));
+            Assertions.assertEquals(Map.of("user", "user-" + i, "upper", "USER-" + i, "static", "static-value", "empty", ""), result);
+        }
+    }
+
+    @Test
+    public void testExpressionsAreParsedOnce() {
+        List<StatCollectorFactory.UsageStatsAttribute> attributes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            attributes.add(attribute("attribute" + i, "#{event.userId + '-" + i + "'}"));
+        }
+        SpecExpressionResolver resolver = spy(specExpressionResolver);
+        TestCollector collector = createCollector(attributes, resolver);
+
+        for (int i = 0; i < 200; i++) {
+            Map<String, String> result = collector.resolve(new UserLoginEvent(this, "user-" + i, null));
+            for (int j = 0; j < 5; j++) {
+                Assertions.assertEquals("user-" + i + "-" + j, result.get("attribute" + j));
+            }
+        }
+        verify(resolver, times(5)).parseCompiled(anyString());
+    }
+
+    @Test
+    public void testInvalidExpressionFailsAtStartup() {
+        List<StatCollectorFactory.UsageStatsAttribute> attributes = List.of(attribute("invalid", "#{event.}"));
+        IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class, () -> createCollector(attributes, specExpressionResolver));
+        Assertions.assertEquals("Configuration error: invalid expression for usage statistics attribute 'invalid'", ex.getMessage());
+    }
+
+    private TestCollector createCollector(List<StatCollectorFactory.UsageStatsAttribute> attributes, SpecExpressionResolver resolver) {
+        TestCollector collector = new TestCollector(attributes);
+        ReflectionTestUtils.setField(collector, AbstractDbCollector.class, "specExpressionResolver", resolver, SpecExpressionResolver.class);
+        collector.parseAttributes();
+        return collector;
+    }
+
+    private static StatCollectorFactory.UsageStatsAttribute attribute(String name, String expression) {
+        StatCollectorFactory.UsageStatsAttribute attribute = new StatCollectorFactory.UsageStatsAttribute();
+        attribute.setName(name);
+        attribute.setExpression(expression);
+        return attribute;
+    }
+
+    private static class TestCollector extends AbstractDbCollector {
+
+        private final List<StatCollectorFactory.UsageStatsAttribute> attributes;
+
+        private TestCollector(List<StatCollectorFactory.UsageStatsAttribute> attributes) {
+            this.attributes = attributes;
+        }
+
+        @Override
+        protected void writeToDb(ApplicationEvent event, long timestamp, String userId, String type, String data, Authentication authentication) {
+        }
+
+        @Override
+        protected List<StatCollectorFactory.UsageStatsAttribute> getUsageStatsAttributes() {
+            return attributes;
+        }
+
+        public Map<String, String> resolve(ApplicationEvent event) {
+            return resolveAttributes(null, event);
+        }
+
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * ContainerProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.containerproxy.test.unit;
+
+import eu.openanalytics.containerproxy.event.UserLoginEvent;
+import eu.openanalytics.containerproxy.stat.impl.BatchWriter;
+import eu.openanalytics.containerproxy.stat.impl.JDBCCollector;
+import eu.openanalytics.containerproxy.stat.impl.UsageStatsRejectedException;
+import eu.openanalytics.containerproxy.stat.impl.UsageStatsSpool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class TestUsageStatsSpool {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void testSinkOutage() throws Exception {
+        StubSink sink = new StubSink();
+        sink.failing = true;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UsageStatsSpool<Integer> spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024, 1024 * 1024, -1, sink, registry);
+
+        for (int i = 0; i < 1000; i++) {
+            spool.add(i);
+        }
+        Thread.sleep(1000);
+        Assertions.assertTrue(sink.items.isEmpty());
+        Assertions.assertTrue(sink.attempts > 1);
+        Assertions.assertTrue(spool.getSize() > 0);
+        // multiple segments are used
+        Assertions.assertTrue(listSegments().size() > 1);
+
+        sink.failing = false;
+        waitFor(() -> sink.items.size() == 1000);
+        Assertions.assertEquals(IntStream.range(0, 1000).boxed().toList(), sink.items);
+        Assertions.assertEquals(1000, registry.get("usage_stats_written").counter().count());
+        spool.close();
+        // only the current segment is kept
+        Assertions.assertEquals(1, listSegments().size());
+        Assertions.assertEquals(Files.size(listSegments().get(0)), spool.getSize());
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        StubSink sink = new StubSink();
+        sink.failing = true;
+        UsageStatsSpool<Integer> spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024, 1024 * 1024, -1, sink, null);
+        for (int i = 0; i < 500; i++) {
+            spool.add(i);
+        }
+        spool.close();
+        Assertions.assertTrue(sink.items.isEmpty());
+
+        sink.failing = false;
+        spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024, 1024 * 1024, -1, sink, null);
+        for (int i = 500; i < 600; i++) {
+            spool.add(i);
+        }
+        waitFor(() -> sink.items.size() == 600);
+        spool.close();
+        Assertions.assertEquals(IntStream.range(0, 600).boxed().toList(), sink.items);
+
+        // checkpoint is stored, nothing is written twice
+        spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024, 1024 * 1024, -1, sink, null);
+        Thread.sleep(200);
+        spool.close();
+        Assertions.assertEquals(600, sink.items.size());
+    }
+
+    @Test
+    public void testCorruptRecord() throws Exception {
+        StubSink sink = new StubSink();
+        sink.failing = true;
+        UsageStatsSpool<Integer> spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024 * 1024, 1024 * 1024, -1, sink, null);
+        for (int i = 0; i < 10; i++) {
+            spool.add(i);
+        }
+        spool.close();
+
+        // every record is 8 bytes of header and 1 byte of payload, corrupt the payload of the sixth record
+        Path segment = listSegments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(5 * 9 + 8);
+            file.write('x');
+        }
+
+        sink.failing = false;
+        spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024 * 1024, 1024 * 1024, -1, sink, null);
+        spool.add(10);
+        waitFor(() -> sink.items.size() == 6);
+        spool.close();
+        Assertions.assertEquals(List.of(0, 1, 2, 3, 4, 10), sink.items);
+    }
+
+    @Test
+    public void testRejectedItems() throws Exception {
+        StubSink sink = new StubSink();
+        sink.rejected = 42;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UsageStatsSpool<Integer> spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024, 1024 * 1024, -1, sink, registry);
+        for (int i = 0; i < 100; i++) {
+            spool.add(i);
+        }
+
+        // only the rejected item is dropped, the batch is not retried forever
+        waitFor(() -> sink.items.size() == 99);
+        Assertions.assertFalse(sink.items.contains(42));
+        Assertions.assertEquals(1, registry.get("usage_stats_dropped").counter().count());
+        spool.close();
+    }
+
+    @Test
+    public void testMaxAttempts() throws Exception {
+        StubSink sink = new StubSink();
+        sink.failing = true;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UsageStatsSpool<Integer> spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024, 1024 * 1024, 2, sink, registry);
+        for (int i = 0; i < 10; i++) {
+            spool.add(i);
+        }
+
+        waitFor(() -> registry.get("usage_stats_dropped").counter().count() == 10);
+        Assertions.assertEquals(2, sink.attempts);
+        spool.close();
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        StubSink sink = new StubSink();
+        sink.failing = true;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UsageStatsSpool<Integer> spool = new UsageStatsSpool<>("test", tempDir, Integer.class, 100, 10, 1024, 90, -1, sink, registry);
+        for (int i = 0; i < 20; i++) {
+            spool.add(i);
+        }
+        Assertions.assertEquals(90, spool.getSize());
+        Assertions.assertEquals(10, registry.get("usage_stats_dropped").counter().count());
+        spool.close();
+    }
+
+    @Test
+    public void testJDBCCollectorWithSpool() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("usage_stats.db");
+        JDBCCollector collector = new JDBCCollector(url, null, null, "event", null);
+        ReflectionTestUtils.setField(collector, "environment", new MockEnvironment()
+            .withProperty(UsageStatsSpool.PROPERTY_PREFIX + "directory", tempDir.resolve("spool").toString())
+            .withProperty(BatchWriter.PROPERTY_PREFIX + "flush-interval", "10"));
+        ReflectionTestUtils.setField(collector, "meterRegistry", new SimpleMeterRegistry());
+        collector.init();
+
+        for (int i = 0; i < 100; i++) {
+            collector.onUserLoginEvent(new UserLoginEvent(this, "user-" + i, null));
+        }
+        collector.close();
+
+        try (Connection con = DriverManager.getConnection(url); ResultSet rs = con.createStatement().executeQuery("select count(*), min(username) from event")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(100, rs.getInt(1));
+            Assertions.assertEquals("user-0", rs.getString(2));
+        }
+        Assertions.assertTrue(Files.exists(tempDir.resolve("spool").resolve("JDBCCollector").resolve("checkpoint")));
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+        Assertions.assertTrue(condition.getAsBoolean());
+    }
+
+    private static class StubSink implements BatchWriter.Handler<Integer> {
+
+        private final List<Integer> items = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean failing;
+        private volatile int attempts;
+        private volatile Integer rejected;
+
+        @Override
+        public void write(List<Integer> batch) throws IOException {
+            attempts++;
+            if (failing) {
+                throw new IOException("Sink unavailable");
+            }
+            if (rejected != null && batch.contains(rejected)) {
+                throw new UsageStatsRejectedException("Invalid item");
+            }
+            items.addAll(batch);
+        }
+
+    }
+
+}